@@ -22,10 +22,26 @@ import jcifs.netbios.Lmhosts;
 import jcifs.netbios.NbtAddress;
 import jcifs.util.LogStream;
 
-import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Iterator;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * <p>Under normal conditions it is not necessary to use
@@ -118,75 +134,182 @@ public class UniAddress {
         }
     }
 
-    static class Sem {
-        Sem( int count ) {
-            this.count = count;
-        }
-        int count;
+    /* Resolution runs on shared pools rather than on threads started per
+     * lookup. NetBIOS queries (WINS and broadcasts) block through all their
+     * retries when nobody answers, so they have a pool of their own and
+     * cannot hold up DNS and LMHOSTS lookups. Tasks never wait on other
+     * tasks, so bounded pools cannot deadlock, excess queries simply queue.
+     */
+    private static final ThreadPoolExecutor RESOLVER_POOL;
+    private static final ThreadPoolExecutor NBT_POOL;
+
+    static {
+        int threads = Math.max( 1, Config.getInt( "jcifs.resolveThreads", 16 ));
+        RESOLVER_POOL = newPool( threads, "JCIFS-Resolver-" );
+        NBT_POOL = newPool( threads, "JCIFS-NbtResolver-" );
     }
 
-    static class QueryThread extends Thread {
-    
-        Sem sem;
-        String host, scope;
-        int type;
-        NbtAddress ans = null;
-        InetAddress svr;
-        UnknownHostException uhe;
-    
-        QueryThread( Sem sem, String host, int type,
-                        String scope, InetAddress svr ) {
-            super( "JCIFS-QueryThread: " + host );
-            this.sem = sem;
-            this.host = host;
-            this.type = type;
-            this.scope = scope;
-            this.svr = svr;
-        }
-        public void run() {
-            try {
-                ans = NbtAddress.getByName( host, type, scope, svr );
-            } catch( UnknownHostException uhe ) {
-                this.uhe = uhe;
-            } catch( Exception ex ) {
-                this.uhe = new UnknownHostException( ex.getMessage() );
-            } finally {
-                synchronized( sem ) {
-                    sem.count--;
-                    sem.notify();
+    private static ThreadPoolExecutor newPool( int threads, final String name ) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue(), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+            public Thread newThread( Runnable r ) {
+                Thread t = new Thread( r, name + counter.incrementAndGet() );
+                t.setDaemon( true );
+                return t;
+            }
+        });
+        pool.allowCoreThreadTimeOut( true );
+        return pool;
+    }
+
+    /* Runs lookup on pool. The first task of a resolver to leave the queue
+     * records the time in started, the resolver's timeout runs from there.
+     */
+    static CompletableFuture supply( final Callable lookup,
+                                    final AtomicLong started,
+                                    Executor pool ) {
+        return CompletableFuture.supplyAsync( new Supplier() {
+            public Object get() {
+                started.compareAndSet( 0, System.currentTimeMillis() );
+                try {
+                    return lookup.call();
+                } catch( Exception e ) {
+                    throw new CompletionException( e );
                 }
             }
-        }
+        }, pool );
     }
 
-    static NbtAddress lookupServerOrWorkgroup( String name, InetAddress svr )
-                                                    throws UnknownHostException {
-        Sem sem = new Sem( 2 );
+    static CompletableFuture query( final String name,
+                                    final int type,
+                                    final InetAddress svr,
+                                    AtomicLong started ) {
+        return supply( new Callable() {
+            public Object call() throws UnknownHostException {
+                return NbtAddress.getByName( name, type, null, svr );
+            }
+        }, started, NBT_POOL );
+    }
+
+    /* Queries the domain/workgroup and the server name at the same time,
+     * the first answer wins.
+     */
+    static CompletableFuture lookupServerOrWorkgroup( String name,
+                                    InetAddress svr,
+                                    AtomicLong started ) {
         int type = NbtAddress.isWINS( svr ) ? 0x1b : 0x1d;
+        final CompletableFuture result = new CompletableFuture();
+        final AtomicInteger pending = new AtomicInteger( 2 );
+        BiConsumer first = new BiConsumer() {
+            public void accept( Object ans, Object ex ) {
+                if( ex == null ) {
+                    result.complete( ans );
+                } else if( pending.decrementAndGet() == 0 ) {
+                    result.completeExceptionally( (Throwable)ex );
+                }
+            }
+        };
+        query( name, type, svr, started ).whenComplete( first );
+        query( name, 0x20, svr, started ).whenComplete( first );
+        return result;
+    }
 
-        QueryThread q1x = new QueryThread( sem, name, type, null, svr );
-        QueryThread q20 = new QueryThread( sem, name, 0x20, null, svr );
-        q1x.setDaemon( true );
-        q20.setDaemon( true );
-        try {
-            synchronized( sem ) {
-                q1x.start();
-                q20.start();
+    /* Starts the lookup of one resolver, the future yields an array of
+     * NbtAddress or InetAddress. Returns null if the resolver does not
+     * apply to this name.
+     */
+    static CompletableFuture resolve( int resolver,
+                                    final String hostname,
+                                    boolean possibleNTDomainOrWorkgroup,
+                                    AtomicLong started ) {
+        switch( resolver ) {
+            case RESOLVER_LMHOSTS:
+                return supply( new Callable() {
+                    public Object call() throws UnknownHostException {
+                        NbtAddress addr = Lmhosts.getByName( hostname );
+                        if( addr == null ) {
+                            throw new UnknownHostException( hostname );
+                        }
+                        return new Object[] { addr };
+                    }
+                }, started, RESOLVER_POOL );
+            case RESOLVER_WINS:
+                if( hostname == NbtAddress.MASTER_BROWSER_NAME ||
+                                            hostname.length() > 15 ) {
+                                            // invalid netbios name
+                    return null;
+                }
+                if( possibleNTDomainOrWorkgroup ) {
+                    return lookupServerOrWorkgroup( hostname, NbtAddress.getWINSAddress(), started ).thenApply( WRAP );
+                }
+                return query( hostname, 0x20, NbtAddress.getWINSAddress(), started ).thenApply( WRAP );
+            case RESOLVER_BCAST:
+                if( hostname.length() > 15 ) {
+                    // invalid netbios name
+                    return null;
+                }
+                if( possibleNTDomainOrWorkgroup ) {
+                    return lookupServerOrWorkgroup( hostname, baddr, started ).thenApply( WRAP );
+                }
+                return query( hostname, 0x20, baddr, started ).thenApply( WRAP );
+            case RESOLVER_DNS:
+                if( isAllDigits( hostname )) {
+                    return null;
+                }
+                return supply( new Callable() {
+                    public Object call() throws UnknownHostException {
+                        return InetAddress.getAllByName( hostname );
+                    }
+                }, started, RESOLVER_POOL );
+            default:
+                return null;
+        }
+    }
 
-                while( sem.count > 0 && q1x.ans == null && q20.ans == null ) {
-                    sem.wait();
+    private static final Function WRAP = new Function() {
+        public Object apply( Object addr ) {
+            return new Object[] { addr };
+        }
+    };
+
+    /* Resolved names, and names which every resolver reported unknown,
+     * are cached across all resolvers. A lookup which timed out is not
+     * cached. The underlying addresses are cached rather than UniAddress
+     * instances because these carry called name state.
+     */
+    static final class CacheEntry {
+        final Object[] addrs;
+        final long expiration;
+
+        CacheEntry( Object[] addrs, long expiration ) {
+            this.addrs = addrs;
+            this.expiration = expiration;
+        }
+    }
+
+    private static final int CACHE_POLICY = Config.getInt( "jcifs.resolveCachePolicy",
+                Config.getInt( "jcifs.netbios.cachePolicy", 30 ));
+    private static final int NEGATIVE_CACHE_POLICY = Config.getInt( "jcifs.resolveNegativeCachePolicy", 5 );
+    private static final long RESOLVE_TIMEOUT = Config.getLong( "jcifs.resolveTimeout", 10000 );
+    private static final int CACHE_PURGE_SIZE = 1024;
+    private static final ConcurrentHashMap CACHE = new ConcurrentHashMap();
+
+    private static void cache( String key, Object[] addrs ) {
+        int policy = addrs != null ? CACHE_POLICY : NEGATIVE_CACHE_POLICY;
+        if( policy == 0 ) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if( CACHE.size() >= CACHE_PURGE_SIZE ) {
+            for( Iterator it = CACHE.values().iterator(); it.hasNext(); ) {
+                CacheEntry e = (CacheEntry)it.next();
+                if( e.expiration >= 0 && e.expiration < now ) {
+                    it.remove();
                 }
             }
-        } catch( InterruptedException ie ) {
-            throw new UnknownHostException( name );
-        }
-        if( q1x.ans != null ) {
-            return q1x.ans;
-        } else if( q20.ans != null ) {
-            return q20.ans;
-        } else {
-            throw q1x.uhe;
         }
+        CACHE.put( key, new CacheEntry( addrs, policy < 0 ? -1 : now + policy * 1000L ));
     }
 
     /** 
@@ -249,9 +372,6 @@ public class UniAddress {
     public static UniAddress[] getAllByName( String hostname,
                                         boolean possibleNTDomainOrWorkgroup )
                                         throws UnknownHostException {
-        Object addr;
-        int i;
-
         if( hostname == null || hostname.length() == 0 ) {
             throw new UnknownHostException();
         }
@@ -262,58 +382,102 @@ public class UniAddress {
             return addrs;
         }
 
+        String key = ( possibleNTDomainOrWorkgroup ? "1:" : "0:" ) + hostname.toUpperCase();
+        CacheEntry entry = (CacheEntry)CACHE.get( key );
+        if( entry != null && entry.expiration >= 0 && entry.expiration < System.currentTimeMillis() ) {
+            CACHE.remove( key, entry );
+            entry = null;
+        }
+        Object[] addrs;
+        if( entry != null ) {
+            addrs = entry.addrs;
+        } else {
+            addrs = resolve( hostname, possibleNTDomainOrWorkgroup );
+            cache( key, addrs );
+        }
+        if( addrs == null ) {
+            throw new UnknownHostException( hostname );
+        }
+
+        UniAddress[] uaddrs = new UniAddress[addrs.length];
+        for( int i = 0; i < addrs.length; i++ ) {
+            uaddrs[i] = new UniAddress( addrs[i] );
+        }
+        return uaddrs; // Success
+    }
+
+    /* All resolvers are queried at once but the answer of a resolver is
+     * only taken once every resolver before it in resolveOrder has failed
+     * or timed out, so the result is the same as querying them in turn.
+     * Returns null if no resolver could resolve the name. If a resolver
+     * timed out instead the name may well exist, an UnknownHostException
+     * is thrown so that the failure is not cached.
+     */
+    private static Object[] resolve( String hostname,
+                                        boolean possibleNTDomainOrWorkgroup )
+                                        throws UnknownHostException {
+        CompletableFuture[] queries = new CompletableFuture[resolveOrder.length];
+        AtomicLong[] started = new AtomicLong[resolveOrder.length];
+        boolean timedOut = false;
+        int i;
+
         for( i = 0; i < resolveOrder.length; i++ ) {
+            started[i] = new AtomicLong();
+            queries[i] = resolve( resolveOrder[i], hostname, possibleNTDomainOrWorkgroup, started[i] );
+        }
+        try {
+            for( i = 0; i < queries.length; i++ ) {
+                if( queries[i] == null ) {
+                    continue;
+                }
+                try {
+                    return (Object[])await( queries[i], started[i] );
+                } catch( ExecutionException ee ) {
+                    // Failure
+                } catch( TimeoutException te ) {
+                    timedOut = true;
+                    if( log.level > 2 ) {
+                        log.println( "resolver " + resolveOrder[i] + " timed out for " + hostname );
+                    }
+                }
+            }
+        } catch( InterruptedException ie ) {
+            Thread.currentThread().interrupt();
+            throw new UnknownHostException( hostname );
+        } finally {
+            for( i = 0; i < queries.length; i++ ) {
+                if( queries[i] != null ) {
+                    queries[i].cancel( false );
+                }
+            }
+        }
+        if( timedOut ) {
+            throw new UnknownHostException( hostname );
+        }
+        return null;
+    }
+
+    /* Waits for query until RESOLVE_TIMEOUT after it started, time spent
+     * queued behind other lookups does not count.
+     */
+    private static Object await( CompletableFuture query, AtomicLong started )
+                throws InterruptedException, ExecutionException, TimeoutException {
+        if( RESOLVE_TIMEOUT <= 0 ) {
+            return query.get();
+        }
+        for( ;; ) {
+            long start = started.get();
+            long wait = start == 0 ? RESOLVE_TIMEOUT :
+                        start + RESOLVE_TIMEOUT - System.currentTimeMillis();
             try {
-                switch( resolveOrder[i] ) {
-                    case RESOLVER_LMHOSTS:
-                        if(( addr = Lmhosts.getByName( hostname )) == null ) {
-                            continue;
-                        }
-                        break;
-                    case RESOLVER_WINS:
-                        if( hostname == NbtAddress.MASTER_BROWSER_NAME ||
-                                                    hostname.length() > 15 ) {
-                                                    // invalid netbios name
-                            continue;
-                        }
-                        if( possibleNTDomainOrWorkgroup ) {
-                            addr = lookupServerOrWorkgroup( hostname, NbtAddress.getWINSAddress() );
-                        } else {
-                            addr = NbtAddress.getByName( hostname, 0x20, null, NbtAddress.getWINSAddress() );
-                        }
-                        break;
-                    case RESOLVER_BCAST:
-                        if( hostname.length() > 15 ) {
-                            // invalid netbios name
-                            continue;
-                        }
-                        if( possibleNTDomainOrWorkgroup ) {
-                            addr = lookupServerOrWorkgroup( hostname, baddr );
-                        } else {
-                            addr = NbtAddress.getByName( hostname, 0x20, null, baddr );
-                        }
-                        break;
-                    case RESOLVER_DNS:
-                        if( isAllDigits( hostname )) {
-                            throw new UnknownHostException( hostname );
-                        }
-                        InetAddress[] iaddrs = InetAddress.getAllByName( hostname );
-                        UniAddress[] addrs = new UniAddress[iaddrs.length];
-                        for (int ii = 0; ii < iaddrs.length; ii++) {
-                            addrs[ii] = new UniAddress(iaddrs[ii]);
-                        }
-                        return addrs; // Success
-                    default:
-                        throw new UnknownHostException( hostname );
+                return query.get( Math.max( 0, wait ), TimeUnit.MILLISECONDS );
+            } catch( TimeoutException te ) {
+                if( start != 0 ) {
+                    throw te;
                 }
-                UniAddress[] addrs = new UniAddress[1];
-                addrs[0] = new UniAddress( addr );
-                return addrs; // Success
-            } catch( IOException ioe ) {
-                // Failure
+                /* still queued, the timeout has not started yet */
             }
         }
-        throw new UnknownHostException( hostname );
     }
 
     /**
@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.UnknownHostException;
 import java.security.Principal;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class DcerpcHandle implements DcerpcConstants {
 
@@ -106,7 +107,8 @@ public abstract class DcerpcHandle implements DcerpcConstants {
     protected int max_xmit = 4280;
     protected int max_recv = max_xmit;
     protected int state = 0;
-    private static int call_id = 1;
+    /* handles are used from several threads at once, see SID.resolveSids */
+    private static final AtomicInteger call_id = new AtomicInteger(1);
 
     public static DcerpcHandle getHandle(String url,
                 NtlmPasswordAuthentication auth)
@@ -136,21 +138,20 @@ public abstract class DcerpcHandle implements DcerpcConstants {
         } catch (InterruptedException ie) {
             throw new IOException(ie.getMessage());
         }
+        frag = null;
         try {
             int off, tot, n;
 
             buf = new NdrBuffer(stub, 0);
 
             msg.flags = DCERPC_FIRST_FRAG | DCERPC_LAST_FRAG;
-            msg.call_id = call_id;
+            msg.call_id = call_id.getAndIncrement();
 
             msg.encode(buf);
 
             tot = buf.getLength();
             off = 0;
             while (off < tot) {
-                msg.call_id = call_id++;
-
                 if ((tot - off) > max_xmit) {
                     /* Multiple fragments. Need to set flags and length
                      * and re-encode header
@@ -177,13 +178,17 @@ public abstract class DcerpcHandle implements DcerpcConstants {
             if (msg.ptype == 2 && msg.isFlagSet(DCERPC_LAST_FRAG) == false)
                 off = msg.length;
 
-            frag = null;
             fbuf = null;
             while (msg.isFlagSet(DCERPC_LAST_FRAG) == false) {
                 int stub_frag_len;
 
                 if (frag == null) {
-                    frag = new byte[max_recv];
+                    /* pooled buffers are TRANSACTION_BUF_SIZE, well above max_recv */
+                    try {
+                        frag = jcifs.smb.BufferCache.getBuffer();
+                    } catch (InterruptedException ie) {
+                        throw new IOException(ie.getMessage());
+                    }
                     fbuf = new NdrBuffer(frag, 0);
                 }
 
@@ -194,8 +199,9 @@ public abstract class DcerpcHandle implements DcerpcConstants {
 
                 if ((off + stub_frag_len) > stub.length) {
                     // shouldn't happen if alloc_hint is correct or greater
-                    byte[] tmp = new byte[off + stub_frag_len];
+                    byte[] tmp = new byte[Math.max(off + stub_frag_len, stub.length * 2)];
                     System.arraycopy(stub, 0, tmp, 0, off);
+                    jcifs.smb.BufferCache.releaseBuffer(stub);
                     stub = tmp;
                 }
 
@@ -207,6 +213,7 @@ public abstract class DcerpcHandle implements DcerpcConstants {
             msg.decode(buf);
         } finally {
             jcifs.smb.BufferCache.releaseBuffer(stub);
+            jcifs.smb.BufferCache.releaseBuffer(frag);
         }
 
         if ((de = msg.getResult()) != null)
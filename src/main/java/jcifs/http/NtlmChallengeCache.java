@@ -0,0 +1,224 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2000  "Michael B. Allen" <jcifs at samba dot org>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.http;
+
+import jcifs.Config;
+import jcifs.UniAddress;
+import jcifs.smb.NtlmChallenge;
+import jcifs.smb.SmbSession;
+import jcifs.util.LogStream;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the challenge of each domain controller for the NTLM HTTP filter.
+ * The challenge is the encryption key negotiated on the transport to the
+ * DC, so it is the same for every client authenticating against that DC
+ * until the transport is reconnected. Clients share the cached challenge
+ * for <tt>jcifs.http.challengeCachePolicy</tt> seconds, but at most half of
+ * <tt>jcifs.smb.client.soTimeout</tt> so that the client has time to answer
+ * before an idle transport is closed, and only while its transport is still
+ * connected with the same key; past
+ * <tt>jcifs.http.challengeRefreshAhead</tt> percent of that lifetime the
+ * next challenge is fetched in the background, and concurrent misses wait
+ * for a single fetch.
+ */
+
+class NtlmChallengeCache {
+
+    private static LogStream log = LogStream.getInstance();
+
+    static final class Entry {
+        final NtlmChallenge challenge;
+        final long expiration;
+        final long refreshAt;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry( NtlmChallenge challenge, long now, long lifetime, int refreshAhead ) {
+            this.challenge = challenge;
+            expiration = now + lifetime;
+            refreshAt = refreshAhead > 0 && refreshAhead < 100 ?
+                        now + lifetime * refreshAhead / 100 : expiration;
+        }
+    }
+
+    private final long lifetime;
+    private final int refreshAhead;
+    private final ConcurrentHashMap entries = new ConcurrentHashMap();
+    private final ConcurrentHashMap fetching = new ConcurrentHashMap();
+    private final ThreadPoolExecutor prefetcher;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong fetchNanos = new AtomicLong();
+
+    NtlmChallengeCache() {
+        int soTimeout = Config.getInt( "jcifs.smb.client.soTimeout", 35000 );
+        long policy = Config.getInt( "jcifs.http.challengeCachePolicy", 60 ) * 1000L;
+        lifetime = soTimeout > 0 ? Math.min( policy, soTimeout / 2 ) : policy;
+        refreshAhead = Config.getInt( "jcifs.http.challengeRefreshAhead", 75 );
+        prefetcher = new ThreadPoolExecutor( 1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue(), new ThreadFactory() {
+            public Thread newThread( Runnable r ) {
+                Thread t = new Thread( r, "JCIFS-ChallengePrefetch" );
+                t.setDaemon( true );
+                return t;
+            }
+        });
+        prefetcher.allowCoreThreadTimeOut( true );
+    }
+
+    /**
+     * Returns the challenge of <tt>domainController</tt>, or of a DC of the
+     * default domain if <tt>domainController</tt> is <tt>null</tt>.
+     */
+    NtlmChallenge get( String domainController ) throws IOException {
+        String key = domainController == null ? "" : domainController.toUpperCase();
+        if( lifetime > 0 ) {
+            Entry entry = (Entry)entries.get( key );
+            long now = System.currentTimeMillis();
+            if( entry != null && now < entry.expiration ) {
+                if( entry.challenge.isCurrent() ) {
+                    hits.incrementAndGet();
+                    if( now >= entry.refreshAt ) {
+                        prefetch( key, domainController, entry );
+                    }
+                    return entry.challenge;
+                }
+                /* the transport was closed, the DC negotiates a new key */
+                entries.remove( key, entry );
+            }
+        }
+        misses.incrementAndGet();
+        return fetchShared( key, domainController );
+    }
+
+    /**
+     * Drops the cached challenge if it is still <tt>challenge</tt>, such as
+     * after the DC rejected it.
+     */
+    void invalidate( String domainController, NtlmChallenge challenge ) {
+        String key = domainController == null ? "" : domainController.toUpperCase();
+        Entry entry = (Entry)entries.get( key );
+        if( entry != null && entry.challenge == challenge ) {
+            entries.remove( key, entry );
+        }
+    }
+
+    void shutdown() {
+        prefetcher.shutdownNow();
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+    long getMisses() {
+        return misses.get();
+    }
+    long getFetches() {
+        return fetches.get();
+    }
+    long getFetchNanos() {
+        return fetchNanos.get();
+    }
+
+    private NtlmChallenge fetchShared( final String key, final String domainController ) throws IOException {
+        FutureTask task = new FutureTask( new Callable() {
+            public Object call() throws IOException {
+                return fetch( key, domainController );
+            }
+        });
+        FutureTask running = (FutureTask)fetching.putIfAbsent( key, task );
+        if( running == null ) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                fetching.remove( key, task );
+            }
+        }
+        try {
+            return (NtlmChallenge)running.get();
+        } catch( InterruptedException ie ) {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while fetching the challenge of " +
+                        ( domainController == null ? "the domain" : domainController ));
+        } catch( ExecutionException ee ) {
+            Throwable cause = ee.getCause();
+            if( cause instanceof IOException ) {
+                throw (IOException)cause;
+            }
+            if( cause instanceof RuntimeException ) {
+                throw (RuntimeException)cause;
+            }
+            throw new IOException( cause.getMessage() );
+        }
+    }
+
+    private NtlmChallenge fetch( String key, String domainController ) throws IOException {
+        long start = System.nanoTime();
+        NtlmChallenge challenge;
+        if( domainController == null ) {
+            challenge = SmbSession.getChallengeForDomain();
+        } else {
+            challenge = SmbSession.getChallengeForServer(
+                        UniAddress.getByName( domainController, true ));
+        }
+        fetchNanos.addAndGet( System.nanoTime() - start );
+        fetches.incrementAndGet();
+        if( lifetime > 0 ) {
+            entries.put( key, new Entry( challenge, System.currentTimeMillis(), lifetime, refreshAhead ));
+        }
+        return challenge;
+    }
+
+    private void prefetch( final String key, final String domainController, final Entry entry ) {
+        if( entry.refreshing.compareAndSet( false, true ) == false ) {
+            return;
+        }
+        try {
+            prefetcher.execute( new Runnable() {
+                public void run() {
+                    try {
+                        fetch( key, domainController );
+                    } catch( IOException ioe ) {
+                        /* the entry expires and the next client fetches it again */
+                        if( log.level > 1 ) {
+                            log.println( "NtlmHttpFilter: failed to prefetch challenge: " + ioe );
+                        }
+                    }
+                }
+            });
+        } catch( RejectedExecutionException ree ) {
+            entry.refreshing.set( false );
+        }
+    }
+}
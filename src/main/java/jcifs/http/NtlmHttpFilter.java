@@ -37,6 +37,7 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
 import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This servlet Filter can be used to negotiate password hashes with
@@ -57,6 +58,12 @@ public class NtlmHttpFilter implements Filter {
     private boolean enableBasic;
     private boolean insecureBasic;
     private String realm;
+    private NtlmChallengeCache challenges;
+
+    private final AtomicLong authentications = new AtomicLong();
+    private final AtomicLong logons = new AtomicLong();
+    private final AtomicLong negotiations = new AtomicLong();
+    private final AtomicLong negotiationNanos = new AtomicLong();
 
     public void init( FilterConfig filterConfig ) throws ServletException {
         String name;
@@ -86,6 +93,10 @@ public class NtlmHttpFilter implements Filter {
                 Config.getProperty("jcifs.http.insecureBasic")).booleanValue();
         realm = Config.getProperty("jcifs.http.basicRealm");
         if (realm == null) realm = "jCIFS";
+        if( challenges != null ) {
+            challenges.shutdown();
+        }
+        challenges = new NtlmChallengeCache();
 
         if(( level = Config.getInt( "jcifs.util.loglevel", -1 )) != -1 ) {
             LogStream.setLevel( level );
@@ -99,6 +110,42 @@ public class NtlmHttpFilter implements Filter {
     }
 
     public void destroy() {
+        if( challenges != null ) {
+            challenges.shutdown();
+        }
+    }
+
+    /**
+     * Returns the number of requests authenticated against a domain controller.
+     */
+    public long getAuthentications() {
+        return authentications.get();
+    }
+
+    /**
+     * Returns the number of domain controller round trips (challenge fetches
+     * and logons) per authenticated request.
+     */
+    public double getDcRoundTripsPerAuthentication() {
+        long n = authentications.get();
+        return n == 0 ? 0 : (double)( challenges.getFetches() + logons.get() ) / n;
+    }
+
+    /**
+     * Returns the average time in milliseconds spent in <tt>negotiate</tt>
+     * for requests carrying credentials, including the DC round trips.
+     */
+    public double getAverageNegotiationMillis() {
+        long n = negotiations.get();
+        return n == 0 ? 0 : negotiationNanos.get() / 1000000.0 / n;
+    }
+
+    /**
+     * Returns the number of challenges served from the challenge cache and
+     * the number fetched from a domain controller, in that order.
+     */
+    public long[] getChallengeCacheStatistics() {
+        return new long[] { challenges.getHits(), challenges.getFetches() };
     }
 
     /**
@@ -134,7 +181,6 @@ public class NtlmHttpFilter implements Filter {
     protected NtlmPasswordAuthentication negotiate( HttpServletRequest req,
                 HttpServletResponse resp,
                 boolean skipAuthentication ) throws IOException, ServletException {
-        UniAddress dc;
         String msg;
         NtlmPasswordAuthentication ntlm = null;
         msg = req.getHeader( "Authorization" );
@@ -142,77 +188,13 @@ public class NtlmHttpFilter implements Filter {
 
         if( msg != null && (msg.startsWith( "NTLM " ) ||
                     (offerBasic && msg.startsWith("Basic ")))) {
-            if (msg.startsWith("NTLM ")) {
-                HttpSession ssn = req.getSession();
-                byte[] challenge;
-
-                if( loadBalance ) {
-                    NtlmChallenge chal = (NtlmChallenge)ssn.getAttribute( "NtlmHttpChal" );
-                    if( chal == null ) {
-                        chal = SmbSession.getChallengeForDomain();
-                        ssn.setAttribute( "NtlmHttpChal", chal );
-                    }
-                    dc = chal.dc;
-                    challenge = chal.challenge;
-                } else {
-                    dc = UniAddress.getByName( domainController, true );
-                    challenge = SmbSession.getChallenge( dc );
-                }
-
-                if(( ntlm = NtlmSsp.authenticate( req, resp, challenge )) == null ) {
-                    return null;
-                }
-                /* negotiation complete, remove the challenge object */
-                ssn.removeAttribute( "NtlmHttpChal" );
-            } else {
-                String auth = new String(Base64.decode(msg.substring(6)),
-                        "US-ASCII");
-                int index = auth.indexOf(':');
-                String user = (index != -1) ? auth.substring(0, index) : auth;
-                String password = (index != -1) ? auth.substring(index + 1) :
-                        "";
-                index = user.indexOf('\\');
-                if (index == -1) index = user.indexOf('/');
-                String domain = (index != -1) ? user.substring(0, index) :
-                        defaultDomain;
-                user = (index != -1) ? user.substring(index + 1) : user;
-                ntlm = new NtlmPasswordAuthentication(domain, user, password);
-                dc = UniAddress.getByName( domainController, true );
-            }
+            long start = System.nanoTime();
             try {
-
-                SmbSession.logon( dc, ntlm );
-
-                if( log.level > 2 ) {
-                    log.println( "NtlmHttpFilter: " + ntlm +
-                            " successfully authenticated against " + dc );
-                }
-            } catch( SmbAuthException sae ) {
-                if( log.level > 1 ) {
-                    log.println( "NtlmHttpFilter: " + ntlm.getName() +
-                            ": 0x" + jcifs.util.Hexdump.toHexString( sae.getNtStatus(), 8 ) +
-                            ": " + sae );
-                }
-                if( sae.getNtStatus() == sae.NT_STATUS_ACCESS_VIOLATION ) {
-                    /* Server challenge no longer valid for
-                     * externally supplied password hashes.
-                     */
-                    HttpSession ssn = req.getSession(false);
-                    if (ssn != null) {
-                        ssn.removeAttribute( "NtlmHttpAuth" );
-                    }
-                }
-                resp.setHeader( "WWW-Authenticate", "NTLM" );
-                if (offerBasic) {
-                    resp.addHeader( "WWW-Authenticate", "Basic realm=\"" +
-                            realm + "\"");
-                }
-                resp.setStatus( HttpServletResponse.SC_UNAUTHORIZED );
-                resp.setContentLength(0); /* Marcel Feb-15-2005 */
-                resp.flushBuffer();
-                return null;
+                return authenticate( req, resp, msg, offerBasic );
+            } finally {
+                negotiationNanos.addAndGet( System.nanoTime() - start );
+                negotiations.incrementAndGet();
             }
-            req.getSession().setAttribute( "NtlmHttpAuth", ntlm );
         } else {
             if (!skipAuthentication) {
                 HttpSession ssn = req.getSession(false);
@@ -234,6 +216,93 @@ public class NtlmHttpFilter implements Filter {
         return ntlm;
     }
 
+    private NtlmPasswordAuthentication authenticate( HttpServletRequest req,
+                HttpServletResponse resp,
+                String msg,
+                boolean offerBasic ) throws IOException, ServletException {
+        UniAddress dc;
+        NtlmPasswordAuthentication ntlm;
+        NtlmChallenge chal = null;
+
+        if (msg.startsWith("NTLM ")) {
+            HttpSession ssn = req.getSession();
+
+            /* The challenge sent in the type 2 message must be the one
+             * the type 3 message is validated with, so it is kept in the
+             * session for the duration of the handshake. A handshake which
+             * was abandoned may have left a challenge whose DC transport
+             * has since been closed, the DC would reject it.
+             */
+            chal = (NtlmChallenge)ssn.getAttribute( "NtlmHttpChal" );
+            if( chal == null || chal.isCurrent() == false ) {
+                chal = challenges.get( loadBalance ? null : domainController );
+                ssn.setAttribute( "NtlmHttpChal", chal );
+            }
+            dc = chal.dc;
+
+            if(( ntlm = NtlmSsp.authenticate( req, resp, chal.challenge )) == null ) {
+                return null;
+            }
+            /* negotiation complete, remove the challenge object */
+            ssn.removeAttribute( "NtlmHttpChal" );
+        } else {
+            String auth = new String(Base64.decode(msg.substring(6)),
+                    "US-ASCII");
+            int index = auth.indexOf(':');
+            String user = (index != -1) ? auth.substring(0, index) : auth;
+            String password = (index != -1) ? auth.substring(index + 1) :
+                    "";
+            index = user.indexOf('\\');
+            if (index == -1) index = user.indexOf('/');
+            String domain = (index != -1) ? user.substring(0, index) :
+                    defaultDomain;
+            user = (index != -1) ? user.substring(index + 1) : user;
+            ntlm = new NtlmPasswordAuthentication(domain, user, password);
+            dc = UniAddress.getByName( domainController, true );
+        }
+        try {
+
+            logons.incrementAndGet();
+            SmbSession.logon( dc, ntlm );
+
+            if( log.level > 2 ) {
+                log.println( "NtlmHttpFilter: " + ntlm +
+                        " successfully authenticated against " + dc );
+            }
+        } catch( SmbAuthException sae ) {
+            if( log.level > 1 ) {
+                log.println( "NtlmHttpFilter: " + ntlm.getName() +
+                        ": 0x" + jcifs.util.Hexdump.toHexString( sae.getNtStatus(), 8 ) +
+                        ": " + sae );
+            }
+            if( sae.getNtStatus() == sae.NT_STATUS_ACCESS_VIOLATION ) {
+                /* Server challenge no longer valid for
+                 * externally supplied password hashes.
+                 */
+                HttpSession ssn = req.getSession(false);
+                if (ssn != null) {
+                    ssn.removeAttribute( "NtlmHttpAuth" );
+                }
+                if( chal != null ) {
+                    challenges.invalidate( loadBalance ? null : domainController, chal );
+                }
+            }
+            resp.setHeader( "WWW-Authenticate", "NTLM" );
+            if (offerBasic) {
+                resp.addHeader( "WWW-Authenticate", "Basic realm=\"" +
+                        realm + "\"");
+            }
+            resp.setStatus( HttpServletResponse.SC_UNAUTHORIZED );
+            resp.setContentLength(0); /* Marcel Feb-15-2005 */
+            resp.flushBuffer();
+            return null;
+        }
+        authentications.incrementAndGet();
+        req.getSession().setAttribute( "NtlmHttpAuth", ntlm );
+
+        return ntlm;
+    }
+
     // Added by cgross to work with weblogic 6.1.
     public void setFilterConfig( FilterConfig f ) {
         try {
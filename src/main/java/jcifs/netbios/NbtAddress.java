@@ -23,7 +23,17 @@ import jcifs.util.Hexdump;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class represents a NetBIOS over TCP/IP address. Under normal
@@ -139,11 +149,26 @@ public final class NbtAddress {
 
     private static final int DEFAULT_CACHE_POLICY = 30;
     private static final int CACHE_POLICY = Config.getInt( "jcifs.netbios.cachePolicy", DEFAULT_CACHE_POLICY );
+    /* Percentage of the cache lifetime after which a hit schedules a
+     * refresh of the entry in the background, 0 disables refresh-ahead.
+     */
+    private static final int CACHE_REFRESH_AHEAD = Config.getInt( "jcifs.netbios.cacheRefreshAhead", 75 );
+    /* Seconds an expired (positive) entry may still be returned while it
+     * is being refreshed, 0 disables serving stale entries.
+     */
+    private static final int CACHE_STALE_POLICY = Config.getInt( "jcifs.netbios.cacheStalePolicy", DEFAULT_CACHE_POLICY );
     private static final int FOREVER = -1;
     private static int nbnsIndex = 0;
 
-    private static final HashMap ADDRESS_CACHE = new HashMap();
-    private static final HashMap LOOKUP_TABLE = new HashMap();
+    private static final ConcurrentHashMap ADDRESS_CACHE = new ConcurrentHashMap();
+    private static final ConcurrentHashMap LOOKUP_TABLE = new ConcurrentHashMap();
+
+    private static final AtomicLong cacheHits = new AtomicLong();
+    private static final AtomicLong cacheMisses = new AtomicLong();
+    private static final AtomicLong cacheStaleHits = new AtomicLong();
+    private static final AtomicLong cacheRefreshes = new AtomicLong();
+
+    private static final ThreadPoolExecutor REFRESH_EXECUTOR;
 
     static final Name UNKNOWN_NAME = new Name( "0.0.0.0", 0x00, null );
     static final NbtAddress UNKNOWN_ADDRESS = new NbtAddress( UNKNOWN_NAME, 0, false, B_NODE );
@@ -152,15 +177,25 @@ public final class NbtAddress {
         (byte)0x00, (byte)0x00, (byte)0x00
     };
 
+    /* Entries are never modified once cached, a newer result replaces
+     * the whole entry so readers need no lock.
+     */
     static final class CacheEntry {
-        Name hostName;
-        NbtAddress address;
-        long expiration;
+        final Name hostName;
+        final NbtAddress address;
+        final long expiration;
+        final long refreshAt;
+        final AtomicBoolean refreshing = new AtomicBoolean();
 
         CacheEntry( Name hostName, NbtAddress address, long expiration ) {
             this.hostName = hostName;
             this.address = address;
             this.expiration = expiration;
+            if( expiration < 0 || CACHE_REFRESH_AHEAD <= 0 || CACHE_REFRESH_AHEAD >= 100 ) {
+                refreshAt = -1;
+            } else {
+                refreshAt = expiration - CACHE_POLICY * 1000L * ( 100 - CACHE_REFRESH_AHEAD ) / 100;
+            }
         }
     }
 
@@ -171,6 +206,16 @@ public final class NbtAddress {
         String localHostname;
         Name localName;
 
+        REFRESH_EXECUTOR = new ThreadPoolExecutor( 2, 2, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue(), new ThreadFactory() {
+            public Thread newThread( Runnable r ) {
+                Thread t = new Thread( r, "JCIFS-NameRefresh" );
+                t.setDaemon( true );
+                return t;
+            }
+        });
+        REFRESH_EXECUTOR.allowCoreThreadTimeOut( true );
+
         /* Create an address to represent failed lookups and cache forever.
          */
 
@@ -231,7 +276,7 @@ public final class NbtAddress {
         }
         long expiration = -1;
         if( CACHE_POLICY != FOREVER ) {
-            expiration = System.currentTimeMillis() + CACHE_POLICY * 1000;
+            expiration = System.currentTimeMillis() + CACHE_POLICY * 1000L;
         }
         cacheAddress( hostName, addr, expiration );
     }
@@ -239,16 +284,7 @@ public final class NbtAddress {
         if( CACHE_POLICY == 0 ) {
             return;
         }
-        synchronized( ADDRESS_CACHE ) {
-            CacheEntry entry = (CacheEntry)ADDRESS_CACHE.get( hostName );
-            if( entry == null ) {
-                entry = new CacheEntry( hostName, addr, expiration );
-                ADDRESS_CACHE.put( hostName, entry );
-            } else {
-                entry.address = addr;
-                entry.expiration = expiration;
-            }
-        }
+        ADDRESS_CACHE.put( hostName, new CacheEntry( hostName, addr, expiration ));
     }
     static void cacheAddressArray( NbtAddress[] addrs ) {
         if( CACHE_POLICY == 0 ) {
@@ -256,96 +292,171 @@ public final class NbtAddress {
         }
         long expiration = -1;
         if( CACHE_POLICY != FOREVER ) {
-            expiration = System.currentTimeMillis() + CACHE_POLICY * 1000;
+            expiration = System.currentTimeMillis() + CACHE_POLICY * 1000L;
         }
-        synchronized( ADDRESS_CACHE ) {
-            for( int i = 0; i < addrs.length; i++ ) {
-                CacheEntry entry = (CacheEntry)ADDRESS_CACHE.get( addrs[i].hostName );
-                if( entry == null ) {
-                    entry = new CacheEntry( addrs[i].hostName, addrs[i], expiration );
-                    ADDRESS_CACHE.put( addrs[i].hostName, entry );
-                } else {
-                    entry.address = addrs[i];
-                    entry.expiration = expiration;
-                }
-            }
+        for( int i = 0; i < addrs.length; i++ ) {
+            ADDRESS_CACHE.put( addrs[i].hostName,
+                    new CacheEntry( addrs[i].hostName, addrs[i], expiration ));
         }
     }
     static NbtAddress getCachedAddress( Name hostName ) {
         if( CACHE_POLICY == 0 ) {
             return null;
         }
-        synchronized( ADDRESS_CACHE ) {
-            CacheEntry entry = (CacheEntry)ADDRESS_CACHE.get( hostName );
-            if( entry != null && entry.expiration < System.currentTimeMillis() &&
-                                                entry.expiration >= 0 ) {
-                entry = null;
-            }
-            return entry != null ? entry.address : null;
+        CacheEntry entry = (CacheEntry)ADDRESS_CACHE.get( hostName );
+        if( entry != null && entry.expiration < System.currentTimeMillis() &&
+                                            entry.expiration >= 0 ) {
+            entry = null;
         }
+        return entry != null ? entry.address : null;
     }
 
     static NbtAddress doNameQuery( Name name, InetAddress svr )
                                                     throws UnknownHostException {
-        NbtAddress addr;
+        NbtAddress addr = null;
 
         if( name.hexCode == 0x1d && svr == null ) {
             svr = CLIENT.baddr; // bit of a hack but saves a lookup
         }
         name.srcHashCode = svr != null ? svr.hashCode() : 0;
-        addr = getCachedAddress( name );
 
-        if( addr == null ) {
-            /* This was copied amost verbatim from InetAddress.java. See the
-             * comments there for a description of how the LOOKUP_TABLE prevents
-             * redundant queries from going out on the wire.
-             */
-            if(( addr = (NbtAddress)checkLookupTable( name )) == null ) {
-                try {
-                    addr = CLIENT.getByName( name, svr );
-                } catch( UnknownHostException uhe ) {
-                    addr = UNKNOWN_ADDRESS;
-                } finally {
-                    cacheAddress( name, addr );
-                    updateLookupTable( name );
+        CacheEntry entry = CACHE_POLICY == 0 ? null : (CacheEntry)ADDRESS_CACHE.get( name );
+        if( entry != null ) {
+            long now = System.currentTimeMillis();
+            if( entry.expiration < 0 || now < entry.expiration ) {
+                cacheHits.incrementAndGet();
+                if( entry.refreshAt >= 0 && now >= entry.refreshAt ) {
+                    refresh( entry, svr );
                 }
+                addr = entry.address;
+            } else if( entry.address != UNKNOWN_ADDRESS &&
+                        now < entry.expiration + CACHE_STALE_POLICY * 1000L ) {
+                /* Expired but recently valid, answer with the old address
+                 * rather than making the caller wait for the network.
+                 */
+                cacheStaleHits.incrementAndGet();
+                refresh( entry, svr );
+                addr = entry.address;
             }
         }
+        if( addr == null ) {
+            cacheMisses.incrementAndGet();
+            addr = lookup( name, svr );
+        }
         if( addr == UNKNOWN_ADDRESS ) {
             throw new UnknownHostException( name.toString() );
         }
         return addr;
     }
 
-    private static Object checkLookupTable( Name name ) {
-        Object obj;
-
-        synchronized( LOOKUP_TABLE ) {
-            if( LOOKUP_TABLE.containsKey( name ) == false ) {
-                LOOKUP_TABLE.put( name, name );
-                return null;
-            }
-            while( LOOKUP_TABLE.containsKey( name )) {
+    /* Only one query per name goes out on the wire, concurrent callers
+     * for the same name wait for the result of the first one.
+     */
+    private static NbtAddress lookup( final Name name, final InetAddress svr ) {
+        FutureTask task = new FutureTask( new Callable() {
+            public Object call() {
+                NbtAddress addr = UNKNOWN_ADDRESS;
                 try {
-                    LOOKUP_TABLE.wait();
-                } catch( InterruptedException e ) {
+                    addr = CLIENT.getByName( name, svr );
+                } catch( UnknownHostException uhe ) {
+                } finally {
+                    cacheAddress( name, addr );
                 }
+                return addr;
             }
-        }
-        obj = getCachedAddress( name );
-        if( obj == null ) {
-            synchronized( LOOKUP_TABLE ) {
-                LOOKUP_TABLE.put( name, name );
+        });
+        FutureTask running = (FutureTask)LOOKUP_TABLE.putIfAbsent( name, task );
+        if( running == null ) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                LOOKUP_TABLE.remove( name, task );
             }
         }
 
-        return obj;
+        boolean interrupted = false;
+        try {
+            for( ;; ) {
+                try {
+                    return (NbtAddress)running.get();
+                } catch( InterruptedException ie ) {
+                    interrupted = true;
+                } catch( ExecutionException ee ) {
+                    Throwable cause = ee.getCause();
+                    if( cause instanceof RuntimeException ) {
+                        throw (RuntimeException)cause;
+                    }
+                    if( cause instanceof Error ) {
+                        throw (Error)cause;
+                    }
+                    return UNKNOWN_ADDRESS;
+                }
+            }
+        } finally {
+            if( interrupted ) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
-    private static void updateLookupTable( Name name ) {
-        synchronized( LOOKUP_TABLE ) {
-            LOOKUP_TABLE.remove( name );
-            LOOKUP_TABLE.notifyAll();
+
+    /* Queries the name again in the background. A failed refresh leaves
+     * the entry alone, it is dropped when it expires and the next caller
+     * queries the name itself.
+     */
+    private static void refresh( final CacheEntry entry, final InetAddress svr ) {
+        if( entry.refreshing.compareAndSet( false, true ) == false ) {
+            return;
         }
+        try {
+            REFRESH_EXECUTOR.execute( new Runnable() {
+                public void run() {
+                    if( LOOKUP_TABLE.containsKey( entry.hostName )) {
+                        return;
+                    }
+                    try {
+                        cacheAddress( entry.hostName, CLIENT.getByName( entry.hostName, svr ));
+                        cacheRefreshes.incrementAndGet();
+                    } catch( UnknownHostException uhe ) {
+                    }
+                }
+            });
+        } catch( RejectedExecutionException ree ) {
+            entry.refreshing.set( false );
+        }
+    }
+
+/**
+ * Returns the number of name queries answered from the cache.
+ */
+
+    public static long getCacheHits() {
+        return cacheHits.get();
+    }
+
+/**
+ * Returns the number of name queries answered with an expired address
+ * while the address was refreshed in the background.
+ */
+
+    public static long getCacheStaleHits() {
+        return cacheStaleHits.get();
+    }
+
+/**
+ * Returns the number of name queries which had to wait for the network.
+ */
+
+    public static long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+/**
+ * Returns the number of cached addresses refreshed in the background.
+ */
+
+    public static long getCacheRefreshes() {
+        return cacheRefreshes.get();
     }
 
 /** 
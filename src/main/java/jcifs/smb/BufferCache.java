@@ -18,64 +18,115 @@
 
 package jcifs.smb;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import jcifs.Config;
 
+/**
+ * Pool of transaction and DCE/RPC stub buffers. Buffers are kept in size
+ * classes (4K, 16K and TRANSACTION_BUF_SIZE) on lock-free queues. Callers
+ * never wait: if no buffer of the requested class is free a new one is
+ * allocated, and at most <tt>jcifs.smb.maxBuffers</tt> free buffers per
+ * class are retained when released, the rest are left to the garbage
+ * collector.
+ */
+
 public class BufferCache {
 
     private static final int MAX_BUFFERS = Config.getInt( "jcifs.smb.maxBuffers", 16 );
 
-    static Object[] cache = new Object[MAX_BUFFERS];
-    private static int numBuffers = 0;
-    private static int freeBuffers = 0;
+    private static final int[] SIZES = { 0x1000, 0x4000, SmbComTransaction.TRANSACTION_BUF_SIZE };
+
+    private static final ConcurrentLinkedQueue[] pools = new ConcurrentLinkedQueue[SIZES.length];
+    private static final AtomicInteger[] freeBuffers = new AtomicInteger[SIZES.length];
 
-    private static byte[] getBuffer0() {
-        byte[] buf;
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong allocations = new AtomicLong();
+    private static final AtomicLong discards = new AtomicLong();
 
-        if (freeBuffers > 0) {
-            for (int i = 0; i < MAX_BUFFERS; i++) {
-                if( cache[i] != null ) {
-                    buf = (byte[])cache[i];
-                    cache[i] = null;
-                    freeBuffers--;
-                    return buf;
-                }
-            }
+    static {
+        for (int i = 0; i < SIZES.length; i++) {
+            pools[i] = new ConcurrentLinkedQueue();
+            freeBuffers[i] = new AtomicInteger();
         }
+    }
 
-        buf = new byte[SmbComTransaction.TRANSACTION_BUF_SIZE];
-        numBuffers++;
+    private static int sizeClass( int size ) {
+        for (int i = 0; i < SIZES.length; i++) {
+            if (size <= SIZES[i])
+                return i;
+        }
+        return -1;
+    }
 
-        return buf;
+    /**
+     * Returns a buffer of at least <tt>size</tt> bytes. Sizes larger than
+     * TRANSACTION_BUF_SIZE are allocated and not pooled.
+     */
+    static byte[] getBuffer( int size ) {
+        int c = sizeClass( size );
+        if (c < 0) {
+            allocations.incrementAndGet();
+            return new byte[size];
+        }
+        byte[] buf = (byte[])pools[c].poll();
+        if (buf != null) {
+            freeBuffers[c].decrementAndGet();
+            hits.incrementAndGet();
+            return buf;
+        }
+        allocations.incrementAndGet();
+        return new byte[SIZES[c]];
     }
 
     static void getBuffers( SmbComTransaction req,
                     SmbComTransactionResponse rsp ) throws InterruptedException {
-        synchronized( cache ) {
-            while ((freeBuffers + (MAX_BUFFERS - numBuffers)) < 2) {
-                cache.wait();
-            }
-            req.txn_buf = getBuffer0();
-            rsp.txn_buf = getBuffer0();
-        }
+        /* The request is encoded before its size is known. The response
+         * cannot exceed what the request allows the server to return,
+         * SmbComTransactionResponse grows the buffer should a server
+         * disregard that.
+         */
+        req.txn_buf = getBuffer( SmbComTransaction.TRANSACTION_BUF_SIZE );
+        rsp.txn_buf = getBuffer( req.maxParameterCount + req.maxDataCount );
     }
     static public byte[] getBuffer() throws InterruptedException {
-        synchronized( cache ) {
-            while ((freeBuffers + (MAX_BUFFERS - numBuffers)) < 1) {
-                cache.wait();
-            }
-            return getBuffer0();
-        }
+        return getBuffer( SmbComTransaction.TRANSACTION_BUF_SIZE );
     }
     static public void releaseBuffer( byte[] buf ) {
-        synchronized( cache ) {
-            for (int i = 0; i < MAX_BUFFERS; i++) {
-                if (cache[i] == null) {
-                    cache[i] = buf;
-                    freeBuffers++;
-                    cache.notify();
-                    return;
-                }
-            }
+        if (buf == null)
+            return;
+        int c = sizeClass( buf.length );
+        /* only buffers of exactly a class size were pooled */
+        if (c < 0 || SIZES[c] != buf.length ||
+                    freeBuffers[c].incrementAndGet() > MAX_BUFFERS) {
+            if (c >= 0 && SIZES[c] == buf.length)
+                freeBuffers[c].decrementAndGet();
+            discards.incrementAndGet();
+            return;
         }
+        pools[c].offer( buf );
+    }
+
+    /**
+     * Number of buffer requests served from the pool.
+     */
+    static public long getHits() {
+        return hits.get();
+    }
+    /**
+     * Number of buffers allocated because the pool had none free. These are
+     * the requests which blocked in earlier versions once
+     * <tt>jcifs.smb.maxBuffers</tt> buffers were in use.
+     */
+    static public long getAllocations() {
+        return allocations.get();
+    }
+    /**
+     * Number of released buffers dropped because the pool was full.
+     */
+    static public long getDiscards() {
+        return discards.get();
     }
 }
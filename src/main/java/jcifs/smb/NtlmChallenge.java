@@ -27,11 +27,29 @@ public final class NtlmChallenge implements Serializable {
 
     public byte[] challenge;
     public UniAddress dc;
+    transient SmbTransport transport;
 
     NtlmChallenge( byte[] challenge, UniAddress dc ) {
         this.challenge = challenge;
         this.dc = dc;
     }
+    NtlmChallenge( SmbTransport transport, UniAddress dc ) {
+        this( transport.server.encryptionKey, dc );
+        this.transport = transport;
+    }
+
+/**
+ * Returns <tt>true</tt> if the transport this challenge was negotiated on
+ * is still connected with the same encryption key, meaning the DC would
+ * still accept responses computed against it. Once the transport is closed,
+ * e.g. after <tt>jcifs.smb.client.soTimeout</tt> of inactivity, the next
+ * connection negotiates a new key.
+ */
+    public boolean isCurrent() {
+        SmbTransport trans = transport;
+        return trans != null && trans.isConnected() &&
+                    trans.server.encryptionKey == challenge;
+    }
 
     public String toString() {
         return "NtlmChallenge[challenge=0x" +
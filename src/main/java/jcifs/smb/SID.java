@@ -19,6 +19,7 @@
 
 package jcifs.smb;
 
+import jcifs.Config;
 import jcifs.dcerpc.DcerpcHandle;
 import jcifs.dcerpc.UnicodeString;
 import jcifs.dcerpc.msrpc.*;
@@ -27,6 +28,14 @@ import jcifs.util.Hexdump;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A Windows SID is a numeric identifier used to represent Windows
@@ -87,6 +96,30 @@ public class SID extends rpc.sid_t {
 
     static Map sid_cache = Collections.synchronizedMap(new HashMap());
 
+    /* Large SID arrays are looked up in chunks of LOOKUP_SIDS_CHUNK, on up to
+     * LOOKUP_SIDS_THREADS pipes at once. The calls of all pipes are in flight
+     * together on the SMB connection to the authority.
+     */
+    static final int LOOKUP_SIDS_CHUNK =
+                Config.getInt("jcifs.smb.client.lookupSidsChunk", 500);
+    static final int LOOKUP_SIDS_THREADS =
+                Config.getInt("jcifs.smb.client.lookupSidsThreads", 4);
+    private static ThreadPoolExecutor lookupPool = null;
+
+    private static synchronized ThreadPoolExecutor getLookupPool() {
+        if (lookupPool == null) {
+            lookupPool = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                    60, TimeUnit.SECONDS, new SynchronousQueue(), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "JCIFS-LookupSids");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return lookupPool;
+    }
+
     static void resolveSids(DcerpcHandle handle,
                 LsaPolicyHandle policyHandle,
                 SID[] sids) throws IOException {
@@ -122,9 +155,66 @@ public class SID extends rpc.sid_t {
             sids[si].origin_auth = null;
         }
     }
-    static void resolveSids0(String authorityServerName,
+    static void resolveSids0(final String authorityServerName,
+                final NtlmPasswordAuthentication auth,
+                final SID[] sids) throws IOException {
+        int chunks = LOOKUP_SIDS_CHUNK > 0 ?
+                    (sids.length + LOOKUP_SIDS_CHUNK - 1) / LOOKUP_SIDS_CHUNK : 1;
+        int workers = Math.min(chunks, LOOKUP_SIDS_THREADS);
+        if (workers <= 1) {
+            resolveSids0(authorityServerName, auth, sids, null, sids.length);
+            return;
+        }
+
+        /* Each worker opens its own pipe and policy handle and takes the
+         * next chunk until none are left. The calling thread is a worker.
+         */
+        final AtomicInteger next = new AtomicInteger();
+        FutureTask[] tasks = new FutureTask[workers - 1];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new FutureTask(new Callable() {
+                public Object call() throws IOException {
+                    resolveSids0(authorityServerName, auth, sids, next, LOOKUP_SIDS_CHUNK);
+                    return null;
+                }
+            });
+            getLookupPool().execute(tasks[i]);
+        }
+        IOException ioe = null;
+        try {
+            resolveSids0(authorityServerName, auth, sids, next, LOOKUP_SIDS_CHUNK);
+        } catch (IOException e) {
+            ioe = e;
+            next.set(sids.length); // stop the other workers
+        }
+        for (int i = 0; i < tasks.length; i++) {
+            try {
+                tasks[i].get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                if (ioe == null)
+                    ioe = new IOException(ie.getMessage());
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException)cause;
+                if (cause instanceof Error)
+                    throw (Error)cause;
+                if (ioe == null)
+                    ioe = (IOException)cause;
+            }
+        }
+        if (ioe != null)
+            throw ioe;
+    }
+    /* Resolves the chunks handed out by next, or all sids in one call if
+     * next is null.
+     */
+    private static void resolveSids0(String authorityServerName,
                 NtlmPasswordAuthentication auth,
-                SID[] sids) throws IOException {
+                SID[] sids,
+                AtomicInteger next,
+                int chunk) throws IOException {
         DcerpcHandle handle = null;
         LsaPolicyHandle policyHandle = null;
 
@@ -136,7 +226,16 @@ public class SID extends rpc.sid_t {
             if (dot > 0 && Character.isDigit(server.charAt(0)) == false)
                 server = server.substring(0, dot);
             policyHandle = new LsaPolicyHandle(handle, "\\\\" + server, 0x00000800);
-            SID.resolveSids(handle, policyHandle, sids);
+            if (next == null) {
+                SID.resolveSids(handle, policyHandle, sids);
+                return;
+            }
+            int off;
+            while ((off = next.getAndAdd(chunk)) < sids.length) {
+                SID[] part = new SID[Math.min(chunk, sids.length - off)];
+                System.arraycopy(sids, off, part, 0, part.length);
+                SID.resolveSids(handle, policyHandle, part);
+            }
         } finally {
             if (handle != null) {
                 if (policyHandle != null) {
@@ -175,7 +274,10 @@ public class SID extends rpc.sid_t {
         }
     }
     /**
-     * Resolve an array of SIDs using a cache and at most one MSRPC request.
+     * Resolve an array of SIDs using a cache and at most one MSRPC request
+     * per <tt>jcifs.smb.client.lookupSidsChunk</tt> SIDs (default 500). The
+     * requests of large arrays are performed concurrently on up to
+     * <tt>jcifs.smb.client.lookupSidsThreads</tt> pipes (default 4).
      * <p>
      * This method will attempt
      * to resolve SIDs using a cache and cache the results of any SIDs that
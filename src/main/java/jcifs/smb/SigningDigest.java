@@ -14,21 +14,19 @@ public class SigningDigest implements SmbConstants {
 
     static LogStream log = LogStream.getInstance();
 
-    private MessageDigest digest;
+    /* MD5 state after the MAC signing key, cloned for every message so the
+     * key is not hashed again.
+     */
+    private MessageDigest keyed;
     private byte[] macSigningKey;
-    private int updates;
     private int signSequence;
+    /* received signature, only verify uses it and it runs on the transport
+     * thread alone.
+     */
+    private final byte[] received = new byte[8];
 
     public SigningDigest( SmbTransport transport,
                 NtlmPasswordAuthentication auth ) throws SmbException {
-        try {
-            digest = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException ex) {
-            if( log.level > 0 )
-                ex.printStackTrace( log );
-            throw new SmbException( "MD5", ex );
-        }
-
         try {
             switch (LM_COMPATIBILITY) {
             case 0:
@@ -59,31 +57,50 @@ public class SigningDigest implements SmbConstants {
             log.println( "LM_COMPATIBILITY=" + LM_COMPATIBILITY );
             Hexdump.hexdump( log, macSigningKey, 0, macSigningKey.length );
         }
+
+        try {
+            keyed = MessageDigest.getInstance("MD5");
+            keyed.update(macSigningKey);
+            keyed.clone();
+        } catch (Exception ex) {
+            keyed = null; /* provider cannot clone, hash the key every time */
+        }
     }
 
-    public void update( byte[] input, int offset, int len ) {
+    /* Every message is hashed with a digest of its own: requests are signed
+     * on the sending threads while the transport thread verifies responses.
+     */
+    private MessageDigest start() throws NoSuchAlgorithmException {
+        MessageDigest md = keyed;
+        if( md != null ) {
+            try {
+                return (MessageDigest)md.clone();
+            } catch( CloneNotSupportedException cnse ) {
+            }
+        }
+        md = MessageDigest.getInstance("MD5");
+        md.update(macSigningKey);
+        return md;
+    }
+    private void update( MessageDigest md, byte[] input, int offset, int len ) {
         if( log.level >= 5 ) {
-            log.println( "update: " + updates + " " + offset + ":" + len );
+            log.println( "update: " + offset + ":" + len );
             Hexdump.hexdump( log, input, offset, Math.min( len, 256 ));
             log.flush();
         }
         if( len == 0 ) {
             return; /* CRITICAL */
         }
-        digest.update( input, offset, len );
-        updates++;
+        md.update( input, offset, len );
     }
-    public byte[] digest() {
-        byte[] b;
-
-        b = digest.digest();
+    private byte[] digest( MessageDigest md ) {
+        byte[] b = md.digest();
 
         if( log.level >= 5 ) {
             log.println( "digest: " );
             Hexdump.hexdump( log, b, 0, b.length );
             log.flush();
         }
-        updates = 0;
 
         return b;
     }
@@ -107,12 +124,12 @@ public class SigningDigest implements SmbConstants {
         }
 
         try {
-            update(macSigningKey, 0, macSigningKey.length);
+            MessageDigest md = start();
             int index = offset + ServerMessageBlock.SIGNATURE_OFFSET;
             for (int i = 0; i < 8; i++) data[index + i] = 0;
             ServerMessageBlock.writeInt4(signSequence, data, index);
-            update(data, offset, length);
-            System.arraycopy(digest(), 0, data, index, 8);
+            update(md, data, offset, length);
+            System.arraycopy(digest(md), 0, data, index, 8);
         } catch (Exception ex) {
             if( log.level > 0 )
                 ex.printStackTrace( log );
@@ -130,32 +147,42 @@ public class SigningDigest implements SmbConstants {
      * @param length The length of the SMB data starting at offset. 
      */
     boolean verify(byte[] data, int offset, ServerMessageBlock response) {
-        update(macSigningKey, 0, macSigningKey.length);
-        int index = offset;
-        update(data, index, ServerMessageBlock.SIGNATURE_OFFSET); 
-        index += ServerMessageBlock.SIGNATURE_OFFSET;
-        byte[] sequence = new byte[8]; 
-        ServerMessageBlock.writeInt4(response.signSeq, sequence, 0); 
-        update(sequence, 0, sequence.length); 
-        index += 8;
-        if( response.command == ServerMessageBlock.SMB_COM_READ_ANDX ) {
-            /* SmbComReadAndXResponse reads directly from the stream into separate byte[] b.
-             */
-            SmbComReadAndXResponse raxr = (SmbComReadAndXResponse)response;
-            int length = response.length - raxr.dataLength;
-            update(data, index, length - ServerMessageBlock.SIGNATURE_OFFSET - 8);
-            update(raxr.b, raxr.off, raxr.dataLength);
-        } else {
-            update(data, index, response.length - ServerMessageBlock.SIGNATURE_OFFSET - 8);
+        MessageDigest md;
+        try {
+            md = start();
+        } catch (NoSuchAlgorithmException ex) {
+            if( log.level > 0 )
+                ex.printStackTrace( log );
+            return response.verifyFailed = true;
+        }
+        /* The sequence number is patched into the buffer in place of the
+         * received signature so the header is hashed in one pass; the
+         * signature is put back afterwards.
+         */
+        int index = offset + ServerMessageBlock.SIGNATURE_OFFSET;
+        System.arraycopy(data, index, received, 0, 8);
+        for (int i = 0; i < 8; i++) data[index + i] = 0;
+        ServerMessageBlock.writeInt4(response.signSeq, data, index);
+        try {
+            if( response.command == ServerMessageBlock.SMB_COM_READ_ANDX ) {
+                /* SmbComReadAndXResponse reads directly from the stream into separate byte[] b.
+                 */
+                SmbComReadAndXResponse raxr = (SmbComReadAndXResponse)response;
+                update(md, data, offset, response.length - raxr.dataLength);
+                update(md, raxr.b, raxr.off, raxr.dataLength);
+            } else {
+                update(md, data, offset, response.length);
+            }
+        } finally {
+            System.arraycopy(received, 0, data, index, 8);
         }
-        byte[] signature = digest();
+        byte[] signature = digest(md);
         for (int i = 0; i < 8; i++) {
-            if (signature[i] != data[offset + ServerMessageBlock.SIGNATURE_OFFSET + i]) {
+            if (signature[i] != received[i]) {
                 if( log.level >= 2 ) {
                     log.println( "signature verification failure" );
                     Hexdump.hexdump( log, signature, 0, 8 );
-                    Hexdump.hexdump( log, data,
-                        offset + ServerMessageBlock.SIGNATURE_OFFSET, 8 );
+                    Hexdump.hexdump( log, received, 0, 8 );
                 }
                 return response.verifyFailed = true;
             }
@@ -114,6 +114,16 @@ abstract class SmbComTransactionResponse extends ServerMessageBlock implements E
         pad = pad1 = 0;
         int n;
 
+        /* The pooled buffer is sized by maxParameterCount + maxDataCount
+         * of the request, grow it for a server which returns more.
+         */
+        n = Math.max( bufParameterStart + totalParameterCount, bufDataStart + totalDataCount );
+        if( n > txn_buf.length ) {
+            byte[] tmp = new byte[n];
+            System.arraycopy( txn_buf, 0, tmp, 0, txn_buf.length );
+            txn_buf = tmp;
+        }
+
         if( parameterCount > 0 ) {
             bufferIndex += pad = parameterOffset - ( bufferIndex - headerStart );
             System.arraycopy( buffer, bufferIndex, txn_buf,
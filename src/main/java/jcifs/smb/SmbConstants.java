@@ -63,6 +63,7 @@ interface SmbConstants {
     static final int CAP_LOCK_AND_READ    = 0x0100;
     static final int CAP_NT_FIND          = 0x0200;
     static final int CAP_DFS              = 0x1000;
+    static final int CAP_LARGE_READX      = 0x4000;
 
     // file attribute encoding
     static final int ATTR_READONLY   = 0x01;
@@ -126,6 +127,13 @@ interface SmbConstants {
     static final TimeZone TZ = TimeZone.getDefault();
 
     static final boolean USE_BATCHING = Config.getBoolean( "jcifs.smb.client.useBatching", true );
+    static final boolean USE_LARGE_READX = Config.getBoolean( "jcifs.smb.client.useLargeReadX", true );
+    /* ReadAndX data count with CAP_LARGE_READX, what fits a 16 bit session
+     * message length after the response header.
+     */
+    static final int LARGE_READX_SIZE = 0xFFFF - 70;
+    /* Number of ReadAndX requests kept in flight by pipelined reads */
+    static final int READ_AHEAD = Config.getInt( "jcifs.smb.client.readAhead", 4 );
     static final String OEM_ENCODING = Config.getProperty( "jcifs.encoding", Config.DEFAULT_OEM_ENCODING );
     static final int DEFAULT_FLAGS2 =
                 FLAGS2_LONG_FILENAMES |
@@ -138,6 +146,7 @@ interface SmbConstants {
                 ( USE_NTSMBS ? CAP_NT_SMBS : 0 ) |
                 ( USE_NTSTATUS ? CAP_STATUS32 : 0 ) |
                 ( USE_UNICODE ? CAP_UNICODE : 0 ) |
+                ( USE_LARGE_READX ? CAP_LARGE_READX : 0 ) |
                 CAP_DFS;
     static final int FLAGS2 = Config.getInt( "jcifs.smb.client.flags2", DEFAULT_FLAGS2 );
     static final int CAPABILITIES = Config.getInt( "jcifs.smb.client.capabilities", DEFAULT_CAPABILITIES );
@@ -0,0 +1,229 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2000  "Michael B. Allen" <jcifs at samba dot org>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import jcifs.util.LogStream;
+
+/**
+ * Streams the entries of a directory as {@link FileEntry} records while
+ * the <tt>TRANS2_FIND_FIRST2</tt>/<tt>FIND_NEXT2</tt> pages arrive, rather
+ * than building an <tt>SmbFile</tt> for every entry like
+ * {@link SmbFile#listFiles()}. While the entries of one page are consumed
+ * the next page is already being fetched. The "." and ".." entries are
+ * skipped.
+ * <p>
+ * An iterator is used by one thread. It must be closed if it is not read
+ * to the end, so that the server can release the search.
+ * <pre>
+ * SmbDirectoryIterator it = dir.listEntries( "*.csv" );
+ * try {
+ *     while( it.hasNext() ) {
+ *         FileEntry e = it.next();
+ *         ...
+ *     }
+ * } finally {
+ *     it.close();
+ * }
+ * </pre>
+ */
+
+public class SmbDirectoryIterator implements Closeable {
+
+    static LogStream log = LogStream.getInstance();
+
+    /* Fetches the next pages. Daemon threads, they die when idle. */
+    private static final ExecutorService prefetcher = Executors.newCachedThreadPool( new ThreadFactory() {
+        int n = 0;
+        public synchronized Thread newThread( Runnable r ) {
+            Thread t = new Thread( r, "SmbDirectoryPrefetch-" + n++ );
+            t.setDaemon( true );
+            return t;
+        }
+    });
+
+    private final SmbFile dir;
+    private final boolean prefetch;
+    private int sid;
+    private Trans2FindFirst2Response page, nextResp;
+    private Trans2FindNext2 nextReq;
+    private Future next;
+    private int index;
+    private FileEntry entry;
+    private boolean searchOpen, closed;
+
+    SmbDirectoryIterator( SmbFile dir,
+                String wildcard,
+                int searchAttributes,
+                boolean prefetch ) throws SmbException {
+        this.dir = dir;
+        this.prefetch = prefetch;
+
+        String p = dir.getURL().getPath();
+        if( p.lastIndexOf( '/' ) != ( p.length() - 1 )) {
+            throw new SmbException( dir.getURL().toString() + " directory must end with '/'" );
+        }
+
+        Trans2FindFirst2 req = new Trans2FindFirst2( dir.getUncPath0(), wildcard, searchAttributes );
+        page = new Trans2FindFirst2Response();
+
+        if( log.level >= 3 )
+            log.println( "SmbDirectoryIterator: " + req.path );
+
+        dir.send( req, page );
+        sid = page.sid;
+        searchOpen = true;
+        fetchNext();
+    }
+
+    /* Prepares the request for the page after the current one and, if
+     * prefetching, starts sending it in the background.
+     */
+    private void fetchNext() {
+        if( page.isEndOfSearch || page.numEntries == 0 ) {
+            nextReq = null;
+            return;
+        }
+        nextReq = new Trans2FindNext2( sid, page.resumeKey, page.lastName );
+        nextResp = new Trans2FindFirst2Response();
+        /* The only difference between first2 and next2 responses is subCommand */
+        nextResp.subCommand = SmbComTransaction.TRANS2_FIND_NEXT2;
+        if( prefetch ) {
+            final Trans2FindNext2 req = nextReq;
+            final Trans2FindFirst2Response resp = nextResp;
+            next = prefetcher.submit( new Runnable() {
+                public void run() {
+                    try {
+                        dir.send( req, resp );
+                    } catch( SmbException se ) {
+                        throw new RuntimeException( se );
+                    }
+                }
+            });
+        }
+    }
+    private Trans2FindFirst2Response awaitNext() throws SmbException {
+        if( nextReq == null ) {
+            return null;
+        }
+        Trans2FindNext2 req = nextReq;
+        nextReq = null;
+        if( next == null ) {
+            dir.send( req, nextResp );
+            return nextResp;
+        }
+        Future f = next;
+        next = null;
+        try {
+            f.get();
+        } catch( InterruptedException ie ) {
+            throw new SmbException( ie.getMessage(), ie );
+        } catch( ExecutionException ee ) {
+            Throwable t = ee.getCause();
+            if( t instanceof RuntimeException && t.getCause() instanceof SmbException ) {
+                throw (SmbException)t.getCause();
+            }
+            throw new SmbException( "Failed to list " + dir.getURL(), t );
+        }
+        return nextResp;
+    }
+
+/**
+ * Returns true if there is another entry. Blocks if the next page has not
+ * arrived yet.
+ */
+
+    public boolean hasNext() throws SmbException {
+        while( entry == null ) {
+            if( closed ) {
+                return false;
+            }
+            if( index < page.numEntries ) {
+                FileEntry e = page.results[index++];
+                String name = e.getName();
+                if( name.length() == 0 || name.equals( "." ) || name.equals( ".." )) {
+                    continue;
+                }
+                entry = e;
+                break;
+            }
+            Trans2FindFirst2Response p = awaitNext();
+            if( p == null ) {
+                close();
+                return false;
+            }
+            page = p;
+            index = 0;
+            fetchNext();
+        }
+        return true;
+    }
+
+/**
+ * Returns the next entry. The entry is only a record of what the server
+ * returned, see {@link SmbFile#getChild(FileEntry)} to access it.
+ */
+
+    public FileEntry next() throws SmbException {
+        if( hasNext() == false ) {
+            throw new java.util.NoSuchElementException();
+        }
+        FileEntry e = entry;
+        entry = null;
+        return e;
+    }
+
+/**
+ * Releases the search on the server. Called automatically once the last
+ * entry has been read.
+ */
+
+    public void close() throws SmbException {
+        if( closed ) {
+            return;
+        }
+        closed = true;
+        entry = null;
+        if( next != null ) {
+            /* the search handle is in use until the outstanding page arrives */
+            try {
+                next.get();
+            } catch( Exception e ) {
+            }
+            next = null;
+        }
+        nextReq = null;
+        if( searchOpen ) {
+            searchOpen = false;
+            try {
+                dir.send( new SmbComFindClose2( sid ), new SmbComBlankResponse() );
+            } catch( SmbException se ) {
+                if( log.level >= 4 )
+                    se.printStackTrace( log );
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2000  "Michael B. Allen" <jcifs at samba dot org>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/* Walks a directory tree listing up to parallelism directories at a time,
+ * each with a prefetching SmbDirectoryIterator.
+ */
+
+final class SmbDirectoryWalker {
+
+    private final SmbFileVisitor visitor;
+    private final ExecutorService pool;
+    private int pending = 0;
+    private SmbException error = null;
+
+    SmbDirectoryWalker( int parallelism, SmbFileVisitor visitor ) {
+        this.visitor = visitor;
+        pool = Executors.newFixedThreadPool( Math.max( 1, parallelism ), new ThreadFactory() {
+            int n = 0;
+            public synchronized Thread newThread( Runnable r ) {
+                Thread t = new Thread( r, "SmbDirectoryWalker-" + n++ );
+                t.setDaemon( true );
+                return t;
+            }
+        });
+    }
+
+    void walk( SmbFile root ) throws SmbException {
+        try {
+            submit( root );
+            synchronized( this ) {
+                /* on error the running listings stop at their next entry,
+                 * wait for them so that their searches are closed.
+                 */
+                while( pending > 0 ) {
+                    wait();
+                }
+            }
+        } catch( InterruptedException ie ) {
+            fail( new SmbException( ie.getMessage(), ie ));
+        } finally {
+            pool.shutdown();
+        }
+        if( error != null ) {
+            throw error;
+        }
+    }
+
+    private synchronized boolean failed() {
+        return error != null;
+    }
+    private synchronized void fail( SmbException se ) {
+        if( error == null ) {
+            error = se;
+        }
+    }
+    private void submit( final SmbFile dir ) {
+        synchronized( this ) {
+            if( error != null ) {
+                return;
+            }
+            pending++;
+        }
+        pool.execute( new Runnable() {
+            public void run() {
+                try {
+                    list( dir );
+                } catch( SmbException se ) {
+                    fail( se );
+                } catch( RuntimeException re ) {
+                    fail( new SmbException( dir.toString(), re ));
+                } finally {
+                    synchronized( SmbDirectoryWalker.this ) {
+                        pending--;
+                        SmbDirectoryWalker.this.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+    private void list( SmbFile dir ) throws SmbException {
+        SmbDirectoryIterator it = dir.listEntries( "*" );
+        try {
+            while( failed() == false && it.hasNext() ) {
+                FileEntry e = it.next();
+                if( visitor.visit( dir, e ) &&
+                        ( e.getAttributes() & SmbFile.ATTR_DIRECTORY ) != 0 ) {
+                    submit( dir.getChild( e ));
+                }
+            }
+        } finally {
+            it.close();
+        }
+    }
+}
@@ -730,6 +730,54 @@ public class SmbFile extends URLConnection implements SmbConstants {
         }
     }
 
+    /* Reads up to len bytes at offset fp of the open file, keeping up to
+     * depth ReadAndX requests of readSize bytes in flight at increasing
+     * offsets. The data is read directly into b. Returns the number of bytes
+     * read or -1 at the end of the file.
+     */
+    int readPipelined( long fp, byte[] b, int off, int len,
+                    int readSize, int depth ) throws SmbException {
+        depth = Math.max( 1, Math.min( depth, tree.session.transport.maxMpxCount ));
+        SmbComReadAndX[] requests = new SmbComReadAndX[depth];
+        SmbComReadAndXResponse[] responses = new SmbComReadAndXResponse[depth];
+        int total = 0;
+
+        while (len > 0) {
+            if( log.level >= 4 )
+                log.println( "read: fid=" + fid + ",fp=" + fp + ",len=" + len + ",depth=" + depth );
+
+            int count;
+            for (count = 0; count < depth && len > 0; count++) {
+                int r = len > readSize ? readSize : len;
+                requests[count] = new SmbComReadAndX( fid, fp, r, null );
+                responses[count] = new SmbComReadAndXResponse( b, off );
+                fp += r;
+                off += r;
+                len -= r;
+            }
+
+            if (count == 1) {
+                send( requests[0], responses[0] );
+            } else {
+                tree.send( requests, responses, count );
+            }
+
+            for (int i = 0; i < count; i++) {
+                int n = responses[i].dataLength;
+                if (n <= 0) {
+                    return total > 0 ? total : -1;
+                }
+                total += n;
+                if (n < requests[i].maxCount) {
+                    /* short read, end of file. Later requests read nothing */
+                    return total;
+                }
+            }
+        }
+
+        return total;
+    }
+
     static String queryLookup( String query, String param ) {
         char in[] = query.toCharArray();
         int i, ch, st, eq;
@@ -1641,6 +1689,57 @@ if (this instanceof SmbNamedPipe) {
     public SmbFile[] listFiles( SmbFileFilter filter ) throws SmbException {
         return listFiles( "*", ATTR_DIRECTORY | ATTR_HIDDEN | ATTR_SYSTEM, null, filter );
     }
+
+/**
+ * Lists the entries of this directory matching <code>wildcard</code> as they
+ * arrive from the server, without creating an <code>SmbFile</code> for each
+ * of them. The next page of entries is fetched while the current one is
+ * read. Only directories within a share can be listed this way.
+ *
+ * @param wildcard a wildcard expression
+ * @return an iterator which must be closed if not read to the end
+ */
+
+    public SmbDirectoryIterator listEntries( String wildcard ) throws SmbException {
+        getUncPath0();
+        if( share == null ) {
+            throw new SmbException( url.toString() + " is not a directory within a share" );
+        }
+        return new SmbDirectoryIterator( this, wildcard,
+                ATTR_DIRECTORY | ATTR_HIDDEN | ATTR_SYSTEM, true );
+    }
+
+/**
+ * Returns the <code>SmbFile</code> for an entry of this directory listed by
+ * {@link #listEntries(String)}. The attributes, times and size of the entry
+ * are cached as with <code>listFiles</code>.
+ */
+
+    public SmbFile getChild( FileEntry entry ) throws SmbException {
+        try {
+            return new SmbFile( this, entry.getName(), TYPE_FILESYSTEM,
+                    entry.getAttributes(), entry.createTime(), entry.lastModified(), entry.length() );
+        } catch( MalformedURLException mue ) {
+            throw new SmbException( url.toString(), mue );
+        } catch( UnknownHostException uhe ) {
+            throw new SmbException( url.toString(), uhe );
+        }
+    }
+
+/**
+ * Walks the directory tree below this directory, listing up to
+ * <code>parallelism</code> directories concurrently. Every entry is passed
+ * to the visitor; subdirectories are walked if the visitor returns
+ * <code>true</code> for them. The first exception stops the walk and is
+ * rethrown once the listings in progress have been closed.
+ *
+ * @param parallelism maximum number of directories listed at once
+ * @param visitor receives the entries, from several threads
+ */
+
+    public void walk( int parallelism, SmbFileVisitor visitor ) throws SmbException {
+        new SmbDirectoryWalker( parallelism, visitor ).walk( this );
+    }
     String[] list( String wildcard, int searchAttributes,
                 SmbFilenameFilter fnf, SmbFileFilter ff ) throws SmbException {
         ArrayList list = new ArrayList();
@@ -1905,74 +2004,28 @@ if (this instanceof SmbNamedPipe) {
                 int searchAttributes,
                 SmbFilenameFilter fnf,
                 SmbFileFilter ff ) throws SmbException, UnknownHostException, MalformedURLException {
-        SmbComTransaction req;
-        Trans2FindFirst2Response resp;
-        int sid;
-        String path = getUncPath0();
-        String p = url.getPath();
-
-        if( p.lastIndexOf( '/' ) != ( p.length() - 1 )) {
-            throw new SmbException( url.toString() + " directory must end with '/'" );
-        }
-
-        req = new Trans2FindFirst2( path, wildcard, searchAttributes );
-        resp = new Trans2FindFirst2Response();
-
-        if( log.level >= 3 )
-            log.println( "doFindFirstNext: " + req.path );
-
-        send( req, resp );
-
-        sid = resp.sid;
-        req = new Trans2FindNext2( sid, resp.resumeKey, resp.lastName );
-
-        /* The only difference between first2 and next2 responses is subCommand
-         * so let's recycle the response object.
-         */
-        resp.subCommand = SmbComTransaction.TRANS2_FIND_NEXT2;
+        SmbDirectoryIterator it = new SmbDirectoryIterator( this, wildcard, searchAttributes, true );
 
-        for( ;; ) {
-            for( int i = 0; i < resp.numEntries; i++ ) {
-                FileEntry e = resp.results[i];
+        try {
+            while( it.hasNext() ) {
+                FileEntry e = it.next();
                 String name = e.getName();
-                if( name.length() < 3 ) {
-                    int h = name.hashCode();
-                    if( h == HASH_DOT || h == HASH_DOT_DOT ) {
-                        if (name.equals(".") || name.equals(".."))
-                            continue;
-                    }
-                }
                 if( fnf != null && fnf.accept( this, name ) == false ) {
                     continue;
                 }
-                if( name.length() > 0 ) {
-                    SmbFile f = new SmbFile( this, name, TYPE_FILESYSTEM,
-                            e.getAttributes(), e.createTime(), e.lastModified(), e.length() );
-                    if( ff != null && ff.accept( f ) == false ) {
-                        continue;
-                    }
-                    if( files ) {
-                        list.add( f );
-                    } else {
-                        list.add( name );
-                    }
+                SmbFile f = new SmbFile( this, name, TYPE_FILESYSTEM,
+                        e.getAttributes(), e.createTime(), e.lastModified(), e.length() );
+                if( ff != null && ff.accept( f ) == false ) {
+                    continue;
+                }
+                if( files ) {
+                    list.add( f );
+                } else {
+                    list.add( name );
                 }
             }
-
-            if( resp.isEndOfSearch || resp.numEntries == 0 ) {
-                break;
-            }
-
-            req.reset( resp.resumeKey, resp.lastName );
-            resp.reset();
-            send( req, resp );
-        }
-
-        try {
-            send( new SmbComFindClose2( sid ), blank_resp() );
-        } catch (SmbException se) {
-            if( log.level >= 4 )
-                se.printStackTrace( log );
+        } finally {
+            it.close();
         }
     }
 
@@ -25,6 +25,7 @@ import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 
 /**
  * This InputStream can read bytes from a file on an SMB file server. Offsets are 64 bits.
@@ -35,6 +36,11 @@ public class SmbFileInputStream extends InputStream {
     private long fp;
     private int readSize, openFlags, access;
     private byte[] tmp = new byte[1];
+    /* read-ahead buffer holding ra_len bytes of the file at ra_fp */
+    private int readAhead = SmbConstants.READ_AHEAD;
+    private byte[] ra_buf;
+    private long ra_fp;
+    private int ra_len;
 
     SmbFile file;
 
@@ -74,8 +80,28 @@ public class SmbFileInputStream extends InputStream {
         } else {
             file.connect0();
         }
-        readSize = Math.min( file.tree.session.transport.rcv_buf_size - 70,
-                            file.tree.session.transport.server.maxBufferSize - 70 );
+        if (file.type != SmbFile.TYPE_NAMED_PIPE) {
+            readSize = file.tree.session.transport.getMaxReadSize();
+        } else {
+            readSize = Math.min( file.tree.session.transport.rcv_buf_size - 70,
+                                file.tree.session.transport.server.maxBufferSize - 70 );
+        }
+    }
+
+/**
+ * Sets the number of ReadAndX requests kept in flight when reading a file.
+ * Reads of at least that many times the negotiated read size go directly
+ * into the caller's buffer; smaller reads are served from a read-ahead
+ * buffer filled the same way. A value of 1 disables read-ahead and
+ * pipelining. The default is given by the
+ * <tt>jcifs.smb.client.readAhead</tt> property (4). Named pipes are never
+ * read ahead.
+ */
+
+    public void setReadAhead( int requests ) {
+        readAhead = Math.max( 1, requests );
+        ra_buf = null;
+        ra_len = 0;
     }
 
     protected IOException seToIoe(SmbException se) {
@@ -102,6 +128,7 @@ public class SmbFileInputStream extends InputStream {
         try {
             file.close();
             tmp = null;
+            ra_buf = null;
         } catch (SmbException se) {
             throw seToIoe(se);
         }
@@ -140,6 +167,30 @@ public class SmbFileInputStream extends InputStream {
     public int read( byte[] b, int off, int len ) throws IOException {
         return readDirect(b, off, len);
     }
+
+/**
+ * Reads up to dst.remaining() bytes into dst, like
+ * <tt>ReadableByteChannel.read</tt>. Heap buffers are read into directly,
+ * without an intermediate copy.
+ *
+ * @return the number of bytes read or -1 at the end of the file
+ * @throws IOException if a network error occurs
+ */
+
+    public int read( ByteBuffer dst ) throws IOException {
+        int n;
+        if (dst.hasArray()) {
+            n = read( dst.array(), dst.arrayOffset() + dst.position(), dst.remaining() );
+            if (n > 0)
+                dst.position( dst.position() + n );
+        } else {
+            byte[] b = new byte[Math.min( dst.remaining(), readSize * readAhead )];
+            n = read( b, 0, b.length );
+            if (n > 0)
+                dst.put( b, 0, n );
+        }
+        return n;
+    }
     public int readDirect( byte[] b, int off, int len ) throws IOException {
         if( len <= 0 ) {
             return 0;
@@ -159,12 +210,13 @@ public class SmbFileInputStream extends InputStream {
         if( file.log.level >= 4 )
             file.log.println( "read: fid=" + file.fid + ",off=" + off + ",len=" + len );
 
-        SmbComReadAndXResponse response = new SmbComReadAndXResponse( b, off );
-
-        if( file.type == SmbFile.TYPE_NAMED_PIPE ) {
-            response.responseTimeout = 0;
+        if( file.type != SmbFile.TYPE_NAMED_PIPE ) {
+            return readFile( b, off, len );
         }
 
+        SmbComReadAndXResponse response = new SmbComReadAndXResponse( b, off );
+        response.responseTimeout = 0;
+
         int r, n;
         do {
             r = len > readSize ? readSize : len;
@@ -195,9 +247,45 @@ if( file.type == SmbFile.TYPE_NAMED_PIPE ) {
 
         return (int)(fp - start);
     }
+    private int readFile( byte[] b, int off, int len ) throws IOException {
+        int n;
+
+        if (ra_len > 0 && fp >= ra_fp && fp < ra_fp + ra_len) {
+            return readBuffered( b, off, len );
+        }
+        try {
+            if (readAhead > 1 && len < readSize * readAhead) {
+                if (ra_buf == null) {
+                    ra_buf = new byte[readSize * readAhead];
+                }
+                ra_len = 0;
+                n = file.readPipelined( fp, ra_buf, 0, ra_buf.length, readSize, readAhead );
+                if (n <= 0) {
+                    return -1;
+                }
+                ra_fp = fp;
+                ra_len = n;
+                return readBuffered( b, off, len );
+            }
+            n = file.readPipelined( fp, b, off, len, readSize, readAhead );
+        } catch( SmbException se ) {
+            throw seToIoe(se);
+        }
+        if (n > 0) {
+            fp += n;
+        }
+        return n;
+    }
+    private int readBuffered( byte[] b, int off, int len ) {
+        int pos = (int)(fp - ra_fp);
+        int n = Math.min( len, ra_len - pos );
+        System.arraycopy( ra_buf, pos, b, off, n );
+        fp += n;
+        return n;
+    }
 /**
- * This stream class is unbuffered. Therefore this method will always
- * return 0 for streams connected to regular files. However, a 
+ * For streams connected to regular files this method returns the number
+ * of bytes left in the read-ahead buffer. For a
  * stream created from a Named Pipe this method will query the server using a
  * "peek named pipe" operation and return the number of available bytes
  * on the server.
@@ -208,6 +296,9 @@ if( file.type == SmbFile.TYPE_NAMED_PIPE ) {
         TransPeekNamedPipeResponse resp;
 
         if( file.type != SmbFile.TYPE_NAMED_PIPE ) {
+            if (ra_len > 0 && fp >= ra_fp && fp < ra_fp + ra_len) {
+                return (int)(ra_fp + ra_len - fp);
+            }
             return 0;
         }
 
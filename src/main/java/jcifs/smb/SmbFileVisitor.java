@@ -0,0 +1,37 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2000  "Michael B. Allen" <jcifs at samba dot org>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb;
+
+/**
+ * Receives the entries found by {@link SmbFile#walk(int, SmbFileVisitor)}.
+ * Entries of different directories are visited concurrently, so
+ * implementations must be thread safe.
+ */
+
+public interface SmbFileVisitor {
+
+/**
+ * Visits an entry of the directory <tt>dir</tt>. For a directory entry the
+ * return value decides whether it is walked as well; it is ignored for
+ * other entries.
+ */
+
+    boolean visit( SmbFile dir, FileEntry entry ) throws SmbException;
+}
@@ -25,6 +25,7 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 
 public class SmbRandomAccessFile implements DataOutput, DataInput {
 
@@ -33,6 +34,7 @@ public class SmbRandomAccessFile implements DataOutput, DataInput {
     private SmbFile file;
     private long fp;
     private int openFlags, access = 0, readSize, writeSize, ch, options = 0;
+    private int readAhead = SmbConstants.READ_AHEAD;
     private byte[] tmp = new byte[8];
     private SmbComWriteAndXResponse write_andx_resp = null;
 
@@ -54,7 +56,7 @@ public class SmbRandomAccessFile implements DataOutput, DataInput {
             throw new IllegalArgumentException( "Invalid mode" );
         }
         file.open( openFlags, access, SmbFile.ATTR_NORMAL, options );
-        readSize = file.tree.session.transport.rcv_buf_size - 70;
+        readSize = file.tree.session.transport.getMaxReadSize();
         writeSize = file.tree.session.transport.snd_buf_size - 70;
         fp = 0L;
     }
@@ -69,30 +71,61 @@ public class SmbRandomAccessFile implements DataOutput, DataInput {
         return read( b, 0, b.length );
     }
     public int read( byte b[], int off, int len ) throws SmbException {
+        int n = read( fp, b, off, len );
+        if( n > 0 ) {
+            fp += n;
+        }
+        return n;
+    }
+    /* Reads longer than readSize keep up to readAhead requests in flight */
+    private int read( long position, byte b[], int off, int len ) throws SmbException {
         if( len <= 0 ) {
             return 0;
         }
-        long start = fp;
 
         // ensure file is open
         if( file.isOpen() == false ) {
             file.open( openFlags, 0, SmbFile.ATTR_NORMAL, options );
         }
 
-        int r, n;
-        SmbComReadAndXResponse response = new SmbComReadAndXResponse( b, off );
-        do {
-            r = len > readSize ? readSize : len;
-            file.send( new SmbComReadAndX( file.fid, fp, r, null ), response );
-            if(( n = response.dataLength ) <= 0 ) {
-                return (int)((fp - start) > 0L ? fp - start : -1);
-            }
+        return file.readPipelined( position, b, off, len, readSize, readAhead );
+    }
+    /*
+     * Reads up to dst.remaining() bytes at the file pointer into dst, like
+     * <tt>FileChannel.read</tt>. Heap buffers are read into directly.
+     */
+    public int read( ByteBuffer dst ) throws SmbException {
+        int n = read( dst, fp );
+        if( n > 0 ) {
             fp += n;
-            len -= n;
-            response.off += n;
-        } while( len > 0 && n == r );
-
-        return (int)(fp - start);
+        }
+        return n;
+    }
+    /*
+     * Reads up to dst.remaining() bytes at position into dst without
+     * moving the file pointer, like <tt>FileChannel.read(ByteBuffer, long)</tt>.
+     */
+    public int read( ByteBuffer dst, long position ) throws SmbException {
+        int n;
+        if( dst.hasArray() ) {
+            n = read( position, dst.array(), dst.arrayOffset() + dst.position(), dst.remaining() );
+            if( n > 0 )
+                dst.position( dst.position() + n );
+        } else {
+            byte[] b = new byte[Math.min( dst.remaining(), readSize * readAhead )];
+            n = read( position, b, 0, b.length );
+            if( n > 0 )
+                dst.put( b, 0, n );
+        }
+        return n;
+    }
+    /*
+     * Sets the number of ReadAndX requests kept in flight by reads longer
+     * than the negotiated read size, 1 reads one request at a time. The
+     * default is given by the <tt>jcifs.smb.client.readAhead</tt> property.
+     */
+    public void setReadAhead( int requests ) {
+        readAhead = Math.max( 1, requests );
     }
     public final void readFully( byte b[] ) throws SmbException {
         readFully( b, 0, b.length );
@@ -82,7 +82,7 @@ public final class SmbSession {
             SmbSession ssn = trans.getSmbSession( NtlmPasswordAuthentication.DEFAULT );
             ssn.getSmbTree( LOGON_SHARE, null ).treeConnect( null, null );
         }
-        return new NtlmChallenge( trans.server.encryptionKey, dc );
+        return new NtlmChallenge( trans, dc );
     }
     public static NtlmChallenge getChallengeForDomain()
                 throws SmbException, UnknownHostException {
@@ -136,6 +136,13 @@ do {
                 "Failed to negotiate with a suitable domain controller for " + DOMAIN );
     }
 
+    public static NtlmChallenge getChallengeForServer( UniAddress dc )
+                throws SmbException, UnknownHostException {
+        SmbTransport trans = SmbTransport.getSmbTransport( dc, 0 );
+        trans.connect();
+        return new NtlmChallenge( trans, dc );
+    }
+
     public static byte[] getChallenge( UniAddress dc )
                 throws SmbException, UnknownHostException {
         return getChallenge(dc, 0);
@@ -229,6 +236,10 @@ do {
             response.received = false;
         }
 
+        /* setupDiscoLock only covers the session setup. The request itself
+         * runs alongside those of other threads, being counted in inFlight
+         * keeps the transport from being disconnected gracefully meanwhile.
+         */
         synchronized(transport.setupDiscoLock) {
             expiration = System.currentTimeMillis() + SmbTransport.SO_TIMEOUT;
             sessionSetup( request, response );
@@ -237,15 +248,43 @@ do {
             }
             request.uid = uid;
             request.auth = auth;
-            try {
-                transport.send( request, response );
-            } catch (SmbException se) {
-                if (request instanceof SmbComTreeConnectAndX) {
+            transport.inFlight.incrementAndGet();
+        }
+        try {
+            transport.send( request, response );
+        } catch (SmbException se) {
+            if (request instanceof SmbComTreeConnectAndX) {
+                synchronized(transport.setupDiscoLock) {
                     logoff(true);
                 }
-                request.digest = null;
-                throw se;
             }
+            request.digest = null;
+            throw se;
+        } finally {
+            transport.inFlight.decrementAndGet();
+        }
+    }
+    void send( ServerMessageBlock[] requests,
+                            ServerMessageBlock[] responses,
+                            int count ) throws SmbException {
+        synchronized(transport.setupDiscoLock) {
+            expiration = System.currentTimeMillis() + SmbTransport.SO_TIMEOUT;
+            sessionSetup( null, null );
+            for (int i = 0; i < count; i++) {
+                requests[i].uid = uid;
+                requests[i].auth = auth;
+            }
+            transport.inFlight.incrementAndGet();
+        }
+        try {
+            transport.send( requests, responses, count );
+        } catch (SmbException se) {
+            for (int i = 0; i < count; i++) {
+                requests[i].digest = null;
+            }
+            throw se;
+        } finally {
+            transport.inFlight.decrementAndGet();
         }
     }
     void sessionSetup( ServerMessageBlock andx,
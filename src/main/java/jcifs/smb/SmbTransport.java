@@ -41,10 +41,10 @@ import java.net.Socket;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.ListIterator;
+import java.util.concurrent.Semaphore;
 
 public class SmbTransport extends Transport implements SmbConstants {
 
-    static final byte[] BUF = new byte[0xFFFF];
     static final SmbComNegotiate NEGOTIATE_REQUEST = new SmbComNegotiate();
     static LogStream log = LogStream.getInstance();
     static HashMap dfsRoots = null;
@@ -101,9 +101,17 @@ public class SmbTransport extends Transport implements SmbConstants {
     UniAddress address;
     Socket socket;
     int port, mid;
+    final Object mid_lock = new Object(); /* requests take mids concurrently */
     OutputStream out;
     InputStream in;
     byte[] sbuf = new byte[255]; /* small local buffer */
+    /* Encode and decode buffers are per transport so that connections to
+     * different servers do not serialize on one buffer. Sends may come from
+     * any thread and lock snd_buf, rcv_buf is only used by the transport
+     * thread (see peekKey).
+     */
+    final byte[] snd_buf = new byte[0xFFFF];
+    final byte[] rcv_buf = new byte[0xFFFF];
     SmbComBlankResponse key = new SmbComBlankResponse();
     long sessionExpiration = System.currentTimeMillis() + SO_TIMEOUT;
     LinkedList referrals = new LinkedList();
@@ -179,6 +187,13 @@ public class SmbTransport extends Transport implements SmbConstants {
         }
         return (capabilities & cap) == cap;
     }
+    /* Largest ReadAndX data count for files on this transport. */
+    int getMaxReadSize() throws SmbException {
+        if (hasCapability( CAP_LARGE_READX )) {
+            return LARGE_READX_SIZE;
+        }
+        return Math.min( rcv_buf_size - 70, server.maxBufferSize - 70 );
+    }
     boolean isSignatureSetupRequired( NtlmPasswordAuthentication auth ) {
         return ( flags2 & ServerMessageBlock.FLAGS2_SECURITY_SIGNATURES ) != 0 &&
                 digest == null &&
@@ -340,6 +355,7 @@ public class SmbTransport extends Transport implements SmbConstants {
         }
         maxMpxCount = Math.min( maxMpxCount, server.maxMpxCount );
         if (maxMpxCount < 1) maxMpxCount = 1;
+        setMaxOutstanding( maxMpxCount );
         snd_buf_size = Math.min( snd_buf_size, server.maxBufferSize );
         capabilities &= server.capabilities;
         if ((capabilities & ServerMessageBlock.CAP_UNICODE) == 0) {
@@ -367,8 +383,10 @@ public class SmbTransport extends Transport implements SmbConstants {
 
     protected void makeKey( Request request ) throws IOException {
         /* The request *is* the key */
-        if (++mid == 32000) mid = 1;
-        ((ServerMessageBlock)request).mid = mid;
+        synchronized (mid_lock) {
+            if (++mid == 32000) mid = 1;
+            ((ServerMessageBlock)request).mid = mid;
+        }
     }
     protected Request peekKey() throws IOException {
         int n;
@@ -415,27 +433,27 @@ public class SmbTransport extends Transport implements SmbConstants {
         /* Unless key returned is null or invalid Transport.loop() always
          * calls doRecv() after and no one else but the transport thread
          * should call doRecv(). Therefore it is ok to expect that the data
-         * in sbuf will be preserved for copying into BUF in doRecv().
+         * in sbuf will be preserved for copying into rcv_buf in doRecv().
          */
 
         return key;
     }
 
     protected void doSend( Request request ) throws IOException {
-        synchronized (BUF) {
+        synchronized (snd_buf) {
             ServerMessageBlock smb = (ServerMessageBlock)request;
-            int n = smb.encode( BUF, 4 );
-            Encdec.enc_uint32be( n & 0xFFFF, BUF, 0 ); /* 4 byte session message header */
+            int n = smb.encode( snd_buf, 4 );
+            Encdec.enc_uint32be( n & 0xFFFF, snd_buf, 0 ); /* 4 byte session message header */
             if (log.level >= 4) {
                 do {
                     log.println( smb );
                 } while (smb instanceof AndXServerMessageBlock &&
                         (smb = ((AndXServerMessageBlock)smb).andx) != null);
                 if (log.level >= 6) {
-                    Hexdump.hexdump( log, BUF, 4, n );
+                    Hexdump.hexdump( log, snd_buf, 4, n );
                 }
             }
-            out.write( BUF, 0, 4 + n );
+            out.write( snd_buf, 0, 4 + n );
         }
     }
     protected void doSend0( Request request ) throws IOException {
@@ -457,28 +475,31 @@ public class SmbTransport extends Transport implements SmbConstants {
         ServerMessageBlock resp = (ServerMessageBlock)response;
         resp.useUnicode = useUnicode;
 
-        synchronized (BUF) {
-            System.arraycopy( sbuf, 0, BUF, 0, 4 + HEADER_LENGTH );
-            int size = Encdec.dec_uint16be( BUF, 2 ) & 0xFFFF;
-            if (size < (HEADER_LENGTH + 1) || (4 + size) > rcv_buf_size ) {
+        synchronized (rcv_buf) {
+            System.arraycopy( sbuf, 0, rcv_buf, 0, 4 + HEADER_LENGTH );
+            int size = Encdec.dec_uint16be( rcv_buf, 2 ) & 0xFFFF;
+            /* large ReadAndX data is read directly into the caller's buffer */
+            int max = resp.command == ServerMessageBlock.SMB_COM_READ_ANDX &&
+                        (capabilities & CAP_LARGE_READX) != 0 ? 0xFFFF : rcv_buf_size;
+            if (size < (HEADER_LENGTH + 1) || (4 + size) > max ) {
                 throw new IOException( "Invalid payload size: " + size );
             }
-            int errorCode = Encdec.dec_uint32le( BUF, 9 ) & 0xFFFFFFFF;
+            int errorCode = Encdec.dec_uint32le( rcv_buf, 9 ) & 0xFFFFFFFF;
             if (resp.command == ServerMessageBlock.SMB_COM_READ_ANDX &&
                         (errorCode == 0 ||
                         errorCode == 0x80000005)) { // overflow indicator normal for pipe
                 SmbComReadAndXResponse r = (SmbComReadAndXResponse)resp;
                 int off = HEADER_LENGTH;
                                     /* WordCount thru dataOffset always 27 */
-                readn( in, BUF, 4 + off, 27 ); off += 27;
-                resp.decode( BUF, 4 );
+                readn( in, rcv_buf, 4 + off, 27 ); off += 27;
+                resp.decode( rcv_buf, 4 );
                 if (r.dataLength > 0) {
-                    readn( in, BUF, 4 + off, r.dataOffset - off);   /* pad */
+                    readn( in, rcv_buf, 4 + off, r.dataOffset - off);   /* pad */
                     readn( in, r.b, r.off, r.dataLength );  /* read direct */
                 }
             } else {
-                readn( in, BUF, 4 + 32, size - 32 );
-                resp.decode( BUF, 4 );
+                readn( in, rcv_buf, 4 + 32, size - 32 );
+                resp.decode( rcv_buf, 4 );
                 if (resp instanceof SmbComTransactionResponse) {
                     ((SmbComTransactionResponse)resp).nextElement();
                 }
@@ -489,20 +510,21 @@ public class SmbTransport extends Transport implements SmbConstants {
              * (perhaps for DOS reasons).
              */
             if (digest != null && resp.errorCode == 0) {
-                digest.verify( BUF, 4, resp );
+                digest.verify( rcv_buf, 4, resp );
             }
 
             if (log.level >= 4) {
                 log.println( response );
                 if (log.level >= 6) {
-                    Hexdump.hexdump( log, BUF, 4, size );
+                    Hexdump.hexdump( log, rcv_buf, 4, size );
                 }
             }
         }
     }
     protected void doSkip() throws IOException {
         int size = Encdec.dec_uint16be( sbuf, 2 ) & 0xFFFF;
-        if (size < 33 || (4 + size) > rcv_buf_size ) {
+        int max = (capabilities & CAP_LARGE_READX) != 0 ? 0xFFFF : rcv_buf_size;
+        if (size < 33 || (4 + size) > max ) {
             /* log message? */
             in.skip( in.available() );
         } else {
@@ -564,6 +586,8 @@ public class SmbTransport extends Transport implements SmbConstants {
                 req.maxBufferSize = snd_buf_size;
                 resp.reset();
 
+                /* The whole transaction takes one slot of the window */
+                Semaphore w = acquireWindow( RESPONSE_TIMEOUT );
                 try {
                     BufferCache.getBuffers( req, resp );
 
@@ -574,7 +598,7 @@ public class SmbTransport extends Transport implements SmbConstants {
                     req.nextElement();
                     if (req.hasMoreElements()) {
                         SmbComBlankResponse interim = new SmbComBlankResponse();
-                        super.sendrecv( req, interim, RESPONSE_TIMEOUT );
+                        super.sendrecv0( req, interim, RESPONSE_TIMEOUT );
                         if (interim.errorCode != 0) {
                             checkStatus( req, interim );
                         }
@@ -583,28 +607,28 @@ public class SmbTransport extends Transport implements SmbConstants {
                         makeKey( req );
                     }
 
-                    synchronized (response_map) {
-                        response.received = false;
-                        resp.isReceived = false;
-                        try {
-                            response_map.put( req, resp );
+                    response.received = false;
+                    resp.isReceived = false;
+                    try {
+                        response_map.put( req, resp );
 
-                            /* 
-                             * Send multiple fragments
-                             */
+                        /* 
+                         * Send multiple fragments
+                         */
 
-                            do {
-                                doSend0( req );
-                            } while( req.hasMoreElements() && req.nextElement() != null );
+                        do {
+                            doSend0( req );
+                        } while( req.hasMoreElements() && req.nextElement() != null );
 
-                            /* 
-                             * Receive multiple fragments
-                             */
+                        /* 
+                         * Receive multiple fragments
+                         */
 
-                            long timeout = RESPONSE_TIMEOUT;
-                            resp.expiration = System.currentTimeMillis() + timeout;
+                        long timeout = RESPONSE_TIMEOUT;
+                        resp.expiration = System.currentTimeMillis() + timeout;
+                        synchronized (resp) {
                             while( resp.hasMoreElements() ) {
-                                response_map.wait( timeout );
+                                resp.wait( timeout );
                                 timeout = resp.expiration - System.currentTimeMillis();
                                 if (timeout <= 0) {
                                     throw new TransportException( this +
@@ -612,16 +636,18 @@ public class SmbTransport extends Transport implements SmbConstants {
                                             req );
                                 }
                             }
-                            if (response.errorCode != 0) {
-                                checkStatus( req, resp );
-                            }
-                        } catch( InterruptedException ie ) {
-                            throw new TransportException( ie );
-                        } finally {
-                            response_map.remove( req );
                         }
+                        if (response.errorCode != 0) {
+                            checkStatus( req, resp );
+                        }
+                    } catch( InterruptedException ie ) {
+                        throw new TransportException( ie );
+                    } finally {
+                        /* before txn_buf goes back to the BufferCache */
+                        removeResponse( req, resp );
                     }
                 } finally {
+                    releaseWindow( w );
                     BufferCache.releaseBuffer( req.txn_buf );
                     BufferCache.releaseBuffer( resp.txn_buf );
                 }
@@ -640,6 +666,39 @@ public class SmbTransport extends Transport implements SmbConstants {
 
         checkStatus( request, response );
     }
+    /* Sends the requests back to back and waits for all responses, see
+     * Transport.sendrecv( Request[], Response[], int, long ). count is
+     * limited to maxMpxCount. Only for simple requests such as ReadAndX,
+     * not transactions.
+     */
+    void send( ServerMessageBlock[] requests,
+                    ServerMessageBlock[] responses,
+                    int count ) throws SmbException {
+
+        connect();
+
+        if (count > maxMpxCount)
+            throw new SmbException( "Cannot pipeline " + count + " requests, maxMpxCount is " + maxMpxCount );
+        for (int i = 0; i < count; i++) {
+            ServerMessageBlock request = requests[i];
+            request.flags2 |= flags2;
+            request.useUnicode = useUnicode;
+            request.response = responses[i]; /* needed by sign */
+            if (request.digest == null)
+                request.digest = digest;
+            responses[i].command = request.command;
+        }
+
+        try {
+            super.sendrecv( requests, responses, count, RESPONSE_TIMEOUT );
+        } catch( IOException ioe ) {
+            throw new SmbException( ioe.getMessage(), ioe );
+        }
+
+        for (int i = 0; i < count; i++) {
+            checkStatus( requests[i], responses[i] );
+        }
+    }
     public String toString() {
         return super.toString() + "[" + address + ":" + port + "]";
     }
@@ -115,6 +115,25 @@ class SmbTree {
             throw se;
         }
     }
+    /* Pipelined form of send for requests on an open file, such as
+     * ReadAndX. No DFS path handling is needed for those.
+     */
+    void send( ServerMessageBlock[] requests,
+                            ServerMessageBlock[] responses,
+                            int count ) throws SmbException {
+        treeConnect( null, null );
+        for (int i = 0; i < count; i++) {
+            requests[i].tid = tid;
+        }
+        try {
+            session.send( requests, responses, count );
+        } catch( SmbException se ) {
+            if (se.getNtStatus() == se.NT_STATUS_NETWORK_NAME_DELETED) {
+                treeDisconnect( true );
+            }
+            throw se;
+        }
+    }
     void treeConnect( ServerMessageBlock andx,
                             ServerMessageBlock andxResponse ) throws SmbException {
         String unc;
@@ -4,7 +4,11 @@ import jcifs.util.LogStream;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class simplifies communication for protocols that support
@@ -12,7 +16,9 @@ import java.util.HashMap;
  * knowledge (provided by a concrete subclass) so that connecting,
  * disconnecting, sending, and receiving can be syncronized
  * properly. Apparatus is provided to send and receive requests
- * concurrently.
+ * concurrently: requests are pipelined, each caller waits on its own
+ * response and the number of outstanding requests may be bounded with
+ * setMaxOutstanding.
  */
 
 public abstract class Transport implements Runnable {
@@ -44,14 +50,21 @@ public abstract class Transport implements Runnable {
      * 3 - connected
      * 4 - error
      */
-    int state = 0;
+    volatile int state = 0;
 
     String name = "Transport" + id++;
     Thread thread;
     TransportException te;
 
-    protected HashMap response_map = new HashMap( 4 );
+    /* Outstanding requests vs. their responses. The transport thread
+     * looks responses up without locking and wakes only the waiting caller.
+     */
+    protected final Map response_map = new ConcurrentHashMap();
+    private volatile Semaphore window = null;
 
+    /* makeKey and doSend may be called by several threads at once and
+     * must synchronize themselves.
+     */
     protected abstract void makeKey( Request request ) throws IOException;
     protected abstract Request peekKey() throws IOException;
     protected abstract void doSend( Request request ) throws IOException;
@@ -59,39 +72,154 @@ public abstract class Transport implements Runnable {
     protected abstract void doSkip() throws IOException;
 
     public Object setupDiscoLock = new Object();
+    /* Callers which are past session setup but whose request has not
+     * completed yet. They do not hold setupDiscoLock while the request is
+     * in flight, a graceful disconnect waits until there are none.
+     */
+    public final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Bounds the number of requests awaiting a response, further callers
+     * block in sendrecv until one completes. Called while connecting, a
+     * value less than 1 removes the bound.
+     */
+    protected void setMaxOutstanding( int max ) {
+        window = max > 0 ? new Semaphore( max, true ) : null;
+    }
+    /* Returns the permit taken, to be passed to releaseWindow. The window
+     * is replaced when reconnecting so the permit must go back to the
+     * semaphore it came from.
+     */
+    protected Semaphore acquireWindow( long timeout ) throws IOException {
+        return acquireWindow( timeout, 1 );
+    }
+    /* All permits are taken at once, a caller holding part of them while
+     * waiting for the rest could deadlock with another one doing the same.
+     * permits must not exceed the value passed to setMaxOutstanding.
+     */
+    protected Semaphore acquireWindow( long timeout, int permits ) throws IOException {
+        Semaphore w = window;
+        if (w == null)
+            return null;
+        try {
+            if (!w.tryAcquire( permits, timeout, TimeUnit.MILLISECONDS )) {
+                throw new TransportException( name +
+                        " timedout waiting for a free request slot" );
+            }
+        } catch( InterruptedException ie ) {
+            throw new TransportException( ie );
+        }
+        return w;
+    }
+    protected void releaseWindow( Semaphore w ) {
+        releaseWindow( w, 1 );
+    }
+    protected void releaseWindow( Semaphore w, int permits ) {
+        if (w != null)
+            w.release( permits );
+    }
 
     public void sendrecv( Request request,
                     Response response,
                     long timeout ) throws IOException {
-        synchronized (response_map) {
-            makeKey( request );
-            response.isReceived = false;
+        Semaphore w = acquireWindow( timeout );
+        try {
+            sendrecv0( request, response, timeout );
+        } finally {
+            releaseWindow( w );
+        }
+    }
+    /* Same as sendrecv without taking a slot of the window, for callers
+     * which hold one already.
+     */
+    protected void sendrecv0( Request request,
+                    Response response,
+                    long timeout ) throws IOException {
+        makeKey( request );
+        response.isReceived = false;
+        try {
+            response_map.put( request, response );
+            doSend( request );
+            response.expiration = System.currentTimeMillis() + timeout;
+            waitFor( request, response );
+        } catch( IOException ioe ) {
+            if (log.level > 2)
+                ioe.printStackTrace( log );
             try {
-                response_map.put( request, response );
-                doSend( request );
-                response.expiration = System.currentTimeMillis() + timeout;
-                while (!response.isReceived) {
-                    response_map.wait( timeout );
-                    timeout = response.expiration - System.currentTimeMillis();
-                    if (timeout <= 0) {
-                        throw new TransportException( name +
-                                " timedout waiting for response to " +
-                                request );
-                    }
-                }
-            } catch( IOException ioe ) {
-                if (log.level > 2)
-                    ioe.printStackTrace( log );
-                try {
-                    disconnect( true );
-                } catch( IOException ioe2 ) {
-                    ioe2.printStackTrace( log );
+                disconnect( true );
+            } catch( IOException ioe2 ) {
+                ioe2.printStackTrace( log );
+            }
+            throw ioe;
+        } catch( InterruptedException ie ) {
+            throw new TransportException( ie );
+        } finally {
+            removeResponse( request, response );
+        }
+    }
+    /* Removes the mapping under the response lock, once this returns the
+     * transport thread no longer decodes into the response (or the
+     * buffers it refers to) even if it arrives late.
+     */
+    protected void removeResponse( Request request, Response response ) {
+        synchronized (response) {
+            response_map.remove( request, response );
+        }
+    }
+    /**
+     * Sends <tt>count</tt> requests back to back and then waits for all of
+     * their responses, so that they are in flight together rather than one
+     * round trip each. <tt>count</tt> slots of the window are taken for the
+     * duration and must not exceed the value passed to setMaxOutstanding.
+     */
+    public void sendrecv( Request[] requests,
+                    Response[] responses,
+                    int count,
+                    long timeout ) throws IOException {
+        Semaphore w = acquireWindow( timeout, count );
+        int sent = 0;
+        try {
+            long expiration = System.currentTimeMillis() + timeout;
+            for ( ; sent < count; sent++) {
+                makeKey( requests[sent] );
+                responses[sent].isReceived = false;
+                responses[sent].expiration = expiration;
+                response_map.put( requests[sent], responses[sent] );
+                doSend( requests[sent] );
+            }
+            for (int i = 0; i < count; i++) {
+                waitFor( requests[i], responses[i] );
+            }
+        } catch( IOException ioe ) {
+            if (log.level > 2)
+                ioe.printStackTrace( log );
+            try {
+                disconnect( true );
+            } catch( IOException ioe2 ) {
+                ioe2.printStackTrace( log );
+            }
+            throw ioe;
+        } catch( InterruptedException ie ) {
+            throw new TransportException( ie );
+        } finally {
+            /* the request which failed in doSend was mapped already */
+            for (int i = 0; i < count && i <= sent; i++) {
+                removeResponse( requests[i], responses[i] );
+            }
+            releaseWindow( w, count );
+        }
+    }
+    private void waitFor( Request request,
+                    Response response ) throws IOException, InterruptedException {
+        synchronized (response) {
+            while (!response.isReceived) {
+                long timeout = response.expiration - System.currentTimeMillis();
+                if (timeout <= 0) {
+                    throw new TransportException( name +
+                            " timedout waiting for response to " +
+                            request );
                 }
-                throw ioe;
-            } catch( InterruptedException ie ) {
-                throw new TransportException( ie );
-            } finally {
-                response_map.remove( request );
+                response.wait( timeout );
             }
         }
     }
@@ -101,16 +229,26 @@ public abstract class Transport implements Runnable {
                 Request key = peekKey();
                 if (key == null)
                     throw new IOException( "end of stream" );
-                synchronized (response_map) {
-                    Response response = (Response)response_map.get( key );
-                    if (response == null) {
-                        if (log.level >= 4)
-                            log.println( "Invalid key, skipping message" );
-                        doSkip();
-                    } else {
+                Response response = (Response)response_map.get( key );
+                if (response == null) {
+                    if (log.level >= 4)
+                        log.println( "Invalid key, skipping message" );
+                    doSkip();
+                } else {
+                    /* Decoding happens under the response lock so that a
+                     * caller waiting on it, possibly for the next part of a
+                     * transaction, only sees the response once it is fully
+                     * decoded and its signature verified.
+                     */
+                    synchronized (response) {
+                        if (response_map.get( key ) != response) {
+                            /* the caller gave up on it meanwhile */
+                            doSkip();
+                            continue;
+                        }
                         doRecv( response );
                         response.isReceived = true;
-                        response_map.notifyAll();
+                        response.notify();
                     }
                 }
             } catch( Exception ex ) {
@@ -147,6 +285,12 @@ public abstract class Transport implements Runnable {
 
     protected abstract void doDisconnect( boolean hard ) throws IOException;
 
+    /* Whether the transport is connected right now. Does not wait for a
+     * connect or disconnect in progress.
+     */
+    public boolean isConnected() {
+        return state == 3;
+    }
     public synchronized void connect( long timeout ) throws TransportException {
         try {
             switch (state) {
@@ -211,7 +355,7 @@ public abstract class Transport implements Runnable {
                     case 2:
                         hard = true;
                     case 3: /* connected - go ahead and disconnect */
-                        if (response_map.size() != 0 && !hard) {
+                        if ((response_map.size() != 0 || inFlight.get() != 0) && !hard) {
                             break; /* outstanding requests */
                         }
                         doDisconnect( hard );
@@ -16,6 +16,8 @@
  */
 package org.jinterop.dcom.common;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -26,7 +28,6 @@ import java.net.URLConnection;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Locale;
@@ -35,6 +36,7 @@ import java.util.MissingResourceException;
 import java.util.Properties;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -61,24 +63,94 @@ import java.util.logging.SimpleFormatter;
  */
 public final class JISystem {
 
+	/**
+	 * Callback execution mode: use virtual threads when the JVM supports them
+	 * (Java 21 and later), otherwise a bounded pool of platform threads. This is
+	 * the default.
+	 */
+	public static final int CALLBACK_EXECUTION_AUTO = 0;
+
+	/**
+	 * Callback execution mode: a virtual thread per connection. Falls back to the
+	 * bounded pool if the JVM does not support virtual threads.
+	 */
+	public static final int CALLBACK_EXECUTION_VIRTUAL_THREADS = 1;
+
+	/**
+	 * Callback execution mode: a bounded pool of platform threads.
+	 */
+	public static final int CALLBACK_EXECUTION_BOUNDED_POOL = 2;
+
+	/**
+	 * Callback execution mode: a new platform thread per connection, as in
+	 * previous releases.
+	 */
+	public static final int CALLBACK_EXECUTION_THREAD_PER_CONNECTION = 3;
+
+	/**
+	 * Result of a host name resolution, <code>address</code> is <code>null</code>
+	 * if the name could not be resolved.
+	 */
+	private static final class HostEntry {
+
+		private final InetAddress address;
+
+		private final long expiry;
+
+		HostEntry(final InetAddress address, final long expiry) {
+			this.address = address;
+			this.expiry = expiry;
+		}
+	}
+
 	private static boolean autoCollection = true;
 
 	private static boolean autoRegister = true;
 
+	private static int callbackExecutionMode = CALLBACK_EXECUTION_AUTO;
+
+	private static int callbackPoolSize = 64;
+
+	private static int callbackPortRangeEnd = 0;
+
+	private static int callbackPortRangeStart = 0;
+
 	private static JIComVersion comVersion = new JIComVersion();
 
+	private static volatile long hostCacheNegativeTtl = 10000;
+
+	private static volatile long hostCacheTtl = 60000;
+
 	private static Locale locale = Locale.getDefault();
 
 	private static final Logger logger = Logger.getLogger("org.jinterop");
 
-	private static final Map mapOfHostnamesVsIPs = new HashMap();
+	private static final Map mapOfHostnamesVsIPs = new ConcurrentHashMap();
 
-	private static Properties mapOfProgIdsVsClsids = new Properties();
+	private static final Map mapOfProgIdFailures = new ConcurrentHashMap();
+
+	private static final Map mapOfProgIdsVsClsids = new ConcurrentHashMap();
+
+	private static final Map mapOfResolvedHosts = new ConcurrentHashMap();
 
 	private static String pathToDB = null;
 
+	private static volatile String progIdCacheFile = null;
+
+	private static volatile boolean progIdDBLoaded = false;
+
+	private static volatile long progIdNegativeTtl = 30000;
+
+	private static volatile boolean progIdsModified = false;
+
+	private static int releaseBatchSize = 64;
+
+	private static long releaseMaxDelay = 10000;
+
 	private static ResourceBundle resourceBundle = null;
 
+	private static boolean sharedCallbackListener = true;
+
 	private static ArrayList socketQueue = new ArrayList();
 
 	/**
@@ -94,10 +166,11 @@ public final class JISystem {
 			return null;
 		}
 
-		if (pathToDB == null) {
+		if (!progIdDBLoaded) {
 			synchronized (JISystem.class) {
-				if (pathToDB == null) {
+				if (!progIdDBLoaded) {
 					saveDBPathAndLoadFile();
+					progIdDBLoaded = true;
 				}
 			}
 		}
@@ -105,6 +178,45 @@ public final class JISystem {
 		return (String) mapOfProgIdsVsClsids.get(progId);
 	}
 
+	/**
+	 * Returns the execution mode of the DCOM callback runtime.
+	 * 
+	 * @return one of the <code>CALLBACK_EXECUTION_*</code> constants.
+	 */
+	public static int getCallbackExecutionMode() {
+		return callbackExecutionMode;
+	}
+
+	/**
+	 * Returns the maximum number of pooled platform threads used by the DCOM
+	 * callback runtime in {@link #CALLBACK_EXECUTION_BOUNDED_POOL} mode.
+	 * 
+	 * @return
+	 */
+	public static int getCallbackPoolSize() {
+		return callbackPoolSize;
+	}
+
+	/**
+	 * Returns the last port of the range used for the callback listeners, see
+	 * {@link #setCallbackPortRange(int, int)}.
+	 * 
+	 * @return
+	 */
+	public static int getCallbackPortRangeEnd() {
+		return callbackPortRangeEnd;
+	}
+
+	/**
+	 * Returns the first port of the range used for the callback listeners,
+	 * <code>0</code> if any free port is used.
+	 * 
+	 * @return
+	 */
+	public static int getCallbackPortRangeStart() {
+		return callbackPortRangeStart;
+	}
+
 	/**
 	 * Returns COM version currently being used by the library.
 	 * 
@@ -136,13 +248,50 @@ public final class JISystem {
 		return resourceBundle;
 	}
 
+	/**
+	 * Resolves <code>hostname</code>, using the binding added via
+	 * {@link #mapHostNametoIP(String, String)} if there is one. Results are cached
+	 * for the time set via {@link #setHostCacheTtl(long, long)}, failures as well
+	 * so that unreachable names do not stall every connect on the name service.
+	 * 
+	 * @param hostname
+	 * @return
+	 * @throws UnknownHostException if the name could not be resolved, now or
+	 *                              within the negative cache time.
+	 */
+	public static InetAddress getInetAddress(final String hostname) throws UnknownHostException {
+		final String key = hostname.trim().toUpperCase();
+		final long now = System.currentTimeMillis();
+		final HostEntry entry = (HostEntry) mapOfResolvedHosts.get(key);
+		if (entry != null && entry.expiry > now) {
+			if (entry.address == null) {
+				throw new UnknownHostException(hostname.trim());
+			}
+			return entry.address;
+		}
+
+		final String ip = (String) mapOfHostnamesVsIPs.get(key);
+		try {
+			final InetAddress address = InetAddress.getByName(ip != null ? ip : hostname.trim());
+			if (hostCacheTtl > 0) {
+				mapOfResolvedHosts.put(key, new HostEntry(address, now + hostCacheTtl));
+			}
+			return address;
+		} catch (final UnknownHostException e) {
+			if (hostCacheNegativeTtl > 0) {
+				mapOfResolvedHosts.put(key, new HostEntry(null, now + hostCacheNegativeTtl));
+			}
+			throw e;
+		}
+	}
+
 	/**
 	 * Returns I.P address for the given <code>hostname</code>.
 	 * 
 	 * @param hostname
 	 * @return <code>null</code> if a mapping could not be found.
 	 */
-	public static synchronized String getIPForHostName(final String hostname) {
+	public static String getIPForHostName(final String hostname) {
 		return (String) mapOfHostnamesVsIPs.get(hostname.trim().toUpperCase());
 	}
 
@@ -180,6 +329,28 @@ public final class JISystem {
 		return message;
 	}
 
+	/**
+	 * Returns the number of dereferenced interface pointers of a session after
+	 * which they are released on the COM server right away, see
+	 * {@link #setReferenceReleaseThresholds(int, long)}.
+	 * 
+	 * @return
+	 */
+	public static int getReferenceReleaseBatchSize() {
+		return releaseBatchSize;
+	}
+
+	/**
+	 * Returns the maximum time in milliseconds a dereferenced interface pointer
+	 * waits before it is released on the COM server, see
+	 * {@link #setReferenceReleaseThresholds(int, long)}.
+	 * 
+	 * @return
+	 */
+	public static long getReferenceReleaseMaxDelay() {
+		return releaseMaxDelay;
+	}
+
 	/**
 	 * Returns the framework logger identified by the name "org.jinterop".
 	 * 
@@ -189,12 +360,32 @@ public final class JISystem {
 		return logger;
 	}
 
-	public static synchronized void internal_dumpMap() {
+	public static void internal_dumpMap() {
 		if (JISystem.getLogger().isLoggable(Level.INFO)) {
 			getLogger().info("mapOfHostnamesVsIPs: " + mapOfHostnamesVsIPs);
 		}
 	}
 
+	/**
+	 * Returns the error of a failed registry lookup of <code>progId</code> on
+	 * <code>server</code>, if it failed within the negative cache time.
+	 * 
+	 * @exclude
+	 * @return <code>null</code> if the lookup should be performed.
+	 */
+	public static Integer internal_getProgIdFailure(final String progId, final String server) {
+		final String key = progId + "@" + (server == null ? "" : server.toUpperCase());
+		final long[] failure = (long[]) mapOfProgIdFailures.get(key);
+		if (failure == null) {
+			return null;
+		}
+		if (failure[0] <= System.currentTimeMillis()) {
+			mapOfProgIdFailures.remove(key);
+			return null;
+		}
+		return new Integer((int) failure[1]);
+	}
+
 	/**
 	 * synchronisation will be performed by the oxid master
 	 * 
@@ -225,7 +416,26 @@ public final class JISystem {
 	 * @exclude
 	 */
 	public static void internal_setClsidtoProgId(final String progId, final String clsid) {
-		mapOfProgIdsVsClsids.put(progId, clsid);
+		if (!clsid.equals(mapOfProgIdsVsClsids.put(progId, clsid))) {
+			progIdsModified = true;
+			// a cache file belongs to this process, no need to wait for the shutdown.
+			if (progIdCacheFile != null) {
+				internal_writeProgIdsToFile();
+			}
+		}
+	}
+
+	/**
+	 * Remembers a failed registry lookup of <code>progId</code> on
+	 * <code>server</code> for the negative cache time.
+	 * 
+	 * @exclude
+	 */
+	public static void internal_setProgIdFailure(final String progId, final String server, final int errorCode) {
+		if (progIdNegativeTtl > 0) {
+			mapOfProgIdFailures.put(progId + "@" + (server == null ? "" : server.toUpperCase()),
+					new long[] { System.currentTimeMillis() + progIdNegativeTtl, errorCode });
+		}
 	}
 
 	/**
@@ -246,12 +456,20 @@ public final class JISystem {
 	 * 
 	 * @exclude
 	 */
-	public static void internal_writeProgIdsToFile() {
-		if (pathToDB != null) {
+	public static synchronized void internal_writeProgIdsToFile() {
+		final String path = progIdCacheFile != null ? progIdCacheFile : pathToDB;
+		if (path != null && progIdsModified) {
 			try {
-				final FileOutputStream outputStream = new FileOutputStream(pathToDB);
-				mapOfProgIdsVsClsids.store(outputStream, "progId Vs ClsidDB");
+				final File file = new File(path);
+				if (file.getParentFile() != null) {
+					file.getParentFile().mkdirs();
+				}
+				final Properties properties = new Properties();
+				properties.putAll(mapOfProgIdsVsClsids);
+				final FileOutputStream outputStream = new FileOutputStream(file);
+				properties.store(outputStream, "progId Vs ClsidDB");
 				outputStream.close();
+				progIdsModified = false;
 			} catch (final FileNotFoundException e) {
 
 				logger.throwing("JISystem", "writeProgIdsToFile", e);
@@ -271,6 +489,16 @@ public final class JISystem {
 		return autoRegister;
 	}
 
+	/**
+	 * Status of the shared callback listener flag.
+	 * 
+	 * @return <code>true</code> if all Java objects exported in a session share a
+	 *         single listening port.
+	 */
+	public static boolean isSharedCallbackListenerSet() {
+		return sharedCallbackListener;
+	}
+
 	/**
 	 * Status of autoCollection flag.
 	 * 
@@ -318,7 +546,7 @@ public final class JISystem {
 	 * @throws IllegalArgumentException if any parameter is <code>null</code> or of
 	 *                                  0 length.
 	 */
-	public static synchronized void mapHostNametoIP(final String hostname, final String IP)
+	public static void mapHostNametoIP(final String hostname, final String IP)
 			throws UnknownHostException {
 		if (hostname == null || IP == null || hostname.trim().length() == 0 || IP.trim().length() == 0) {
 			throw new IllegalArgumentException();
@@ -328,6 +556,7 @@ public final class JISystem {
 		InetAddress.getByName(IP.trim());
 
 		mapOfHostnamesVsIPs.put(hostname.trim().toUpperCase(), IP.trim());
+		mapOfResolvedHosts.remove(hostname.trim().toUpperCase());
 	}
 
 	private static void saveDBPathAndLoadFile() {
@@ -376,8 +605,14 @@ public final class JISystem {
 
 					final URLConnection con = url.openConnection();
 					final InputStream inputStream = con.getInputStream();
-					mapOfProgIdsVsClsids.load(inputStream);
+					final Properties properties = new Properties();
+					properties.load(inputStream);
 					inputStream.close();
+					// entries learned at runtime (or read from the cache file) are newer.
+					for (final Iterator entries = properties.entrySet().iterator(); entries.hasNext();) {
+						final Map.Entry entry = (Map.Entry) entries.next();
+						((ConcurrentHashMap) mapOfProgIdsVsClsids).putIfAbsent(entry.getKey(), entry.getValue());
+					}
 					// outputStream = con.getOutputStream();
 				} catch (final Exception e) {
 				}
@@ -408,6 +643,47 @@ public final class JISystem {
 		autoRegister = autoRegisteration;
 	}
 
+	/**
+	 * Sets how the DCOM callback runtime (OXID resolver and <code>IRemUnknown</code>
+	 * connections of exported <code>JILocalCoClass</code> objects) runs its tasks.
+	 * Must be called before the first Java object is exported, later changes are
+	 * ignored.
+	 * <p>
+	 * In {@link #CALLBACK_EXECUTION_BOUNDED_POOL} mode connections exceeding the
+	 * pool size are served by dedicated threads, they are never queued.
+	 * 
+	 * @param mode     one of the <code>CALLBACK_EXECUTION_*</code> constants.
+	 * @param poolSize maximum number of pooled platform threads.
+	 * @throws IllegalArgumentException if <code>mode</code> is not one of the
+	 *                                  <code>CALLBACK_EXECUTION_*</code> constants
+	 *                                  or <code>poolSize</code> is not positive.
+	 */
+	public static void setCallbackExecutionMode(final int mode, final int poolSize) {
+		if (mode < CALLBACK_EXECUTION_AUTO || mode > CALLBACK_EXECUTION_THREAD_PER_CONNECTION || poolSize <= 0) {
+			throw new IllegalArgumentException();
+		}
+		callbackExecutionMode = mode;
+		callbackPoolSize = poolSize;
+	}
+
+	/**
+	 * Restricts the ports on which the library listens for callbacks from COM
+	 * servers (the OXID resolver and the <code>IRemUnknown</code> listeners of
+	 * exported Java objects) to the given range, so that they can be opened in a
+	 * firewall. By default any free port is used.
+	 * 
+	 * @param start first port of the range, <code>0</code> to use any free port.
+	 * @param end   last port of the range (inclusive).
+	 * @throws IllegalArgumentException if the range is invalid.
+	 */
+	public static void setCallbackPortRange(final int start, final int end) {
+		if (start < 0 || end > 0xFFFF || (start > 0 && end < start)) {
+			throw new IllegalArgumentException();
+		}
+		callbackPortRangeStart = start;
+		callbackPortRangeEnd = start == 0 ? 0 : end;
+	}
+
 	/**
 	 * Sets the COM version which the library would use for communicating with COM
 	 * servers. Default is 5.2.
@@ -418,6 +694,25 @@ public final class JISystem {
 		JISystem.comVersion = comVersion;
 	}
 
+	/**
+	 * Sets for how long resolved host names (see
+	 * {@link #getInetAddress(String)}) are cached. By default 60 seconds for
+	 * names which could be resolved and 10 seconds for those which could not.
+	 * <code>0</code> disables the respective cache.
+	 * 
+	 * @param ttl         milliseconds a resolved address is reused.
+	 * @param negativeTtl milliseconds a failed resolution is remembered.
+	 * @throws IllegalArgumentException if a parameter is negative.
+	 */
+	public static void setHostCacheTtl(final long ttl, final long negativeTtl) {
+		if (ttl < 0 || negativeTtl < 0) {
+			throw new IllegalArgumentException();
+		}
+		hostCacheTtl = ttl;
+		hostCacheNegativeTtl = negativeTtl;
+		mapOfResolvedHosts.clear();
+	}
+
 	/**
 	 * Used to set the in built log handler.
 	 * 
@@ -451,6 +746,89 @@ public final class JISystem {
 		JISystem.autoCollection = autoCollection;
 	}
 
+	/**
+	 * Sets the file in which the <code>PROGID</code> Vs <code>CLSID</code>
+	 * mappings learned from the registry of COM servers are kept, so that they
+	 * survive a restart. The mappings in the file are loaded immediately, and
+	 * the file is rewritten whenever a new mapping is learned. Without it they
+	 * are written back to the <code>progIdVsClsidDB.properties</code> found on
+	 * the classpath when the library shuts down.
+	 * 
+	 * @param path file path, created with its directories if required.
+	 *             <code>null</code> goes back to the classpath file.
+	 */
+	public static void setProgIdCacheFile(final String path) {
+		if (path == null) {
+			progIdCacheFile = null;
+			return;
+		}
+		final File file = new File(path);
+		if (file.isFile()) {
+			try {
+				final FileInputStream inputStream = new FileInputStream(file);
+				final Properties properties = new Properties();
+				properties.load(inputStream);
+				inputStream.close();
+				mapOfProgIdsVsClsids.putAll(properties);
+			} catch (final IOException e) {
+				logger.throwing("JISystem", "setProgIdCacheFile", e);
+			}
+		}
+		progIdCacheFile = path;
+	}
+
+	/**
+	 * Sets for how long a failed registry lookup of a <code>PROGID</code> is
+	 * remembered, during which further lookups of it on the same server fail
+	 * without contacting the server. By default 30 seconds, <code>0</code>
+	 * disables it.
+	 * 
+	 * @param negativeTtl milliseconds.
+	 * @throws IllegalArgumentException if the parameter is negative.
+	 */
+	public static void setProgIdNegativeCacheTtl(final long negativeTtl) {
+		if (negativeTtl < 0) {
+			throw new IllegalArgumentException();
+		}
+		progIdNegativeTtl = negativeTtl;
+		mapOfProgIdFailures.clear();
+	}
+
+	/**
+	 * Sets when the interface pointers of a session, which have been garbage
+	 * collected on the Java side, are released on the COM server. They are
+	 * collected per session and released together in a single
+	 * <code>IRemUnknown::RemRelease</code> call as soon as <code>batchSize</code>
+	 * of them are pending, or when the oldest one has waited for
+	 * <code>maxDelay</code> milliseconds. Servers with small object quotas may need
+	 * lower values. By default 64 references or 10 seconds.
+	 * 
+	 * @param batchSize number of pending references which triggers a release.
+	 * @param maxDelay  maximum time in milliseconds a reference stays pending.
+	 * @throws IllegalArgumentException if a parameter is not positive.
+	 */
+	public static void setReferenceReleaseThresholds(final int batchSize, final long maxDelay) {
+		if (batchSize <= 0 || maxDelay <= 0) {
+			throw new IllegalArgumentException();
+		}
+		releaseBatchSize = batchSize;
+		releaseMaxDelay = maxDelay;
+	}
+
+	/**
+	 * Indicates to the framework whether all Java objects exported in a session
+	 * (such as the callbacks of OPC subscriptions) should share a single listening
+	 * port, demultiplexing incoming calls by <code>IPID</code>. When turned off a
+	 * new port and listener thread is used for every exported object, as in
+	 * previous releases. By Default, it is ON.
+	 * 
+	 * @param sharedCallbackListener <code>false</code> to use a listener per
+	 *                               exported object.
+	 */
+	public static void setSharedCallbackListener(final boolean sharedCallbackListener) {
+		JISystem.sharedCallbackListener = sharedCallbackListener;
+	}
+
 	/**
 	 * Sets the locale, this locale will be used to retrieve the resource bundle for
 	 * Error Messages.
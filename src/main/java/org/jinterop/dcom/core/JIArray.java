@@ -37,6 +37,11 @@ import java.util.Stack;
  * unexpected results.
  * </p>
  * <p>
+ * Single dimension arrays of <code>int</code>, <code>short</code>,
+ * <code>float</code> and <code>double</code> are accepted and produced
+ * directly, without boxing each member.
+ * </p>
+ * <p>
  * <i>Please refer to <b>MSExcel</b> examples for more details on how to use
  * this class.</i>
  * <p>
@@ -93,6 +98,13 @@ public final class JIArray implements Serializable
      * JIArray array = new JIArray(Integer.class,new int[]{10},1,false);
      * </code> <br>
      * </P>
+     * <p>
+     * Passing <code>Integer.TYPE</code>, <code>Short.TYPE</code>,
+     * <code>Float.TYPE</code> or <code>Double.TYPE</code> instead of the boxed
+     * class decodes a single dimension array straight into an
+     * <code>int[]</code>, <code>short[]</code>, <code>float[]</code> or
+     * <code>double[]</code>.
+     * </p>
      * 
      * @param clazz
      *            class whose instances will be members of the deserialized
@@ -105,10 +117,13 @@ public final class JIArray implements Serializable
      *            declares whether the array is <i>conformant</i> or not.
      * @throws IllegalArgumentException
      *             if <code>upperBounds</code> is supplied and its length
-     *             is not equal to the <code>dimension</code> parameter.
+     *             is not equal to the <code>dimension</code> parameter, or if
+     *             <code>clazz</code> is an unsupported primitive type or a
+     *             primitive type with more than one dimension.
      */
     public JIArray ( final Class clazz, final int[] upperBounds, final int dimension, final boolean isConformant )
     {
+        checkPrimitiveTemplate ( clazz, dimension );
         this.clazz = clazz;
         init2 ( upperBounds, dimension, isConformant, false );
     }
@@ -130,10 +145,13 @@ public final class JIArray implements Serializable
      *            declares whether the array is <i>varying</i> or not.
      * @throws IllegalArgumentException
      *             if <code>upperBounds</code> is supplied and its length
-     *             is not equal to the <code>dimension</code> parameter.
+     *             is not equal to the <code>dimension</code> parameter, or if
+     *             <code>clazz</code> is an unsupported primitive type or a
+     *             primitive type with more than one dimension.
      */
     public JIArray ( final Class clazz, final int[] upperBounds, final int dimension, final boolean isConformant, final boolean isVarying )
     {
+        checkPrimitiveTemplate ( clazz, dimension );
         this.clazz = clazz;
         init2 ( upperBounds, dimension, isConformant, isVarying );
     }
@@ -242,6 +260,14 @@ public final class JIArray implements Serializable
         init2 ( upperBounds, dimension, isConformant, isVarying );
     }
 
+    private static void checkPrimitiveTemplate ( final Class clazz, final int dimension )
+    {
+        if ( clazz != null && clazz.isPrimitive () && ( JIMarshalUnMarshalHelper.getBoxedTypeOfPrimitive ( clazz ) == null || dimension != 1 ) )
+        {
+            throw new IllegalArgumentException ( JISystem.getLocalizedMessage ( JIErrorCodes.JI_ARRAY_PRIMITIVE_NOTACCEPT ) );
+        }
+    }
+
     private void init2 ( final int[] upperBounds, final int dimension, final boolean isConformant, final boolean isVarying )
     {
         this.upperBounds = upperBounds;
@@ -284,12 +310,14 @@ public final class JIArray implements Serializable
      * </code>
      * 
      * @param array
-     *            Array of any type. Primitive arrays are not allowed.
+     *            Array of any type. Of the primitive arrays only single
+     *            dimension <code>int[]</code>, <code>short[]</code>,
+     *            <code>float[]</code> and <code>double[]</code> are allowed.
      * @param isConformant
      *            declares whether the array is <code>conformant</code> or not.
      * @throws IllegalArgumentException
      *             if the <code>array</code> is not an array or
-     *             is of primitive type or is an array of
+     *             is of an unsupported primitive type or is an array of
      *             <code>java.lang.Object</code>.
      */
     public JIArray ( final Object array, final boolean isConformant )
@@ -303,14 +331,16 @@ public final class JIArray implements Serializable
      * Refer {@link #JIArray(Object, boolean)}
      * 
      * @param array
-     *            Array of any type. Primitive arrays are not allowed.
+     *            Array of any type. Of the primitive arrays only single
+     *            dimension <code>int[]</code>, <code>short[]</code>,
+     *            <code>float[]</code> and <code>double[]</code> are allowed.
      * @param isConformant
      *            declares whether the array is <code>conformant</code> or not.
      * @param isVarying
      *            declares whether the array is <code>varying</code> or not.
      * @throws IllegalArgumentException
      *             if the <code>array</code> is not an array or
-     *             is of primitive type or is an array of
+     *             is of an unsupported primitive type or is an array of
      *             <code>java.lang.Object</code>.
      */
     public JIArray ( final Object array, final boolean isConformant, final boolean isVarying )
@@ -334,10 +364,12 @@ public final class JIArray implements Serializable
      * </code>
      * 
      * @param array
-     *            Array of any type. Primitive arrays are not allowed.
+     *            Array of any type. Of the primitive arrays only single
+     *            dimension <code>int[]</code>, <code>short[]</code>,
+     *            <code>float[]</code> and <code>double[]</code> are allowed.
      * @throws IllegalArgumentException
      *             if the <code>array</code> is not an array or
-     *             is of primitive type or is an array of
+     *             is of an unsupported primitive type or is an array of
      *             <code>java.lang.Object</code>.
      */
     public JIArray ( final Object array )
@@ -352,8 +384,21 @@ public final class JIArray implements Serializable
             throw new IllegalArgumentException ( JISystem.getLocalizedMessage ( JIErrorCodes.JI_ARRAY_PARAM_ONLY ) );
         }
 
-        if ( array.getClass ().isPrimitive () )
+        final Class componentType = array.getClass ().getComponentType ();
+        if ( componentType.isPrimitive () )
         {
+            if ( JIMarshalUnMarshalHelper.getBoxedTypeOfPrimitive ( componentType ) == null )
+            {
+                throw new IllegalArgumentException ( JISystem.getLocalizedMessage ( JIErrorCodes.JI_ARRAY_PRIMITIVE_NOTACCEPT ) );
+            }
+            initPrimitive ( array, componentType );
+            return;
+        }
+
+        final String arrayName = array.getClass ().getName ();
+        if ( arrayName.charAt ( arrayName.lastIndexOf ( '[' ) + 1 ) != 'L' )
+        {
+            //multi dimensional primitive arrays
             throw new IllegalArgumentException ( JISystem.getLocalizedMessage ( JIErrorCodes.JI_ARRAY_PRIMITIVE_NOTACCEPT ) );
         }
 
@@ -403,8 +448,30 @@ public final class JIArray implements Serializable
         this.sizeOfNestedArrayInBytes = computeLengthArray ( array );
     }
 
+    //single dimension int[], short[], float[] and double[], written without boxing the members.
+    private void initPrimitive ( final Object array, final Class componentType )
+    {
+        final int length = Array.getLength ( array );
+        this.memberArray = array;
+        this.clazz = componentType;
+        this.dimension = 1;
+        this.upperBounds = new int[] { length };
+        this.numElementsInAllDimensions = length;
+        if ( this.isConformant )
+        {
+            this.conformantMaxCounts.add ( new Integer ( length ) );
+        }
+        this.sizeOfNestedArrayInBytes = computeLengthArray ( array );
+    }
+
     private int computeLengthArray ( final Object array )
     {
+        final Class boxedType = JIMarshalUnMarshalHelper.getBoxedTypeOfPrimitive ( array.getClass ().getComponentType () );
+        if ( boxedType != null )
+        {
+            return Array.getLength ( array ) * JIMarshalUnMarshalHelper.getLengthInBytes ( boxedType, null, JIFlags.FLAG_NULL );
+        }
+
         int length = 0;
         final String name = array.getClass ().getName ();
         final Object o[] = (Object[])array;
@@ -413,9 +480,10 @@ public final class JIArray implements Serializable
             if ( name.charAt ( 1 ) != '[' )
             {
                 final Object o1[] = (Object[])array;
+                final JIMarshalUnMarshalHelper.TypeCodec codec = JIMarshalUnMarshalHelper.getCodec ( o1.getClass ().getComponentType () );
                 for ( int j = 0; j < o1.length; j++ )
                 {
-                    length = length + JIMarshalUnMarshalHelper.getLengthInBytes ( o1.getClass ().getComponentType (), o1[j], JIFlags.FLAG_NULL );
+                    length = length + codec.getLengthInBytes ( o1[j], JIFlags.FLAG_NULL );
                 }
                 return length;
             }
@@ -510,6 +578,12 @@ public final class JIArray implements Serializable
             this.isVaryingProxy = false; //this is since encode is recursive.
         }
 
+        if ( array.getClass ().getComponentType ().isPrimitive () )
+        {
+            JIMarshalUnMarshalHelper.encodePrimitiveArray ( ndr, array );
+            return;
+        }
+
         final String name = array.getClass ().getName ();
         final Object o[] = (Object[])array;
         for ( int i = 0; i < o.length; i++ )
@@ -517,9 +591,10 @@ public final class JIArray implements Serializable
             if ( name.charAt ( 1 ) != '[' )
             {
                 final Object o1[] = (Object[])array;
+                final JIMarshalUnMarshalHelper.TypeCodec codec = JIMarshalUnMarshalHelper.getCodec ( this.clazz );
                 for ( int j = 0; j < o1.length; j++ )
                 {
-                    JIMarshalUnMarshalHelper.serialize ( ndr, this.clazz, o1[j], defferedPointers, FLAG | JIFlags.FLAG_REPRESENTATION_ARRAY );
+                    codec.encode ( ndr, o1[j], defferedPointers, FLAG | JIFlags.FLAG_REPRESENTATION_ARRAY );
                 }
                 return;
             }
@@ -642,6 +717,12 @@ public final class JIArray implements Serializable
 
     private Object recurseDecode ( final JIArray retVal, final NetworkDataRepresentation ndr, final Class arrayType, final int dimension, final List defferedPointers, final int FLAG, final Map additionalData )
     {
+        if ( arrayType.isPrimitive () )
+        {
+            //always single dimension, see checkPrimitiveTemplate.
+            return JIMarshalUnMarshalHelper.decodePrimitiveArray ( ndr, arrayType, retVal.upperBounds[retVal.upperBounds.length - dimension] );
+        }
+
         Object array = null;
         Class c = arrayType;
         for ( int j = 0; j < dimension; j++ )
@@ -650,24 +731,23 @@ public final class JIArray implements Serializable
             c = array.getClass ();
         }
 
-        for ( int i = 0; i < retVal.upperBounds[retVal.upperBounds.length - dimension]; i++ )
+        final Object[] elements = (Object[])array;
+        final int count = retVal.upperBounds[retVal.upperBounds.length - dimension];
+        if ( dimension == 1 )
         {
-            if ( dimension == 1 )
+            //fill values here, the element marshaller is resolved once for the whole row.
+            final Object elementType = this.template == null ? c.getComponentType () == null ? c : c.getComponentType () : this.template;
+            final JIMarshalUnMarshalHelper.TypeCodec codec = JIMarshalUnMarshalHelper.getCodec ( elementType instanceof Class ? (Class)elementType : elementType.getClass () );
+            for ( int i = 0; i < count; i++ )
             {
-                //fill value here
-                //Array.set(array,i,new Float(i));
-                if ( this.template == null )
-                {
-                    Array.set ( array, i, JIMarshalUnMarshalHelper.deSerialize ( ndr, c.getComponentType () == null ? c : c.getComponentType (), defferedPointers, FLAG | JIFlags.FLAG_REPRESENTATION_ARRAY, additionalData ) );
-                }
-                else
-                {
-                    Array.set ( array, i, JIMarshalUnMarshalHelper.deSerialize ( ndr, this.template, defferedPointers, FLAG | JIFlags.FLAG_REPRESENTATION_ARRAY, additionalData ) );
-                }
+                elements[i] = codec.decode ( ndr, elementType, defferedPointers, FLAG | JIFlags.FLAG_REPRESENTATION_ARRAY, additionalData );
             }
-            else
+        }
+        else
+        {
+            for ( int i = 0; i < count; i++ )
             {
-                Array.set ( array, i, recurseDecode ( retVal, ndr, arrayType, dimension - 1, defferedPointers, FLAG, additionalData ) );
+                elements[i] = recurseDecode ( retVal, ndr, arrayType, dimension - 1, defferedPointers, FLAG, additionalData );
             }
         }
 
@@ -686,6 +766,18 @@ public final class JIArray implements Serializable
             return 0;
         }
 
+        if ( ! ( this.memberArray instanceof Object[] ) )
+        {
+            final int length = Array.getLength ( this.memberArray );
+            for ( int j = 0; j < length / 2; j++ )
+            {
+                final Object temp = Array.get ( this.memberArray, j );
+                Array.set ( this.memberArray, j, Array.get ( this.memberArray, length - j - 1 ) );
+                Array.set ( this.memberArray, length - j - 1, temp );
+            }
+            return length;
+        }
+
         int i = 0;
         final Stack stack = new Stack ();
         for ( i = 0; i < ( (Object[])this.memberArray ).length; i++ )
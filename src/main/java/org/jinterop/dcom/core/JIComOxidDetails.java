@@ -48,7 +48,7 @@ final class JIComOxidDetails
 
     private int protectionLevel = 2;
 
-    private ThreadGroup remUnknownThread = null;
+    private JIComRuntimeExecutor.TaskGroup remUnknownTasks = null;
 
     JIComOxidDetails ( final JILocalCoClass javaInstance, final JIOxid oxid, final JIObjectId oid, final String iid, final String ipid, final JIInterfacePointer ptr, final JIComOxidRuntimeHelper helper, final int protectionLevel )
     {
@@ -116,23 +116,23 @@ final class JIComOxidDetails
         return this.protectionLevel;
     }
 
-    void setRemUnknownThreadGroup ( final ThreadGroup remUnknown )
+    void setRemUnknownTaskGroup ( final JIComRuntimeExecutor.TaskGroup remUnknown )
     {
-        this.remUnknownThread = remUnknown;
+        this.remUnknownTasks = remUnknown;
     }
 
-    void interruptRemUnknownThreadGroup ()
+    void interruptRemUnknownTaskGroup ()
     {
-        if ( this.remUnknownThread != null )
+        if ( this.remUnknownTasks != null )
         {
             try
             {
-                this.remUnknownThread.interrupt ();
+                this.remUnknownTasks.interrupt ();
                 //				remUnknownThread.destroy();
             }
             catch ( final Exception e )
             {
-                logger.debug ( "JIComOxidDetails interruptRemUnknownThreadGroup", e );
+                logger.debug ( "JIComOxidDetails interruptRemUnknownTaskGroup", e );
             }
         }
     }
@@ -30,6 +30,14 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.channels.ServerSocketChannel;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Thread for Oxid Resolver. Creates and accepts socket
@@ -69,7 +77,12 @@ final class JIComOxidRuntime
 
     private static HashMap mapOfSetIdVsListOfOIDs = new HashMap (); //com client , java server
 
-    private static HashMap mapOfSessionVsPingSetHolder = new HashMap (); //com client , java server
+    private static final Map mapOfSessionVsPingSetHolder = new ConcurrentHashMap (); //com client , java server, each holder guards itself
+
+    private static HashMap mapOfRemUnknownIpidVsDetails = new HashMap (); //java server , com client, only for shared listeners
+
+    //port and task group of the listener shared by all components exported in a session.
+    private static HashMap mapOfSessionIdsVsSharedListener = new HashMap (); //java server , com client
 
     //private static HashMap mapOfIPIDVsOID = new HashMap(); //com client , java server, //IPID vs JIObjectId, for increasing\decreasing references 
     private static HashMap mapOfAddressVsStub = new HashMap (); //java client , com server, so that we don't have to keep doing bind everytime.
@@ -80,17 +93,62 @@ final class JIComOxidRuntime
 
     private static final Object mutex2 = new Object ();//for access to the maps
 
-    private static final Object mutex3 = new Object (); //for access to the AddressVsSession,Stub Map
-
     private static final Object mutex4 = new Object (); //for access to the mapOfAddressVsStub 
 
     private static ServerSocket serverSocket = null;
 
     private static Random randomGen = new Random ( Double.doubleToRawLongBits ( Math.random () ) );
 
-    private static Timer pingTimer_2minutes = new Timer ( true );
+    private static final long CLIENT_PING_INTERVAL = 4 * 60 * 1000;
+
+    private static final long SERVER_PING_INTERVAL = 8 * 60 * 1000;
+
+    //socket timeout of a ping call, the COM server expires our objects after 3 missed pings of 2 minutes.
+    private static final int PING_TIMEOUT = 60 * 1000;
+
+    //a failed ping is tried again after this, instead of waiting for the next round.
+    private static final long PING_RETRY_DELAY = 30 * 1000;
 
-    private static Timer pingTimer_8minutes = new Timer ( true );
+    private static final int MAX_PARALLEL_PINGS = 8;
+
+    private static ScheduledFuture clientPingTask = null;
+
+    private static ScheduledFuture serverPingTask = null;
+
+    //the pings of each COM server run in a task of their own, so that a server which does not answer stalls only its own pings.
+    private static final ThreadPoolExecutor pingPool;
+
+    //addresses whose ping task is queued or running.
+    private static final Set pingsInFlight = Collections.newSetFromMap ( new ConcurrentHashMap () );
+
+    //runs the ping rounds and retries, kept apart from JIComScheduler so that hung reference releases cannot hold up the pings.
+    private static final ScheduledThreadPoolExecutor pingTimer;
+
+    static
+    {
+        pingTimer = new ScheduledThreadPoolExecutor ( 1, new ThreadFactory () {
+            @Override
+            public Thread newThread ( final Runnable r )
+            {
+                final Thread thread = new Thread ( r, "jI_OxidPingTimer" );
+                thread.setDaemon ( true );
+                return thread;
+            }
+        } );
+        pingTimer.setRemoveOnCancelPolicy ( true );
+
+        final AtomicInteger counter = new AtomicInteger ();
+        pingPool = new ThreadPoolExecutor ( MAX_PARALLEL_PINGS, MAX_PARALLEL_PINGS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue (), new ThreadFactory () {
+            @Override
+            public Thread newThread ( final Runnable r )
+            {
+                final Thread thread = new Thread ( r, "jI_OxidPinger-" + counter.incrementAndGet () );
+                thread.setDaemon ( true );
+                return thread;
+            }
+        } );
+        pingPool.allowCoreThreadTimeOut ( true );
+    }
 
     //one per session.
     private static class PingSetHolder
@@ -115,6 +173,9 @@ final class JIComOxidRuntime
 
         Map pingedOnce = new HashMap ();
 
+        //OIDs removed from the set but whose deletion has not yet been acknowledged by the server.
+        List pendingDels = new ArrayList ();
+
         @Override
         public String toString ()
         {
@@ -126,7 +187,7 @@ final class JIComOxidRuntime
     //if that (currenttime - thattime) is < ping interval...all is okay, otherwise , all it's details are erased, thus 
     //removing any reference of the given java server from j-Interop library, after which if no one outside has references, this
     //object can be GCed.
-    private static class ServerPingTimerTask extends TimerTask
+    private static class ServerPingTimerTask implements Runnable
     {
         @Override
         public void run ()
@@ -157,10 +218,11 @@ final class JIComOxidRuntime
                         mapOfIPIDVsComponent.remove ( details.getIpid () );
                         mapOfJavaVsOxidDetails.remove ( component );
                         listOfExportedJavaComponents.remove ( component );
+                        removeRemUnknownIpid ( details );
                         itr.remove ();
 
                         //the thread associated with this will also stop.
-                        details.interruptRemUnknownThreadGroup ();
+                        details.interruptRemUnknownTaskGroup ();
 
                         component = null;
                         details = null;
@@ -194,13 +256,14 @@ final class JIComOxidRuntime
                 {
                     mapOfOxidVsOxidDetails.remove ( details.getOxid () );
                     mapOfIPIDVsComponent.remove ( details.getIpid () );
+                    removeRemUnknownIpid ( details );
                 }
                 mapOfJavaVsOxidDetails.remove ( component );
                 listOfExportedJavaComponents.remove ( component );
                 //the thread associated with this will also stop.
                 if ( details != null )
                 {
-                    details.interruptRemUnknownThreadGroup ();
+                    details.interruptRemUnknownTaskGroup ();
                 }
                 component = null;
                 details = null;
@@ -208,114 +271,317 @@ final class JIComOxidRuntime
             }
 
             oids.clear ();
+
+            //no more components for this session, the shared listener can go as well.
+            final Object[] sharedListener = (Object[])mapOfSessionIdsVsSharedListener.remove ( new Integer ( sessionId ) );
+            if ( sharedListener != null )
+            {
+                ( (JIComRuntimeExecutor.TaskGroup)sharedListener[1] ).interrupt ();
+            }
         }
     }
 
-    private static class ClientPingTimerTask extends TimerTask
+    private static void removeRemUnknownIpid ( final JIComOxidDetails details )
     {
-        @Override
-        public void run ()
+        if ( details.getRemUnknownIpid () != null )
+        {
+            mapOfRemUnknownIpidVsDetails.remove ( details.getRemUnknownIpid ().toUpperCase () );
+        }
+    }
+
+    //will get called from OxidResolverImpl only, starts the listener of the session on first use.
+    static int getSharedRemUnknownPort ( final JIComOxidDetails details ) throws IOException
+    {
+        final int sessionId = details.getReferent ().getSession ().getSessionIdentifier ();
+        synchronized ( mutex2 )
         {
+            mapOfRemUnknownIpidVsDetails.put ( details.getRemUnknownIpid ().toUpperCase (), details );
 
-            Iterator itr = null;
-            synchronized ( mutex3 )
+            Object[] sharedListener = (Object[])mapOfSessionIdsVsSharedListener.get ( new Integer ( sessionId ) );
+            if ( sharedListener == null )
             {
-                itr = ( (Map)mapOfSessionVsPingSetHolder.clone () ).entrySet ().iterator ();
+                logger.debug ( "Starting shared RemUnknown listener for session: {}", sessionId );
+                sharedListener = details.getCOMRuntimeHelper ().startRemUnknown ( IJIComObject.IID, null, null, new ArrayList (), sessionId );
+                mapOfSessionIdsVsSharedListener.put ( new Integer ( sessionId ), sharedListener );
             }
+            return ( (Integer)sharedListener[0] ).intValue ();
+        }
+    }
 
-            logger.debug ( "Running ClientPingTimerTask !" );
-            //iterate over the map and get the corresponding stubs and use there sessions to 
-            //stub is created here and used per address
+    static JIComOxidDetails getDetailsFromRemUnknownIpid ( final String ipid )
+    {
+        synchronized ( mutex2 )
+        {
+            return (JIComOxidDetails)mapOfRemUnknownIpidVsDetails.get ( ipid.toUpperCase () );
+        }
+    }
+
+    //IIDs (with version) of all components exported in the session, for accepting binds on a shared listener.
+    static List getSupportedInterfacesForSession ( final int sessionId )
+    {
+        final List list = new ArrayList ();
+        synchronized ( mutex2 )
+        {
+            final List oids = (List)mapOfSessionIdsVsOIDs.get ( new Integer ( sessionId ) );
+            if ( oids == null )
+            {
+                return list;
+            }
 
-            //if set id is null send a complex ping to get back the set id for all the OIDs in the
-            //PingSetHolder
+            for ( int i = 0; i < oids.size (); i++ )
+            {
+                final JILocalCoClass component = (JILocalCoClass)mapOfOIDVsComponents.get ( oids.get ( i ) );
+                final JIComOxidDetails details = (JIComOxidDetails)mapOfJavaVsOxidDetails.get ( component );
+                if ( details == null )
+                {
+                    continue;
+                }
+                list.add ( details.getIID ().toUpperCase () + ":0.0" );
+                final List supported = component.getSupportedInterfaces ();
+                for ( int j = 0; j < supported.size (); j++ )
+                {
+                    list.add ( ( (String)supported.get ( j ) ).toUpperCase () + ":0.0" );
+                }
+            }
+        }
+        return list;
+    }
 
-            while ( itr.hasNext () )
+    //groups the ping sets by COM server and hands each server to the ping pool.
+    private static class ClientPingTimerTask implements Runnable
+    {
+        @Override
+        public void run ()
+        {
+            logger.debug ( "Running ClientPingTimerTask !" );
+
+            final Map mapOfAddressVsHolders = new HashMap ();
+            for ( final Iterator itr = mapOfSessionVsPingSetHolder.entrySet ().iterator (); itr.hasNext (); )
             {
                 final Map.Entry entry = (Map.Entry)itr.next ();
-                final PingSetHolder holder = (PingSetHolder)entry.getValue ();
                 final String address = ( (JISession)entry.getKey () ).getTargetServer ();
-                //will get it from the cache, since it is getting called after every 4 minutes
-                //what if this stub has timed out, I guess I will have to ask the developers to increase the timeout for now.
-                JIComOxidStub stub = null;
-                synchronized ( mutex4 )
+                List holders = (List)mapOfAddressVsHolders.get ( address );
+                if ( holders == null )
                 {
-                    stub = (JIComOxidStub)mapOfAddressVsStub.get ( address );
-                    if ( stub == null )
-                    {
-                        stub = new JIComOxidStub ( address, holder.domain, holder.username, holder.password );
-                        mapOfAddressVsStub.put ( address, stub );
-                    }
+                    holders = new ArrayList ();
+                    mapOfAddressVsHolders.put ( address, holders );
                 }
+                holders.add ( entry );
+            }
 
-                final ArrayList listOfAddedOIDs = new ArrayList ();
-                final ArrayList listOfRemovedOIDs = new ArrayList ();
-                //form a list if OID is 0 ref
-                synchronized ( mutex3 )
+            for ( final Iterator itr = mapOfAddressVsHolders.entrySet ().iterator (); itr.hasNext (); )
+            {
+                final Map.Entry entry = (Map.Entry)itr.next ();
+                submitPing ( (String)entry.getKey (), (List)entry.getValue () );
+            }
+        }
+    }
+
+    private static void submitPing ( final String address, final List holders )
+    {
+        //the previous ping of this server is still hanging, it will report its own failure.
+        if ( !pingsInFlight.add ( address ) )
+        {
+            logger.debug ( "Ping for {} still in progress, skipping this round", address );
+            return;
+        }
+
+        try
+        {
+            pingPool.execute ( new Runnable () {
+                @Override
+                public void run ()
                 {
-                    for ( final Iterator itr2 = holder.currentSetOIDs.keySet ().iterator (); itr2.hasNext (); )
+                    boolean failed = false;
+                    try
                     {
-                        final JIObjectId oid = (JIObjectId)itr2.next ();
-                        if ( oid.getIPIDRefCount () == 0 )
-                        {
-                            if ( !oid.dontping )
-                            {
-                                listOfRemovedOIDs.add ( oid );
-                                holder.pingedOnce.remove ( oid );
-                                holder.modified = true;
-                            }
-                            itr2.remove ();
-                        }
-                        else
+                        for ( int i = 0; i < holders.size (); i++ )
                         {
-                            if ( !oid.dontping && !holder.pingedOnce.containsKey ( oid ) )
+                            final Map.Entry entry = (Map.Entry)holders.get ( i );
+                            if ( !ping ( address, (JISession)entry.getKey (), (PingSetHolder)entry.getValue () ) )
                             {
-                                listOfAddedOIDs.add ( oid );
-                                holder.pingedOnce.put ( oid, oid );
-                                holder.modified = true;
+                                failed = true;
                             }
                         }
                     }
-                }
+                    catch ( final Exception e )
+                    {
+                        logger.warn ( "ClientPingTimerTask: ping of " + address + " failed", e );
+                        failed = true;
+                    }
+                    finally
+                    {
+                        pingsInFlight.remove ( address );
+                    }
 
-                logger.debug ( "Within ClientPingTimerTask: holder.currentSetOIDs, current size of which is {}", holder.currentSetOIDs.size () );
+                    if ( failed )
+                    {
+                        schedulePingRetry ( address );
+                    }
+                }
+            } );
+        }
+        catch ( final RuntimeException e )
+        {
+            //rejected, the pool is shut down.
+            pingsInFlight.remove ( address );
+        }
+    }
 
-                //this is the first time this is going and objects with no references will not be added to ping set.
-                if ( holder.setId == null )
+    private static void schedulePingRetry ( final String address )
+    {
+        pingTimer.schedule ( new Runnable () {
+            @Override
+            public void run ()
+            {
+                final List holders = new ArrayList ();
+                for ( final Iterator itr = mapOfSessionVsPingSetHolder.entrySet ().iterator (); itr.hasNext (); )
                 {
-                    listOfRemovedOIDs.clear ();
+                    final Map.Entry entry = (Map.Entry)itr.next ();
+                    if ( address.equals ( ( (JISession)entry.getKey () ).getTargetServer () ) )
+                    {
+                        holders.add ( entry );
+                    }
                 }
+                if ( !holders.isEmpty () )
+                {
+                    logger.debug ( "Retrying ping of {}", address );
+                    submitPing ( address, holders );
+                }
+            }
+        }, PING_RETRY_DELAY, TimeUnit.MILLISECONDS );
+    }
 
-                boolean isSimplePing = false;
+    //sends a simple ping if the set is unchanged, otherwise a complex ping with the OIDs added and removed since the last successful one.
+    private static boolean ping ( final String address, final JISession session, final PingSetHolder holder )
+    {
+        //will get it from the cache, since it is getting called after every 4 minutes
+        JIComOxidStub stub = null;
+        synchronized ( mutex4 )
+        {
+            stub = (JIComOxidStub)mapOfAddressVsStub.get ( address );
+            if ( stub == null )
+            {
+                stub = new JIComOxidStub ( address, session, holder.domain, holder.username, holder.password, PING_TIMEOUT );
+                mapOfAddressVsStub.put ( address, stub );
+            }
+        }
 
-                //No additions and no deletions
-                if ( holder.setId != null && !holder.modified )
+        final ArrayList listOfAddedOIDs = new ArrayList ();
+        final ArrayList listOfRemovedOIDs;
+        final byte[] setId;
+        final boolean isSimplePing;
+        final int seqNum;
+        //form a list if OID is 0 ref
+        synchronized ( holder )
+        {
+            for ( final Iterator itr2 = holder.currentSetOIDs.keySet ().iterator (); itr2.hasNext (); )
+            {
+                final JIObjectId oid = (JIObjectId)itr2.next ();
+                if ( oid.getIPIDRefCount () == 0 )
+                {
+                    if ( !oid.dontping )
+                    {
+                        holder.pendingDels.add ( oid );
+                        holder.pingedOnce.remove ( oid );
+                        holder.modified = true;
+                    }
+                    itr2.remove ();
+                }
+                else
                 {
-                    //send simple set ping
-                    isSimplePing = true;
+                    if ( !oid.dontping && !holder.pingedOnce.containsKey ( oid ) )
+                    {
+                        listOfAddedOIDs.add ( oid );
+                        holder.pingedOnce.put ( oid, oid );
+                        holder.modified = true;
+                    }
                 }
+            }
 
-                //seqNum will be 0 for simple ping, but incremented for complex pings. seqNum is per setId. first one will be 0 and increments
-                //there on...
-                holder.setId = stub.call ( isSimplePing, holder.setId, listOfAddedOIDs, listOfRemovedOIDs, isSimplePing ? 0 : holder.seqNum++ );
+            logger.debug ( "Within ClientPingTimerTask: holder.currentSetOIDs, current size of which is {}", holder.currentSetOIDs.size () );
 
-                logger.debug ( "Within ClientPingTimerTask: holder.seqNum {}", holder.seqNum );
+            //this is the first time this is going and objects with no references will not be added to ping set.
+            if ( holder.setId == null )
+            {
+                holder.pendingDels.clear ();
+            }
+            listOfRemovedOIDs = new ArrayList ( holder.pendingDels );
 
-                holder.modified = false;
-                //stub.close(); commenting this since we are caching the stub.
-                if ( holder.closed )
+            //No additions and no deletions, send simple set ping
+            isSimplePing = holder.setId != null && !holder.modified;
+
+            //seqNum will be 0 for simple ping, but incremented for complex pings. seqNum is per setId. first one will be 0 and increments
+            //there on...
+            seqNum = isSimplePing ? 0 : holder.seqNum++;
+            setId = holder.setId;
+            holder.modified = false;
+        }
+
+        final long start = System.currentTimeMillis ();
+        byte[] newSetId = null;
+        try
+        {
+            newSetId = stub.call ( isSimplePing, setId, listOfAddedOIDs, listOfRemovedOIDs, seqNum );
+        }
+        catch ( final JIException e )
+        {
+            final long latency = System.currentTimeMillis () - start;
+            session.recordPing ( latency, false );
+            logger.warn ( "Ping of {} for session {} failed after {} ms, {} failures so far: {}", new Object[] { address, new Integer ( session.getSessionIdentifier () ), new Long ( latency ), new Long ( session.getNumberOfPingFailures () ), e.getMessage () } );
+
+            synchronized ( holder )
+            {
+                if ( e.getErrorCode () == JIErrorCodes.RPC_E_SYS_CALL_FAILED )
                 {
-                    //this means that this set is empty and there is no need for it. The set has emptied  itself and
-                    //will get removed from COM servers side as well.
-                    logger.debug ( "Within ClientPingTimerTask: Holder {} is empty, will remove this from mapOfSessionVsPingSetHolder", holder );
-                    itr.remove ();
-                    synchronized ( mutex3 )
+                    //did not go through, send the same delta again.
+                    for ( int i = 0; i < listOfAddedOIDs.size (); i++ )
                     {
-                        mapOfSessionVsPingSetHolder.remove ( entry.getKey () );
+                        holder.pingedOnce.remove ( listOfAddedOIDs.get ( i ) );
                     }
                 }
+                else
+                {
+                    //the server rejected the set (or does not know it anymore), build a new one with the next complex ping.
+                    holder.setId = null;
+                    holder.pingedOnce.clear ();
+                    holder.pendingDels.clear ();
+                }
+                holder.modified = true;
+            }
+
+            if ( e.getErrorCode () == JIErrorCodes.RPC_E_SYS_CALL_FAILED )
+            {
+                //the connection is likely gone, the next attempt binds again.
+                synchronized ( mutex4 )
+                {
+                    if ( mapOfAddressVsStub.get ( address ) == stub )
+                    {
+                        mapOfAddressVsStub.remove ( address );
+                    }
+                }
+                stub.close ();
             }
+            return false;
         }
+
+        session.recordPing ( System.currentTimeMillis () - start, true );
+
+        synchronized ( holder )
+        {
+            holder.setId = newSetId;
+            holder.pendingDels.removeAll ( listOfRemovedOIDs );
+            logger.debug ( "Within ClientPingTimerTask: holder.seqNum {}", holder.seqNum );
+            //stub.close(); commenting this since we are caching the stub.
+            if ( holder.closed )
+            {
+                //this means that this set is empty and there is no need for it. The set has emptied  itself and
+                //will get removed from COM servers side as well.
+                logger.debug ( "Within ClientPingTimerTask: Holder {} is empty, will remove this from mapOfSessionVsPingSetHolder", holder );
+                mapOfSessionVsPingSetHolder.remove ( session, holder );
+            }
+        }
+        return true;
     }
 
     static
@@ -331,25 +597,35 @@ final class JIComOxidRuntime
     //ip address
     static void addUpdateOXIDs ( final JISession session, final String IPID, JIObjectId oid )
     {
-        synchronized ( mutex3 )
+        PingSetHolder holder = null;
+        while ( true )
         {
             //make sure this is the IP address
-            PingSetHolder holder = (PingSetHolder)mapOfSessionVsPingSetHolder.get ( session );
+            holder = (PingSetHolder)mapOfSessionVsPingSetHolder.get ( session );
             if ( holder == null )
             {
                 //new 
-                holder = new PingSetHolder ();
-                holder.username = session.getUserName ();
-                holder.password = session.getPassword ();
-                holder.domain = session.getDomain ();
-                holder.currentSetOIDs.put ( oid, oid );
-                holder.modified = true;
-                holder.seqNum = 0;
-                mapOfSessionVsPingSetHolder.put ( session, holder );
+                final PingSetHolder newHolder = new PingSetHolder ();
+                newHolder.username = session.getUserName ();
+                newHolder.password = session.getPassword ();
+                newHolder.domain = session.getDomain ();
+                newHolder.seqNum = 0;
+                holder = (PingSetHolder)mapOfSessionVsPingSetHolder.putIfAbsent ( session, newHolder );
+                if ( holder == null )
+                {
+                    holder = newHolder;
+                }
             }
-            else
-            //found , means it is another call for a new IPID
+
+            synchronized ( holder )
             {
+                //emptied and removed meanwhile, start a new one.
+                if ( holder.closed )
+                {
+                    mapOfSessionVsPingSetHolder.remove ( session, holder );
+                    continue;
+                }
+
                 final JIObjectId oid2 = (JIObjectId)holder.currentSetOIDs.get ( oid );
                 if ( oid2 != null )
                 {
@@ -362,21 +638,21 @@ final class JIComOxidRuntime
                     holder.currentSetOIDs.put ( oid, oid );
                     holder.modified = true;
                 }
-            }
 
-            oid.incrementIPIDRefCountBy1 ();
-            logger.debug ( "addUpdateOXIDs: finally this oid is {}", oid );
+                oid.incrementIPIDRefCountBy1 ();
+                logger.debug ( "addUpdateOXIDs: finally this oid is {}", oid );
+                return;
+            }
         }
-
     }
 
     static void delIPIDReference ( final String IPID, JIObjectId oid, final JISession session )
     {
-        synchronized ( mutex3 )
+        final PingSetHolder holder = (PingSetHolder)mapOfSessionVsPingSetHolder.get ( session );
+        //this will be non-null, since we are trying to remove an IPID reference so the PingSet for its OID should exist
+        if ( holder != null )
         {
-            final PingSetHolder holder = (PingSetHolder)mapOfSessionVsPingSetHolder.get ( session );
-            //this will be non-null, since we are trying to remove an IPID reference so the PingSet for its OID should exist
-            if ( holder != null )
+            synchronized ( holder )
             {
                 final JIObjectId oid2 = (JIObjectId)holder.currentSetOIDs.get ( oid );
                 if ( oid2 != null )
@@ -403,7 +679,7 @@ final class JIComOxidRuntime
                     if ( holder.currentSetOIDs.size () == 0 )
                     {
                         holder.closed = true;
-                        mapOfSessionVsPingSetHolder.remove ( session );
+                        mapOfSessionVsPingSetHolder.remove ( session, holder );
                     }
                     if ( logger.isInfoEnabled () )
                     {
@@ -411,23 +687,23 @@ final class JIComOxidRuntime
                     }
                 }
             }
-            else
+        }
+        else
+        {
+            if ( logger.isWarnEnabled () )
             {
-                if ( logger.isWarnEnabled () )
-                {
-                    logger.warn ( "In delIPIDReference: Could not find PingSetHolder for this session: " + session.getSessionIdentifier () + " , temp oid is " + oid + " , and IPID is " + IPID );
-                }
+                logger.warn ( "In delIPIDReference: Could not find PingSetHolder for this session: " + session.getSessionIdentifier () + " , temp oid is " + oid + " , and IPID is " + IPID );
             }
         }
     }
 
     static void clearIPIDsforSession ( final JISession session )
     {
-        synchronized ( mutex3 )
+        //Should be not remove this entry ??? I think it is being retained only for the pings ... we should let this go.
+        final PingSetHolder holder = (PingSetHolder)mapOfSessionVsPingSetHolder.remove ( session );
+        if ( holder != null )
         {
-            //make sure this is the IP address
-            final PingSetHolder holder = (PingSetHolder)mapOfSessionVsPingSetHolder.get ( session );
-            if ( holder != null )
+            synchronized ( holder )
             {
                 logger.debug ( "clearIPIDsforSession: holder.currentSetOIDs's size is {}", holder.currentSetOIDs.size () );
 
@@ -442,9 +718,6 @@ final class JIComOxidRuntime
                 holder.currentSetOIDs.clear (); //being done since this session is being destroyed and the corresponding COM server
                                                 //need not be retained by us.
                 holder.closed = true;
-
-                //Should be not remove this entry ??? I think it is being retained only for the pings ... we should let this go.
-                mapOfSessionVsPingSetHolder.remove ( session );
             }
         }
 
@@ -462,11 +735,11 @@ final class JIComOxidRuntime
 
     static synchronized void startResolverTimer ()
     {
-        //schedule only 1 timer task , the task to ping the OIDs obtained.
-        pingTimer_2minutes.scheduleAtFixedRate ( new ClientPingTimerTask (), 0, 4 * 60 * 1000 );
+        //the task to ping the OIDs obtained.
+        clientPingTask = pingTimer.scheduleWithFixedDelay ( new ClientPingTimerTask (), 0, CLIENT_PING_INTERVAL, TimeUnit.MILLISECONDS );
         if ( JISystem.isJavaCoClassAutoCollectionSet () )
         {
-            pingTimer_8minutes.scheduleAtFixedRate ( new ServerPingTimerTask (), 0, 8 * 60 * 1000 );
+            serverPingTask = pingTimer.scheduleWithFixedDelay ( new ServerPingTimerTask (), 0, SERVER_PING_INTERVAL, TimeUnit.MILLISECONDS );
         }
     }
 
@@ -487,7 +760,7 @@ final class JIComOxidRuntime
                 {
                     final ServerSocketChannel serverSocketChannel = ServerSocketChannel.open ();
                     serverSocket = serverSocketChannel.socket ();//new ServerSocket(0); //bind on any free port
-                    serverSocket.bind ( null );
+                    JIComOxidRuntimeHelper.bindCallbackSocket ( serverSocket );
                     oxidResolverPort = serverSocket.getLocalPort ();
                     //System.err.println("VIKRAM: oxidResolverPort: " + oxidResolverPort);
                     // server infinite loop
@@ -548,16 +821,27 @@ final class JIComOxidRuntime
         {
         }
 
-        pingTimer_2minutes.cancel ();
-        pingTimer_8minutes.cancel ();
+        if ( clientPingTask != null )
+        {
+            clientPingTask.cancel ( false );
+        }
+        if ( serverPingTask != null )
+        {
+            serverPingTask.cancel ( false );
+        }
+        pingTimer.shutdown ();
+        pingPool.shutdownNow ();
 
-        final Iterator itr = mapOfAddressVsStub.values ().iterator ();
-        while ( itr.hasNext () )
+        synchronized ( mutex4 )
         {
-            final JIComOxidStub s = (JIComOxidStub)itr.next ();
-            s.close ();
+            final Iterator itr = mapOfAddressVsStub.values ().iterator ();
+            while ( itr.hasNext () )
+            {
+                final JIComOxidStub s = (JIComOxidStub)itr.next ();
+                s.close ();
+            }
+            mapOfAddressVsStub.clear (); //will clean up all the others as well
         }
-        mapOfAddressVsStub.clear (); //will clean up all the others as well
     }
 
     /**
@@ -32,8 +32,11 @@ import rpc.Stub;
 import rpc.core.UUID;
 
 import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.ServerSocketChannel;
 import java.util.*;
@@ -64,7 +67,7 @@ final class JIComOxidRuntimeHelper extends Stub
 
     void startOxid ( final int portNumLocal, final int portNumRemote ) throws IOException
     {
-        final Thread oxidResolverThread = new Thread ( new Runnable () {
+        JIComRuntimeExecutor.getInstance ().execute ( null, new Runnable () {
             @Override
             public void run ()
             {
@@ -91,22 +94,57 @@ final class JIComOxidRuntimeHelper extends Stub
                 logger.debug ( "terminating startOxid thread: {}", Thread.currentThread ().getName () );
             }
         }, "jI_OxidResolver_Client[" + portNumLocal + " , " + portNumRemote + "]" );
-        oxidResolverThread.setDaemon ( true );
-        oxidResolverThread.start ();
+    }
+
+    //binds to any free port or to the first free one in the configured callback range.
+    static void bindCallbackSocket ( final ServerSocket serverSocket ) throws IOException
+    {
+        final int start = JISystem.getCallbackPortRangeStart ();
+        if ( start <= 0 )
+        {
+            serverSocket.bind ( null );
+            return;
+        }
+
+        final int end = JISystem.getCallbackPortRangeEnd ();
+        for ( int port = start; port <= end; port++ )
+        {
+            try
+            {
+                serverSocket.bind ( new InetSocketAddress ( port ) );
+                return;
+            }
+            catch ( final BindException e )
+            {
+                //in use, try the next one.
+            }
+        }
+        throw new BindException ( "No free callback port in range " + start + "-" + end );
     }
 
     //returns the port to which the server is listening.
-    Object[] startRemUnknown ( final String baseIID, final String ipidOfRemUnknown, final String ipidOfComponent, final List listOfSupportedInterfaces ) throws IOException
+    //ipidOfRemUnknown is null for the listener shared by all the components of the session sessionId.
+    Object[] startRemUnknown ( final String baseIID, final String ipidOfRemUnknown, final String ipidOfComponent, final List listOfSupportedInterfaces, final int sessionId ) throws IOException
     {
         final ServerSocketChannel serverSocketChannel = ServerSocketChannel.open ();
         final ServerSocket serverSocket = serverSocketChannel.socket ();//new ServerSocket(0);
         //	    serverSocket.setSoTimeout(120*1000); //2 min timeout.
-        serverSocket.bind ( null );
+        try
+        {
+            bindCallbackSocket ( serverSocket );
+        }
+        catch ( final IOException e )
+        {
+            serverSocketChannel.close ();
+            throw e;
+        }
         final int remUnknownPort = serverSocket.getLocalPort ();
         //have to pick up a random name so adding the ipid of remunknown this is a uuid so the string is quite random.
-        final ThreadGroup remUnknownForThisListener = new ThreadGroup ( "ThreadGroup - " + baseIID + "[" + ipidOfRemUnknown + "]" );
-        remUnknownForThisListener.setDaemon ( true );
-        final Thread remUnknownThread = new Thread ( remUnknownForThisListener, new Runnable () {
+        final String groupName = ipidOfRemUnknown == null ? "Session[" + sessionId + "]" : baseIID + "[" + ipidOfRemUnknown + "]";
+        final JIComRuntimeExecutor.TaskGroup remUnknownForThisListener = new JIComRuntimeExecutor.TaskGroup ( "TaskGroup - " + groupName );
+        remUnknownForThisListener.addResource ( serverSocketChannel );
+        final JIComRuntimeExecutor executor = JIComRuntimeExecutor.getInstance ();
+        executor.executeListener ( remUnknownForThisListener, new Runnable () {
             @Override
             public void run ()
             {
@@ -127,14 +165,15 @@ final class JIComOxidRuntimeHelper extends Stub
                             remUnknownHelper.attach ();
                         }
 
-                        //now start a new thread with this socket 
-                        final Thread remUnknown = new Thread ( remUnknownForThisListener, new Runnable () {
+                        //now start a new task with this socket 
+                        executor.execute ( remUnknownForThisListener, new Runnable () {
                             @Override
                             public void run ()
                             {
                                 try
                                 {
-                                    ( (JIComRuntimeEndpoint)remUnknownHelper.getEndpoint () ).processRequests ( new RemUnknownObject ( ipidOfRemUnknown, ipidOfComponent ), baseIID, listOfSupportedInterfaces );
+                                    final RemUnknownObject worker = ipidOfRemUnknown == null ? new RemUnknownObject ( sessionId ) : new RemUnknownObject ( ipidOfRemUnknown, ipidOfComponent );
+                                    ( (JIComRuntimeEndpoint)remUnknownHelper.getEndpoint () ).processRequests ( worker, baseIID, listOfSupportedInterfaces );
                                 }
                                 catch ( final SmbAuthException e )
                                 {
@@ -167,14 +206,16 @@ final class JIComOxidRuntimeHelper extends Stub
 
                             }
                         }, "jI_RemUnknown[" + baseIID + " , L(" + socket.getLocalPort () + "):R(" + socket.getPort () + ")]" );
-                        remUnknown.setDaemon ( true );
-                        remUnknown.start ();
                     }
                 }
                 catch ( final ClosedByInterruptException e )
                 {
                     logger.debug ( "JIComOxidRuntimeHelper RemUnknownListener" + Thread.currentThread ().getName () + " is purposefully closed by interruption.", e );
                 }
+                catch ( final AsynchronousCloseException e )
+                {
+                    logger.debug ( "JIComOxidRuntimeHelper RemUnknownListener" + Thread.currentThread ().getName () + " is purposefully closed.", e );
+                }
                 catch ( final IOException e )
                 {
                     logger.warn ( "JIComOxidRuntimeHelper RemUnknownListener on thread Id: " + Thread.currentThread ().getName (), e );
@@ -188,8 +229,6 @@ final class JIComOxidRuntimeHelper extends Stub
             }
         }, "jI_RemUnknownListener[" + baseIID + " , " + remUnknownPort + "]" );
 
-        remUnknownThread.setDaemon ( true );
-        remUnknownThread.start ();
         return new Object[] { new Integer ( remUnknownPort ), remUnknownForThisListener };
     }
 }
@@ -435,10 +474,18 @@ class OxidResolverImpl extends NdrObject implements IJICOMRuntimeWorker
             if ( port == -1 )
             {
                 final String remunknownipid = uuid.toString ();
-                final Object[] portandthread = details.getCOMRuntimeHelper ().startRemUnknown ( details.getIID (), remunknownipid, details.getIpid (), details.getReferent ().getSupportedInterfaces () );
-                port = ( (Integer)portandthread[0] ).intValue ();
-                details.setRemUnknownThreadGroup ( (ThreadGroup)portandthread[1] );
-                details.setRemUnknownIpid ( remunknownipid );
+                if ( JISystem.isSharedCallbackListenerSet () )
+                {
+                    details.setRemUnknownIpid ( remunknownipid );
+                    port = JIComOxidRuntime.getSharedRemUnknownPort ( details );
+                }
+                else
+                {
+                    final Object[] portandthread = details.getCOMRuntimeHelper ().startRemUnknown ( details.getIID (), remunknownipid, details.getIpid (), details.getReferent ().getSupportedInterfaces (), -1 );
+                    port = ( (Integer)portandthread[0] ).intValue ();
+                    details.setRemUnknownTaskGroup ( (JIComRuntimeExecutor.TaskGroup)portandthread[1] );
+                    details.setRemUnknownIpid ( remunknownipid );
+                }
             }
             details.setPortForRemUnknown ( port );
         }
@@ -527,9 +574,15 @@ class RemUnknownObject extends NdrObject implements IJICOMRuntimeWorker
     //ObjectID tells you the IPID to act on, sent via the Request calls
     private UUID objectId = null;
 
-    //this would be the ipid of this RemUnknownObject
+    //this would be the ipid of this RemUnknownObject, null if it serves all the components of a session.
     private final String selfIPID;
 
+    //session served by a shared listener, -1 otherwise.
+    private final int sessionId;
+
+    //ipids of the RemUnknowns already addressed on this connection, used only for a shared listener.
+    private final Set remUnknownIpidsSeen = new HashSet ();
+
     private String currentIID = null;
 
     private final List listOfIIDsQIed = new ArrayList ();
@@ -537,16 +590,60 @@ class RemUnknownObject extends NdrObject implements IJICOMRuntimeWorker
     RemUnknownObject ( final String ipidOfme, final String ipidOfComponent )
     {
         this.selfIPID = ipidOfme;
+        this.sessionId = -1;
         this.mapOfIpidsVsRef.put ( ipidOfComponent.toUpperCase (), new Integer ( 5 ) );
     }
 
+    //for the listener shared by all the components exported in a session, the component is identified by the
+    //IPID of its RemUnknown with the first call.
+    RemUnknownObject ( final int sessionId )
+    {
+        this.selfIPID = null;
+        this.sessionId = sessionId;
+    }
+
     //this list will get cleared after this call.
     @Override
     public List getQIedIIDs ()
     {
+        if ( this.selfIPID == null )
+        {
+            //binds may come for any component exported in the session.
+            final List list = new ArrayList ( this.listOfIIDsQIed );
+            list.addAll ( JIComOxidRuntime.getSupportedInterfacesForSession ( this.sessionId ) );
+            return list;
+        }
         return this.listOfIIDsQIed;
     }
 
+    private boolean isRemUnknownIpid ( final String ipid )
+    {
+        if ( this.selfIPID != null )
+        {
+            return this.selfIPID.equalsIgnoreCase ( ipid );
+        }
+
+        final JIComOxidDetails details = JIComOxidRuntime.getDetailsFromRemUnknownIpid ( ipid );
+        if ( details == null )
+        {
+            return false;
+        }
+
+        //the RemUnknown of a component exported in another session, this listener does not serve it.
+        final JISession session = details.getReferent ().getSession ();
+        if ( session == null || session.getSessionIdentifier () != this.sessionId )
+        {
+            return false;
+        }
+
+        if ( this.remUnknownIpidsSeen.add ( ipid.toUpperCase () ) )
+        {
+            //first call for this component on this connection, same references as a dedicated listener starts with.
+            this.mapOfIpidsVsRef.put ( details.getIpid ().toUpperCase (), new Integer ( 5 ) );
+        }
+        return true;
+    }
+
     @Override
     public boolean isResolver ()
     {
@@ -611,7 +708,7 @@ class RemUnknownObject extends NdrObject implements IJICOMRuntimeWorker
         //this means the call came for IRemUnknown apis, since selfIpid is null or matches the objectID
         //if (selfIPID == null || selfIPID.equalsIgnoreCase(ipid))
         //		if ("00000131-0000-0000-C000-000000000046".equalsIgnoreCase(currentIID))
-        if ( this.selfIPID.equalsIgnoreCase ( ipid ) )
+        if ( isRemUnknownIpid ( ipid ) )
         {
             switch ( this.opnum )
             {
@@ -19,6 +19,8 @@ package org.jinterop.dcom.core;
 
 import ndr.NdrObject;
 import ndr.NetworkDataRepresentation;
+import org.jinterop.dcom.common.JIErrorCodes;
+import org.jinterop.dcom.common.JIException;
 import org.jinterop.dcom.transport.JIComTransportFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,7 +66,11 @@ final class JIComOxidStub extends Stub
         return "99fcfec4-5260-101b-bbcb-00aa0021347a:0.0";
     }
 
-    public JIComOxidStub ( final String address, final String domain, final String username, final String password )
+    /**
+     * @param session the session whose credentials are used, its password
+     *            hashes are shared with the handshake of this stub.
+     */
+    public JIComOxidStub ( final String address, final JISession session, final String domain, final String username, final String password, final int timeout )
     {
         super ();
         super.setTransportFactory ( JIComTransportFactory.getSingleTon () );
@@ -72,11 +78,23 @@ final class JIComOxidStub extends Stub
         super.getProperties ().setProperty ( "rpc.security.username", username );
         super.getProperties ().setProperty ( "rpc.security.password", password );
         super.getProperties ().setProperty ( "rpc.ntlm.domain", domain );
+        JISession.shareCredentialCache ( session, super.getProperties () );
+        //a server which does not answer should not hold up the pings to the others for long.
+        super.getProperties ().setProperty ( "rpc.socketTimeout", String.valueOf ( timeout ) );
         super.setAddress ( "ncacn_ip_tcp:" + address + "[135]" );
 
     }
 
-    public byte[] call ( final boolean isSimplePing, final byte[] setId, final ArrayList listOfAdds, final ArrayList listOfDels, final int seqNum )
+    /**
+     * Sends a simple or complex ping.
+     *
+     * @return the setId.
+     * @throws JIException with the <code>HRESULT</code> as error code if the
+     *             server returned one, or with
+     *             {@link JIErrorCodes#RPC_E_SYS_CALL_FAILED} if the call did not
+     *             go through.
+     */
+    public byte[] call ( final boolean isSimplePing, final byte[] setId, final ArrayList listOfAdds, final ArrayList listOfDels, final int seqNum ) throws JIException
     {
         final PingObject pingObject = new PingObject ();
         pingObject.setId = setId;
@@ -99,7 +117,13 @@ final class JIComOxidStub extends Stub
         }
         catch ( final IOException e )
         {
-            logger.warn ( "call", e );
+            logger.debug ( "call", e );
+            throw new JIException ( JIErrorCodes.RPC_E_SYS_CALL_FAILED, e );
+        }
+
+        if ( pingObject.hresult != 0 )
+        {
+            throw new JIException ( pingObject.hresult );
         }
 
         //returns setId.
@@ -134,6 +158,8 @@ class PingObject extends NdrObject
 
     int seqNum = 0;
 
+    int hresult = 0;
+
     @Override
     public int getOpnum ()
     {
@@ -256,11 +282,11 @@ class PingObject extends NdrObject
                 JIMarshalUnMarshalHelper.deSerialize ( ndr, Short.class, null, JIFlags.FLAG_NULL, null );
 
                 //hresult
-                int hresult = ( (Integer)JIMarshalUnMarshalHelper.deSerialize ( ndr, Integer.class, null, JIFlags.FLAG_NULL, null ) ).intValue ();
+                this.hresult = ( (Integer)JIMarshalUnMarshalHelper.deSerialize ( ndr, Integer.class, null, JIFlags.FLAG_NULL, null ) ).intValue ();
 
-                if ( hresult != 0 )
+                if ( this.hresult != 0 )
                 {
-                    logger.error ( "Some error ! Complex ping failed , hresult: {}", hresult );
+                    logger.error ( "Some error ! Complex ping failed , hresult: {}", this.hresult );
                 }
                 else
                 {
@@ -273,11 +299,11 @@ class PingObject extends NdrObject
             case 1:// simple ping
 
                 //hresult
-                hresult = ( (Integer)JIMarshalUnMarshalHelper.deSerialize ( ndr, Integer.class, null, JIFlags.FLAG_NULL, null ) ).intValue ();
+                this.hresult = ( (Integer)JIMarshalUnMarshalHelper.deSerialize ( ndr, Integer.class, null, JIFlags.FLAG_NULL, null ) ).intValue ();
 
-                if ( hresult != 0 )
+                if ( this.hresult != 0 )
                 {
-                    logger.error ( "Some error ! Simple ping failed , hresult: {}", hresult );
+                    logger.error ( "Some error ! Simple ping failed , hresult: {}", this.hresult );
                 }
                 else
                 {
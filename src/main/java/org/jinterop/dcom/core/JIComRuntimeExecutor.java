@@ -0,0 +1,392 @@
+/**j-Interop (Pure Java implementation of DCOM protocol)
+ * Copyright (C) 2006  Vikram Roopchand
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * Though a sincere effort has been made to deliver a professional,
+ * quality product,the library itself is distributed WITHOUT ANY WARRANTY;
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110, USA
+ */
+
+package org.jinterop.dcom.core;
+
+import org.jinterop.dcom.common.JISystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Execution strategy for the tasks of the DCOM callback runtime, i.e. the
+ * OXID resolver connections and the <code>IRemUnknown</code> listeners and
+ * connections started by {@link JIComOxidRuntimeHelper}. The strategy is
+ * selected once per JVM via {@link JISystem#setCallbackExecutionMode(int, int)}.
+ *
+ * @since 3.0
+ */
+abstract class JIComRuntimeExecutor
+{
+    private final static Logger logger = LoggerFactory.getLogger ( JIComRuntimeExecutor.class );
+
+    private static JIComRuntimeExecutor instance = null;
+
+    /**
+     * Groups the tasks started for a single exported interface, so that they can
+     * be stopped together. Replaces the <code>ThreadGroup</code> which was used
+     * earlier, since pooled and virtual threads do not belong to a per listener
+     * group.
+     */
+    static final class TaskGroup
+    {
+        private final String name;
+
+        private final Set runningThreads = new HashSet ();
+
+        private final List resources = new ArrayList ();
+
+        private boolean interrupted = false;
+
+        TaskGroup ( final String name )
+        {
+            this.name = name;
+        }
+
+        /**
+         * Registers a resource (such as the listening socket) which is closed when
+         * this group is interrupted.
+         */
+        void addResource ( final Closeable resource ) throws IOException
+        {
+            synchronized ( this )
+            {
+                if ( !this.interrupted )
+                {
+                    this.resources.add ( resource );
+                    return;
+                }
+            }
+            resource.close ();
+        }
+
+        private synchronized boolean enter ( final Thread thread )
+        {
+            if ( this.interrupted )
+            {
+                return false;
+            }
+            this.runningThreads.add ( thread );
+            return true;
+        }
+
+        /**
+         * Called by the thread leaving the group. Its interrupt status is cleared
+         * under the same lock {@link #interrupt()} holds, so an interrupt meant
+         * for this group cannot reach the thread once it has left, e.g. when it
+         * goes back to a pool.
+         */
+        private synchronized void exit ( final Thread thread )
+        {
+            this.runningThreads.remove ( thread );
+            Thread.interrupted ();
+        }
+
+        void interrupt ()
+        {
+            final List toClose;
+            synchronized ( this )
+            {
+                this.interrupted = true;
+                for ( final Iterator itr = this.runningThreads.iterator (); itr.hasNext (); )
+                {
+                    ( (Thread)itr.next () ).interrupt ();
+                }
+                toClose = new ArrayList ( this.resources );
+                this.resources.clear ();
+            }
+
+            for ( final Iterator itr = toClose.iterator (); itr.hasNext (); )
+            {
+                try
+                {
+                    ( (Closeable)itr.next () ).close ();
+                }
+                catch ( final IOException e )
+                {
+                    logger.debug ( "TaskGroup interrupt: could not close resource of " + this.name, e );
+                }
+            }
+        }
+
+        @Override
+        public String toString ()
+        {
+            return "TaskGroup[" + this.name + "]";
+        }
+    }
+
+    static synchronized JIComRuntimeExecutor getInstance ()
+    {
+        if ( instance == null )
+        {
+            instance = create ( JISystem.getCallbackExecutionMode (), JISystem.getCallbackPoolSize () );
+            logger.info ( "DCOM callback runtime uses {}", instance );
+        }
+        return instance;
+    }
+
+    private static JIComRuntimeExecutor create ( final int mode, final int poolSize )
+    {
+        switch ( mode )
+        {
+            case JISystem.CALLBACK_EXECUTION_THREAD_PER_CONNECTION:
+                return new ThreadPerTaskExecutor ();
+            case JISystem.CALLBACK_EXECUTION_BOUNDED_POOL:
+                return new BoundedPoolExecutor ( poolSize );
+            case JISystem.CALLBACK_EXECUTION_VIRTUAL_THREADS:
+                if ( VirtualThreadExecutor.isSupported () )
+                {
+                    return new VirtualThreadExecutor ();
+                }
+                logger.warn ( "Virtual threads are not supported by this JVM, falling back to a bounded pool of {} threads", new Integer ( poolSize ) );
+                return new BoundedPoolExecutor ( poolSize );
+            default:
+                return VirtualThreadExecutor.isSupported () ? (JIComRuntimeExecutor)new VirtualThreadExecutor () : new BoundedPoolExecutor ( poolSize );
+        }
+    }
+
+    /**
+     * Runs <code>task</code> as a member of <code>group</code>. Interrupting the
+     * group interrupts the thread currently running the task. If the group has
+     * been interrupted already the task is not run.
+     *
+     * @param group may be <code>null</code>.
+     * @param task
+     * @param name name of the thread running the task.
+     */
+    final void execute ( final TaskGroup group, final Runnable task, final String name )
+    {
+        start ( new GroupTask ( group, task, name ), name );
+    }
+
+    /**
+     * Same as {@link #execute(TaskGroup, Runnable, String)} but for a task which
+     * blocks for its whole life, such as a listener accepting connections. These
+     * never occupy a pooled thread.
+     */
+    final void executeListener ( final TaskGroup group, final Runnable task, final String name )
+    {
+        startDedicated ( new GroupTask ( group, task, name ), name );
+    }
+
+    private static final class GroupTask implements Runnable
+    {
+        private final TaskGroup group;
+
+        private final Runnable task;
+
+        private final String name;
+
+        GroupTask ( final TaskGroup group, final Runnable task, final String name )
+        {
+            this.group = group;
+            this.task = task;
+            this.name = name;
+        }
+
+        @Override
+        public void run ()
+        {
+            final Thread current = Thread.currentThread ();
+            if ( this.group != null && !this.group.enter ( current ) )
+            {
+                return;
+            }
+            final String oldName = current.getName ();
+            current.setName ( this.name );
+            try
+            {
+                this.task.run ();
+            }
+            finally
+            {
+                current.setName ( oldName );
+                //clear a pending interrupt, the thread could be pooled.
+                if ( this.group != null )
+                {
+                    this.group.exit ( current );
+                }
+                else
+                {
+                    Thread.interrupted ();
+                }
+            }
+        }
+    }
+
+    abstract void start ( Runnable task, String name );
+
+    void startDedicated ( final Runnable task, final String name )
+    {
+        startPlatformThread ( task, name );
+    }
+
+    static void startPlatformThread ( final Runnable task, final String name )
+    {
+        final Thread thread = new Thread ( task, name );
+        thread.setDaemon ( true );
+        thread.start ();
+    }
+
+    /**
+     * Legacy behaviour, a new daemon platform thread per task.
+     */
+    private static final class ThreadPerTaskExecutor extends JIComRuntimeExecutor
+    {
+        @Override
+        void start ( final Runnable task, final String name )
+        {
+            startDedicated ( task, name );
+        }
+
+        @Override
+        public String toString ()
+        {
+            return "ThreadPerTaskExecutor";
+        }
+    }
+
+    /**
+     * Reuses a bounded number of daemon platform threads. Since callback
+     * connections are long lived and block on the socket, tasks are never
+     * queued behind busy threads: once all pooled threads are in use a dedicated
+     * thread is started for the overflow.
+     */
+    private static final class BoundedPoolExecutor extends JIComRuntimeExecutor
+    {
+        private final ThreadPoolExecutor pool;
+
+        private final AtomicInteger overflow = new AtomicInteger ();
+
+        BoundedPoolExecutor ( final int size )
+        {
+            final AtomicInteger counter = new AtomicInteger ();
+            this.pool = new ThreadPoolExecutor ( 0, Math.max ( 1, size ), 60, TimeUnit.SECONDS, new SynchronousQueue (), new ThreadFactory () {
+                @Override
+                public Thread newThread ( final Runnable r )
+                {
+                    final Thread thread = new Thread ( r, "jI_CallbackPool-" + counter.incrementAndGet () );
+                    thread.setDaemon ( true );
+                    return thread;
+                }
+            } );
+        }
+
+        @Override
+        void start ( final Runnable task, final String name )
+        {
+            try
+            {
+                this.pool.execute ( task );
+            }
+            catch ( final RejectedExecutionException e )
+            {
+                logger.debug ( "Callback pool exhausted ({} overflow threads so far), starting dedicated thread {}", new Integer ( this.overflow.incrementAndGet () ), name );
+                startDedicated ( task, name );
+            }
+        }
+
+        @Override
+        public String toString ()
+        {
+            return "BoundedPoolExecutor[max=" + this.pool.getMaximumPoolSize () + "]";
+        }
+    }
+
+    /**
+     * A virtual thread per task (Java 21 and later). The virtual thread builder is
+     * looked up reflectively so that the library still runs on older JVMs.
+     */
+    private static final class VirtualThreadExecutor extends JIComRuntimeExecutor
+    {
+        private static final MethodHandle newVirtualThread;
+
+        static
+        {
+            MethodHandle handle = null;
+            try
+            {
+                final MethodHandles.Lookup lookup = MethodHandles.publicLookup ();
+                final Class builderClass = Class.forName ( "java.lang.Thread$Builder" );
+                final MethodHandle ofVirtual = lookup.findStatic ( Thread.class, "ofVirtual", MethodType.methodType ( Class.forName ( "java.lang.Thread$Builder$OfVirtual" ) ) );
+                final MethodHandle name = lookup.findVirtual ( builderClass, "name", MethodType.methodType ( builderClass, String.class ) );
+                final MethodHandle unstarted = lookup.findVirtual ( builderClass, "unstarted", MethodType.methodType ( Thread.class, Runnable.class ) );
+                //(String, Runnable) -> Thread.ofVirtual ().name ( String ).unstarted ( Runnable )
+                final MethodHandle namedBuilder = MethodHandles.collectArguments ( name, 0, ofVirtual.asType ( MethodType.methodType ( builderClass ) ) );
+                handle = MethodHandles.filterArguments ( unstarted, 0, namedBuilder );
+                handle = handle.asType ( MethodType.methodType ( Thread.class, String.class, Runnable.class ) );
+            }
+            catch ( final Exception e )
+            {
+                handle = null;
+            }
+            newVirtualThread = handle;
+        }
+
+        static boolean isSupported ()
+        {
+            return newVirtualThread != null;
+        }
+
+        @Override
+        void start ( final Runnable task, final String name )
+        {
+            final Thread thread;
+            try
+            {
+                thread = (Thread)newVirtualThread.invokeExact ( name, task );
+            }
+            catch ( final Throwable e )
+            {
+                logger.warn ( "Could not create virtual thread " + name + ", starting platform thread", e );
+                startPlatformThread ( task, name );
+                return;
+            }
+            thread.start ();
+        }
+
+        @Override
+        void startDedicated ( final Runnable task, final String name )
+        {
+            //listeners block in accept, which is cheap on a virtual thread as well.
+            start ( task, name );
+        }
+
+        @Override
+        public String toString ()
+        {
+            return "VirtualThreadExecutor";
+        }
+    }
+}
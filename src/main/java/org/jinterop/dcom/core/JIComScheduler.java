@@ -0,0 +1,73 @@
+/**j-Interop (Pure Java implementation of DCOM protocol)
+ * Copyright (C) 2006  Vikram Roopchand
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * Though a sincere effort has been made to deliver a professional,
+ * quality product,the library itself is distributed WITHOUT ANY WARRANTY;
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110, USA
+ */
+
+package org.jinterop.dcom.core;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scheduler shared by the housekeeping timers of the framework, such as the one
+ * deciding when dereferenced interface pointers are released. Replaces the
+ * <code>java.util.Timer</code> (and thread) which was used per task earlier.
+ * Tasks must not block, calls to COM servers are handed over to pools of their
+ * own.
+ *
+ * @since 3.0
+ */
+final class JIComScheduler
+{
+    private static final ScheduledThreadPoolExecutor scheduler;
+
+    static
+    {
+        final AtomicInteger counter = new AtomicInteger ();
+        scheduler = new ScheduledThreadPoolExecutor ( 2, new ThreadFactory () {
+            @Override
+            public Thread newThread ( final Runnable r )
+            {
+                final Thread thread = new Thread ( r, "jI_Scheduler-" + counter.incrementAndGet () );
+                thread.setDaemon ( true );
+                return thread;
+            }
+        } );
+        //cancelled tasks (such as rescheduled flushes) should not pile up in the queue.
+        scheduler.setRemoveOnCancelPolicy ( true );
+    }
+
+    private JIComScheduler ()
+    {
+    }
+
+    static ScheduledFuture schedule ( final Runnable task, final long delay )
+    {
+        return scheduler.schedule ( task, delay, TimeUnit.MILLISECONDS );
+    }
+
+    static ScheduledFuture scheduleWithFixedDelay ( final Runnable task, final long initialDelay, final long delay )
+    {
+        return scheduler.scheduleWithFixedDelay ( task, initialDelay, delay, TimeUnit.MILLISECONDS );
+    }
+
+    static void shutdown ()
+    {
+        scheduler.shutdown ();
+    }
+}
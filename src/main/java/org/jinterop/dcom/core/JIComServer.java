@@ -152,7 +152,7 @@ public final class JIComServer extends Stub {
 
 		address = address.trim();
 		// address = address.replace(' ','');
-		address = "ncacn_ip_tcp:" + InetAddress.getByName(address).getHostAddress() + "[135]";
+		address = "ncacn_ip_tcp:" + JISystem.getInetAddress(address).getHostAddress() + "[135]";
 
 		initialise(clsid, address, session);
 	}
@@ -211,7 +211,7 @@ public final class JIComServer extends Stub {
 		}
 
 		address = address.trim();
-		address = InetAddress.getByName(address).getHostAddress();
+		address = JISystem.getInetAddress(address).getHostAddress();
 
 		progId.setSession(session);
 		progId.setServer(address);
@@ -284,6 +284,7 @@ public final class JIComServer extends Stub {
 		super.getProperties().setProperty("rpc.security.username", session.getUserName());
 		super.getProperties().setProperty("rpc.security.password", session.getPassword());
 		super.getProperties().setProperty("rpc.ntlm.domain", session.getDomain());
+		JISession.shareCredentialCache(session, super.getProperties());
 		super.getProperties().setProperty("rpc.socketTimeout",
 				new Integer(session.getGlobalSocketTimeout()).toString());
 		if (session.isNTLMv2Enabled()) {
@@ -870,6 +871,7 @@ public final class JIComServer extends Stub {
 			super.getProperties().setProperty("rpc.security.username", session.getUserName());
 			super.getProperties().setProperty("rpc.security.password", session.getPassword());
 			super.getProperties().setProperty("rpc.ntlm.domain", session.getDomain());
+			JISession.shareCredentialCache(session, super.getProperties());
 		}
 
 		if (logger.isInfoEnabled()) {
@@ -27,9 +27,9 @@ import org.slf4j.LoggerFactory;
 import rpc.core.UUID;
 
 import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.*;
 
 /**
@@ -90,6 +90,7 @@ public final class JILocalCoClass implements Serializable
         this.interfaceDefinition = interfaceDefinition;
         interfaceDefinition.clazz = clazz;
         interfaceDefinition.instance = instance;
+        interfaceDefinition.resolveMethodHandles ();
         this.listOfSupportedInterfaces.add ( interfaceDefinition.getInterfaceIdentifier ().toUpperCase () );
         this.mapOfIIDsToInterfaceDefinitions.put ( interfaceDefinition.getInterfaceIdentifier ().toUpperCase (), interfaceDefinition );
         this.realIID = realIID;
@@ -257,6 +258,7 @@ public final class JILocalCoClass implements Serializable
             throw new IllegalArgumentException ( JISystem.getLocalizedMessage ( JIErrorCodes.JI_COM_RUNTIME_INVALID_CONTAINER_INFO ) );
         }
         interfaceDefinition.instance = instance;
+        interfaceDefinition.resolveMethodHandles ();
         final String s = interfaceDefinition.getInterfaceIdentifier ().toUpperCase ();
         this.listOfSupportedInterfaces.add ( s );
         this.listOfSupportedEventInterfaces.add ( s );
@@ -285,6 +287,7 @@ public final class JILocalCoClass implements Serializable
             throw new IllegalArgumentException ( JISystem.getLocalizedMessage ( JIErrorCodes.JI_COM_RUNTIME_INVALID_CONTAINER_INFO ) );
         }
         interfaceDefinition.clazz = clazz;
+        interfaceDefinition.resolveMethodHandles ();
         final String s = interfaceDefinition.getInterfaceIdentifier ().toUpperCase ();
         this.listOfSupportedInterfaces.add ( s );
         this.listOfSupportedEventInterfaces.add ( s );
@@ -593,15 +596,30 @@ public final class JILocalCoClass implements Serializable
         if ( execute )
         {
             //JILocalInterfaceDefinition interfaceDefinitionOfCall = interfaceDefinition;
-            final Class calleeClazz = interfaceDefinitionOfClass.instance == null ? interfaceDefinitionOfClass.clazz : interfaceDefinitionOfClass.instance.getClass ();
-            Method method = null;
+            final Class calleeClazz = interfaceDefinitionOfClass.getCalleeClass ();
             try
             {
                 logger.debug ( "methodDescriptor: {}", methodDescriptor.getMethodName () );
-                method = calleeClazz.getDeclaredMethod ( methodDescriptor.getMethodName (), methodDescriptor.getInparametersAsClass () );
+                //resolved once per method descriptor, not with every call.
+                final MethodHandle method = interfaceDefinitionOfClass.getMethodHandle ( methodDescriptor );
                 final Object calleeInstance = interfaceDefinitionOfClass.instance == null ? calleeClazz.newInstance () : interfaceDefinitionOfClass.instance;
-                logger.debug ( "Call Back Method to be executed: {} , to be executed on {}", method, calleeInstance );
-                final Object result = method.invoke ( calleeInstance, params );
+                logger.debug ( "Call Back Method to be executed: {} , to be executed on {}", methodDescriptor.getMethodName (), calleeInstance );
+                final Object[] args = params == null ? new Object[0] : params;
+                if ( args.length != methodDescriptor.getInparametersAsClass ().length )
+                {
+                    throw new IllegalArgumentException ( "wrong number of arguments for " + methodDescriptor.getMethodName () );
+                }
+
+                final Object result;
+                try
+                {
+                    result = method.invokeExact ( calleeInstance, args );
+                }
+                catch ( final Throwable e )
+                {
+                    //same as reflection, whatever the callee throws is reported wrapped.
+                    throw new InvocationTargetException ( e );
+                }
 
                 if ( result == null )
                 {
@@ -21,8 +21,15 @@ import org.jinterop.dcom.common.JIErrorCodes;
 import org.jinterop.dcom.common.JISystem;
 
 import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * <p>
@@ -53,6 +60,23 @@ public final class JILocalInterfaceDefinition implements Serializable
 
     Class clazz = null;
 
+    //method descriptor vs the handle invoking it on the callee class, see resolveMethodHandles().
+    private transient volatile ResolvedMethods resolvedMethods = null;
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType ( Object.class, Object.class, Object[].class );
+
+    private static final class ResolvedMethods
+    {
+        final Class calleeClazz;
+
+        final Map handles = new ConcurrentHashMap ();
+
+        ResolvedMethods ( final Class calleeClazz )
+        {
+            this.calleeClazz = calleeClazz;
+        }
+    }
+
     private boolean dispInterface = true;
 
     /**
@@ -117,6 +141,91 @@ public final class JILocalInterfaceDefinition implements Serializable
 
         this.nameVsMethodInfo.put ( methodDescriptor.getMethodName (), methodDescriptor );
 
+        final ResolvedMethods resolved = this.resolvedMethods;
+        if ( resolved != null )
+        {
+            resolveQuietly ( resolved, methodDescriptor );
+        }
+    }
+
+    Class getCalleeClass ()
+    {
+        return this.instance == null ? this.clazz : this.instance.getClass ();
+    }
+
+    /**
+     * Resolves the Java methods implementing the method descriptors on the
+     * class (or instance) serving this definition, so that callbacks are
+     * dispatched without a reflective lookup. Called by the framework whenever
+     * the class or instance is set. Methods which cannot be resolved are
+     * reported when they are called.
+     */
+    void resolveMethodHandles ()
+    {
+        final Class calleeClazz = getCalleeClass ();
+        if ( calleeClazz == null )
+        {
+            this.resolvedMethods = null;
+            return;
+        }
+
+        final ResolvedMethods resolved = new ResolvedMethods ( calleeClazz );
+        for ( final Iterator itr = this.opnumVsMethodInfo.values ().iterator (); itr.hasNext (); )
+        {
+            resolveQuietly ( resolved, (JILocalMethodDescriptor)itr.next () );
+        }
+        this.resolvedMethods = resolved;
+    }
+
+    private static void resolveQuietly ( final ResolvedMethods resolved, final JILocalMethodDescriptor methodDescriptor )
+    {
+        try
+        {
+            resolved.handles.put ( methodDescriptor, resolve ( resolved.calleeClazz, methodDescriptor ) );
+        }
+        catch ( final NoSuchMethodException e )
+        {
+            //reported on call.
+        }
+        catch ( final IllegalAccessException e )
+        {
+            //reported on call.
+        }
+    }
+
+    //returns a handle of type (Object callee, Object[] params)Object
+    private static MethodHandle resolve ( final Class calleeClazz, final JILocalMethodDescriptor methodDescriptor ) throws NoSuchMethodException, IllegalAccessException
+    {
+        final Method method = calleeClazz.getDeclaredMethod ( methodDescriptor.getMethodName (), methodDescriptor.getInparametersAsClass () );
+        MethodHandle handle = MethodHandles.lookup ().unreflect ( method );
+        if ( Modifier.isStatic ( method.getModifiers () ) )
+        {
+            handle = MethodHandles.dropArguments ( handle, 0, Object.class );
+        }
+        return handle.asSpreader ( Object[].class, method.getParameterTypes ().length ).asType ( INVOKER_TYPE );
+    }
+
+    /**
+     * Returns the handle invoking <code>methodDescriptor</code> on the current
+     * callee, of type <code>(Object callee, Object[] params)Object</code>.
+     */
+    MethodHandle getMethodHandle ( final JILocalMethodDescriptor methodDescriptor ) throws NoSuchMethodException, IllegalAccessException
+    {
+        ResolvedMethods resolved = this.resolvedMethods;
+        final Class calleeClazz = getCalleeClass ();
+        if ( resolved == null || resolved.calleeClazz != calleeClazz )
+        {
+            resolveMethodHandles ();
+            resolved = this.resolvedMethods;
+        }
+
+        MethodHandle handle = (MethodHandle)resolved.handles.get ( methodDescriptor );
+        if ( handle == null )
+        {
+            handle = resolve ( calleeClazz, methodDescriptor );
+            resolved.handles.put ( methodDescriptor, handle );
+        }
+        return handle;
     }
 
     /**
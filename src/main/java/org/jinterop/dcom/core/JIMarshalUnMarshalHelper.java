@@ -17,6 +17,7 @@
 package org.jinterop.dcom.core;
 
 import jcifs.util.Encdec;
+import ndr.NdrBuffer;
 import ndr.NdrException;
 import ndr.NetworkDataRepresentation;
 import org.jinterop.dcom.common.JIErrorCodes;
@@ -29,13 +30,17 @@ import org.slf4j.LoggerFactory;
 import rpc.core.UUID;
 
 import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Array;
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 final class JIMarshalUnMarshalHelper {
 
 	private static Map mapOfSerializers = new HashMap();
 
+	private static final Map mapOfCodecs = new ConcurrentHashMap();
+
 	// TODO This is very important , please note that arrays in C++ have a fixed
 	// size and unlike Java have to be
 	// declared with there Max index right in the beginning. therefore all arrays
@@ -95,206 +100,368 @@ final class JIMarshalUnMarshalHelper {
 		}
 	}
 
-	static void serialize(final NetworkDataRepresentation ndr, Class c, final Object value, final List defferedPointers,
-			final int FLAG) {
-		if (c.equals(JIArray.class)) {
-			((JIArray) value).encode(ndr, ((JIArray) value).getArrayInstance(), defferedPointers, FLAG);
-		} else {
-			if ((c != IJIComObject.class || c != IJIDispatch.class) && value instanceof IJIComObject) {
-				c = IJIComObject.class;
-			}
-
-			alignMemberWhileEncoding(ndr, c, value);
+	/**
+	 * Wire type of the primitive arrays supported by {@link JIArray}, or
+	 * <code>null</code> if <code>c</code> is not one of <code>int</code>,
+	 * <code>short</code>, <code>float</code> or <code>double</code>.
+	 */
+	static Class getBoxedTypeOfPrimitive(final Class c) {
+		if (c == Integer.TYPE) {
+			return Integer.class;
+		} else if (c == Short.TYPE) {
+			return Short.class;
+		} else if (c == Float.TYPE) {
+			return Float.class;
+		} else if (c == Double.TYPE) {
+			return Double.class;
+		}
+		return null;
+	}
 
-			if (c.equals(JIString.class)) {
-				((JIString) value).encode(ndr, defferedPointers, FLAG);
-				return;
+	/**
+	 * Writes the members of an <code>int[]</code>, <code>short[]</code>,
+	 * <code>float[]</code> or <code>double[]</code> back to back, same as the
+	 * boxed types would have been written one by one.
+	 */
+	static void encodePrimitiveArray(final NetworkDataRepresentation ndr, final Object array) {
+		final Class c = array.getClass().getComponentType();
+		final int count = Array.getLength(array);
+		if (count == 0) {
+			return;
+		}
+		final int size = alignPrimitiveArray(ndr, c, true);
+		final NdrBuffer buffer = ndr.getBuffer();
+		final byte[] dst = buffer.getBuffer();
+		int index = buffer.getIndex();
+		if (c == Integer.TYPE) {
+			final int[] values = (int[]) array;
+			for (int i = 0; i < count; i++, index += 4) {
+				Encdec.enc_uint32le(values[i], dst, index);
 			}
-
-			if (c.equals(JIPointer.class)) {
-				((JIPointer) value).encode(ndr, defferedPointers, FLAG);
-				return;
+		} else if (c == Short.TYPE) {
+			final short[] values = (short[]) array;
+			for (int i = 0; i < count; i++, index += 2) {
+				Encdec.enc_uint16le(values[i], dst, index);
 			}
-
-			if (c.equals(JIStruct.class)) {
-				((JIStruct) value).encode(ndr, defferedPointers, FLAG);
-				return;
+		} else if (c == Float.TYPE) {
+			final float[] values = (float[]) array;
+			for (int i = 0; i < count; i++, index += 4) {
+				Encdec.enc_floatle(values[i], dst, index);
 			}
-
-			if (c.equals(JIUnion.class)) {
-				((JIUnion) value).encode(ndr, defferedPointers, FLAG);
-				return;
+		} else {
+			final double[] values = (double[]) array;
+			for (int i = 0; i < count; i++, index += 8) {
+				Encdec.enc_doublele(values[i], dst, index);
 			}
+		}
+		buffer.advance(count * size);
+	}
 
-			// if (c.equals(JIDispatchImpl.class) || c.equals(IJIDispatch.class))
-			// {
-			// IJIComObject unknown = ((JIDispatchImpl)value).getCOMObject();
-			// JIInterfacePointer interfacePointer = new
-			// JIInterfacePointer(IJIDispatch.IID,unknown.getInterfacePointer());
-			// interfacePointer.encode(ndr,defferedPointers,FLAG);
-			// return ;
-			// }
-			//
-			// if (c.equals(JIComObjectImpl.class) || c.equals(IJIComObject.class) ||
-			// c.equals(IJIUnknown.class))
-			// {
-			// JIInterfacePointer interfacePointer =
-			// ((IJIComObject)value).getInterfacePointer();
-			// interfacePointer.encode(ndr,defferedPointers,FLAG);
-			// return ;
-			// }
-
-			if (c.equals(JIInterfacePointer.class)) {
-				((JIInterfacePointer) value).encode(ndr, defferedPointers, FLAG);
-				return;
+	/**
+	 * Reads <code>count</code> members straight from the NDR buffer into a new
+	 * primitive array of component type <code>c</code>.
+	 */
+	static Object decodePrimitiveArray(final NetworkDataRepresentation ndr, final Class c, final int count) {
+		if (count == 0) {
+			return Array.newInstance(c, 0);
+		}
+		final int size = alignPrimitiveArray(ndr, c, false);
+		final NdrBuffer buffer = ndr.getBuffer();
+		final byte[] src = buffer.getBuffer();
+		int index = buffer.getIndex();
+		final Object retVal;
+		if (c == Integer.TYPE) {
+			final int[] values = new int[count];
+			for (int i = 0; i < count; i++, index += 4) {
+				values[i] = Encdec.dec_uint32le(src, index);
 			}
-
-			if (c.equals(JIVariant.class)) {
-				((JIVariant) value).encode(ndr, defferedPointers, FLAG);
-				return;
+			retVal = values;
+		} else if (c == Short.TYPE) {
+			final short[] values = new short[count];
+			for (int i = 0; i < count; i++, index += 2) {
+				values[i] = Encdec.dec_uint16le(src, index);
 			}
-
-			if (c.equals(VariantBody.class)) {
-				((VariantBody) value).encode(ndr, defferedPointers, FLAG);
-				return;
+			retVal = values;
+		} else if (c == Float.TYPE) {
+			final float[] values = new float[count];
+			for (int i = 0; i < count; i++, index += 4) {
+				values[i] = Encdec.dec_floatle(src, index);
 			}
-
-			if (mapOfSerializers.get(c) == null) {
-				throw new IllegalStateException(
-						MessageFormat.format(JISystem.getLocalizedMessage(JIErrorCodes.JI_UTIL_SERDESER_NOT_FOUND),
-								(Object[]) new String[] { c.toString() }));
+			retVal = values;
+		} else {
+			final double[] values = new double[count];
+			for (int i = 0; i < count; i++, index += 8) {
+				values[i] = Encdec.dec_doublele(src, index);
 			}
-			((SerializerDeserializer) mapOfSerializers.get(c)).serializeData(ndr, value, defferedPointers, FLAG);
+			retVal = values;
 		}
+		buffer.advance(count * size);
+		return retVal;
 	}
 
-	static void alignMemberWhileEncoding(final NetworkDataRepresentation ndr, final Class c, final Object obj) {
-		final double index = new Integer(ndr.getBuffer().getIndex()).doubleValue();
-		if (c.equals(JIStruct.class)) {
-			final double align = new Integer(((JIStruct) obj).getAlignment()).doubleValue();
-			long i = (long) ((i = Math.round(index % align)) == 0 ? 0 : align - i);
-			ndr.writeOctetArray(new byte[(int) i], 0, (int) i);
-		} else if (c.equals(JIUnion.class)) {
-			final double align = new Integer(((JIUnion) obj).getAlignment()).doubleValue();
-			long i = (long) ((i = Math.round(index % align)) == 0 ? 0 : align - i);
-			ndr.writeOctetArray(new byte[(int) i], 0, (int) i);
-		} else if ( /* c.equals(Character.class) || c.equals(Byte.class) || */c.equals(Integer.class)
-				|| c.equals(Float.class) || c.equals(JIVariant.class) || c.equals(String.class)
-				|| c.equals(JIPointer.class)) {
-			// align with 4 bytes
-			long i = (i = Math.round(index % 4.0)) == 0 ? 0 : 4 - i;
-			ndr.writeOctetArray(new byte[(int) i], 0, (int) i);
-		} else if (c.equals(Double.class)) {
-			// align with 8
-			long i = (i = Math.round(index % 8.0)) == 0 ? 0 : 8 - i;
-			ndr.writeOctetArray(new byte[(int) i], 0, (int) i);
-		} else if (c.equals(Short.class)) {
-			long i = (i = Math.round(index % 2.0)) == 0 ? 0 : 2 - i;
-			ndr.writeOctetArray(new byte[(int) i], 0, (int) i);
+	/**
+	 * Aligns the buffer for the first member of a primitive array, the members
+	 * following it are then aligned as well. Returns the wire size of a member.
+	 */
+	private static int alignPrimitiveArray(final NetworkDataRepresentation ndr, final Class c, final boolean encoding) {
+		final TypeCodec codec = getCodec(getBoxedTypeOfPrimitive(c));
+		if (encoding) {
+			codec.alignWhileEncoding(ndr, null);
+		} else {
+			codec.alignWhileDecoding(ndr, null);
 		}
+		final int size = c == Short.TYPE ? 2 : c == Double.TYPE ? 8 : 4;
+		ndr.getBuffer().align(size);
+		return size;
+	}
+
+	/**
+	 * Converts a COM <code>DATE</code> to a java <code>Date</code>, same as
+	 * deserializing a <code>Date</code> does.
+	 */
+	static Date convertWindowsTimeToDate(final double comTime) {
+		return new Date(DateImpl.convertWindowsTimeToMilliseconds(comTime));
+	}
+
+	static void serialize(final NetworkDataRepresentation ndr, final Class c, final Object value,
+			final List defferedPointers, final int FLAG) {
+		getCodec(c).encode(ndr, value, defferedPointers, FLAG);
+	}
+
+	static void alignMemberWhileEncoding(final NetworkDataRepresentation ndr, final Class c, final Object obj) {
+		getCodec(c).alignWhileEncoding(ndr, obj);
 	}
 
 	static void alignMemberWhileDecoding(final NetworkDataRepresentation ndr, final Class c, final Object obj) {
-		final double index = new Integer(ndr.getBuffer().getIndex()).doubleValue();
-		if (c.equals(JIStruct.class)) {
-			final double align = new Integer(((JIStruct) obj).getAlignment()).doubleValue();
-			long i = (long) ((i = Math.round(index % align)) == 0 ? 0 : align - i);
-			ndr.readOctetArray(new byte[(int) i], 0, (int) i);
-		} else if (c.equals(JIUnion.class)) {
-			final double align = new Integer(((JIUnion) obj).getAlignment()).doubleValue();
-			long i = (long) ((i = Math.round(index % align)) == 0 ? 0 : align - i);
-			ndr.readOctetArray(new byte[(int) i], 0, (int) i);
-		} else if (c.equals(Integer.class) || c.equals(Float.class) || c.equals(JIVariant.class)
-				|| c.equals(String.class) || c.equals(JIPointer.class)) {
-			// align with 4 bytes
-			long i = (i = Math.round(index % 4.0)) == 0 ? 0 : 4 - i;
-			ndr.readOctetArray(new byte[(int) i], 0, (int) i);
-		} else if (c.equals(Double.class)) {
-			// align with 8
-			long i = (i = Math.round(index % 8.0)) == 0 ? 0 : 8 - i;
-			ndr.readOctetArray(new byte[(int) i], 0, (int) i);
-		} else if (c.equals(Short.class)) {
-			long i = (i = Math.round(index % 2.0)) == 0 ? 0 : 2 - i;
-			ndr.readOctetArray(new byte[(int) i], 0, (int) i);
-		}
+		getCodec(c).alignWhileDecoding(ndr, obj);
 	}
 
 	static Object deSerialize(final NetworkDataRepresentation ndr, final Object obj, final List defferedPointers,
 			final int FLAG, final Map additionalData) {
 		final Class c = obj instanceof Class ? (Class) obj : obj.getClass();
-		if (c.equals(JIArray.class)) {
-			return ((JIArray) obj).decode(ndr, ((JIArray) obj).getArrayClass(), ((JIArray) obj).getDimensions(),
-					defferedPointers, FLAG, additionalData);
-		} else {
+		return getCodec(c).decode(ndr, obj, defferedPointers, FLAG, additionalData);
+	}
+
+	static int getLengthInBytes(final Class c, final Object obj, final int FLAG) {
+		return getCodec(c).getLengthInBytes(obj, FLAG);
+	}
 
-			alignMemberWhileDecoding(ndr, c, obj);
+	/**
+	 * Returns the marshaller for <code>c</code>. The class dispatch is resolved
+	 * once per type and cached, callers marshalling many values of the same type
+	 * (array elements, members of a struct template) should hold on to the
+	 * returned codec instead of going through {@link #serialize} and
+	 * {@link #deSerialize} for every value.
+	 */
+	static TypeCodec getCodec(final Class c) {
+		TypeCodec codec = (TypeCodec) mapOfCodecs.get(c);
+		if (codec == null) {
+			codec = TypeCodec.create(c);
+			mapOfCodecs.put(c, codec);
+		}
+		return codec;
+	}
 
-			if (c.equals(JIPointer.class)) {
-				final JIPointer retVal = ((JIPointer) obj).decode(ndr, defferedPointers, FLAG, additionalData);
-				return retVal;
+	/**
+	 * Pre-resolved encoder and decoder for one type. Replaces the chain of class
+	 * comparisons and the serializer lookup which were done earlier for every
+	 * single value.
+	 */
+	static final class TypeCodec {
+
+		private static final int KIND_SERIALIZER = 0;
+		private static final int KIND_ARRAY = 1;
+		private static final int KIND_STRUCT = 2;
+		private static final int KIND_UNION = 3;
+		private static final int KIND_STRING = 4;
+		private static final int KIND_POINTER = 5;
+		private static final int KIND_INTERFACE_POINTER = 6;
+		private static final int KIND_VARIANT = 7;
+		private static final int KIND_VARIANT_BODY = 8;
+		private static final int KIND_COMOBJECT = 9;
+
+		private static final byte[] PADDING = new byte[8];
+
+		private final Class type;
+
+		private final int kind;
+
+		// fixed wire alignment, 0 if the type does not get aligned here.
+		private final int alignment;
+
+		// may be null, the type is then not supported.
+		private final SerializerDeserializer serializer;
+
+		private TypeCodec(final Class type, final int kind, final int alignment,
+				final SerializerDeserializer serializer) {
+			this.type = type;
+			this.kind = kind;
+			this.alignment = alignment;
+			this.serializer = serializer;
+		}
+
+		private static TypeCodec create(final Class c) {
+			SerializerDeserializer serializer = (SerializerDeserializer) mapOfSerializers.get(c);
+			int kind = KIND_SERIALIZER;
+			int alignment = 0;
+			if (c.equals(JIArray.class)) {
+				kind = KIND_ARRAY;
+			} else if (c.equals(JIStruct.class)) {
+				kind = KIND_STRUCT;
+			} else if (c.equals(JIUnion.class)) {
+				kind = KIND_UNION;
+			} else if (c.equals(JIString.class)) {
+				kind = KIND_STRING;
+			} else if (c.equals(JIPointer.class)) {
+				kind = KIND_POINTER;
+				alignment = 4;
+			} else if (c.equals(JIInterfacePointer.class)) {
+				kind = KIND_INTERFACE_POINTER;
+			} else if (c.equals(JIVariant.class)) {
+				kind = KIND_VARIANT;
+				alignment = 4;
+			} else if (c.equals(VariantBody.class)) {
+				kind = KIND_VARIANT_BODY;
+			} else if (IJIComObject.class.isAssignableFrom(c)) {
+				// all implementations go through the IJIComObject serializer
+				kind = KIND_COMOBJECT;
+				serializer = (SerializerDeserializer) mapOfSerializers.get(IJIComObject.class);
+			} else if (c.equals(Integer.class) || c.equals(Float.class) || c.equals(String.class)) {
+				alignment = 4;
+			} else if (c.equals(Double.class)) {
+				alignment = 8;
+			} else if (c.equals(Short.class)) {
+				alignment = 2;
 			}
+			return new TypeCodec(c, kind, alignment, serializer);
+		}
 
-			if (c.equals(JIStruct.class)) {
-				final JIStruct retVal = ((JIStruct) obj).decode(ndr, defferedPointers, FLAG, additionalData);
-				return retVal;
+		Class getType() {
+			return this.type;
+		}
+
+		void encode(final NetworkDataRepresentation ndr, final Object value, final List defferedPointers,
+				final int FLAG) {
+			if (this.kind == KIND_ARRAY) {
+				((JIArray) value).encode(ndr, ((JIArray) value).getArrayInstance(), defferedPointers, FLAG);
+				return;
+			}
+
+			if (this.kind != KIND_COMOBJECT && value instanceof IJIComObject) {
+				getCodec(IJIComObject.class).encode(ndr, value, defferedPointers, FLAG);
+				return;
 			}
 
-			if (c.equals(JIUnion.class)) {
-				final JIUnion retVal = ((JIUnion) obj).decode(ndr, defferedPointers, FLAG, additionalData);
-				return retVal;
+			alignWhileEncoding(ndr, value);
+
+			switch (this.kind) {
+			case KIND_STRING:
+				((JIString) value).encode(ndr, defferedPointers, FLAG);
+				return;
+			case KIND_POINTER:
+				((JIPointer) value).encode(ndr, defferedPointers, FLAG);
+				return;
+			case KIND_STRUCT:
+				((JIStruct) value).encode(ndr, defferedPointers, FLAG);
+				return;
+			case KIND_UNION:
+				((JIUnion) value).encode(ndr, defferedPointers, FLAG);
+				return;
+			case KIND_INTERFACE_POINTER:
+				((JIInterfacePointer) value).encode(ndr, defferedPointers, FLAG);
+				return;
+			case KIND_VARIANT:
+				((JIVariant) value).encode(ndr, defferedPointers, FLAG);
+				return;
+			case KIND_VARIANT_BODY:
+				((VariantBody) value).encode(ndr, defferedPointers, FLAG);
+				return;
+			default:
+				getSerializer().serializeData(ndr, value, defferedPointers, FLAG);
 			}
+		}
 
-			if (c.equals(JIString.class)) {
-				final JIString retVal = ((JIString) obj).decode(ndr, defferedPointers, FLAG, additionalData);
-				return retVal;
+		/**
+		 * @param obj the class itself, or the template instance for arrays,
+		 *            structs, unions, strings and pointers.
+		 */
+		Object decode(final NetworkDataRepresentation ndr, final Object obj, final List defferedPointers,
+				final int FLAG, final Map additionalData) {
+			if (this.kind == KIND_ARRAY) {
+				return ((JIArray) obj).decode(ndr, ((JIArray) obj).getArrayClass(), ((JIArray) obj).getDimensions(),
+						defferedPointers, FLAG, additionalData);
 			}
 
-			// This will always be a class
-			if (obj.equals(JIInterfacePointer.class)) {
-				final JIInterfacePointer retVal = JIInterfacePointer.decode(ndr, defferedPointers, FLAG,
-						additionalData);
-				return retVal;
+			alignWhileDecoding(ndr, obj);
+
+			switch (this.kind) {
+			case KIND_POINTER:
+				return ((JIPointer) obj).decode(ndr, defferedPointers, FLAG, additionalData);
+			case KIND_STRUCT:
+				return ((JIStruct) obj).decode(ndr, defferedPointers, FLAG, additionalData);
+			case KIND_UNION:
+				return ((JIUnion) obj).decode(ndr, defferedPointers, FLAG, additionalData);
+			case KIND_STRING:
+				return ((JIString) obj).decode(ndr, defferedPointers, FLAG, additionalData);
+			case KIND_INTERFACE_POINTER:
+				return JIInterfacePointer.decode(ndr, defferedPointers, FLAG, additionalData);
+			case KIND_VARIANT:
+				return JIVariant.decode(ndr, defferedPointers, FLAG, additionalData);
+			case KIND_VARIANT_BODY:
+				return VariantBody.decode(ndr, defferedPointers, FLAG, additionalData);
+			default:
+				return getSerializer().deserializeData(ndr, defferedPointers, additionalData, FLAG);
 			}
+		}
 
-			// This will always be a class
-			if (obj.equals(JIVariant.class)) {
-				final JIVariant retVal = JIVariant.decode(ndr, defferedPointers, FLAG, additionalData);
-				return retVal;
+		int getLengthInBytes(final Object value, final int FLAG) {
+			if (value != null && value.getClass().equals(JIArray.class)) {
+				return ((JIArray) value).getSizeOfAllElementsInBytes();
 			}
 
-			// This will always be a class
-			if (obj.equals(VariantBody.class)) {
-				final VariantBody retVal = VariantBody.decode(ndr, defferedPointers, FLAG, additionalData);
-				return retVal;
+			if (this.kind != KIND_COMOBJECT && value instanceof IJIComObject) {
+				return getCodec(IJIComObject.class).getLengthInBytes(value, FLAG);
 			}
 
-			if (mapOfSerializers.get(obj) == null) {
-				throw new IllegalStateException(
-						MessageFormat.format(JISystem.getLocalizedMessage(JIErrorCodes.JI_UTIL_SERDESER_NOT_FOUND),
-								(Object[]) new String[] { obj.toString() }));
+			return getSerializer().getLengthInBytes(value, FLAG);
+		}
+
+		void alignWhileEncoding(final NetworkDataRepresentation ndr, final Object obj) {
+			final int padding = getPadding(ndr, obj);
+			if (padding > 0) {
+				ndr.writeOctetArray(PADDING, 0, padding);
 			}
-			return ((SerializerDeserializer) mapOfSerializers.get(obj)).deserializeData(ndr, defferedPointers,
-					additionalData, FLAG);
 		}
 
-	}
+		void alignWhileDecoding(final NetworkDataRepresentation ndr, final Object obj) {
+			final int padding = getPadding(ndr, obj);
+			if (padding > 0) {
+				ndr.readOctetArray(new byte[padding], 0, padding);
+			}
+		}
 
-	static int getLengthInBytes(Class c, final Object obj, final int FLAG) {
-		if (obj != null && obj.getClass().equals(JIArray.class)) {
-			return ((JIArray) obj).getSizeOfAllElementsInBytes();
-		} else {
-			if ((c != IJIComObject.class || c != IJIDispatch.class) && obj instanceof IJIComObject) {
-				c = IJIComObject.class;
+		private int getPadding(final NetworkDataRepresentation ndr, final Object obj) {
+			int align = this.alignment;
+			if (this.kind == KIND_STRUCT) {
+				align = ((JIStruct) obj).getAlignment();
+			} else if (this.kind == KIND_UNION) {
+				align = ((JIUnion) obj).getAlignment();
 			}
+			if (align <= 0) {
+				return 0;
+			}
+			final int i = ndr.getBuffer().getIndex() % align;
+			return i == 0 ? 0 : align - i;
+		}
 
-			if ((SerializerDeserializer) mapOfSerializers.get(c) == null) {
+		private SerializerDeserializer getSerializer() {
+			if (this.serializer == null) {
 				throw new IllegalStateException(
 						MessageFormat.format(JISystem.getLocalizedMessage(JIErrorCodes.JI_UTIL_SERDESER_NOT_FOUND),
-								(Object[]) new String[] { c.toString() }));
+								(Object[]) new String[] { this.type.toString() }));
 			}
-			return ((SerializerDeserializer) mapOfSerializers.get(c)).getLengthInBytes(obj, FLAG);
+			return this.serializer;
 		}
-
 	}
 
 	private interface SerializerDeserializer {
@@ -994,7 +1161,7 @@ final class JIMarshalUnMarshalHelper {
 		 * @param comTime COM time.
 		 * @return Java time.
 		 */
-		private long convertWindowsTimeToMilliseconds(double comTime) {
+		private static long convertWindowsTimeToMilliseconds(double comTime) {
 			long result = 0;
 
 			// code from jacobgen:
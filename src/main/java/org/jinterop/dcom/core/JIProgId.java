@@ -101,7 +101,6 @@ public class JIProgId
 
     private void getIdFromWinReg () throws JIException
     {
-        IJIWinReg winreg;
         //winreg = JIWinRegFactory.getSingleTon().getWinreg(new JIDefaultAuthInfoImpl(session.getDomain(),session.getUserName(),session.getPassword()),server,true);
         //System.out.println("Encoding the password...");
 
@@ -126,15 +125,35 @@ public class JIProgId
             this.server = this.session.getTargetServer ();
         }
 
+        final Integer failure = JISystem.internal_getProgIdFailure ( this.progId, this.server );
+        if ( failure != null )
+        {
+            throw new JIException ( failure.intValue () );
+        }
+
+        try
+        {
+            getIdFromWinReg ( this.server );
+        }
+        catch ( final JIException e )
+        {
+            JISystem.internal_setProgIdFailure ( this.progId, this.server, e.getErrorCode () );
+            throw e;
+        }
+    }
+
+    private void getIdFromWinReg ( final String server ) throws JIException
+    {
+        IJIWinReg winreg;
         try
         {
             if ( this.session.isSSOEnabled () )
             {
-                winreg = JIWinRegFactory.getSingleTon ().getWinreg ( this.server, true );
+                winreg = JIWinRegFactory.getSingleTon ().getWinreg ( server, true );
             }
             else
             {
-                winreg = JIWinRegFactory.getSingleTon ().getWinreg ( new JIDefaultAuthInfoImpl ( this.session.getDomain (), this.session.getUserName (), this.session.getPassword () ), this.server, true );
+                winreg = JIWinRegFactory.getSingleTon ().getWinreg ( new JIDefaultAuthInfoImpl ( this.session.getDomain (), this.session.getUserName (), this.session.getPassword () ), server, true );
             }
 
         }
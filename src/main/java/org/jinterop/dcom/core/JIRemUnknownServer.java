@@ -89,6 +89,7 @@ final class JIRemUnknownServer extends Stub
             super.getProperties ().setProperty ( "rpc.security.username", session.getUserName () );
             super.getProperties ().setProperty ( "rpc.security.password", session.getPassword () );
             super.getProperties ().setProperty ( "rpc.ntlm.domain", session.getDomain () );
+            JISession.shareCredentialCache ( session, super.getProperties () );
         }
 
         //now set the NTLMv2 Session Security.
@@ -182,6 +183,11 @@ final class JIRemUnknownServer extends Stub
     }
 
     void addRef_ReleaseRef ( final JICallBuilder obj ) throws JIException
+    {
+        addRef_ReleaseRef ( obj, this.session.getGlobalSocketTimeout () );
+    }
+
+    void addRef_ReleaseRef ( final JICallBuilder obj, final int socketTimeout ) throws JIException
     {
         synchronized ( this.mutex )
         {
@@ -195,7 +201,7 @@ final class JIRemUnknownServer extends Stub
             obj.attachSession ( this.session );
             try
             {
-                call ( obj, JIRemUnknown.IID_IUnknown, this.session.getGlobalSocketTimeout () );
+                call ( obj, JIRemUnknown.IID_IUnknown, socketTimeout );
             }
             catch ( final JIRuntimeException e1 )
             {
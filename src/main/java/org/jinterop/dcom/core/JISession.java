@@ -19,8 +19,10 @@ package org.jinterop.dcom.core;
 
 import org.jinterop.dcom.common.*;
 import org.jinterop.dcom.impls.JIObjectFactory;
+import org.jinterop.dcom.impls.automation.Internal_JIAutomationFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import rpc.security.ntlm.NtlmCredentialCache;
 
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
@@ -29,7 +31,14 @@ import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.*;
-import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * <p>
@@ -62,9 +71,13 @@ public final class JISession
 
     private String targetServer = null;
 
-    private static Map mapOfObjects = Collections.synchronizedMap ( new HashMap () );
+    //WeakReference (ComObjectReference) vs IPID_SessionID_Holder of the objects handed out by this session only.
+    private final Map mapOfObjects = new ConcurrentHashMap ();
 
-    private static Object mutex = new Object ();
+    //striped, since every interface pointer given out and every one collected updates these.
+    private final LongAdder numberOfObjectsAdded = new LongAdder ();
+
+    private final LongAdder numberOfObjectsCollected = new LongAdder ();
 
     private IJIAuthInfo authInfo = null;
 
@@ -80,13 +93,55 @@ public final class JISession
 
     private static String localhostStr2 = "LOCALHOST";
 
-    private static Map mapOfSessionIdsVsSessions = new HashMap ();
+    private static final Map mapOfSessionIdsVsSessions = new ConcurrentHashMap ();
+
+    //guarded by itself, also guards sessionInDestroy, oldestDeferencedIpidTime, releaseScheduled and releaseQueued.
+    private final Set listOfDeferencedIpids = new LinkedHashSet ();
+
+    //time at which the oldest entry of listOfDeferencedIpids was added.
+    private long oldestDeferencedIpidTime = 0;
+
+    //a ReleaseReferencesTask checking the age of listOfDeferencedIpids is pending.
+    private boolean releaseScheduled = false;
+
+    //a ReleaseReferencesTask is waiting in the releasePool, further releases are left to it.
+    private boolean releaseQueued = false;
+
+    private final LongAdder numberOfReferencesReleased = new LongAdder ();
+
+    private final LongAdder numberOfReleaseCalls = new LongAdder ();
+
+    private final LongAdder numberOfPings = new LongAdder ();
 
-    private static ArrayList listOfSessions = new ArrayList ();
+    private final LongAdder numberOfPingFailures = new LongAdder ();
 
-    private final List listOfDeferencedIpids = new ArrayList ();
+    private volatile long lastPingLatency = -1;
 
-    private static Timer releaseRefsTimer = new Timer ( true );
+    //RemRelease takes an unsigned short count, larger batches are split.
+    private static final int MAX_RELEASE_BATCH = 4096;
+
+    //socket timeout of a RemRelease call when the session has no global timeout, the default of 0 would wait forever.
+    private static final int RELEASE_TIMEOUT = 60 * 1000;
+
+    private static final int MAX_PARALLEL_RELEASES = 4;
+
+    //runs the blocking RemRelease calls, JIComScheduler only decides when they are due.
+    private static final ThreadPoolExecutor releasePool;
+
+    static
+    {
+        final AtomicInteger counter = new AtomicInteger ();
+        releasePool = new ThreadPoolExecutor ( MAX_PARALLEL_RELEASES, MAX_PARALLEL_RELEASES, 60, TimeUnit.SECONDS, new LinkedBlockingQueue (), new ThreadFactory () {
+            @Override
+            public Thread newThread ( final Runnable r )
+            {
+                final Thread thread = new Thread ( r, "jI_ReferenceRelease-" + counter.incrementAndGet () );
+                thread.setDaemon ( true );
+                return thread;
+            }
+        } );
+        releasePool.allowCoreThreadTimeOut ( true );
+    }
 
     private final Map mapOfUnreferencedHandlers = new HashMap ();
 
@@ -98,31 +153,46 @@ public final class JISession
 
     private boolean isSSO = false;
 
+    private NtlmCredentialCache credentialCache = null;
+
     private final ArrayList links = new ArrayList ();
 
-    private static final Map mapOfOxidsVsJISessions = new HashMap ();
+    private static final Map mapOfOxidsVsJISessions = new ConcurrentHashMap ();
 
-    private boolean sessionInDestroy = false;
+    private volatile boolean sessionInDestroy = false;
+
+    //maximum number of collected references drained from the queue before they are handed over to their sessions.
+    private static final int CLEANUP_BATCH_SIZE = 512;
 
     private static class IPID_SessionID_Holder
     {
         public final String IPID;
 
-        public final Integer sessionID;
-
-        public final boolean isOnlySessionIDPresent;
-
         public final byte[] oid;
 
-        private IPID_SessionID_Holder ( final String IPID, final int sessionID, final boolean isOnlySessionId, final byte[] oid )
+        private IPID_SessionID_Holder ( final String IPID, final byte[] oid )
         {
             this.IPID = IPID;
-            this.isOnlySessionIDPresent = isOnlySessionId;
-            this.sessionID = new Integer ( sessionID );
             this.oid = oid;
         }
     }
 
+    /**
+     * Weak reference to an <code>IJIComObject</code> which remembers the
+     * session it belongs to, so that the clean up thread does not have to look
+     * it up in a global table.
+     */
+    private static final class ComObjectReference extends WeakReference
+    {
+        private final Integer sessionID;
+
+        private ComObjectReference ( final IJIComObject comObject, final Integer sessionID )
+        {
+            super ( comObject, referenceQueueOfCOMObjects );
+            this.sessionID = sessionID;
+        }
+    }
+
     //static List listOfSessions = new ArrayList();
     //will be read by the system thread for cleanup and then passed
     //to each session for clean up.
@@ -132,81 +202,53 @@ public final class JISession
         @Override
         public void run ()
         {
-            try
+            final Map batches = new HashMap ();
+            while ( true )
             {
-                while ( true )
+                try
                 {
-                    final Reference r = referenceQueueOfCOMObjects.remove ();
-                    if ( r != null )
+                    //block for the first one, then take whatever else has been collected meanwhile
+                    //so that each session is visited once per batch and not once per object.
+                    Reference r = referenceQueueOfCOMObjects.remove ();
+                    int count = 0;
+                    while ( r != null )
                     {
-                        // Object is no longer referenced.
-                        //get from hash map and call release ref on that object
-                        IPID_SessionID_Holder holder = null;
-                        synchronized ( mapOfObjects )
+                        final ComObjectReference reference = (ComObjectReference)r;
+                        List batch = (List)batches.get ( reference.sessionID );
+                        if ( batch == null )
                         {
-                            holder = (IPID_SessionID_Holder)mapOfObjects.remove ( r );
-                            if ( holder == null )
-                            {
-                                continue;
-                            }
+                            batch = new ArrayList ();
+                            batches.put ( reference.sessionID, batch );
                         }
+                        batch.add ( reference );
+                        r = ++count < CLEANUP_BATCH_SIZE ? referenceQueueOfCOMObjects.poll () : null;
+                    }
 
-                        JISession session = null;
-                        synchronized ( mutex )
-                        {
-                            session = (JISession)mapOfSessionIdsVsSessions.get ( holder.sessionID );
-                        }
-                        //this means that the session got lost...but this logic does not work, since
-                        //session is strongly referenced from mapOfSessionIdsVsSessions and listOfSessions and even putting
-                        //WeakReference for JISession when adding it to the mapOfSessionIdsVsSessions/listOfSessions does not
-                        //make a difference as we always loose the session to GC before it come here.
-                        if ( holder.isOnlySessionIDPresent )
-                        {
-                            try
-                            {
-                                destroySession ( session );
-                            }
-                            catch ( final Exception e )
-                            {
-                                logger.warn ( "exception from destroy session in clean up thread", e );
-                            }
-                        }
-                        else
+                    for ( final Iterator itr = batches.entrySet ().iterator (); itr.hasNext (); )
+                    {
+                        final Map.Entry entry = (Map.Entry)itr.next ();
+                        final JISession session = (JISession)mapOfSessionIdsVsSessions.get ( entry.getKey () );
+                        //session may have been "destroySession"...
+                        if ( session != null )
                         {
-                            //session may have been "destroySession"...
-                            if ( session == null )
-                            {
-                                continue;
-                            }
-
-                            try
-                            {
-                                final String IPID = holder.IPID;
-                                //JIComOxidRuntime.delIPIDReference(IPID);
-                                //session.releaseRef(IPID); Not doing release anymore, this causes a lot of calls to
-                                //go across, so will save these in this list and then the cleanup thread will deal with
-                                //this every 3 minutes.
-                                session.addDereferencedIpids ( IPID, holder.oid );
-                                holder = null;
-                                final IJIUnreferenced unreferenced = session.getUnreferencedHandler ( IPID );
-                                if ( unreferenced != null )
-                                {
-                                    unreferenced.unReferenced ();
-                                }
-                                session.unregisterUnreferencedHandler ( IPID );
-                            }
-                            catch ( final Exception e )
-                            {
-                                logger.warn ( "exception from removing a IPID from session in clean up thread", e );
-                            }
+                            session.removeCollectedObjects ( (List)entry.getValue () );
                         }
                     }
-
                 }
-            }
-            catch ( final Exception e )
-            {
-                logger.warn ( "CleanupThread:run()", e );
+                catch ( final InterruptedException e )
+                {
+                    logger.warn ( "CleanupThread:run()", e );
+                    return;
+                }
+                catch ( final Exception e )
+                {
+                    //This clean up has to go on.
+                    logger.warn ( "CleanupThread:run()", e );
+                }
+                finally
+                {
+                    batches.clear ();
+                }
             }
         }
     }, "jI_GarbageCollector" );
@@ -255,16 +297,15 @@ public final class JISession
         JIComOxidRuntime.startResolver ();
         JIComOxidRuntime.startResolverTimer ();
         oxidResolverPort = JIComOxidRuntime.getOxidResolverPort ();
-        releaseRefsTimer.scheduleAtFixedRate ( new Release_References_TimerTask (), 0, 3 * 60 * 1000 );
 
         Runtime.getRuntime ().addShutdownHook ( new Thread ( new Runnable () {
             @Override
             public void run ()
             {
-                int i = 0;
-                while ( i < listOfSessions.size () )
+                final Iterator itr = new ArrayList ( mapOfSessionIdsVsSessions.values () ).iterator ();
+                while ( itr.hasNext () )
                 {
-                    final JISession session = (JISession)listOfSessions.get ( i );
+                    final JISession session = (JISession)itr.next ();
                     try
                     {
                         JISession.destroySession ( session );
@@ -273,80 +314,103 @@ public final class JISession
                     {
                         logger.warn ( "addShutDownHook Thread:run()", e );
                     }
-                    i++;
                 }
                 JISystem.internal_writeProgIdsToFile ();
                 JIComOxidRuntime.stopResolver ();
-                releaseRefsTimer.cancel ();
+                JIComScheduler.shutdown ();
+                releasePool.shutdown ();
                 mapOfSessionIdsVsSessions.clear ();
-                mapOfObjects.clear ();
-                listOfSessions.clear ();
             }
         }, "jI_ShutdownHook" ) );
 
     }
 
-    private static class Release_References_TimerTask extends TimerTask
+    /**
+     * Releases the dereferenced IPIDs of a session in batched
+     * <code>IRemUnknown::RemRelease</code> calls on the release pool. Queued
+     * right away once {@link JISystem#getReferenceReleaseBatchSize()} IPIDs are
+     * pending. With <code>checkAge</code> set it is scheduled on
+     * {@link JIComScheduler} when the first one becomes pending and only queues
+     * the release once {@link JISystem#getReferenceReleaseMaxDelay()} has passed.
+     */
+    private static final class ReleaseReferencesTask implements Runnable
     {
+        private final JISession session;
+
+        private final boolean checkAge;
+
+        ReleaseReferencesTask ( final JISession session, final boolean checkAge )
+        {
+            this.session = session;
+            this.checkAge = checkAge;
+        }
+
         @Override
         public void run ()
         {
-
             try
             {
-                List listOfSessionsClone = null;
-                synchronized ( mutex )
+                final List listToKill = new ArrayList ();
+                synchronized ( this.session.listOfDeferencedIpids )
                 {
-                    listOfSessionsClone = (List)listOfSessions.clone ();
-                }
-
-                int i = 0;
-
-                while ( i < listOfSessionsClone.size () )
-                {
-                    final JISession session = (JISession)listOfSessionsClone.get ( i );
-
-                    //now iterate over each sessions listOfDereferencedIpids and send a call to release for the entire lot.
-                    final ArrayList listToKill = new ArrayList ();
-                    synchronized ( mutex )
+                    if ( this.checkAge )
                     {
-                        logger.debug ( "Release_References_TimerTask:[RUN] Session:  {} , listOfDeferencedIpids.size(): {}", session.getSessionIdentifier (), session.listOfDeferencedIpids.size () );
-                        for ( int j = 0; j < session.listOfDeferencedIpids.size (); j++ )
-                        {
-                            try
-                            {
-                                listToKill.add ( session.prepareForReleaseRef ( (String)session.listOfDeferencedIpids.get ( j ) ) );
-                            }
-                            catch ( final JIException e )
-                            {
-                                //eaten, will never get thrown from the try block.
-                            }
-                        }
-                        session.listOfDeferencedIpids.clear ();
+                        this.session.releaseScheduled = false;
                     }
-
-                    if ( listToKill.size () > 0 )
+                    else
+                    {
+                        this.session.releaseQueued = false;
+                    }
+                    if ( this.session.sessionInDestroy || this.session.listOfDeferencedIpids.isEmpty () )
                     {
-                        final JIArray array = new JIArray ( listToKill.toArray ( new JIStruct[listToKill.size ()] ), true );
-                        try
+                        return;
+                    }
+                    if ( this.checkAge )
+                    {
+                        //a batch may have gone out meanwhile, the entries left could be younger.
+                        final long remaining = this.session.oldestDeferencedIpidTime + JISystem.getReferenceReleaseMaxDelay () - System.currentTimeMillis ();
+                        if ( remaining > 0 )
                         {
-                            session.releaseRefs ( array, false );
+                            this.session.releaseScheduled = true;
+                            JIComScheduler.schedule ( this, remaining );
                         }
-                        catch ( final JIException e )
+                        else
                         {
-                            //This release cycle has to go on.
-                            logger.warn ( "Release_References_TimerTask:run() - Exception in internal GC", e );
+                            this.session.queueRelease ();
                         }
+                        return;
                     }
 
-                    i++;
+                    logger.debug ( "ReleaseReferencesTask:[RUN] Session:  {} , listOfDeferencedIpids.size(): {}", this.session.getSessionIdentifier (), this.session.listOfDeferencedIpids.size () );
+                    for ( final Iterator ipids = this.session.listOfDeferencedIpids.iterator (); ipids.hasNext (); )
+                    {
+                        listToKill.add ( this.session.prepareForReleaseRef ( (String)ipids.next () ) );
+                    }
+                    this.session.listOfDeferencedIpids.clear ();
                 }
 
+                final int batchSize = Math.min ( JISystem.getReferenceReleaseBatchSize (), MAX_RELEASE_BATCH );
+                for ( int i = 0; i < listToKill.size (); i += batchSize )
+                {
+                    final List batch = listToKill.subList ( i, Math.min ( i + batchSize, listToKill.size () ) );
+                    final JIArray array = new JIArray ( batch.toArray ( new JIStruct[batch.size ()] ), true );
+                    try
+                    {
+                        this.session.releaseRefs ( array, false );
+                        this.session.numberOfReleaseCalls.increment ();
+                        this.session.numberOfReferencesReleased.add ( batch.size () );
+                    }
+                    catch ( final JIException e )
+                    {
+                        //This release cycle has to go on.
+                        logger.warn ( "ReleaseReferencesTask:run() - Exception in internal GC", e );
+                    }
+                }
             }
             catch ( final Exception e )
             {
                 //This release cycle has to go on.
-                logger.warn ( "Release_References_TimerTask:run() - Exception in internal GC", e );
+                logger.warn ( "ReleaseReferencesTask:run() - Exception in internal GC", e );
             }
         }
     }
@@ -437,11 +501,7 @@ public final class JISession
 
         session.sessionIdentifier = authInfo.getUserName ().hashCode () ^ authInfo.getPassword ().hashCode () ^ authInfo.getDomain ().hashCode () ^ new Object ().hashCode () ^ (int)Runtime.getRuntime ().freeMemory () ^ randomGen.nextInt ();
 
-        synchronized ( mutex )
-        {
-            mapOfSessionIdsVsSessions.put ( new Integer ( session.sessionIdentifier ), session );
-            listOfSessions.add ( session );
-        }
+        mapOfSessionIdsVsSessions.put ( new Integer ( session.sessionIdentifier ), session );
 
         logger.debug ( "Created Session: {}", session.sessionIdentifier );
         return session;
@@ -476,11 +536,7 @@ public final class JISession
         session.domain = domain;
         session.sessionIdentifier = username.hashCode () ^ password.hashCode () ^ domain.hashCode () ^ new Object ().hashCode () ^ (int)Runtime.getRuntime ().freeMemory () ^ randomGen.nextInt ();
 
-        synchronized ( mutex )
-        {
-            mapOfSessionIdsVsSessions.put ( new Integer ( session.sessionIdentifier ), session );
-            listOfSessions.add ( session );
-        }
+        mapOfSessionIdsVsSessions.put ( new Integer ( session.sessionIdentifier ), session );
 
         logger.debug ( "Created Session: {}", session.sessionIdentifier );
         return session;
@@ -531,11 +587,7 @@ public final class JISession
         session.sessionIdentifier = new Object ().hashCode () ^ (int)Runtime.getRuntime ().freeMemory () ^ randomGen.nextInt ();
         session.isSSO = true;
 
-        synchronized ( mutex )
-        {
-            mapOfSessionIdsVsSessions.put ( new Integer ( session.sessionIdentifier ), session );
-            listOfSessions.add ( session );
-        }
+        mapOfSessionIdsVsSessions.put ( new Integer ( session.sessionIdentifier ), session );
 
         logger.debug ( "Created Session for SSO: {}", session.sessionIdentifier );
 
@@ -576,11 +628,7 @@ public final class JISession
         //if stub is null then cleanup datastructures holding the session object only
         if ( session.stub == null )
         {
-            synchronized ( mutex )
-            {
-                mapOfSessionIdsVsSessions.remove ( new Integer ( session.getSessionIdentifier () ) );
-                listOfSessions.remove ( session );
-            }
+            mapOfSessionIdsVsSessions.remove ( new Integer ( session.getSessionIdentifier () ) );
 
             //now remove the links and the OIDs
             postDestroy ( session );
@@ -592,7 +640,7 @@ public final class JISession
             //session may have been destroyed and this call is from finalize.
             final ArrayList list = new ArrayList ();
             final ArrayList listOfFreeIPIDs = new ArrayList ();
-            synchronized ( mutex )
+            synchronized ( session.listOfDeferencedIpids )
             {
                 if ( session.sessionInDestroy )
                 {
@@ -600,44 +648,33 @@ public final class JISession
                 }
                 session.sessionInDestroy = true;
                 //list of dereferenced IPIDs
-                for ( int j = 0; j < session.listOfDeferencedIpids.size (); j++ )
+                for ( final Iterator ipids = session.listOfDeferencedIpids.iterator (); ipids.hasNext (); )
                 {
-                    list.add ( session.prepareForReleaseRef ( (String)session.listOfDeferencedIpids.get ( j ) ) );
+                    list.add ( session.prepareForReleaseRef ( (String)ipids.next () ) );
                 }
                 listOfFreeIPIDs.addAll ( session.listOfDeferencedIpids );
                 session.listOfDeferencedIpids.clear ();
             }
 
-            synchronized ( mapOfObjects )
+            //now take all the objects registered with this session and call release on them.
+            final Iterator iterator = session.mapOfObjects.values ().iterator ();
+            while ( iterator.hasNext () )
             {
-                //now take all the objects registered with this session and call release on them.
-                //				Iterator iterator = mapOfObjects.keySet().iterator();
-                final Iterator iterator = mapOfObjects.entrySet ().iterator ();
-                while ( iterator.hasNext () )
+                final IPID_SessionID_Holder holder = (IPID_SessionID_Holder)iterator.next ();
+                iterator.remove ();
+                final String ipid = holder.IPID;
+                if ( ipid == null )
                 {
-                    //String ipid = (String)session.mapOfObjects.get(iterator.next());
-                    final Entry entry = (Entry)iterator.next ();
-                    //					IPID_SessionID_Holder holder = (IPID_SessionID_Holder)mapOfObjects.get(iterator.next());
-                    final IPID_SessionID_Holder holder = (IPID_SessionID_Holder)entry.getValue ();
-                    if ( session.getSessionIdentifier () != holder.sessionID.intValue () )
-                    {
-                        continue;
-                    }
-                    final String ipid = holder.IPID;
-                    if ( ipid == null )
-                    {
-                        continue;
-                    }
+                    continue;
+                }
 
-                    //Commenting the line below since there could be more than one reference of a COM object taken in by
-                    //j-Interop (via the client of j-Interop) and mapOfObjects will contain two references in this case.
-                    //This was identified for the issue reported by Aquafold in sql dbg.
-                    //					if (!listOfFreeIPIDs.contains(ipid))
-                    {
-                        list.add ( session.prepareForReleaseRef ( ipid ) );
-                        listOfFreeIPIDs.add ( ipid );
-                    }
-                    iterator.remove ();
+                //Commenting the line below since there could be more than one reference of a COM object taken in by
+                //j-Interop (via the client of j-Interop) and mapOfObjects will contain two references in this case.
+                //This was identified for the issue reported by Aquafold in sql dbg.
+                //					if (!listOfFreeIPIDs.contains(ipid))
+                {
+                    list.add ( session.prepareForReleaseRef ( ipid ) );
+                    listOfFreeIPIDs.add ( ipid );
                 }
             }
 
@@ -673,15 +710,11 @@ public final class JISession
         }
         finally
         {
-            synchronized ( mutex )
+            mapOfSessionIdsVsSessions.remove ( new Integer ( session.getSessionIdentifier () ) );
+            // and remove its entry from the map
+            if ( session.stub.getServerInterfacePointer () != null )
             {
-                mapOfSessionIdsVsSessions.remove ( new Integer ( session.getSessionIdentifier () ) );
-                listOfSessions.remove ( session );
-                // and remove its entry from the map
-                if ( session.stub.getServerInterfacePointer () != null )
-                {
-                    mapOfOxidsVsJISessions.remove ( new JIOxid ( session.stub.getServerInterfacePointer ().getOXID () ) );
-                }
+                mapOfOxidsVsJISessions.remove ( new JIOxid ( session.stub.getServerInterfacePointer ().getOXID () ) );
             }
             session.stub.closeStub ();
             session.stub2.closeStub ();
@@ -697,9 +730,16 @@ public final class JISession
         //now destroy all linked sessions
         logger.debug ( "About to destroy {} sessesion which are linked to this session: {}", session.links.size (), session.getSessionIdentifier () );
 
-        for ( int i = 0; i < session.links.size (); i++ )
+        final List links;
+        synchronized ( session.links )
         {
-            final JISession linkedSession = (JISession)session.links.get ( i );
+            links = new ArrayList ( session.links );
+            session.links.clear ();
+        }
+
+        for ( int i = 0; i < links.size (); i++ )
+        {
+            final JISession linkedSession = (JISession)links.get ( i );
             try
             {
                 JISession.destroySession ( linkedSession );
@@ -710,9 +750,11 @@ public final class JISession
             }
         }
 
-        session.links.clear ();
         //finally any oids exported by this session.
         JIComOxidRuntime.destroySessionOIDs ( session.getSessionIdentifier () );
+
+        //and the cached automation types.
+        Internal_JIAutomationFactory.sessionDestroyed ( session.getSessionIdentifier () );
     }
 
     //each session is associated with 1 and only 1 stub.
@@ -720,10 +762,7 @@ public final class JISession
     void setStub ( final JIComServer stub )
     {
         this.stub = stub;
-        synchronized ( mutex )
-        {
-            mapOfOxidsVsJISessions.put ( new JIOxid ( stub.getServerInterfacePointer ().getOXID () ), this );
-        }
+        mapOfOxidsVsJISessions.put ( new JIOxid ( stub.getServerInterfacePointer ().getOXID () ), this );
     }
 
     //IRemUnknown Stub
@@ -755,12 +794,9 @@ public final class JISession
         {
             return;
         }
-        final IPID_SessionID_Holder holder = new IPID_SessionID_Holder ( comObject.getIpid (), getSessionIdentifier (), false, oid );
-        //mapOfObjects.put(new WeakReference(comObject,referenceQueueOfCOMObjects),holder);
-        synchronized ( mapOfObjects )
-        {
-            mapOfObjects.put ( new WeakReference ( comObject, referenceQueueOfCOMObjects ), holder );
-        }
+        final IPID_SessionID_Holder holder = new IPID_SessionID_Holder ( comObject.getIpid (), oid );
+        this.mapOfObjects.put ( new ComObjectReference ( comObject, new Integer ( getSessionIdentifier () ) ), holder );
+        this.numberOfObjectsAdded.increment ();
         //setting if NO PING flag has been set to true.
         addToSession ( comObject.getIpid (), oid, ( (JIStdObjRef)comObject.internal_getInterfacePointer ().getObjectReference ( JIInterfacePointer.OBJREF_STANDARD ) ).getFlags () == 0x00001000 );
         logger.debug ( "for IID: {}", comObject.getInterfaceIdentifier () );
@@ -774,9 +810,6 @@ public final class JISession
         //		debug_addIpids(comObject.getIpid(),((JIStdObjRef)comObject.internal_getInterfacePointer().getObjectReference(JIInterfacePointer.OBJREF_STANDARD)).getPublicRefs());
     }
 
-    //just for testing
-    private static Map mapOfIPIDSvsCount = Collections.synchronizedMap ( new HashMap () );
-
     static void debug_addIpids ( final String ipid, final int num )
     {
         //		Integer value = (Integer)mapOfIPIDSvsCount.get(ipid);
@@ -820,7 +853,7 @@ public final class JISession
     //this gets called from the cleanupthread and no place else and it calls the releaseRef of session which
     //internally calls the add_releaseRef of the JIComServer, that method is synched at the instance level.
     //I was worried about a deadlock with destroySession , since that also ultimately calls the add_releaseRef, but
-    //this will not happen since under a simultaneous destroy and removefromsession call , the "mutex" object will get synch.
+    //this will not happen since under a simultaneous destroy and removefromsession call , the listOfDeferencedIpids of the session will get synch.
     //If suppose a comServer.getInterface(...) is being done (which also calls releaseRef), then that is synched at instance level
     //and so is add_releaseRef (on the same instance), so deadlock won't happen there. If a simulataneous remove and getInterface call comes
     //then getInterface(which internally calls releaseRef) will go through, since releaseRef is not synched but the api it calls i.e. add_releaseRef is synched with the same lock
@@ -854,21 +887,225 @@ public final class JISession
         this.stub2.addRef_ReleaseRef ( obj );
     }
 
-    private void addDereferencedIpids ( final String IPID, final byte[] oid )
+    //called by the clean up thread with all references of this session collected in one pass of the queue.
+    private void removeCollectedObjects ( final List references )
     {
-        logger.debug ( "addDereferencedIpids for session : {} , IPID is: {}", getSessionIdentifier (), IPID );
+        final List holders = new ArrayList ( references.size () );
+        for ( int i = 0; i < references.size (); i++ )
+        {
+            final IPID_SessionID_Holder holder = (IPID_SessionID_Holder)this.mapOfObjects.remove ( references.get ( i ) );
+            //null if destroySession got to it first.
+            if ( holder != null )
+            {
+                holders.add ( holder );
+            }
+        }
+
+        if ( holders.isEmpty () )
+        {
+            return;
+        }
+        this.numberOfObjectsCollected.add ( holders.size () );
+
+        logger.debug ( "removeCollectedObjects for session : {} , number of IPIDs: {}", getSessionIdentifier (), holders.size () );
+
+        //Not releasing one by one, this causes a lot of calls to go across, so will save these in this list and
+        //the ReleaseReferencesTask will release them in batches.
+        boolean scheduleRelease = false;
+        synchronized ( this.listOfDeferencedIpids )
+        {
+            if ( this.listOfDeferencedIpids.isEmpty () )
+            {
+                this.oldestDeferencedIpidTime = System.currentTimeMillis ();
+            }
+            for ( int i = 0; i < holders.size (); i++ )
+            {
+                this.listOfDeferencedIpids.add ( ( (IPID_SessionID_Holder)holders.get ( i ) ).IPID );
+            }
+            if ( this.listOfDeferencedIpids.size () >= JISystem.getReferenceReleaseBatchSize () )
+            {
+                queueRelease ();
+            }
+            else if ( !this.releaseScheduled )
+            {
+                this.releaseScheduled = true;
+                scheduleRelease = true;
+            }
+        }
 
-        synchronized ( mutex )
+        if ( scheduleRelease )
         {
-            if ( !this.listOfDeferencedIpids.contains ( IPID ) )
+            JIComScheduler.schedule ( new ReleaseReferencesTask ( this, true ), JISystem.getReferenceReleaseMaxDelay () );
+        }
+
+        for ( int i = 0; i < holders.size (); i++ )
+        {
+            final IPID_SessionID_Holder holder = (IPID_SessionID_Holder)holders.get ( i );
+            try
+            {
+                //Will call the JIComOxidRuntime, and that is synched on the ping set of this session, but that will not cause a deadlock, since
+                //it or rather any method of JIComOxidRuntime does not call back into JISession.
+                JIComOxidRuntime.delIPIDReference ( holder.IPID, new JIObjectId ( holder.oid, false ), this );
+                final IJIUnreferenced unreferenced = getUnreferencedHandler ( holder.IPID );
+                if ( unreferenced != null )
+                {
+                    unreferenced.unReferenced ();
+                }
+                unregisterUnreferencedHandler ( holder.IPID );
+            }
+            catch ( final Exception e )
             {
-                this.listOfDeferencedIpids.add ( IPID );
+                logger.warn ( "exception from removing a IPID from session in clean up thread", e );
             }
         }
+    }
+
+    /**
+     * Returns the number of interface references currently tracked by this
+     * session, i.e. handed out and not yet garbage collected.
+     *
+     * @return
+     */
+    int getNumberOfTrackedReferences ()
+    {
+        return this.mapOfObjects.size ();
+    }
+
+    /**
+     * Returns the total number of interface references handed out by this
+     * session.
+     *
+     * @return
+     */
+    long getNumberOfReferencesAdded ()
+    {
+        return this.numberOfObjectsAdded.sum ();
+    }
+
+    /**
+     * Returns the number of interface references of this session which have
+     * been garbage collected so far.
+     *
+     * @return
+     */
+    long getNumberOfReferencesCollected ()
+    {
+        return this.numberOfObjectsCollected.sum ();
+    }
+
+    /**
+     * Returns the number of interface references of this session which have
+     * been garbage collected but not yet released on the COM server.
+     *
+     * @return
+     * @see JISystem#setReferenceReleaseThresholds(int, long)
+     */
+    public int getNumberOfPendingReleases ()
+    {
+        synchronized ( this.listOfDeferencedIpids )
+        {
+            return this.listOfDeferencedIpids.size ();
+        }
+    }
 
-        //Will call the JIComOxidRuntime, and that is synched on mutex3, but that will not cause a deadlock, since
-        //it or rather any method of JIComOxidRuntime does not call back into JISession.
-        JIComOxidRuntime.delIPIDReference ( IPID, new JIObjectId ( oid, false ), this );
+    /**
+     * Returns the age in milliseconds of the oldest interface reference of this
+     * session waiting to be released on the COM server, <code>0</code> if none
+     * is pending.
+     *
+     * @return
+     */
+    public long getAgeOfOldestPendingRelease ()
+    {
+        synchronized ( this.listOfDeferencedIpids )
+        {
+            return this.listOfDeferencedIpids.isEmpty () ? 0 : System.currentTimeMillis () - this.oldestDeferencedIpidTime;
+        }
+    }
+
+    /**
+     * Returns the number of interface references of this session released on
+     * the COM server so far (not counting those released by
+     * {@link #destroySession(JISession)}).
+     *
+     * @return
+     */
+    public long getNumberOfReleasedReferences ()
+    {
+        return this.numberOfReferencesReleased.sum ();
+    }
+
+    /**
+     * Returns the number of <code>IRemUnknown::RemRelease</code> calls made for
+     * the released references of this session.
+     *
+     * @return
+     */
+    public long getNumberOfReleaseCalls ()
+    {
+        return this.numberOfReleaseCalls.sum ();
+    }
+
+    //called by JIComOxidRuntime after each ping of the OIDs of this session.
+    void recordPing ( final long latency, final boolean success )
+    {
+        this.numberOfPings.increment ();
+        if ( !success )
+        {
+            this.numberOfPingFailures.increment ();
+        }
+        this.lastPingLatency = latency;
+    }
+
+    /**
+     * Returns the number of pings sent to the OXID resolver of the COM server
+     * to keep the objects of this session alive.
+     *
+     * @return
+     */
+    public long getNumberOfPings ()
+    {
+        return this.numberOfPings.sum ();
+    }
+
+    /**
+     * Returns the number of pings of this session which failed. Objects of a
+     * session whose pings keep failing will be collected by the COM server.
+     *
+     * @return
+     */
+    public long getNumberOfPingFailures ()
+    {
+        return this.numberOfPingFailures.sum ();
+    }
+
+    /**
+     * Returns the duration in milliseconds of the last ping of this session,
+     * <code>-1</code> if none has been sent yet.
+     *
+     * @return
+     */
+    public long getLastPingLatency ()
+    {
+        return this.lastPingLatency;
+    }
+
+    //caller holds the lock on listOfDeferencedIpids.
+    private void queueRelease ()
+    {
+        if ( this.releaseQueued )
+        {
+            return;
+        }
+        try
+        {
+            releasePool.execute ( new ReleaseReferencesTask ( this, false ) );
+            this.releaseQueued = true;
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            //the pool is shut down, the session is destroyed along with the rest.
+        }
     }
 
     private void releaseRefs ( final JIArray arrayOfStructs, final boolean fromDestroy ) throws JIException
@@ -881,7 +1118,7 @@ public final class JISession
         obj.addInParamAsShort ( (short) ( (Object[])arrayOfStructs.getArrayInstance () ).length, JIFlags.FLAG_NULL );
         obj.addInParamAsArray ( arrayOfStructs, JIFlags.FLAG_NULL );
         obj.fromDestroySession = fromDestroy;
-        this.stub2.addRef_ReleaseRef ( obj );
+        this.stub2.addRef_ReleaseRef ( obj, this.timeout != 0 ? this.timeout : RELEASE_TIMEOUT );
 
         //ignore the results
     }
@@ -917,6 +1154,38 @@ public final class JISession
         return this.authInfo == null ? this.password : this.authInfo.getPassword ();
     }
 
+    /**
+     * Password hashes shared by all NTLM handshakes of this session (stub,
+     * activation, OXID resolver and IRemUnknown connections).
+     * 
+     * @return <code>null</code> if the session uses SSO.
+     */
+    synchronized NtlmCredentialCache getCredentialCache ()
+    {
+        if ( this.isSSO )
+        {
+            return null;
+        }
+        if ( this.credentialCache == null )
+        {
+            this.credentialCache = new NtlmCredentialCache ( getDomain (), getUserName (), getPassword () );
+        }
+        return this.credentialCache;
+    }
+
+    /**
+     * Places the credential cache of <code>session</code> into the properties
+     * of a connection, so that its handshake reuses the password hashes.
+     */
+    static void shareCredentialCache ( final JISession session, final Properties properties )
+    {
+        final NtlmCredentialCache cache = session.getCredentialCache ();
+        if ( cache != null )
+        {
+            properties.put ( NtlmCredentialCache.PROPERTY, cache );
+        }
+    }
+
     /**
      * Gets the domain of the user associated with this session.
      * 
@@ -1112,7 +1381,7 @@ public final class JISession
             return;
         }
 
-        synchronized ( mutex )
+        synchronized ( src.links )
         {
             if ( !src.links.contains ( target ) )
             {
@@ -1136,7 +1405,7 @@ public final class JISession
             return;
         }
 
-        synchronized ( mutex )
+        synchronized ( src.links )
         {
             src.links.remove ( tobeunlinked );
         }
@@ -1156,10 +1425,7 @@ public final class JISession
      */
     static JISession resolveSessionForOxid ( final JIOxid oxid )
     {
-        synchronized ( mutex )
-        {
-            return (JISession)mapOfOxidsVsJISessions.get ( oxid );
-        }
+        return (JISession)mapOfOxidsVsJISessions.get ( oxid );
     }
 
     boolean isSessionInDestroy ()
@@ -49,6 +49,9 @@ public final class JIStruct implements Serializable
 
     private boolean arrayAdded = false;
 
+    //marshallers of the members, resolved when this struct is first encoded or used as a decode template.
+    private transient JIMarshalUnMarshalHelper.TypeCodec[] memberCodecs = null;
+
     public static final JIStruct MEMBER_IS_EMPTY = new JIStruct ();
 
     /**
@@ -180,6 +183,7 @@ public final class JIStruct implements Serializable
         //else the pointer will be serialized "inplace".
 
         this.listOfMembers.add ( position, member );
+        this.memberCodecs = null;
     }
 
     /**
@@ -190,6 +194,7 @@ public final class JIStruct implements Serializable
     public void removeMember ( final int index )
     {
         final Object member = this.listOfMembers.remove ( index );
+        this.memberCodecs = null;
         if ( member instanceof JIArray )
         {
             //we need to remove it's max count values also.
@@ -259,7 +264,7 @@ public final class JIStruct implements Serializable
                     //written before.
                     ( (JIArray)o ).setConformant ( false );
                 }
-                JIMarshalUnMarshalHelper.serialize ( ndr, o.getClass (), o, defferedPointers, FLAG );
+                getMemberCodec ( i, o ).encode ( ndr, o, defferedPointers, FLAG );
                 if ( o instanceof JIArray )
                 {
                     //noew reset this, so that next time when the same struct is written everything goes proper.
@@ -301,7 +306,7 @@ public final class JIStruct implements Serializable
                     j++;
                 }
             }
-            final Object o1 = JIMarshalUnMarshalHelper.deSerialize ( ndr, o, defferedPointers, FLAG, additionalData );
+            final Object o1 = getMemberCodec ( i, o ).decode ( ndr, o, defferedPointers, FLAG, additionalData );
             if ( o instanceof JIArray )
             {
                 if ( ( (JIArray)o ).isConformant () || ( (JIArray)o ).isVarying () )
@@ -326,6 +331,29 @@ public final class JIStruct implements Serializable
         return retVal;
     }
 
+    /**
+     * Returns the cached marshaller of the member at <code>index</code>. The
+     * cache is rebuilt if the members were changed through the list returned by
+     * {@link #getMembers()}.
+     */
+    private JIMarshalUnMarshalHelper.TypeCodec getMemberCodec ( final int index, final Object member )
+    {
+        final Class c = member instanceof Class ? (Class)member : member.getClass ();
+        JIMarshalUnMarshalHelper.TypeCodec[] codecs = this.memberCodecs;
+        if ( codecs == null || codecs.length != this.listOfMembers.size () )
+        {
+            codecs = new JIMarshalUnMarshalHelper.TypeCodec[this.listOfMembers.size ()];
+            this.memberCodecs = codecs;
+        }
+        JIMarshalUnMarshalHelper.TypeCodec codec = codecs[index];
+        if ( codec == null || codec.getType () != c )
+        {
+            codec = JIMarshalUnMarshalHelper.getCodec ( c );
+            codecs[index] = codec;
+        }
+        return codec;
+    }
+
     int getLength ()
     {
         int length = 0;
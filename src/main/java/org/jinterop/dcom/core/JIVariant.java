@@ -17,6 +17,8 @@
 
 package org.jinterop.dcom.core;
 
+import jcifs.util.Encdec;
+import ndr.NdrBuffer;
 import ndr.NetworkDataRepresentation;
 import org.jinterop.dcom.common.JIErrorCodes;
 import org.jinterop.dcom.common.JIException;
@@ -363,32 +365,38 @@ public final class JIVariant implements Serializable {
 			return new JIVariant((JIVariant) o);
 		}
 
-		try {
+		// now we look at the class and return a JIVariant.
+		if (c.equals(Boolean.class)) {
+			return new JIVariant(((Boolean) o).booleanValue(), isByRef);
+		} else if (c.equals(Character.class)) {
+			return new JIVariant(((Character) o).charValue(), isByRef);
+		} else if (c.equals(Short.class)) {
+			return new JIVariant(((Short) o).shortValue(), isByRef);
+		} else if (c.equals(Integer.class)) {
+			return new JIVariant(((Integer) o).intValue(), isByRef);
+		} else if (c.equals(Long.class)) {
+			return new JIVariant(((Long) o).longValue(), isByRef);
+		} else if (c.equals(Float.class)) {
+			return new JIVariant(((Float) o).floatValue(), isByRef);
+		} else if (c.equals(Double.class)) {
+			return new JIVariant(((Double) o).doubleValue(), isByRef);
+		} else if (o instanceof IJIComObject) {
+			return new JIVariant((IJIComObject) o, isByRef);
+		} else if (c.equals(JIString.class)) {
+			return new JIVariant((JIString) o, isByRef);
+		} else if (c.equals(String.class)) {
+			return new JIVariant((String) o, isByRef);
+		} else if (c.equals(Date.class)) {
+			return new JIVariant((Date) o, isByRef);
+		} else if (c.equals(JICurrency.class)) {
+			return new JIVariant((JICurrency) o, isByRef);
+		} else if (c.equals(JIArray.class)) {
+			return new JIVariant((JIArray) o, isByRef);
+		}
 
-			Constructor ctor = null;
-			// now we look at the class and return a JIVariant.
-			if (c.equals(Boolean.class)) {
-				ctor = JIVariant.class.getConstructor(new Class[] { boolean.class, boolean.class });
-			} else if (c.equals(Character.class)) {
-				ctor = JIVariant.class.getConstructor(new Class[] { char.class, boolean.class });
-			} else if (c.equals(Byte.class)) {
-				ctor = JIVariant.class.getConstructor(new Class[] { byte.class, boolean.class });
-			} else if (c.equals(Short.class)) {
-				ctor = JIVariant.class.getConstructor(new Class[] { short.class, boolean.class });
-			} else if (c.equals(Integer.class)) {
-				ctor = JIVariant.class.getConstructor(new Class[] { int.class, boolean.class });
-			} else if (c.equals(Long.class)) {
-				ctor = JIVariant.class.getConstructor(new Class[] { long.class, boolean.class });
-			} else if (c.equals(Float.class)) {
-				ctor = JIVariant.class.getConstructor(new Class[] { float.class, boolean.class });
-			} else if (c.equals(Double.class)) {
-				ctor = JIVariant.class.getConstructor(new Class[] { double.class, boolean.class });
-			} else if (o instanceof IJIComObject) {
-				ctor = JIVariant.class.getConstructor(new Class[] { IJIComObject.class, boolean.class });
-			} else {
-				// should cover all the rest cases.
-				ctor = JIVariant.class.getConstructor(new Class[] { c, boolean.class });
-			}
+		try {
+			// should cover all the rest cases.
+			final Constructor ctor = JIVariant.class.getConstructor(new Class[] { c, boolean.class });
 			return (JIVariant) ctor.newInstance(new Object[] { o, Boolean.valueOf(isByRef) });
 		} catch (final Exception e) {
 			logger.warn("Could not create Variant for " + o + " , isByRef " + isByRef, e);
@@ -1055,7 +1063,21 @@ public final class JIVariant implements Serializable {
 
 		switch (array.getDimensions()) {
 		case 1:
-			final Object[] obj = (Object[]) array.getArrayInstance();
+			final Object instance = array.getArrayInstance();
+			final Object[] obj;
+			final Class componentType = instance.getClass().getComponentType();
+			if (componentType.isPrimitive()) {
+				// a safe array carries boxed members, primitive arrays are
+				// copied over to their wrapper type and go the same way.
+				final int length = Array.getLength(instance);
+				obj = (Object[]) Array.newInstance(JIMarshalUnMarshalHelper.getBoxedTypeOfPrimitive(componentType),
+						length);
+				for (int i = 0; i < length; i++) {
+					obj[i] = Array.get(instance, i);
+				}
+			} else {
+				obj = (Object[]) instance;
+			}
 			newArrayObj = obj;
 			c = obj.getClass().getComponentType();
 			break;
@@ -1565,6 +1587,14 @@ class VariantBody implements Serializable {
 
 	private boolean isByRef = false;
 
+	// VT_I2, VT_I4, VT_R4, VT_R8, VT_BOOL and VT_DATE values read from the wire are
+	// kept unboxed, obj is only created once the value is asked for as an Object.
+	private int scalarType = 0;
+
+	private long scalarLong = 0;
+
+	private double scalarDouble = 0;
+
 	int FLAG = JIFlags.FLAG_NULL;
 	// int variantType = 0x1d; //base jump
 
@@ -1667,6 +1697,24 @@ class VariantBody implements Serializable {
 		this.type = JIVariant.VT_ERROR;
 	}
 
+	/**
+	 * Setting up a <code>VARIANT</code> with a scalar value read from the wire.
+	 * Used via deserializing the <code>VARIANT</code>.
+	 * 
+	 * @param scalarType  one of VT_I2, VT_I4, VT_R4, VT_R8, VT_BOOL or VT_DATE.
+	 * @param longValue   value of the integral types and of VT_BOOL.
+	 * @param doubleValue value of the floating point types and of VT_DATE.
+	 */
+	private VariantBody(final int scalarType, final long longValue, final double doubleValue) {
+		this.type = scalarType;
+		this.scalarType = scalarType;
+		this.scalarLong = longValue;
+		this.scalarDouble = doubleValue;
+		if (scalarType == JIVariant.VT_BOOL) {
+			this.FLAG = JIFlags.FLAG_REPRESENTATION_VARIANT_BOOL;
+		}
+	}
+
 	VariantBody(final JIStruct safeArray, final Class nestedClass, final boolean is2Dimensional, final boolean isByRef,
 			final int FLAG) {
 		this.FLAG = FLAG;
@@ -1724,7 +1772,39 @@ class VariantBody implements Serializable {
 	 * @return
 	 */
 	Object getObject() throws JIException {
-		return this.obj == null ? getArray() : this.obj;
+		return getValue() == null ? getArray() : getValue();
+	}
+
+	/**
+	 * Returns the contained object, boxing a scalar read from the wire on first
+	 * use. <code>null</code> for arrays.
+	 * 
+	 * @return
+	 */
+	private Object getValue() {
+		if (this.obj == null && this.scalarType != 0) {
+			switch (this.scalarType) {
+			case JIVariant.VT_I2:
+				this.obj = new Short((short) this.scalarLong);
+				break;
+			case JIVariant.VT_I4:
+				this.obj = new Integer((int) this.scalarLong);
+				break;
+			case JIVariant.VT_R4:
+				this.obj = new Float((float) this.scalarDouble);
+				break;
+			case JIVariant.VT_R8:
+				this.obj = new Double(this.scalarDouble);
+				break;
+			case JIVariant.VT_BOOL:
+				this.obj = Boolean.valueOf(this.scalarLong != 0);
+				break;
+			case JIVariant.VT_DATE:
+				this.obj = JIMarshalUnMarshalHelper.convertWindowsTimeToDate(this.scalarDouble);
+				break;
+			}
+		}
+		return this.obj;
 	}
 
 	JIArray getArray() throws JIException {
@@ -1806,8 +1886,11 @@ class VariantBody implements Serializable {
 	 * @return
 	 */
 	int getObjectAsInt() {
+		if (this.scalarType == JIVariant.VT_I4) {
+			return (int) this.scalarLong;
+		}
 		try {
-			return ((Integer) this.obj).intValue();
+			return ((Integer) getValue()).intValue();
 		} catch (final ClassCastException e) {
 			throw new IllegalStateException(e.getMessage());
 		}
@@ -1815,7 +1898,7 @@ class VariantBody implements Serializable {
 
 	long getObjectAsLong() {
 		try {
-			return ((Long) this.obj).longValue();
+			return ((Long) getValue()).longValue();
 		} catch (final ClassCastException e) {
 			throw new IllegalStateException(e.getMessage());
 		}
@@ -1823,7 +1906,7 @@ class VariantBody implements Serializable {
 
 	IJIUnsigned getObjectAsUnsigned() {
 		try {
-			return (IJIUnsigned) this.obj;
+			return (IJIUnsigned) getValue();
 		} catch (final ClassCastException e) {
 			throw new IllegalStateException(e.getMessage());
 		}
@@ -1831,7 +1914,7 @@ class VariantBody implements Serializable {
 
 	int getObjectAsSCODE() {
 		try {
-			return ((SCODE) this.obj).errorCode;
+			return ((SCODE) getValue()).errorCode;
 		} catch (final ClassCastException e) {
 			throw new IllegalStateException(e.getMessage());
 		}
@@ -1843,8 +1926,11 @@ class VariantBody implements Serializable {
 	 * @return
 	 */
 	float getObjectAsFloat() {
+		if (this.scalarType == JIVariant.VT_R4) {
+			return (float) this.scalarDouble;
+		}
 		try {
-			return ((Float) this.obj).floatValue();
+			return ((Float) getValue()).floatValue();
 		} catch (final ClassCastException e) {
 			throw new IllegalStateException(e.getMessage());
 		}
@@ -1856,8 +1942,11 @@ class VariantBody implements Serializable {
 	 * @return
 	 */
 	double getObjectAsDouble() {
+		if (this.scalarType == JIVariant.VT_R8) {
+			return this.scalarDouble;
+		}
 		try {
-			return ((Double) this.obj).doubleValue();
+			return ((Double) getValue()).doubleValue();
 		} catch (final ClassCastException e) {
 			throw new IllegalStateException(e.getMessage());
 		}
@@ -1869,8 +1958,11 @@ class VariantBody implements Serializable {
 	 * @return
 	 */
 	short getObjectAsShort() {
+		if (this.scalarType == JIVariant.VT_I2) {
+			return (short) this.scalarLong;
+		}
 		try {
-			return ((Short) this.obj).shortValue();
+			return ((Short) getValue()).shortValue();
 		} catch (final ClassCastException e) {
 			throw new IllegalStateException(e.getMessage());
 		}
@@ -1882,8 +1974,11 @@ class VariantBody implements Serializable {
 	 * @return
 	 */
 	boolean getObjectAsBoolean() {
+		if (this.scalarType == JIVariant.VT_BOOL) {
+			return this.scalarLong != 0;
+		}
 		try {
-			return ((Boolean) this.obj).booleanValue();
+			return ((Boolean) getValue()).booleanValue();
 		} catch (final ClassCastException e) {
 			throw new IllegalStateException(e.getMessage());
 		}
@@ -1896,7 +1991,7 @@ class VariantBody implements Serializable {
 	 */
 	JIString getObjectAsString() {
 		try {
-			return (JIString) this.obj;
+			return (JIString) getValue();
 		} catch (final ClassCastException e) {
 			throw new IllegalStateException(e.getMessage());
 		}
@@ -1909,7 +2004,7 @@ class VariantBody implements Serializable {
 	 */
 	Date getObjectAsDate() {
 		try {
-			return (Date) this.obj;
+			return (Date) getValue();
 		} catch (final ClassCastException e) {
 			throw new IllegalStateException(e.getMessage());
 		}
@@ -1922,7 +2017,7 @@ class VariantBody implements Serializable {
 	 */
 	char getObjectAsChar() {
 		try {
-			return ((Character) this.obj).charValue();
+			return ((Character) getValue()).charValue();
 		} catch (final ClassCastException e) {
 			throw new IllegalStateException(e.getMessage());
 		}
@@ -1935,7 +2030,7 @@ class VariantBody implements Serializable {
 	 */
 	JIVariant getObjectAsVariant() {
 		try {
-			return (JIVariant) this.obj;
+			return (JIVariant) getValue();
 		} catch (final ClassCastException e) {
 			throw new IllegalStateException(e.getMessage());
 		}
@@ -1943,7 +2038,7 @@ class VariantBody implements Serializable {
 
 	IJIComObject getObjectAsComObject() {
 		try {
-			return (IJIComObject) this.obj;
+			return (IJIComObject) getValue();
 		} catch (final ClassCastException e) {
 			throw new IllegalStateException(e.getMessage());
 		}
@@ -1979,7 +2074,7 @@ class VariantBody implements Serializable {
 			ndr.writeUnsignedLong(0);
 
 			// Type
-			int varType = getVarType(this.obj != null ? this.obj.getClass() : this.nestedArraysRealClass, this.obj);
+			int varType = getVarType(getValue() != null ? getValue().getClass() : this.nestedArraysRealClass, getValue());
 
 			// For IUnknown , since the inner object is a JIComObjectImpl it will be fine.
 			if ((FLAG
@@ -1996,7 +2091,7 @@ class VariantBody implements Serializable {
 			ndr.writeUnsignedSmall(0xCC);
 			ndr.writeUnsignedSmall(0xCC);
 
-			if (this.obj != null) {
+			if (getValue() != null) {
 				ndr.writeUnsignedLong(varType);
 			} else {
 				if (!this.isByRef) {
@@ -2035,7 +2130,7 @@ class VariantBody implements Serializable {
 			final List varDefferedPointers = new ArrayList();
 
 			// we should use FLAG here, since the decision should be based on this only.
-			setValue(ndr, this.obj, varDefferedPointers, FLAG);
+			setValue(ndr, getValue(), varDefferedPointers, FLAG);
 
 			// making changes to write the deffered pointers here itself , since we need to
 			// put the entire Variant completed to the length
@@ -2302,6 +2397,10 @@ class VariantBody implements Serializable {
 
 		ndr.readUnsignedLong(); // 32 bit varType
 
+		if (isScalarType(variantType)) {
+			return decodeScalar(ndr, variantType);
+		}
+
 		VariantBody variant = null;
 
 		final List varDefferedPointers = new ArrayList();
@@ -2412,6 +2511,55 @@ class VariantBody implements Serializable {
 		return variant;
 	}
 
+	private static boolean isScalarType(final int variantType) {
+		switch (variantType) {
+		case JIVariant.VT_I2:
+		case JIVariant.VT_I4:
+		case JIVariant.VT_R4:
+		case JIVariant.VT_R8:
+		case JIVariant.VT_BOOL:
+		case JIVariant.VT_DATE:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Reads a non pointer scalar straight from the buffer, the alignment is the
+	 * same as that of the boxed type.
+	 */
+	private static VariantBody decodeScalar(final NetworkDataRepresentation ndr, final int variantType) {
+		final NdrBuffer buffer = ndr.getBuffer();
+		switch (variantType) {
+		case JIVariant.VT_I2:
+			JIMarshalUnMarshalHelper.alignMemberWhileDecoding(ndr, Short.class, null);
+			return new VariantBody(variantType, (short) ndr.readUnsignedShort(), 0);
+		case JIVariant.VT_I4:
+			JIMarshalUnMarshalHelper.alignMemberWhileDecoding(ndr, Integer.class, null);
+			return new VariantBody(variantType, ndr.readUnsignedLong(), 0);
+		case JIVariant.VT_BOOL:
+			return new VariantBody(variantType, ndr.readUnsignedShort() != 0 ? 1 : 0, 0);
+		case JIVariant.VT_R4: {
+			JIMarshalUnMarshalHelper.alignMemberWhileDecoding(ndr, Float.class, null);
+			buffer.align(4);
+			final float value = Encdec.dec_floatle(buffer.getBuffer(), buffer.getIndex());
+			buffer.advance(4);
+			return new VariantBody(variantType, 0, value);
+		}
+		default: {
+			// VT_R8 and VT_DATE, the date is converted when it is asked for.
+			if (variantType == JIVariant.VT_R8) {
+				JIMarshalUnMarshalHelper.alignMemberWhileDecoding(ndr, Double.class, null);
+			}
+			buffer.align(8);
+			final double value = Encdec.dec_doublele(buffer.getBuffer(), buffer.getIndex());
+			buffer.advance(8);
+			return new VariantBody(variantType, 0, value);
+		}
+		}
+	}
+
 	// Variants need specialised handling and the standard serializers may or maynot
 	// be used.
 	private static Class getVarClass(int type) {
@@ -2643,7 +2791,7 @@ class VariantBody implements Serializable {
 	}
 
 	int getLengthInBytes() {
-		if (this.safeArrayStruct == null && this.obj.getClass().equals(VariantBody.EMPTY.class)) {
+		if (this.safeArrayStruct == null && getValue().getClass().equals(VariantBody.EMPTY.class)) {
 			return 28;
 		}
 
@@ -2666,9 +2814,9 @@ class VariantBody implements Serializable {
 
 			return length;
 		} else {
-			Class c = this.obj.getClass();
+			Class c = getValue().getClass();
 
-			if (this.obj instanceof IJIComObject) {
+			if (getValue() instanceof IJIComObject) {
 				c = IJIComObject.class;
 			} else if (c.equals(VariantBody.SCODE.class)) {
 				return 24 + 4; // 4 for integer scode.
@@ -2676,17 +2824,17 @@ class VariantBody implements Serializable {
 				return 24;
 			}
 
-			return 24 + JIMarshalUnMarshalHelper.getLengthInBytes(c, this.obj, this.FLAG);
+			return 24 + JIMarshalUnMarshalHelper.getLengthInBytes(c, getValue(), this.FLAG);
 		}
 	}
 
 	@Override
 	public String toString() {
 		String retVal = "";
-		if (this.obj == null) {
+		if (getValue() == null) {
 			retVal += "obj is null , ";
 		} else {
-			retVal += this.obj.toString();
+			retVal += getValue().toString();
 		}
 		if (this.isArray) {
 			if (this.is2Dimensional) {
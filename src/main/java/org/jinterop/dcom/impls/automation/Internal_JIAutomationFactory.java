@@ -74,4 +74,14 @@ public final class Internal_JIAutomationFactory
         return retval;
     }
 
+    /**
+     * Drops the automation caches of a destroyed session.
+     * 
+     * @param sessionIdentifier
+     */
+    public static void sessionDestroyed ( final int sessionIdentifier )
+    {
+        JIDispatchCache.invalidate ( sessionIdentifier );
+    }
+
 }
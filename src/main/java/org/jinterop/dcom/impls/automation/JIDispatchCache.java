@@ -0,0 +1,272 @@
+/** j-Interop (Pure Java implementation of DCOM protocol)
+ * Copyright (C) 2006  Vikram Roopchand
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * Though a sincere effort has been made to deliver a professional,
+ * quality product,the library itself is distributed WITHOUT ANY WARRANTY;
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110, USA
+ */
+
+package org.jinterop.dcom.impls.automation;
+
+import org.jinterop.dcom.common.JIException;
+import org.jinterop.dcom.core.JIArray;
+import org.jinterop.dcom.core.JISession;
+import org.jinterop.dcom.core.JIString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process wide cache of the DISPIDs and member descriptions (
+ * <code>FUNCDESC</code>, <code>VARDESC</code>) of automation types, shared by
+ * all {@link IJIDispatch} instances of the same type within a session. Entries
+ * are keyed by the GUID and version of the type information of the object, and
+ * are dropped when their session is destroyed.
+ * <p>
+ * The type of an <code>IDispatch</code> can only be learned from its type
+ * information, which takes two calls per object. Hence sharing is opt-in,
+ * either per object via {@link #preload(IJIDispatch)} or for all objects via
+ * {@link #setResolveTypes(boolean)}. Otherwise each {@link IJIDispatch} keeps
+ * its own cache of DISPIDs, as before. Name based calls on an object whose type
+ * is cached take a single call (<code>Invoke</code>).
+ *
+ * @since 3.0
+ */
+public final class JIDispatchCache
+{
+    private final static Logger logger = LoggerFactory.getLogger ( JIDispatchCache.class );
+
+    //session identifier vs (type key vs TypeEntry)
+    private static final Map sessions = new ConcurrentHashMap ();
+
+    private static volatile boolean resolveTypes = false;
+
+    /**
+     * DISPIDs and member descriptions of one type. Names are stored upper cased,
+     * <code>GetIDsOfNames</code> is case insensitive.
+     */
+    static final class TypeEntry
+    {
+        //name vs DISPID
+        final Map dispIds = new ConcurrentHashMap ();
+
+        //method name vs (argument name vs DISPID)
+        final Map namedArgs = new ConcurrentHashMap ();
+
+        //name vs FuncDesc, the first one found if the member has accessors.
+        final Map funcDescs = new ConcurrentHashMap ();
+
+        //name vs VarDesc
+        final Map varDescs = new ConcurrentHashMap ();
+
+        volatile boolean preloaded = false;
+
+        Integer getDispId ( final String name )
+        {
+            return (Integer)this.dispIds.get ( toKey ( name ) );
+        }
+
+        void putDispId ( final String name, final Integer dispId )
+        {
+            this.dispIds.put ( toKey ( name ), dispId );
+        }
+
+        Map getNamedArgs ( final String name, final boolean create )
+        {
+            final String key = toKey ( name );
+            Map map = (Map)this.namedArgs.get ( key );
+            if ( map == null && create )
+            {
+                map = new ConcurrentHashMap ();
+                final Map existing = (Map) ( (ConcurrentHashMap)this.namedArgs ).putIfAbsent ( key, map );
+                map = existing == null ? map : existing;
+            }
+            return map;
+        }
+    }
+
+    private JIDispatchCache ()
+    {
+    }
+
+    static String toKey ( final String name )
+    {
+        return name.trim ().toUpperCase ( Locale.ENGLISH );
+    }
+
+    /**
+     * If enabled, every {@link IJIDispatch} resolves the type information of its
+     * object on the first lookup by name (<code>GetTypeInfo</code> and
+     * <code>GetTypeAttr</code>) and shares the DISPIDs with all other objects of
+     * that type. The first object of a type preloads all its members. Worthwhile
+     * if objects are short lived but use several members by name. Default is
+     * <code>false</code>.
+     *
+     * @param enable
+     */
+    public static void setResolveTypes ( final boolean enable )
+    {
+        resolveTypes = enable;
+    }
+
+    public static boolean isResolveTypes ()
+    {
+        return resolveTypes;
+    }
+
+    /**
+     * Reads the DISPIDs and member descriptions of the type of
+     * <code>dispatch</code> in one pass, unless already cached for its session,
+     * and makes <code>dispatch</code> use the shared entry.
+     *
+     * @param dispatch
+     * @throws JIException if the type information could not be read.
+     */
+    public static void preload ( final IJIDispatch dispatch ) throws JIException
+    {
+        final TypeEntry entry = resolve ( dispatch );
+        if ( entry != null && dispatch instanceof JIDispatchImpl )
+        {
+            ( (JIDispatchImpl)dispatch ).setTypeEntry ( entry );
+        }
+    }
+
+    /**
+     * @return the cached <code>FUNCDESC</code> of the method or property
+     *         <code>name</code>, or <code>null</code> if the type of
+     *         <code>dispatch</code> is not cached or has no such member.
+     */
+    public static FuncDesc getFuncDesc ( final IJIDispatch dispatch, final String name )
+    {
+        final TypeEntry entry = dispatch instanceof JIDispatchImpl ? ( (JIDispatchImpl)dispatch ).getSharedTypeEntry () : null;
+        return entry == null ? null : (FuncDesc)entry.funcDescs.get ( toKey ( name ) );
+    }
+
+    /**
+     * @return the cached <code>VARDESC</code> of the property
+     *         <code>name</code>, or <code>null</code> if the type of
+     *         <code>dispatch</code> is not cached or has no such member.
+     */
+    public static VarDesc getVarDesc ( final IJIDispatch dispatch, final String name )
+    {
+        final TypeEntry entry = dispatch instanceof JIDispatchImpl ? ( (JIDispatchImpl)dispatch ).getSharedTypeEntry () : null;
+        return entry == null ? null : (VarDesc)entry.varDescs.get ( toKey ( name ) );
+    }
+
+    /**
+     * Drops all cached types of <code>session</code>. Called by the framework
+     * when the session is destroyed.
+     *
+     * @param session
+     */
+    public static void invalidate ( final JISession session )
+    {
+        invalidate ( session.getSessionIdentifier () );
+    }
+
+    static void invalidate ( final int sessionIdentifier )
+    {
+        sessions.remove ( new Integer ( sessionIdentifier ) );
+    }
+
+    /**
+     * Finds (and preloads if required) the shared entry of the type of
+     * <code>dispatch</code>.
+     *
+     * @return <code>null</code> if the object provides no type information.
+     */
+    static TypeEntry resolve ( final IJIDispatch dispatch ) throws JIException
+    {
+        if ( dispatch.getTypeInfoCount () == 0 )
+        {
+            return null;
+        }
+
+        final IJITypeInfo typeInfo = dispatch.getTypeInfo ( 0 );
+        final TypeAttr typeAttr = typeInfo.getTypeAttr ();
+        final String key = typeAttr.guid.toUpperCase () + ":" + typeAttr.wMajorVerNum + "." + typeAttr.wMinorVerNum;
+
+        final Integer sessionId = new Integer ( dispatch.getAssociatedSession ().getSessionIdentifier () );
+        ConcurrentHashMap types = (ConcurrentHashMap)sessions.get ( sessionId );
+        if ( types == null )
+        {
+            types = new ConcurrentHashMap ();
+            final ConcurrentHashMap existing = (ConcurrentHashMap)( (ConcurrentHashMap)sessions ).putIfAbsent ( sessionId, types );
+            types = existing == null ? types : existing;
+        }
+
+        TypeEntry entry = (TypeEntry)types.get ( key );
+        if ( entry == null )
+        {
+            entry = new TypeEntry ();
+            final TypeEntry existing = (TypeEntry)types.putIfAbsent ( key, entry );
+            entry = existing == null ? entry : existing;
+        }
+
+        if ( !entry.preloaded )
+        {
+            synchronized ( entry )
+            {
+                if ( !entry.preloaded )
+                {
+                    preload ( entry, typeInfo, typeAttr );
+                    entry.preloaded = true;
+                }
+            }
+        }
+        return entry;
+    }
+
+    private static void preload ( final TypeEntry entry, final IJITypeInfo typeInfo, final TypeAttr typeAttr ) throws JIException
+    {
+        for ( int i = 0; i < typeAttr.cFuncs; i++ )
+        {
+            final FuncDesc funcDesc = typeInfo.getFuncDesc ( i );
+            final String name = getName ( typeInfo, funcDesc.memberId );
+            if ( name == null )
+            {
+                continue;
+            }
+            entry.putDispId ( name, new Integer ( funcDesc.memberId ) );
+            //property get, put and putref share the name, the first one wins.
+            ( (ConcurrentHashMap)entry.funcDescs ).putIfAbsent ( toKey ( name ), funcDesc );
+        }
+
+        for ( int i = 0; i < typeAttr.cVars; i++ )
+        {
+            final VarDesc varDesc = typeInfo.getVarDesc ( i );
+            final String name = getName ( typeInfo, varDesc.memberId );
+            if ( name == null )
+            {
+                continue;
+            }
+            entry.putDispId ( name, new Integer ( varDesc.memberId ) );
+            entry.varDescs.put ( toKey ( name ), varDesc );
+        }
+
+        logger.debug ( "Preloaded type {} with {} functions and {} variables", new Object[] { typeAttr.guid, new Integer ( typeAttr.cFuncs ), new Integer ( typeAttr.cVars ) } );
+    }
+
+    private static String getName ( final IJITypeInfo typeInfo, final int memberId ) throws JIException
+    {
+        final Object[] result = typeInfo.getNames ( memberId, 1 );
+        final Object[] names = (Object[]) ( (JIArray)result[0] ).getArrayInstance ();
+        if ( names == null || names.length == 0 || names[0] == null )
+        {
+            return null;
+        }
+        return ( (JIString)names[0] ).getString ();
+    }
+}
@@ -27,7 +27,6 @@ import org.slf4j.LoggerFactory;
 import rpc.core.UUID;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -42,7 +41,10 @@ final class JIDispatchImpl extends JIComObjectImplWrapper implements IJIDispatch
     private static final long serialVersionUID = 4908149252176353846L;
 
     //IJIComObject comObject = null;
-    private final Map cacheOfDispIds = new HashMap ();
+    //DISPIDs of this object, or of its type once shared via JIDispatchCache.
+    private transient volatile JIDispatchCache.TypeEntry typeEntry = null;
+
+    private transient volatile boolean sharedTypeEntry = false;
 
     JIDispatchImpl ( final IJIComObject comObject )
     {
@@ -61,6 +63,55 @@ final class JIDispatchImpl extends JIComObjectImplWrapper implements IJIDispatch
         return this.comObject;
     }
 
+    private JIDispatchCache.TypeEntry getTypeEntry ()
+    {
+        final JIDispatchCache.TypeEntry entry = this.typeEntry;
+        if ( entry != null )
+        {
+            return entry;
+        }
+
+        synchronized ( this )
+        {
+            if ( this.typeEntry == null )
+            {
+                JIDispatchCache.TypeEntry shared = null;
+                if ( JIDispatchCache.isResolveTypes () )
+                {
+                    try
+                    {
+                        shared = JIDispatchCache.resolve ( this );
+                    }
+                    catch ( final JIException e )
+                    {
+                        logger.debug ( "Could not resolve the type of " + this + ", caching its DISPIDs per object", e );
+                    }
+                }
+
+                if ( shared != null )
+                {
+                    setTypeEntry ( shared );
+                }
+                else
+                {
+                    this.typeEntry = new JIDispatchCache.TypeEntry ();
+                }
+            }
+            return this.typeEntry;
+        }
+    }
+
+    void setTypeEntry ( final JIDispatchCache.TypeEntry entry )
+    {
+        this.typeEntry = entry;
+        this.sharedTypeEntry = true;
+    }
+
+    JIDispatchCache.TypeEntry getSharedTypeEntry ()
+    {
+        return this.sharedTypeEntry ? this.typeEntry : null;
+    }
+
     @Override
     public int getTypeInfoCount () throws JIException
     {
@@ -80,11 +131,11 @@ final class JIDispatchImpl extends JIComObjectImplWrapper implements IJIDispatch
             throw new IllegalArgumentException ( JISystem.getLocalizedMessage ( JIErrorCodes.JI_DISP_INCORRECT_VALUE_FOR_GETIDNAMES ) );
         }
 
-        Map innerMap = (Map)this.cacheOfDispIds.get ( apiName );
-        if ( innerMap != null )
+        final JIDispatchCache.TypeEntry entry = getTypeEntry ();
+        final Integer cachedDispId = entry.getDispId ( apiName );
+        if ( cachedDispId != null )
         {
-            final Integer dispId = (Integer)innerMap.get ( apiName );
-            return dispId.intValue ();
+            return cachedDispId.intValue ();
         }
 
         final JICallBuilder obj = new JICallBuilder ( true );
@@ -105,12 +156,10 @@ final class JIDispatchImpl extends JIComObjectImplWrapper implements IJIDispatch
             throw new JIException ( obj.getHRESULT () );
         }
 
-        innerMap = new HashMap ();
-        innerMap.put ( apiName, ( (Object[]) ( (JIArray)result[0] ).getArrayInstance () )[0] );
-        this.cacheOfDispIds.put ( apiName, innerMap );
-
         //first will be the length , and the next will be the actual value.
-        return ( (Integer) ( (Object[]) ( (JIArray)result[0] ).getArrayInstance () )[0] ).intValue ();//will get the dispatch ID.
+        final Integer dispId = (Integer) ( (Object[]) ( (JIArray)result[0] ).getArrayInstance () )[0];//will get the dispatch ID.
+        entry.putDispId ( apiName, dispId );
+        return dispId.intValue ();
     }
 
     @Override
@@ -121,15 +170,26 @@ final class JIDispatchImpl extends JIComObjectImplWrapper implements IJIDispatch
             throw new IllegalArgumentException ( JISystem.getLocalizedMessage ( JIErrorCodes.JI_DISP_INCORRECT_VALUE_FOR_GETIDNAMES ) );
         }
 
+        for ( int i = 0; i < apiName.length; i++ )
+        {
+            if ( apiName[i] == null || apiName[i].trim ().equals ( "" ) )
+            {
+                throw new IllegalArgumentException ( JISystem.getLocalizedMessage ( JIErrorCodes.JI_DISP_INCORRECT_VALUE_FOR_GETIDNAMES ) );
+            }
+        }
+
         boolean sendForAll = false;
-        //first one will be the method name
-        Map innerMap = (Map)this.cacheOfDispIds.get ( apiName[0] );
-        if ( innerMap != null ) //if name is not found will not even go in. so it is safe to assume that api name will always be there.
+        //first one will be the method name, the others are names of its arguments.
+        final JIDispatchCache.TypeEntry entry = getTypeEntry ();
+        final Integer methodDispId = entry.getDispId ( apiName[0] );
+        final Map namedArgs = entry.getNamedArgs ( apiName[0], false );
+        if ( methodDispId != null && ( apiName.length == 1 || namedArgs != null ) )
         {
-            final int[] values = new int[innerMap.size ()];
-            for ( int i = 0; i < apiName.length; i++ )
+            final int[] values = new int[apiName.length];
+            values[0] = methodDispId.intValue ();
+            for ( int i = 1; i < apiName.length; i++ )
             {
-                final Integer dispId = (Integer)innerMap.get ( apiName[i] );
+                final Integer dispId = (Integer)namedArgs.get ( JIDispatchCache.toKey ( apiName[i] ) );
                 if ( dispId == null )
                 {
                     sendForAll = true;
@@ -154,10 +214,6 @@ final class JIDispatchImpl extends JIComObjectImplWrapper implements IJIDispatch
 
         for ( int i = 0; i < apiName.length; i++ )
         {
-            if ( apiName[i] == null || apiName[i].trim ().equals ( "" ) )
-            {
-                throw new IllegalArgumentException ( JISystem.getLocalizedMessage ( JIErrorCodes.JI_DISP_INCORRECT_VALUE_FOR_GETIDNAMES ) );
-            }
             pointers[i] = new JIPointer ( new JIString ( apiName[i].trim (), JIFlags.FLAG_REPRESENTATION_STRING_LPWSTR ) );
         }
 
@@ -181,16 +237,15 @@ final class JIDispatchImpl extends JIComObjectImplWrapper implements IJIDispatch
         final Integer[] arrayOfDispIds = (Integer[])arrayOfResults.getArrayInstance ();
         final int[] retVal = new int[apiName.length];
 
-        innerMap = innerMap == null ? new HashMap () : innerMap;
+        entry.putDispId ( apiName[0], arrayOfDispIds[0] );
+        final Map args = apiName.length > 1 ? entry.getNamedArgs ( apiName[0], true ) : null;
         for ( int i = 0; i < apiName.length; i++ )
         {
             retVal[i] = arrayOfDispIds[i].intValue ();
-            innerMap.put ( apiName[i], arrayOfDispIds[i] );
-        }
-
-        if ( !this.cacheOfDispIds.containsKey ( apiName[0] ) )
-        {
-            this.cacheOfDispIds.put ( apiName[0], innerMap );
+            if ( i > 0 )
+            {
+                args.put ( JIDispatchCache.toKey ( apiName[i] ), arrayOfDispIds[i] );
+            }
         }
         return retVal;
     }
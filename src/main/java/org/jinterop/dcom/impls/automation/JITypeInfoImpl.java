@@ -23,6 +23,9 @@ import org.jinterop.dcom.core.*;
 import org.jinterop.dcom.impls.JIObjectFactory;
 import rpc.core.UUID;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * @exclude
  * @since 1.0
@@ -35,6 +38,15 @@ final class JITypeInfoImpl extends JIComObjectImplWrapper implements IJITypeInfo
 	 */
     private static final long serialVersionUID = 693590689068822035L;
 
+    //type information does not change during the life of the object, the descriptions are read only once.
+    private volatile TypeAttr typeAttr = null;
+
+    //index vs FuncDesc
+    private final Map funcDescs = new ConcurrentHashMap ();
+
+    //index vs VarDesc
+    private final Map varDescs = new ConcurrentHashMap ();
+
     //IJIComObject comObject = null;
     //JIRemUnknown unknown = null;
     JITypeInfoImpl ( final IJIComObject comObject/*, JIRemUnknown unknown*/)
@@ -45,6 +57,18 @@ final class JITypeInfoImpl extends JIComObjectImplWrapper implements IJITypeInfo
 
     @Override
     public FuncDesc getFuncDesc ( final int index ) throws JIException
+    {
+        final Integer key = new Integer ( index );
+        FuncDesc funcDesc = (FuncDesc)this.funcDescs.get ( key );
+        if ( funcDesc == null )
+        {
+            funcDesc = readFuncDesc ( index );
+            this.funcDescs.put ( key, funcDesc );
+        }
+        return funcDesc;
+    }
+
+    private FuncDesc readFuncDesc ( final int index ) throws JIException
     {
 
         //prepare the GO here
@@ -152,6 +176,17 @@ final class JITypeInfoImpl extends JIComObjectImplWrapper implements IJITypeInfo
 
     @Override
     public TypeAttr getTypeAttr () throws JIException
+    {
+        TypeAttr attr = this.typeAttr;
+        if ( attr == null )
+        {
+            attr = readTypeAttr ();
+            this.typeAttr = attr;
+        }
+        return attr;
+    }
+
+    private TypeAttr readTypeAttr () throws JIException
     {
         final JICallBuilder obj = new JICallBuilder ( true );
         obj.setOpnum ( 0 );
@@ -284,6 +319,18 @@ final class JITypeInfoImpl extends JIComObjectImplWrapper implements IJITypeInfo
 
     @Override
     public VarDesc getVarDesc ( final int index ) throws JIException
+    {
+        final Integer key = new Integer ( index );
+        VarDesc varDesc = (VarDesc)this.varDescs.get ( key );
+        if ( varDesc == null )
+        {
+            varDesc = readVarDesc ( index );
+            this.varDescs.put ( key, varDesc );
+        }
+        return varDesc;
+    }
+
+    private VarDesc readVarDesc ( final int index ) throws JIException
     {
         final JICallBuilder callObject = new JICallBuilder ( true );
         callObject.setOpnum ( 3 );
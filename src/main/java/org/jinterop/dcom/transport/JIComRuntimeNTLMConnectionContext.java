@@ -156,7 +156,14 @@ public final class JIComRuntimeNTLMConnectionContext extends NtlmConnectionConte
     {
         synchronized ( this.listOfInterfacesSupported )
         {
-            this.listOfInterfacesSupported.addAll ( newList );
+            //called with every bind, do not let the list grow with duplicates.
+            for ( int i = 0; i < newList.size (); i++ )
+            {
+                if ( !this.listOfInterfacesSupported.contains ( newList.get ( i ) ) )
+                {
+                    this.listOfInterfacesSupported.add ( newList.get ( i ) );
+                }
+            }
         }
     }
 
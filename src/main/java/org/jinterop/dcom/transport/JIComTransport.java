@@ -17,6 +17,7 @@
 package org.jinterop.dcom.transport;
 
 import ndr.NdrBuffer;
+import org.jinterop.dcom.common.JISystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rpc.Endpoint;
@@ -99,10 +100,10 @@ final class JIComTransport implements Transport {
 		}
 		try {
 			if (logger.isDebugEnabled()) {
-				logger.debug("Opening socket on " + new InetSocketAddress(InetAddress.getByName(this.host), this.port));
+				logger.debug("Opening socket on " + new InetSocketAddress(JISystem.getInetAddress(this.host), this.port));
 			}
 
-			this.channel = SocketChannel.open(new InetSocketAddress(InetAddress.getByName(this.host), this.port));
+			this.channel = SocketChannel.open(new InetSocketAddress(JISystem.getInetAddress(this.host), this.port));
 			this.socket = this.channel.socket();// new Socket(host, port);
 			this.output = null;
 			this.input = null;
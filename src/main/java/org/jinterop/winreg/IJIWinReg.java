@@ -88,6 +88,18 @@ public interface IJIWinReg
 
     public static final int REG_OPTION_VOLATILE = 1;
 
+    /**
+     * Predefined keys, used to select the hive of
+     * {@link JIWinRegFactory#readTree(org.jinterop.dcom.common.IJIAuthInfo, String, int, String, int, int)}.
+     */
+    public static final int HKEY_CLASSES_ROOT = 0x80000000;
+
+    public static final int HKEY_CURRENT_USER = 0x80000001;
+
+    public static final int HKEY_LOCAL_MACHINE = 0x80000002;
+
+    public static final int HKEY_USERS = 0x80000003;
+
     class closeKey extends NdrObject
     {
         public JIPolicyHandle key = null;
@@ -18,7 +18,9 @@
 package org.jinterop.winreg;
 
 import org.jinterop.dcom.common.IJIAuthInfo;
+import org.jinterop.dcom.common.JIException;
 import org.jinterop.winreg.smb.JIWinRegStub;
+import org.jinterop.winreg.smb.JIWinRegTreeReader;
 
 import java.net.UnknownHostException;
 
@@ -107,4 +109,36 @@ public class JIWinRegFactory
             return null;
         }
     }
+
+    /**
+     * Reads a registry subtree, such as <code>CLSID</code> of
+     * <code>HKEY_CLASSES_ROOT</code> with the
+     * <code>Implemented Categories</code> of each class, in one operation.
+     * Keys are read over several <code>winreg</code> pipes in parallel instead
+     * of one call at a time, which matters for trees of hundreds of keys.
+     * 
+     * @param authInfo
+     *            credentials for access to Windows Remote Registry service,
+     *            <code>null</code> for SSO.
+     * @param serverName
+     *            target server
+     * @param hive
+     *            one of the <code>HKEY_</code> constants of {@link IJIWinReg}.
+     * @param path
+     *            key relative to the hive, empty for the hive itself.
+     * @param maxDepth
+     *            levels of sub keys read below <code>path</code>, 0 reads only
+     *            the values of <code>path</code>.
+     * @param connections
+     *            number of pipes used in parallel, 4 to 8 are sensible.
+     * @return the key <code>path</code> with its values and sub keys.
+     * @throws JIException
+     *             if the server could not be reached or a pipe failed.
+     *             Keys which could not be read are returned with their error
+     *             code instead.
+     */
+    public JIWinRegKey readTree ( final IJIAuthInfo authInfo, final String serverName, final int hive, final String path, final int maxDepth, final int connections ) throws JIException
+    {
+        return new JIWinRegTreeReader ( authInfo, serverName, hive, maxDepth, connections ).read ( path );
+    }
 }
@@ -0,0 +1,201 @@
+/**j-Interop (Pure Java implementation of DCOM protocol)
+ * Copyright (C) 2006  Vikram Roopchand
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * Though a sincere effort has been made to deliver a professional,
+ * quality product,the library itself is distributed WITHOUT ANY WARRANTY;
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110, USA
+ */
+package org.jinterop.winreg;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot of a registry key, its values and (up to the requested depth) its
+ * sub keys, as returned by
+ * {@link JIWinRegFactory#readTree(org.jinterop.dcom.common.IJIAuthInfo, String, int, String, int, int)}.
+ * 
+ * @since 3.0
+ */
+public final class JIWinRegKey
+{
+
+    private final String name;
+
+    private final String path;
+
+    private final Map values = new LinkedHashMap ();
+
+    private final List subKeys = new ArrayList ();
+
+    private int errorCode = 0;
+
+    private boolean subKeysRead = false;
+
+    JIWinRegKey ( final String name, final String path )
+    {
+        this.name = name;
+        this.path = path;
+    }
+
+    /**
+     * @return name of this key, the last element of its path.
+     */
+    public String getName ()
+    {
+        return this.name;
+    }
+
+    /**
+     * @return path of this key relative to the hive.
+     */
+    public String getPath ()
+    {
+        return this.path;
+    }
+
+    /**
+     * Values of this key in the order returned by the server. The default
+     * value has the empty name.
+     * 
+     * @return value name vs an <code>Object[]</code> in the format of
+     *         {@link IJIWinReg#winreg_QueryValue(JIPolicyHandle, String, int)}.
+     */
+    public Map getValues ()
+    {
+        return Collections.unmodifiableMap ( this.values );
+    }
+
+    /**
+     * @return the value <code>valueName</code> as a String if it is of type
+     *         <code>REG_SZ</code> or <code>REG_EXPAND_SZ</code>,
+     *         <code>null</code> otherwise.
+     */
+    public String getStringValue ( final String valueName )
+    {
+        final Object[] value = (Object[])this.values.get ( valueName );
+        if ( value == null )
+        {
+            return null;
+        }
+        final int type = ( (Integer)value[0] ).intValue ();
+        if ( type != IJIWinReg.REG_SZ && type != IJIWinReg.REG_EXPAND_SZ || ! ( value[1] instanceof byte[] ) )
+        {
+            return null;
+        }
+        //strings are read up to the buffer size, the remainder is zero filled.
+        final byte[] bytes = (byte[])value[1];
+        int length = 0;
+        while ( length < bytes.length && bytes[length] != 0 )
+        {
+            length++;
+        }
+        return new String ( bytes, 0, length );
+    }
+
+    /**
+     * @return sub keys, empty if the depth limit was reached (see
+     *         {@link #isSubKeysRead()}).
+     */
+    public List getSubKeys ()
+    {
+        return Collections.unmodifiableList ( this.subKeys );
+    }
+
+    /**
+     * @return the sub key <code>name</code> (case insensitive) or
+     *         <code>null</code>.
+     */
+    public JIWinRegKey getSubKey ( final String name )
+    {
+        for ( int i = 0; i < this.subKeys.size (); i++ )
+        {
+            final JIWinRegKey key = (JIWinRegKey)this.subKeys.get ( i );
+            if ( key.name.equalsIgnoreCase ( name ) )
+            {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return <code>false</code> if the sub keys were not enumerated because of
+     *         the depth limit.
+     */
+    public boolean isSubKeysRead ()
+    {
+        return this.subKeysRead;
+    }
+
+    /**
+     * @return <code>0</code> or the error code (such as
+     *         <code>ERROR_ACCESS_DENIED</code>) which prevented reading this key
+     *         completely.
+     */
+    public int getErrorCode ()
+    {
+        return this.errorCode;
+    }
+
+    /**
+     * @exclude
+     */
+    public JIWinRegKey internal_addSubKey ( final String name )
+    {
+        final JIWinRegKey key = new JIWinRegKey ( name, this.path.length () == 0 ? name : this.path + "\\" + name );
+        this.subKeys.add ( key );
+        return key;
+    }
+
+    /**
+     * @exclude
+     */
+    public void internal_setValue ( final String valueName, final Object[] value )
+    {
+        this.values.put ( valueName, value );
+    }
+
+    /**
+     * @exclude
+     */
+    public void internal_setSubKeysRead ()
+    {
+        this.subKeysRead = true;
+    }
+
+    /**
+     * @exclude
+     */
+    public void internal_setErrorCode ( final int errorCode )
+    {
+        this.errorCode = errorCode;
+    }
+
+    /**
+     * @exclude
+     */
+    public static JIWinRegKey internal_createRoot ( final String path )
+    {
+        final int index = path.lastIndexOf ( '\\' );
+        return new JIWinRegKey ( index == -1 ? path : path.substring ( index + 1 ), path );
+    }
+
+    @Override
+    public String toString ()
+    {
+        return "JIWinRegKey[" + this.path + ", values=" + this.values.size () + ", subKeys=" + this.subKeys.size () + "]";
+    }
+}
@@ -26,7 +26,6 @@ import rpc.Stub;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.net.InetAddress;
 import java.net.URLEncoder;
 import java.net.UnknownHostException;
 import java.util.Properties;
@@ -84,7 +83,7 @@ public class JIWinRegStub extends Stub implements IJIWinReg
         super.getProperties ().setProperty ( "rpc.ncacn_np.password", password_.toString () );
         super.getProperties ().setProperty ( "rpc.ncacn_np.domain", authInfo.getDomain () );
         serverName = serverName.trim ();
-        serverName = InetAddress.getByName ( serverName ).getHostAddress ();
+        serverName = JISystem.getInetAddress ( serverName ).getHostAddress ();
         super.setAddress ( "ncacn_np:" + serverName + "[\\PIPE\\winreg]" );
 
     }
@@ -96,7 +95,7 @@ public class JIWinRegStub extends Stub implements IJIWinReg
         super.setProperties ( new Properties () );
         super.getProperties ().setProperty ( "rpc.ntlm.sso", "true" );
         serverName = serverName.trim ();
-        serverName = InetAddress.getByName ( serverName ).getHostAddress ();
+        serverName = JISystem.getInetAddress ( serverName ).getHostAddress ();
         super.setAddress ( "ncacn_np:" + serverName + "[\\PIPE\\winreg]" );
 
     }
@@ -0,0 +1,355 @@
+/**j-Interop (Pure Java implementation of DCOM protocol)
+ * Copyright (C) 2006  Vikram Roopchand
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * Though a sincere effort has been made to deliver a professional,
+ * quality product,the library itself is distributed WITHOUT ANY WARRANTY;
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110, USA
+ */
+package org.jinterop.winreg.smb;
+
+import org.jinterop.dcom.common.IJIAuthInfo;
+import org.jinterop.dcom.common.JIErrorCodes;
+import org.jinterop.dcom.common.JIException;
+import org.jinterop.winreg.IJIWinReg;
+import org.jinterop.winreg.JIPolicyHandle;
+import org.jinterop.winreg.JIWinRegKey;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads a registry subtree using several <code>winreg</code> pipes in
+ * parallel. A single pipe only carries one call at a time, so each worker
+ * opens its own pipe (all of them share the SMB session with the server) and
+ * the keys are read breadth first from a common queue, keeping one request in
+ * flight per pipe. Registry handles are bound to the pipe they were opened on,
+ * hence every worker opens the hive itself and keys are opened by their path.
+ * 
+ * @exclude
+ * @since 3.0
+ */
+public final class JIWinRegTreeReader
+{
+    //WinError.h, the buffer was too small for the value.
+    private static final int ERROR_MORE_DATA = 234;
+
+    private static final int VALUE_BUFFER_SIZE = 2048;
+
+    private static final int MAX_VALUE_BUFFER_SIZE = 65536;
+
+    private static final AtomicInteger counter = new AtomicInteger ();
+
+    private final IJIAuthInfo authInfo;
+
+    private final String serverName;
+
+    private final int hive;
+
+    private final int maxDepth;
+
+    private final int connections;
+
+    //Task
+    private final BlockingQueue queue = new LinkedBlockingQueue ();
+
+    //tasks queued or being read
+    private final AtomicInteger pending = new AtomicInteger ();
+
+    private volatile JIException failure = null;
+
+    private static final class Task
+    {
+        private final JIWinRegKey key;
+
+        private final int depth;
+
+        Task ( final JIWinRegKey key, final int depth )
+        {
+            this.key = key;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * @param authInfo <code>null</code> for SSO.
+     * @param serverName
+     * @param hive one of the <code>HKEY_</code> constants of {@link IJIWinReg}.
+     * @param maxDepth levels of sub keys read below the starting key.
+     * @param connections number of pipes used in parallel.
+     */
+    public JIWinRegTreeReader ( final IJIAuthInfo authInfo, final String serverName, final int hive, final int maxDepth, final int connections )
+    {
+        if ( connections < 1 || maxDepth < 0 )
+        {
+            throw new IllegalArgumentException ();
+        }
+        if ( hive != IJIWinReg.HKEY_CLASSES_ROOT && hive != IJIWinReg.HKEY_CURRENT_USER && hive != IJIWinReg.HKEY_LOCAL_MACHINE && hive != IJIWinReg.HKEY_USERS )
+        {
+            throw new IllegalArgumentException ( "hive " + hive );
+        }
+        this.authInfo = authInfo;
+        this.serverName = serverName;
+        this.hive = hive;
+        this.maxDepth = maxDepth;
+        this.connections = connections;
+    }
+
+    /**
+     * Reads the key <code>path</code> (relative to the hive, empty for the hive
+     * itself) and its subtree. Keys which cannot be read, for example for lack
+     * of access rights, are returned with their error code.
+     * 
+     * @throws JIException if a connection failed.
+     */
+    public JIWinRegKey read ( final String path ) throws JIException
+    {
+        final JIWinRegKey root = JIWinRegKey.internal_createRoot ( path );
+        this.pending.set ( 1 );
+        this.queue.add ( new Task ( root, 0 ) );
+
+        final Thread[] workers = new Thread[this.connections];
+        for ( int i = 0; i < workers.length; i++ )
+        {
+            workers[i] = new Thread ( new Runnable () {
+                @Override
+                public void run ()
+                {
+                    work ();
+                }
+            }, "jI_WinRegReader-" + counter.incrementAndGet () );
+            workers[i].setDaemon ( true );
+            workers[i].start ();
+        }
+
+        try
+        {
+            for ( int i = 0; i < workers.length; i++ )
+            {
+                workers[i].join ();
+            }
+        }
+        catch ( final InterruptedException e )
+        {
+            for ( int i = 0; i < workers.length; i++ )
+            {
+                workers[i].interrupt ();
+            }
+            Thread.currentThread ().interrupt ();
+            throw new JIException ( JIErrorCodes.RPC_E_UNEXPECTED, e );
+        }
+
+        if ( this.failure != null )
+        {
+            throw this.failure;
+        }
+        return root;
+    }
+
+    private void work ()
+    {
+        JIWinRegStub stub = null;
+        JIPolicyHandle hiveHandle = null;
+        try
+        {
+            while ( this.failure == null && this.pending.get () > 0 )
+            {
+                final Task task = (Task)this.queue.poll ( 50, TimeUnit.MILLISECONDS );
+                if ( task == null )
+                {
+                    continue;
+                }
+
+                try
+                {
+                    //pipes are opened only once there is work for them.
+                    if ( stub == null )
+                    {
+                        stub = this.authInfo == null ? new JIWinRegStub ( this.serverName ) : new JIWinRegStub ( this.authInfo, this.serverName );
+                        hiveHandle = openHive ( stub );
+                    }
+                    readKey ( stub, hiveHandle, task );
+                }
+                catch ( final UnknownHostException e )
+                {
+                    this.failure = new JIException ( JIErrorCodes.JI_WINREG_EXCEPTION3, e );
+                }
+                catch ( final JIException e )
+                {
+                    this.failure = e;
+                }
+                finally
+                {
+                    this.pending.decrementAndGet ();
+                }
+            }
+        }
+        catch ( final InterruptedException e )
+        {
+            //read() has been interrupted.
+        }
+        finally
+        {
+            if ( stub != null )
+            {
+                try
+                {
+                    if ( hiveHandle != null )
+                    {
+                        stub.winreg_CloseKey ( hiveHandle );
+                    }
+                    stub.closeConnection ();
+                }
+                catch ( final JIException e )
+                {
+                    //nothing to do, the pipe is gone.
+                }
+            }
+        }
+    }
+
+    private JIPolicyHandle openHive ( final JIWinRegStub stub ) throws JIException
+    {
+        switch ( this.hive )
+        {
+            case IJIWinReg.HKEY_CLASSES_ROOT:
+                return stub.winreg_OpenHKCR ();
+            case IJIWinReg.HKEY_CURRENT_USER:
+                return stub.winreg_OpenHKCU ();
+            case IJIWinReg.HKEY_USERS:
+                return stub.winreg_OpenHKU ();
+            default:
+                return stub.winreg_OpenHKLM ();
+        }
+    }
+
+    /**
+     * Errors of the pipe itself end the whole read, errors returned by the
+     * registry (access denied, key deleted meanwhile) only affect the key.
+     */
+    private static boolean isConnectionError ( final JIException e )
+    {
+        return e.getCause () instanceof IOException;
+    }
+
+    private void readKey ( final JIWinRegStub stub, final JIPolicyHandle hiveHandle, final Task task ) throws JIException
+    {
+        final JIWinRegKey key = task.key;
+        final boolean isHive = key.getPath ().length () == 0;
+        JIPolicyHandle handle = hiveHandle;
+        try
+        {
+            if ( !isHive )
+            {
+                handle = stub.winreg_OpenKey ( hiveHandle, key.getPath (), IJIWinReg.KEY_READ );
+            }
+
+            for ( int i = 0;; i++ )
+            {
+                final String valueName;
+                try
+                {
+                    valueName = (String)stub.winreg_EnumValue ( handle, i )[0];
+                }
+                catch ( final JIException e )
+                {
+                    if ( e.getErrorCode () == JIErrorCodes.ERROR_NO_MORE_ITEMS )
+                    {
+                        break;
+                    }
+                    throw e;
+                }
+                readValue ( stub, handle, key, valueName );
+            }
+
+            if ( task.depth < this.maxDepth )
+            {
+                for ( int i = 0;; i++ )
+                {
+                    final String subKeyName;
+                    try
+                    {
+                        subKeyName = stub.winreg_EnumKey ( handle, i )[0];
+                    }
+                    catch ( final JIException e )
+                    {
+                        if ( e.getErrorCode () == JIErrorCodes.ERROR_NO_MORE_ITEMS )
+                        {
+                            break;
+                        }
+                        throw e;
+                    }
+                    //queued right away, so that idle pipes start on it while this one enumerates further.
+                    this.pending.incrementAndGet ();
+                    this.queue.add ( new Task ( key.internal_addSubKey ( subKeyName ), task.depth + 1 ) );
+                }
+                key.internal_setSubKeysRead ();
+            }
+        }
+        catch ( final JIException e )
+        {
+            if ( isConnectionError ( e ) )
+            {
+                throw e;
+            }
+            key.internal_setErrorCode ( e.getErrorCode () );
+        }
+        finally
+        {
+            if ( !isHive && handle != hiveHandle )
+            {
+                try
+                {
+                    stub.winreg_CloseKey ( handle );
+                }
+                catch ( final JIException e )
+                {
+                    if ( isConnectionError ( e ) )
+                    {
+                        throw e;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void readValue ( final JIWinRegStub stub, final JIPolicyHandle handle, final JIWinRegKey key, final String valueName ) throws JIException
+    {
+        int bufferSize = VALUE_BUFFER_SIZE;
+        while ( true )
+        {
+            try
+            {
+                key.internal_setValue ( valueName, stub.winreg_QueryValue ( handle, valueName, bufferSize ) );
+                return;
+            }
+            catch ( final JIException e )
+            {
+                if ( e.getErrorCode () == ERROR_MORE_DATA && bufferSize < MAX_VALUE_BUFFER_SIZE )
+                {
+                    bufferSize = MAX_VALUE_BUFFER_SIZE;
+                    continue;
+                }
+                if ( isConnectionError ( e ) )
+                {
+                    throw e;
+                }
+                //unsupported type or not readable, the other values are still of use.
+                key.internal_setErrorCode ( e.getErrorCode () );
+                return;
+            }
+        }
+    }
+}
@@ -68,4 +68,21 @@ public class Helper
         }
         return value;
     }
+
+    /**
+     * Unbox handles for sending them as a primitive <code>JIArray</code>. A
+     * <code>null</code> element is sent as <code>Integer.MIN_VALUE</code>, same
+     * as it would have been as part of an <code>Integer[]</code>.
+     * @param values the values to convert
+     * @return the unboxed values
+     */
+    public static int[] toIntArray ( final Integer[] values )
+    {
+        final int[] result = new int[values.length];
+        for ( int i = 0; i < values.length; i++ )
+        {
+            result[i] = values[i] == null ? Integer.MIN_VALUE : values[i].intValue ();
+        }
+        return result;
+    }
 }
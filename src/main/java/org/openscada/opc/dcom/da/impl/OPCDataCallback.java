@@ -52,9 +52,9 @@ public class OPCDataCallback extends EventHandlerImpl
         }
 
         // get arrays for more readable code later ;-)
-        final Integer[] errorCodes = (Integer[])errors.getArrayInstance ();
-        final Integer[] itemHandles = (Integer[])clientHandles.getArrayInstance ();
-        final Short[] qualitiesArray = (Short[])qualities.getArrayInstance ();
+        final int[] errorCodes = (int[])errors.getArrayInstance ();
+        final int[] itemHandles = (int[])clientHandles.getArrayInstance ();
+        final short[] qualitiesArray = (short[])qualities.getArrayInstance ();
         final JIVariant[] valuesArray = (JIVariant[])values.getArrayInstance ();
         final JIStruct[] timestampArray = (JIStruct[])timestamps.getArrayInstance ();
 
@@ -91,9 +91,9 @@ public class OPCDataCallback extends EventHandlerImpl
         }
 
         // get arrays for more readable code later ;-)
-        final Integer[] errorCodes = (Integer[])errors.getArrayInstance ();
-        final Integer[] itemHandles = (Integer[])clientHandles.getArrayInstance ();
-        final Short[] qualitiesArray = (Short[])qualities.getArrayInstance ();
+        final int[] errorCodes = (int[])errors.getArrayInstance ();
+        final int[] itemHandles = (int[])clientHandles.getArrayInstance ();
+        final short[] qualitiesArray = (short[])qualities.getArrayInstance ();
         final JIVariant[] valuesArray = (JIVariant[])values.getArrayInstance ();
         final JIStruct[] timestampArray = (JIStruct[])timestamps.getArrayInstance ();
 
@@ -130,8 +130,8 @@ public class OPCDataCallback extends EventHandlerImpl
         }
 
         // get arrays for more readable code later ;-)
-        final Integer[] errorCodes = (Integer[])errors.getArrayInstance ();
-        final Integer[] itemHandles = (Integer[])clientHandles.getArrayInstance ();
+        final int[] errorCodes = (int[])errors.getArrayInstance ();
+        final int[] itemHandles = (int[])clientHandles.getArrayInstance ();
 
         // create result data
         final ResultSet<Integer> result = new ResultSet<Integer> ();
@@ -186,11 +186,11 @@ public class OPCDataCallback extends EventHandlerImpl
         params.addInParamAsType ( Integer.class, JIFlags.FLAG_NULL ); // master quality
         params.addInParamAsType ( Integer.class, JIFlags.FLAG_NULL ); // master error
         params.addInParamAsType ( Integer.class, JIFlags.FLAG_NULL ); // count
-        params.addInParamAsObject ( new JIArray ( Integer.class, null, 1, true ), JIFlags.FLAG_NULL ); // item handles
+        params.addInParamAsObject ( new JIArray ( Integer.TYPE, null, 1, true ), JIFlags.FLAG_NULL ); // item handles
         params.addInParamAsObject ( new JIArray ( JIVariant.class, null, 1, true ), JIFlags.FLAG_NULL ); // values
-        params.addInParamAsObject ( new JIArray ( Short.class, null, 1, true ), JIFlags.FLAG_NULL ); // qualities
+        params.addInParamAsObject ( new JIArray ( Short.TYPE, null, 1, true ), JIFlags.FLAG_NULL ); // qualities
         params.addInParamAsObject ( new JIArray ( FILETIME.getStruct (), null, 1, true ), JIFlags.FLAG_NULL ); // timestamps
-        params.addInParamAsObject ( new JIArray ( Integer.class, null, 1, true ), JIFlags.FLAG_NULL ); // errors
+        params.addInParamAsObject ( new JIArray ( Integer.TYPE, null, 1, true ), JIFlags.FLAG_NULL ); // errors
 
         method = new JILocalMethodDescriptor ( "OnDataChange", params );
         this.coClass.getInterfaceDefinition ().addMethodDescriptor ( method );
@@ -202,11 +202,11 @@ public class OPCDataCallback extends EventHandlerImpl
         params.addInParamAsType ( Integer.class, JIFlags.FLAG_NULL );
         params.addInParamAsType ( Integer.class, JIFlags.FLAG_NULL );
         params.addInParamAsType ( Integer.class, JIFlags.FLAG_NULL );
-        params.addInParamAsObject ( new JIArray ( Integer.class, null, 1, true ), JIFlags.FLAG_NULL );
+        params.addInParamAsObject ( new JIArray ( Integer.TYPE, null, 1, true ), JIFlags.FLAG_NULL );
         params.addInParamAsObject ( new JIArray ( JIVariant.class, null, 1, true ), JIFlags.FLAG_NULL );
-        params.addInParamAsObject ( new JIArray ( Short.class, null, 1, true ), JIFlags.FLAG_NULL );
+        params.addInParamAsObject ( new JIArray ( Short.TYPE, null, 1, true ), JIFlags.FLAG_NULL );
         params.addInParamAsObject ( new JIArray ( FILETIME.getStruct (), null, 1, true ), JIFlags.FLAG_NULL );
-        params.addInParamAsObject ( new JIArray ( Integer.class, null, 1, true ), JIFlags.FLAG_NULL );
+        params.addInParamAsObject ( new JIArray ( Integer.TYPE, null, 1, true ), JIFlags.FLAG_NULL );
         method = new JILocalMethodDescriptor ( "OnReadComplete", params );
         this.coClass.getInterfaceDefinition ().addMethodDescriptor ( method );
 
@@ -216,8 +216,8 @@ public class OPCDataCallback extends EventHandlerImpl
         params.addInParamAsType ( Integer.class, JIFlags.FLAG_NULL );
         params.addInParamAsType ( Integer.class, JIFlags.FLAG_NULL );
         params.addInParamAsType ( Integer.class, JIFlags.FLAG_NULL );
-        params.addInParamAsObject ( new JIArray ( Integer.class, null, 1, true ), JIFlags.FLAG_NULL );
-        params.addInParamAsObject ( new JIArray ( Integer.class, null, 1, true ), JIFlags.FLAG_NULL );
+        params.addInParamAsObject ( new JIArray ( Integer.TYPE, null, 1, true ), JIFlags.FLAG_NULL );
+        params.addInParamAsObject ( new JIArray ( Integer.TYPE, null, 1, true ), JIFlags.FLAG_NULL );
         method = new JILocalMethodDescriptor ( "OnWriteComplete", params );
         this.coClass.getInterfaceDefinition ().addMethodDescriptor ( method );
 
@@ -51,16 +51,16 @@ public class OPCSyncIO extends BaseCOMObject
 
         callObject.addInParamAsShort ( (short)source.id (), JIFlags.FLAG_NULL );
         callObject.addInParamAsInt ( serverHandles.length, JIFlags.FLAG_NULL );
-        callObject.addInParamAsArray ( new JIArray ( serverHandles, true ), JIFlags.FLAG_NULL );
+        callObject.addInParamAsArray ( new JIArray ( Helper.toIntArray ( serverHandles ), true ), JIFlags.FLAG_NULL );
 
         callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( OPCITEMSTATE.getStruct (), null, 1, true ) ), JIFlags.FLAG_NULL );
-        callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( Integer.class, null, 1, true ) ), JIFlags.FLAG_NULL );
+        callObject.addOutParamAsObject ( new JIPointer ( new JIArray ( Integer.TYPE, null, 1, true ) ), JIFlags.FLAG_NULL );
 
         Object result[] = Helper.callRespectSFALSE ( getCOMObject (), callObject );
 
         KeyedResultSet<Integer, OPCITEMSTATE> results = new KeyedResultSet<Integer, OPCITEMSTATE> ();
         JIStruct[] states = (JIStruct[]) ( (JIArray) ( (JIPointer)result[0] ).getReferent () ).getArrayInstance ();
-        Integer[] errorCodes = (Integer[]) ( (JIArray) ( (JIPointer)result[1] ).getReferent () ).getArrayInstance ();
+        int[] errorCodes = (int[]) ( (JIArray) ( (JIPointer)result[1] ).getReferent () ).getArrayInstance ();
 
         for ( int i = 0; i < serverHandles.length; i++ )
         {
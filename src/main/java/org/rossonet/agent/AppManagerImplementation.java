@@ -20,6 +20,7 @@ import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.jinterop.dcom.common.JISystem;
 import org.json.JSONObject;
 import org.rossonet.service.ManagedService;
 
@@ -27,6 +28,8 @@ public class AppManagerImplementation implements AppManager {
 
 	private static final Logger logger = Logger.getLogger(AppManagerImplementation.class.getName());
 
+	private static final String PROGID_CACHE_FILE = "progIdVsClsidDB.properties";
+
 	private static String getFileChecksum(final MessageDigest digest, final File file) throws IOException {
 		final FileInputStream fis = new FileInputStream(file);
 		final byte[] byteArray = new byte[1024];
@@ -82,6 +85,7 @@ public class AppManagerImplementation implements AppManager {
 
 	public AppManagerImplementation() {
 		readVariablesFromEnviroment();
+		configureProgIdCache();
 		try {
 			shaDigest = MessageDigest.getInstance("SHA-256");
 		} catch (final NoSuchAlgorithmException e) {
@@ -127,6 +131,16 @@ public class AppManagerImplementation implements AppManager {
 		statusValues.clear();
 	}
 
+	// ProgIds resolved via the remote registry survive agent restarts
+	private void configureProgIdCache() {
+		if (cacheDirectoryPath == null) {
+			JISystem.setProgIdCacheFile(null);
+		} else {
+			JISystem.setProgIdCacheFile(
+					Paths.get(replaceHomeDirectory(cacheDirectoryPath), PROGID_CACHE_FILE).toAbsolutePath().toString());
+		}
+	}
+
 	private boolean elaborateSingleConfigFile(final Set<String> configFounds, final File fileInside) {
 		boolean configChanged = false;
 		if (!fileInside.isDirectory() && fileInside.toString().endsWith(configExtension)) {
@@ -304,6 +318,7 @@ public class AppManagerImplementation implements AppManager {
 	@Override
 	public void setCacheDirectoryPath(final String cacheDirectoryPath) {
 		this.cacheDirectoryPath = cacheDirectoryPath;
+		configureProgIdCache();
 	}
 
 	@Override
@@ -0,0 +1,366 @@
+package org.rossonet.debug.console.classic;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jinterop.dcom.core.JISession;
+import org.openscada.opc.dcom.list.ClassDetails;
+import org.openscada.opc.lib.list.Category;
+import org.openscada.opc.lib.list.ServerList;
+
+/**
+ *
+ * Ricerca dei server OPC classici (DA, A&E, HDA) su uno o più host in
+ * parallelo. Per ogni host viene aperta una sola sessione DCOM verso OPCEnum,
+ * usata per tutte le categorie; gli host sono interrogati da un pool limitato
+ * con un timeout per host, i risultati sono notificati appena disponibili e
+ * mantenuti in cache per il tempo configurato.
+ *
+ * @author Andrea Ambrosini Rossonet s.c.a r.l. andrea.ambrosini@rossonet.com
+ */
+
+public class OpcDaDiscoveryService {
+
+	public static class HostResult {
+
+		private final Map<Category, Collection<ClassDetails>> categories;
+		private final Exception error;
+		private final String host;
+		private final long timestamp = System.currentTimeMillis();
+
+		HostResult(String host, Map<Category, Collection<ClassDetails>> categories, Exception error) {
+			this.host = host;
+			this.categories = categories;
+			this.error = error;
+		}
+
+		public Map<Category, Collection<ClassDetails>> getCategories() {
+			return categories;
+		}
+
+		public Exception getError() {
+			return error;
+		}
+
+		public String getHost() {
+			return host;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public boolean isReachable() {
+			return error == null;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder();
+			if (error != null) {
+				sb.append("host " + host + " not available: " + error.getMessage() + "\n");
+				return sb.toString();
+			}
+			for (final Map.Entry<Category, Collection<ClassDetails>> c : categories.entrySet()) {
+				sb.append(getCategoryLabel(c.getKey()));
+				for (final ClassDetails single : c.getValue()) {
+					sb.append("- " + single.getDescription() + " -> [" + single.getClsId() + "] "
+							+ single.getProgId() + "\n");
+				}
+			}
+			return sb.toString();
+		}
+	}
+
+	public interface Listener {
+		void hostDiscovered(HostResult result);
+	}
+
+	public static final Category[] CATEGORIES = { org.openscada.opc.lib.list.Categories.OPCDAServer10,
+			org.openscada.opc.lib.list.Categories.OPCDAServer20, org.openscada.opc.lib.list.Categories.OPCDAServer30,
+			new Category("58E13251-AC87-11d1-84D5-00608CB8A7E9"),
+			new Category("7DE5B060-E089-11d2-A5E6-000086339399") };
+
+	private static final int DCOM_PORT = 135;
+
+	private static final Logger logger = Logger.getLogger(OpcDaDiscoveryService.class.getName());
+
+	private static final int MAX_SUBNET_HOSTS = 1024;
+
+	private static final int PROBE_TIMEOUT = 1500;
+
+	/**
+	 * Espande la lista degli obiettivi: host separati da virgola o spazi e reti
+	 * IPv4 in notazione CIDR (es. 192.168.1.0/24).
+	 */
+	public static Collection<String> expandTargets(String targets) throws UnknownHostException {
+		final Set<String> hosts = new LinkedHashSet<>();
+		for (final String token : targets.split("[,;\\s]+")) {
+			if (token.isEmpty()) {
+				continue;
+			}
+			final int slash = token.indexOf('/');
+			if (slash < 0) {
+				hosts.add(token);
+				continue;
+			}
+			final byte[] address = InetAddress.getByName(token.substring(0, slash)).getAddress();
+			final int prefix = Integer.parseInt(token.substring(slash + 1));
+			if (address.length != 4 || prefix < 0 || prefix > 32) {
+				throw new IllegalArgumentException("subnet " + token + " is not a valid IPv4 CIDR");
+			}
+			final long size = 1L << (32 - prefix);
+			if (size > MAX_SUBNET_HOSTS) {
+				throw new IllegalArgumentException(
+						"subnet " + token + " is too large, the limit is " + MAX_SUBNET_HOSTS + " hosts");
+			}
+			final long mask = prefix == 0 ? 0 : (0xFFFFFFFFL << (32 - prefix)) & 0xFFFFFFFFL;
+			final long network = (((address[0] & 0xFFL) << 24) | ((address[1] & 0xFFL) << 16)
+					| ((address[2] & 0xFFL) << 8) | (address[3] & 0xFFL)) & mask;
+			// network and broadcast addresses are skipped when the subnet has hosts
+			final long first = size > 2 ? 1 : 0;
+			final long last = size > 2 ? size - 2 : size - 1;
+			for (long i = first; i <= last; i++) {
+				final long ip = network + i;
+				hosts.add(((ip >> 24) & 0xFF) + "." + ((ip >> 16) & 0xFF) + "." + ((ip >> 8) & 0xFF) + "." + (ip & 0xFF));
+			}
+		}
+		return hosts;
+	}
+
+	public static String getCategoryLabel(Category category) {
+		switch (category.toString()) {
+		case "63D5F430-CFE4-11d1-B2C8-0060083BA1FB":
+			return "OPC DA Server 1.0\n";
+		case "63D5F432-CFE4-11d1-B2C8-0060083BA1FB":
+			return "OPC DA Server 2.0\n";
+		case "CC603642-66D7-48f1-B69A-B625E73652D7":
+			return "OPC DA Server 3.0\n";
+		case "3098EDA4-A006-48b2-A27F-247453959408":
+			return "OPC DA Server XML 1.0\n";
+		case "58E13251-AC87-11d1-84D5-00608CB8A7E9":
+			return "OPC A&E Server 1.0\n";
+		case "7DE5B060-E089-11d2-A5E6-000086339399":
+			return "OPC HDA Server 1.0\n";
+		default:
+			return category + "\n";
+		}
+	}
+
+	private static boolean isPortOpen(String host) {
+		try (Socket socket = new Socket()) {
+			socket.connect(new InetSocketAddress(host, DCOM_PORT), PROBE_TIMEOUT);
+			return true;
+		} catch (final Exception e) {
+			return false;
+		}
+	}
+
+	private final Map<String, HostResult> cache = new ConcurrentHashMap<>();
+
+	private final long cacheTtlMs;
+
+	private final ExecutorService executor;
+
+	private final int hostTimeoutMs;
+
+	private final ScheduledExecutorService watchdog;
+
+	public OpcDaDiscoveryService(int maxParallelHosts, int hostTimeoutMs, long cacheTtlMs) {
+		this.hostTimeoutMs = hostTimeoutMs;
+		this.cacheTtlMs = cacheTtlMs;
+		final AtomicInteger counter = new AtomicInteger();
+		final ThreadFactory threadFactory = new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				final Thread thread = new Thread(r, "opc-discovery-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		executor = Executors.newFixedThreadPool(Math.max(1, maxParallelHosts), threadFactory);
+		watchdog = Executors.newSingleThreadScheduledExecutor(threadFactory);
+	}
+
+	public void clearCache() {
+		cache.clear();
+	}
+
+	/**
+	 * Interroga gli host in parallelo. Il listener, se presente, è chiamato
+	 * dal thread del chiamante per ogni host appena la ricerca è completata;
+	 * al termine sono restituiti tutti i risultati nell'ordine di arrivo, uno
+	 * per host anche quando la ricerca fallisce.
+	 */
+	public List<HostResult> discover(Collection<String> hosts, String domain, String user, String password,
+			Listener listener) throws InterruptedException {
+		final List<HostResult> results = new ArrayList<>(hosts.size());
+		final CompletionService<HostResult> completion = new ExecutorCompletionService<>(executor);
+		final Map<Future<HostResult>, String> hostsByTask = new HashMap<>();
+		int pending = 0;
+		for (final String host : hosts) {
+			final HostResult cached = getCached(cacheKey(host, domain, user, password));
+			if (cached != null) {
+				notify(listener, cached);
+				results.add(cached);
+				continue;
+			}
+			hostsByTask.put(completion.submit(() -> discoverHost(host, domain, user, password)), host);
+			pending++;
+		}
+		for (; pending > 0; pending--) {
+			final Future<HostResult> task = completion.take();
+			HostResult result;
+			try {
+				result = task.get();
+			} catch (final ExecutionException e) {
+				final String host = hostsByTask.get(task);
+				final Throwable cause = e.getCause();
+				logger.log(Level.WARNING, "discovery task of " + host + " failed", cause);
+				result = new HostResult(host, null, cause instanceof Exception ? (Exception) cause : e);
+			}
+			notify(listener, result);
+			results.add(result);
+		}
+		return results;
+	}
+
+	public HostResult discover(String host, String domain, String user, String password) throws InterruptedException {
+		final List<HostResult> results = discover(Collections.singletonList(host), domain, user, password, null);
+		return results.get(0);
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+		watchdog.shutdownNow();
+	}
+
+	/**
+	 * La chiave comprende un hash delle credenziali: l'elenco dei server
+	 * dipende dall'autenticazione e con una password diversa non deve essere
+	 * restituito il risultato in cache. La password non resta in memoria in
+	 * chiaro nella chiave.
+	 */
+	private String cacheKey(String host, String domain, String user, String password) {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		final String credentials = domain + "\0" + user + "\0" + password;
+		return host.toLowerCase() + "|"
+				+ Base64.getEncoder().encodeToString(digest.digest(credentials.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private HostResult discoverHost(String host, String domain, String user, String password) {
+		if (!isPortOpen(host)) {
+			return new HostResult(host, null, new Exception("DCOM port " + DCOM_PORT + " is not reachable"));
+		}
+		// created before the watchdog is armed, a failure here (such as missing
+		// credentials) leaves no guard behind to interrupt the worker later
+		final JISession session;
+		try {
+			session = JISession.createSession(domain, user, password);
+		} catch (final RuntimeException e) {
+			logger.log(Level.FINE, "discovery of " + host + " failed", e);
+			return new HostResult(host, null, e);
+		}
+		session.setGlobalSocketTimeout(hostTimeoutMs);
+		final Thread worker = Thread.currentThread();
+		// the DCOM socket is interruptible, a stuck host cannot hold its worker
+		// beyond the timeout
+		final AtomicBoolean finished = new AtomicBoolean(false);
+		final ScheduledFuture<?> guard = watchdog.schedule(() -> {
+			synchronized (finished) {
+				if (!finished.get()) {
+					worker.interrupt();
+				}
+			}
+		}, hostTimeoutMs, TimeUnit.MILLISECONDS);
+		try {
+			final ServerList serverList = new ServerList(session, host);
+			final Map<Category, Collection<ClassDetails>> categories = new LinkedHashMap<>();
+			for (final Category c : CATEGORIES) {
+				try {
+					categories.put(c, serverList.listServersWithDetails(new Category[] { c }, new Category[] { c }));
+				} catch (final Exception e) {
+					if (Thread.currentThread().isInterrupted()) {
+						throw e;
+					}
+					logger.fine("service " + c + " is not implemented on the server " + host + ": " + e.getMessage());
+				}
+			}
+			final HostResult result = new HostResult(host, categories, null);
+			cache.put(cacheKey(host, domain, user, password), result);
+			return result;
+		} catch (final Exception e) {
+			final Exception error = Thread.currentThread().isInterrupted()
+					? new Exception("timeout after " + hostTimeoutMs + " ms", e)
+					: e;
+			logger.log(Level.FINE, "discovery of " + host + " failed", e);
+			return new HostResult(host, null, error);
+		} finally {
+			synchronized (finished) {
+				finished.set(true);
+			}
+			guard.cancel(false);
+			// the worker is pooled, a late interrupt must not leak into the next host
+			Thread.interrupted();
+			try {
+				JISession.destroySession(session);
+			} catch (final Exception e) {
+				logger.log(Level.FINE, "destroy session of " + host, e);
+			}
+		}
+	}
+
+	private HostResult getCached(String key) {
+		final HostResult result = cache.get(key);
+		if (result == null) {
+			return null;
+		}
+		if (System.currentTimeMillis() - result.getTimestamp() > cacheTtlMs) {
+			cache.remove(key, result);
+			return null;
+		}
+		return result;
+	}
+
+	private void notify(Listener listener, HostResult result) {
+		if (listener != null) {
+			listener.hostDiscovered(result);
+		}
+	}
+
+}
@@ -5,7 +5,6 @@ import java.io.FileNotFoundException;
 import java.io.PrintStream;
 import java.net.UnknownHostException;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -16,7 +15,6 @@ import org.jinterop.dcom.core.JICurrency;
 import org.jinterop.dcom.core.JIFlags;
 import org.jinterop.dcom.core.JIString;
 import org.jinterop.dcom.core.JIVariant;
-import org.openscada.opc.dcom.list.ClassDetails;
 import org.openscada.opc.lib.common.AlreadyConnectedException;
 import org.openscada.opc.lib.common.NotConnectedException;
 import org.openscada.opc.lib.da.AccessBase;
@@ -34,7 +32,6 @@ import org.openscada.opc.lib.da.SyncAccess;
 import org.openscada.opc.lib.da.browser.Branch;
 import org.openscada.opc.lib.da.browser.Leaf;
 import org.openscada.opc.lib.da.browser.TreeBrowser;
-import org.openscada.opc.lib.list.Category;
 import org.openscada.opc.lib.list.ServerList;
 import org.rossonet.annotation.ShellMethod;
 import org.rossonet.annotation.ShellOption;
@@ -194,17 +191,7 @@ public class OpcDaShellInterface {
 		return result;
 	}
 
-	private static Collection<ClassDetails> execDiscover(String host, String dom, String user, String pass,
-			Category category) throws IllegalArgumentException, UnknownHostException, JIException {
-		Collection<ClassDetails> srvs = null;
-		final ServerList srvlist = new ServerList(host, user, pass, dom);
-		final org.openscada.opc.lib.list.Category[] implemented = new Category[1];
-		final org.openscada.opc.lib.list.Category[] required = new Category[1];
-		implemented[0] = category;
-		required[0] = category;
-		srvs = srvlist.listServersWithDetails(implemented, required);
-		return srvs;
-	}
+	private final OpcDaDiscoveryService discoveryService = new OpcDaDiscoveryService(16, 30000, 300000);
 
 	private final ScheduledExecutorService serverScheduler = Executors.newScheduledThreadPool(32);
 
@@ -228,48 +215,40 @@ public class OpcDaShellInterface {
 		return discoveryServer(hostTarget, domainTarget, usernameTarget, passwordTarget);
 	}
 
+	@ShellMethod(value = "Discover OPC DA services on a list of hosts or subnets in parallel", group = "OPC DA Tools Commands")
+	public String discoverNetworkServiceClassicOpcDa(
+			@ShellOption(help = "hosts or IPv4 subnets (CIDR) separated by comma") String targets,
+			@ShellOption(help = "domain of OPC DA Servers", defaultValue = "WORKGROUP") String domainTarget,
+			@ShellOption(help = "username of OPC DA Servers", defaultValue = "Administrator") String usernameTarget,
+			@ShellOption(help = "password of OPC DA Servers") String passwordTarget)
+			throws UnknownHostException, InterruptedException {
+		final StringBuilder sb = new StringBuilder();
+		discoveryService.discover(OpcDaDiscoveryService.expandTargets(targets), domainTarget, usernameTarget,
+				passwordTarget, result -> {
+					if (result.isReachable()) {
+						sb.append("[" + result.getHost() + "]\n" + result.toString());
+					} else {
+						logger.fine(result.toString());
+					}
+				});
+		return sb.toString();
+	}
+
 	private String discoveryServer(String hostTarget, String domainTarget, String usernameTarget,
 			String passwordTarget) {
-		final Category[] categoryList = { org.openscada.opc.lib.list.Categories.OPCDAServer10,
-				org.openscada.opc.lib.list.Categories.OPCDAServer20,
-				org.openscada.opc.lib.list.Categories.OPCDAServer30,
-				new Category("58E13251-AC87-11d1-84D5-00608CB8A7E9"),
-				new Category("7DE5B060-E089-11d2-A5E6-000086339399") };
-		final StringBuilder sb = new StringBuilder();
-		for (final Category c : categoryList) {
-			try {
-				switch (c.toString()) {
-				case "63D5F430-CFE4-11d1-B2C8-0060083BA1FB":
-					sb.append("OPC DA Server 1.0\n");
-					break;
-				case "63D5F432-CFE4-11d1-B2C8-0060083BA1FB":
-					sb.append("OPC DA Server 2.0\n");
-					break;
-				case "CC603642-66D7-48f1-B69A-B625E73652D7":
-					sb.append("OPC DA Server 3.0\n");
-					break;
-				case "3098EDA4-A006-48b2-A27F-247453959408":
-					sb.append("OPC DA Server XML 1.0\n");
-					break;
-				case "58E13251-AC87-11d1-84D5-00608CB8A7E9":
-					sb.append("OPC A&E Server 1.0\n");
-					break;
-				case "7DE5B060-E089-11d2-A5E6-000086339399":
-					sb.append("OPC HDA Server 1.0\n");
-					break;
-				default:
-				}
-				for (final ClassDetails single : execDiscover(hostTarget, domainTarget, usernameTarget, passwordTarget,
-						c)) {
-					sb.append("- " + single.getDescription() + " -> [" + single.getClsId() + "] " + single.getProgId()
-							+ "\n");
-				}
-			} catch (final Exception e) {
-				logger.warning(
-						"service " + c + " is not implemented on the server\n" + LogHelper.stackTraceToString(e));
+		try {
+			final OpcDaDiscoveryService.HostResult result = discoveryService.discover(hostTarget, domainTarget,
+					usernameTarget, passwordTarget);
+			if (!result.isReachable()) {
+				logger.warning("discovery on " + hostTarget + " failed\n"
+						+ LogHelper.stackTraceToString(result.getError()));
+				return "";
 			}
+			return result.toString();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return "";
 		}
-		return sb.toString();
 	}
 
 	private String dumpTree(PrintStream out, String progId, String clsId, String hostTarget, String domainTarget,
@@ -17,14 +17,20 @@
 
 package rpc.security.ntlm;
 
+import org.bouncycastle.crypto.CipherParameters;
+import org.bouncycastle.crypto.DataLengthException;
 import org.bouncycastle.crypto.StreamCipher;
 import org.bouncycastle.crypto.digests.MD4Digest;
 import org.bouncycastle.crypto.digests.MD5Digest;
 import org.bouncycastle.crypto.engines.RC4Engine;
 import org.bouncycastle.crypto.params.KeyParameter;
 
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import java.io.UnsupportedEncodingException;
 import java.security.DigestException;
+import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Random;
@@ -65,9 +71,13 @@ class NTLMKeyFactory
     }
 
     byte[] getNTLMv2UserSessionKey ( final String target, final String user, final String password, final byte[] challenge, final byte[] blob ) throws Exception
+    {
+        return getNTLMv2UserSessionKey ( Responses.ntlmv2Hash ( target, user, password ), challenge, blob );
+    }
+
+    byte[] getNTLMv2UserSessionKey ( final byte[] ntlm2Hash, final byte[] challenge, final byte[] blob ) throws Exception
     {
         byte key[] = new byte[16];
-        final byte[] ntlm2Hash = Responses.ntlmv2Hash ( target, user, password );
         final byte[] data = new byte[challenge.length + blob.length];
         System.arraycopy ( challenge, 0, data, 0, challenge.length );
         System.arraycopy ( blob, 0, data, challenge.length, blob.length );
@@ -92,6 +102,15 @@ class NTLMKeyFactory
         return Responses.hmacMD5 ( servernonce, getNTLMUserSessionKey ( password ) );
     }
 
+    /**
+     * Same as {@link #getNTLM2SessionResponseUserSessionKey(String, byte[])}
+     * but from the NTLMv1 User Session Key.
+     */
+    byte[] getNTLM2SessionResponseUserSessionKey ( final byte[] ntlmUserSessionKey, final byte[] servernonce ) throws NoSuchAlgorithmException
+    {
+        return Responses.hmacMD5 ( servernonce, ntlmUserSessionKey );
+    }
+
     /**
      * Randomly generated 16 bytes
      * 
@@ -106,11 +125,109 @@ class NTLMKeyFactory
 
     StreamCipher getRC4 ( final byte[] key )
     {
+        if ( JceRC4.isSupported () )
+        {
+            return new JceRC4 ( key );
+        }
         final RC4Engine rc4 = new RC4Engine ();
         rc4.init ( true, new KeyParameter ( key ) );
         return rc4;
     }
 
+    /**
+     * RC4 of the JCE provider, which is considerably faster than the
+     * <code>RC4Engine</code> of Bouncy Castle on current JVMs. Used whenever
+     * the provider offers "ARCFOUR".
+     */
+    private static final class JceRC4 implements StreamCipher
+    {
+        private static final boolean supported;
+
+        static
+        {
+            boolean available = false;
+            try
+            {
+                Cipher.getInstance ( "ARCFOUR" );
+                available = true;
+            }
+            catch ( final GeneralSecurityException e )
+            {
+            }
+            supported = available;
+        }
+
+        private final Cipher cipher;
+
+        private byte[] key;
+
+        static boolean isSupported ()
+        {
+            return supported;
+        }
+
+        JceRC4 ( final byte[] key )
+        {
+            try
+            {
+                this.cipher = Cipher.getInstance ( "ARCFOUR" );
+            }
+            catch ( final GeneralSecurityException e )
+            {
+                throw new IllegalStateException ( e.getMessage () );
+            }
+            this.key = key;
+            reset ();
+        }
+
+        @Override
+        public void init ( final boolean forEncryption, final CipherParameters params )
+        {
+            this.key = ( (KeyParameter)params ).getKey ();
+            reset ();
+        }
+
+        @Override
+        public String getAlgorithmName ()
+        {
+            return "RC4";
+        }
+
+        @Override
+        public byte returnByte ( final byte in )
+        {
+            final byte[] b = new byte[] { in };
+            processBytes ( b, 0, 1, b, 0 );
+            return b[0];
+        }
+
+        @Override
+        public int processBytes ( final byte[] in, final int inOff, final int len, final byte[] out, final int outOff )
+        {
+            try
+            {
+                return this.cipher.update ( in, inOff, len, out, outOff );
+            }
+            catch ( final GeneralSecurityException e )
+            {
+                throw new DataLengthException ( e.getMessage () );
+            }
+        }
+
+        @Override
+        public void reset ()
+        {
+            try
+            {
+                this.cipher.init ( Cipher.ENCRYPT_MODE, new SecretKeySpec ( this.key, "ARCFOUR" ) );
+            }
+            catch ( final GeneralSecurityException e )
+            {
+                throw new IllegalStateException ( e.getMessage () );
+            }
+        }
+    }
+
     /*
     IRandom getARCFOUR ( final byte[] key )
     {
@@ -131,6 +248,36 @@ class NTLMKeyFactory
         return retData;
     }
 
+    /**
+     * Encrypts (or decrypts) <code>length</code> bytes of <code>data</code> in
+     * place.
+     */
+    void applyRC4 ( final StreamCipher streamCipher, final byte[] data, final int offset, final int length )
+    {
+        streamCipher.processBytes ( data, offset, length, data, offset );
+    }
+
+    /**
+     * HMAC-MD5 keyed once with <code>key</code>, for use with
+     * {@link #signingPt1(Mac, int, byte[], int, int, byte[], byte[])}. It is
+     * reset to the keyed state after each signature. The JCE implementation
+     * is used since it benefits from the MD5 intrinsics of the JVM.
+     */
+    Mac getHMACMD5 ( final byte[] key )
+    {
+        try
+        {
+            final Mac hmac = Mac.getInstance ( "HmacMD5" );
+            hmac.init ( new SecretKeySpec ( key, "HmacMD5" ) );
+            return hmac;
+        }
+        catch ( final GeneralSecurityException e )
+        {
+            //HmacMD5 is required of every JCE provider.
+            throw new IllegalStateException ( e.getMessage () );
+        }
+    }
+
     /*
     byte[] applyARCFOUR ( final IRandom keystream, final byte[] data ) throws IllegalStateException, LimitReachedException
     {
@@ -222,33 +369,40 @@ class NTLMKeyFactory
     }
 
     //TODO merge the signing routine for both client and server all that they differ by are keys...as expected
-    byte[] signingPt1 ( final int sequenceNumber, final byte[] signingKey, final byte[] data, final int lengthOfBuffer ) throws NoSuchAlgorithmException, IllegalStateException
+    byte[] signingPt1 ( final int sequenceNumber, final byte[] signingKey, final byte[] data, final int lengthOfBuffer ) throws GeneralSecurityException, IllegalStateException
     {
-        final byte[] seqNumPlusData = new byte[4 + lengthOfBuffer];
-
-        seqNumPlusData[0] = (byte) ( sequenceNumber & 0xFF );
-        seqNumPlusData[1] = (byte) ( sequenceNumber >> 8 & 0xFF );
-        seqNumPlusData[2] = (byte) ( sequenceNumber >> 16 & 0xFF );
-        seqNumPlusData[3] = (byte) ( sequenceNumber >> 24 & 0xFF );
-
-        System.arraycopy ( data, 0, seqNumPlusData, 4, lengthOfBuffer );
-
         final byte[] retval = new byte[16];
-        retval[0] = 0x01; //Version number LE 1.
+        signingPt1 ( getHMACMD5 ( signingKey ), sequenceNumber, data, 0, lengthOfBuffer, new byte[16], retval );
+        return retval;
+    }
 
-        final byte[] sign = Responses.hmacMD5 ( seqNumPlusData, signingKey );
+    /**
+     * Writes the (not yet encrypted) verifier of <code>length</code> bytes of
+     * <code>data</code> to <code>verifier</code>. Instead of copying the data
+     * behind the sequence number, the MAC is updated with the sequence number
+     * and then with the buffer slice, so nothing gets allocated.
+     *
+     * @param hmac from {@link #getHMACMD5(byte[])}.
+     * @param mac scratch space of 16 bytes.
+     * @param verifier 16 bytes.
+     */
+    void signingPt1 ( final Mac hmac, final int sequenceNumber, final byte[] data, final int offset, final int length, final byte[] mac, final byte[] verifier ) throws GeneralSecurityException
+    {
+        verifier[0] = 0x01; //Version number LE 1.
+        verifier[1] = 0;
+        verifier[2] = 0;
+        verifier[3] = 0;
 
-        for ( int i = 0; i < 8; i++ )
-        {
-            retval[i + 4] = sign[i];
-        }
+        verifier[12] = (byte) ( sequenceNumber & 0xFF );
+        verifier[13] = (byte) ( sequenceNumber >> 8 & 0xFF );
+        verifier[14] = (byte) ( sequenceNumber >> 16 & 0xFF );
+        verifier[15] = (byte) ( sequenceNumber >> 24 & 0xFF );
 
-        retval[12] = (byte) ( sequenceNumber & 0xFF );
-        retval[13] = (byte) ( sequenceNumber >> 8 & 0xFF );
-        retval[14] = (byte) ( sequenceNumber >> 16 & 0xFF );
-        retval[15] = (byte) ( sequenceNumber >> 24 & 0xFF );
+        hmac.update ( verifier, 12, 4 );
+        hmac.update ( data, offset, length );
+        hmac.doFinal ( mac, 0 );
 
-        return retval;
+        System.arraycopy ( mac, 0, verifier, 4, 8 );
     }
 
     /*
@@ -263,10 +417,7 @@ class NTLMKeyFactory
 
     void signingPt2 ( final byte[] verifier, final StreamCipher rc4 ) throws IllegalStateException
     {
-        for ( int i = 0; i < 8; i++ )
-        {
-            verifier[i + 4] = rc4.returnByte ( verifier[i + 4] );
-        }
+        rc4.processBytes ( verifier, 4, 8, verifier, 4 );
     }
 
     boolean compareSignature ( final byte[] src, final byte[] target )
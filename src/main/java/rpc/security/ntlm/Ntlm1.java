@@ -24,6 +24,7 @@ import org.bouncycastle.crypto.StreamCipher;
 import rpc.IntegrityException;
 import rpc.Security;
 
+import javax.crypto.Mac;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
@@ -39,9 +40,18 @@ public class Ntlm1 implements NtlmFlags, Security
 
     private final StreamCipher serverCipher;
 
-    private final byte[] clientSigningKey;
+    private final Mac clientSigningMac;
 
-    private final byte[] serverSigningKey;
+    private final Mac serverSigningMac;
+
+    //scratch space, incoming and outgoing PDUs may be processed by different threads.
+    private final byte[] incomingMac = new byte[16];
+
+    private final byte[] incomingVerifier = new byte[NTLM1_VERIFIER_LENGTH];
+
+    private final byte[] outgoingMac = new byte[16];
+
+    private final byte[] outgoingVerifier = new byte[NTLM1_VERIFIER_LENGTH];
 
     private final NTLMKeyFactory keyFactory;
 
@@ -62,12 +72,16 @@ public class Ntlm1 implements NtlmFlags, Security
 
         this.isServer = isServer;
         this.keyFactory = new NTLMKeyFactory ();
-        this.clientSigningKey = this.keyFactory.generateClientSigningKeyUsingNegotiatedSecondarySessionKey ( sessionKey );
+        final byte[] clientSigningKey = this.keyFactory.generateClientSigningKeyUsingNegotiatedSecondarySessionKey ( sessionKey );
         final byte[] clientSealingKey = this.keyFactory.generateClientSealingKeyUsingNegotiatedSecondarySessionKey ( sessionKey );
 
-        this.serverSigningKey = this.keyFactory.generateServerSigningKeyUsingNegotiatedSecondarySessionKey ( sessionKey );
+        final byte[] serverSigningKey = this.keyFactory.generateServerSigningKeyUsingNegotiatedSecondarySessionKey ( sessionKey );
         final byte[] serverSealingKey = this.keyFactory.generateServerSealingKeyUsingNegotiatedSecondarySessionKey ( sessionKey );
 
+        //keyed once, each PDU only feeds the sequence number and the data.
+        this.clientSigningMac = this.keyFactory.getHMACMD5 ( clientSigningKey );
+        this.serverSigningMac = this.keyFactory.getHMACMD5 ( serverSigningKey );
+
         //Used by the server to decrypt client messages
         this.clientCipher = this.keyFactory.getRC4 ( clientSealingKey );
 
@@ -76,9 +90,9 @@ public class Ntlm1 implements NtlmFlags, Security
 
         if ( logger.isLoggable ( Level.FINEST ) )
         {
-            logger.finest ( "Client Signing Key derieved from the session key: [" + dumpString ( this.clientSigningKey ) + "]" );
+            logger.finest ( "Client Signing Key derieved from the session key: [" + dumpString ( clientSigningKey ) + "]" );
             logger.finest ( "Client Sealing Key derieved from the session key: [" + dumpString ( clientSealingKey ) + "]" );
-            logger.finest ( "Server Signing Key derieved from the session key: [" + dumpString ( this.serverSigningKey ) + "]" );
+            logger.finest ( "Server Signing Key derieved from the session key: [" + dumpString ( serverSigningKey ) + "]" );
             logger.finest ( "Server Sealing Key derieved from the session key: [" + dumpString ( serverSealingKey ) + "]" );
         }
     }
@@ -124,49 +138,51 @@ public class Ntlm1 implements NtlmFlags, Security
         {
             final NdrBuffer buffer = ndr.getBuffer ();
 
-            final byte[] signingKey;
+            final Mac signingMac;
             final StreamCipher cipher;
 
             //reverse of what it is
             if ( !this.isServer )
             {
-                signingKey = this.serverSigningKey;
+                signingMac = this.serverSigningMac;
                 cipher = this.serverCipher;
             }
             else
             {
-                signingKey = this.clientSigningKey;
+                signingMac = this.clientSigningMac;
                 cipher = this.clientCipher;
             }
 
-            byte[] data = new byte[length];
-            System.arraycopy ( ndr.getBuffer ().getBuffer (), index, data, 0, data.length );
-
+            //decrypted in place, in the PDU buffer.
             if ( getProtectionLevel () == PROTECTION_LEVEL_PRIVACY )
             {
-                data = this.keyFactory.applyRC4 ( cipher, data );
-                System.arraycopy ( data, 0, ndr.getBuffer ().buf, index, data.length );
+                this.keyFactory.applyRC4 ( cipher, buffer.getBuffer (), index, length );
             }
 
             if ( logger.isLoggable ( Level.FINEST ) )
             {
                 logger.finest ( "\n AFTER Decryption" );
                 final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream ();
-                jcifs.util.Hexdump.hexdump ( new PrintStream ( byteArrayOutputStream ), data, 0, data.length );
+                jcifs.util.Hexdump.hexdump ( new PrintStream ( byteArrayOutputStream ), buffer.getBuffer (), index, length );
                 logger.finest ( "\n" + byteArrayOutputStream.toString () );
-                logger.finest ( "\nLength is: " + data.length );
+                logger.finest ( "\nLength is: " + length );
             }
 
-            final byte[] verifier = this.keyFactory.signingPt1 ( this.responseCounter, signingKey, buffer.getBuffer (), verifierIndex );
+            final byte[] verifier = this.incomingVerifier;
+            this.keyFactory.signingPt1 ( signingMac, this.responseCounter, buffer.getBuffer (), 0, verifierIndex, this.incomingMac, verifier );
             this.keyFactory.signingPt2 ( verifier, cipher );
 
-            buffer.setIndex ( verifierIndex );
-            //now read the next 16 bytes and pass compare them
-            final byte[] signing = new byte[16];
-            ndr.readOctetArray ( signing, 0, signing.length );
+            //now compare with the next 16 bytes
+            final byte[] signing = buffer.getBuffer ();
+            boolean matches = true;
+            for ( int i = 0; i < verifier.length; i++ )
+            {
+                matches &= verifier[i] == signing[verifierIndex + i];
+            }
+            buffer.setIndex ( verifierIndex + verifier.length );
 
             //this should result in an access denied fault
-            if ( !this.keyFactory.compareSignature ( verifier, signing ) )
+            if ( !matches )
             {
                 throw new IntegrityException ( "Message out of sequence. Perhaps the user being used to run this application is different from the one under which the COM server is running !." );
             }
@@ -199,35 +215,34 @@ public class Ntlm1 implements NtlmFlags, Security
         {
             final NdrBuffer buffer = ndr.getBuffer ();
 
-            final byte[] signingKey;
+            final Mac signingMac;
             final StreamCipher cipher;
             if ( this.isServer )
             {
-                signingKey = this.serverSigningKey;
+                signingMac = this.serverSigningMac;
                 cipher = this.serverCipher;
             }
             else
             {
-                signingKey = this.clientSigningKey;
+                signingMac = this.clientSigningMac;
                 cipher = this.clientCipher;
             }
 
-            final byte[] verifier = this.keyFactory.signingPt1 ( this.requestCounter, signingKey, buffer.getBuffer (), verifierIndex );
-            final byte[] data = new byte[length];
-            System.arraycopy ( ndr.getBuffer ().getBuffer (), index, data, 0, data.length );
+            final byte[] verifier = this.outgoingVerifier;
+            this.keyFactory.signingPt1 ( signingMac, this.requestCounter, buffer.getBuffer (), 0, verifierIndex, this.outgoingMac, verifier );
             if ( logger.isLoggable ( Level.FINEST ) )
             {
                 logger.finest ( "\n BEFORE Encryption" );
                 final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream ();
-                jcifs.util.Hexdump.hexdump ( new PrintStream ( byteArrayOutputStream ), data, 0, data.length );
+                jcifs.util.Hexdump.hexdump ( new PrintStream ( byteArrayOutputStream ), buffer.getBuffer (), index, length );
                 logger.finest ( "\n" + byteArrayOutputStream.toString () );
-                logger.finest ( "\n Length is: " + data.length );
+                logger.finest ( "\n Length is: " + length );
             }
 
+            //encrypted in place, in the PDU buffer.
             if ( getProtectionLevel () == PROTECTION_LEVEL_PRIVACY )
             {
-                final byte[] data2 = this.keyFactory.applyRC4 ( cipher, data );
-                System.arraycopy ( data2, 0, ndr.getBuffer ().buf, index, data2.length );
+                this.keyFactory.applyRC4 ( cipher, buffer.getBuffer (), index, length );
             }
             this.keyFactory.signingPt2 ( verifier, cipher );
             buffer.setIndex ( verifierIndex );
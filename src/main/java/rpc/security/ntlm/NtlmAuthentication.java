@@ -43,6 +43,8 @@ public class NtlmAuthentication
 
     private final NtlmPasswordAuthentication credentials;
 
+    private final NtlmCredentialCache credentialCache;
+
     private AuthenticationSource authenticationSource;
 
     private boolean lanManagerKey;
@@ -96,6 +98,16 @@ public class NtlmAuthentication
 
         this.credentials = new NtlmPasswordAuthentication ( domain, user, password );
 
+        //shared by all connections of the same credentials, otherwise this handshake has its own.
+        final Object cache = properties != null ? properties.get ( NtlmCredentialCache.PROPERTY ) : null;
+        if ( cache instanceof NtlmCredentialCache && ( (NtlmCredentialCache)cache ).matches ( domain, user, password ) )
+        {
+            this.credentialCache = (NtlmCredentialCache)cache;
+        }
+        else
+        {
+            this.credentialCache = new NtlmCredentialCache ( domain, user, password );
+        }
     }
 
     public Security getSecurity () throws IOException
@@ -258,8 +270,9 @@ public class NtlmAuthentication
             RANDOM.nextBytes ( clientNonce );
             try
             {
-                final byte[] lmv2Response = Responses.getLMv2Response ( target, this.credentials.getUsername (), this.credentials.getPassword (), type2.getChallenge (), clientNonce );
-                final byte[][] retval = Responses.getNTLMv2Response ( target, this.credentials.getUsername (), this.credentials.getPassword (), type2.getTargetInformation (), type2.getChallenge (), clientNonce );
+                final byte[] ntlmv2Hash = this.credentialCache.getNTLMv2Hash ( target );
+                final byte[] lmv2Response = Responses.getLMv2Response ( ntlmv2Hash, type2.getChallenge (), clientNonce );
+                final byte[][] retval = Responses.getNTLMv2Response ( ntlmv2Hash, type2.getTargetInformation (), type2.getChallenge (), clientNonce );
                 final byte[] ntlmv2Response = retval[0];
                 blob = retval[1];
                 type3 = new Type3Message ( flags, lmv2Response, ntlmv2Response, target, this.credentials.getUsername (), Type3Message.getDefaultWorkstation () );
@@ -284,7 +297,7 @@ public class NtlmAuthentication
             byte[] ntResponse;
             try
             {
-                ntResponse = Responses.getNTLM2SessionResponse ( this.credentials.getPassword (), challenge, clientNonce );
+                ntResponse = Responses.getNTLM2SessionResponse ( this.credentialCache.getNTLMHash (), challenge, clientNonce );
             }
             catch ( final Exception e )
             {
@@ -315,7 +328,7 @@ public class NtlmAuthentication
             {
                 try
                 {
-                    userSessionKey = ntlmKeyFactory.getNTLMv2UserSessionKey ( target, this.credentials.getUsername (), this.credentials.getPassword (), type2.getChallenge (), blob );
+                    userSessionKey = ntlmKeyFactory.getNTLMv2UserSessionKey ( this.credentialCache.getNTLMv2Hash ( target ), type2.getChallenge (), blob );
                 }
                 catch ( final Exception e )
                 {
@@ -331,7 +344,7 @@ public class NtlmAuthentication
                 System.arraycopy ( clientNonce, 0, servernonce, 8, clientNonce.length );
                 try
                 {
-                    userSessionKey = ntlmKeyFactory.getNTLM2SessionResponseUserSessionKey ( this.credentials.getPassword (), servernonce );
+                    userSessionKey = ntlmKeyFactory.getNTLM2SessionResponseUserSessionKey ( this.credentialCache.getNTLMUserSessionKey (), servernonce );
                 }
                 catch ( final Exception e )
                 {
@@ -427,7 +440,7 @@ public class NtlmAuthentication
             System.arraycopy ( type3Message.getLMResponse (), 0, servernonce, 8, 8 );//first 8 bytes only , the rest are all 0x00 and not required.
             try
             {
-                sessionResponseUserSessionKey = ntlmKeyFactory.getNTLM2SessionResponseUserSessionKey ( this.credentials.getPassword (), servernonce );
+                sessionResponseUserSessionKey = ntlmKeyFactory.getNTLM2SessionResponseUserSessionKey ( this.credentialCache.getNTLMUserSessionKey (), servernonce );
             }
             catch ( final Exception e )
             {
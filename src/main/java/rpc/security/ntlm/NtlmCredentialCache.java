@@ -0,0 +1,110 @@
+/* Donated by Jarapac (http://jarapac.sourceforge.net/)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110, USA
+ */
+
+package rpc.security.ntlm;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the password derived hashes of one set of credentials, so that the
+ * NTLM handshakes of further connections (reconnects, activation, the OXID
+ * resolver, pooled connections) do not hash the password again. An instance
+ * is placed into the connection properties under {@link #PROPERTY} and is
+ * used by {@link NtlmAuthentication} if it was created for the same domain,
+ * user and password.
+ * <p>
+ * The handshake itself cannot be skipped, NTLM authenticates each connection
+ * with a fresh challenge.
+ */
+public final class NtlmCredentialCache
+{
+    public static final String PROPERTY = "rpc.ntlm.credentialCache";
+
+    private final String domain;
+
+    private final String user;
+
+    private final String password;
+
+    private volatile byte[] ntlmHash = null;
+
+    private volatile byte[] ntlmUserSessionKey = null;
+
+    //target vs NTLMv2 hash
+    private final Map ntlmv2Hashes = new ConcurrentHashMap ();
+
+    public NtlmCredentialCache ( final String domain, final String user, final String password )
+    {
+        this.domain = domain;
+        this.user = user;
+        this.password = password;
+    }
+
+    boolean matches ( final String domain, final String user, final String password )
+    {
+        return equals ( this.domain, domain ) && equals ( this.user, user ) && equals ( this.password, password );
+    }
+
+    private static boolean equals ( final String s1, final String s2 )
+    {
+        return s1 == null ? s2 == null : s1.equals ( s2 );
+    }
+
+    /**
+     * MD4 of the unicode password.
+     */
+    byte[] getNTLMHash () throws Exception
+    {
+        byte[] hash = this.ntlmHash;
+        if ( hash == null )
+        {
+            hash = Responses.ntlmHash ( this.password );
+            this.ntlmHash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * NTLMv1 User Session Key, the base of the NTLM2 Session Response User
+     * Session Key.
+     */
+    byte[] getNTLMUserSessionKey () throws Exception
+    {
+        byte[] key = this.ntlmUserSessionKey;
+        if ( key == null )
+        {
+            key = NTLMKeyFactory.digestMD4 ( getNTLMHash () );
+            this.ntlmUserSessionKey = key;
+        }
+        return key;
+    }
+
+    byte[] getNTLMv2Hash ( final String target ) throws Exception
+    {
+        // a missing target has always been hashed as the string "null", it
+        // also serves as the map key since the map does not take nulls
+        final String key = String.valueOf ( target );
+        byte[] hash = (byte[])this.ntlmv2Hashes.get ( key );
+        if ( hash == null )
+        {
+            hash = Responses.ntlmv2HashFromNTLMHash ( key, this.user, getNTLMHash () );
+            this.ntlmv2Hashes.put ( key, hash );
+        }
+        return hash;
+    }
+}
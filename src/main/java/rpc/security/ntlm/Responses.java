@@ -75,9 +75,18 @@ public class Responses
      * @return The NTLMv2 Response.
      */
     public static byte[][] getNTLMv2Response ( final String target, final String user, final String password, final byte[] targetInformation, final byte[] challenge, final byte[] clientNonce ) throws Exception
+    {
+        return getNTLMv2Response ( ntlmv2Hash ( target, user, password ), targetInformation, challenge, clientNonce );
+    }
+
+    /**
+     * Same as
+     * {@link #getNTLMv2Response(String, String, String, byte[], byte[], byte[])}
+     * but from the NTLMv2 hash of the credentials.
+     */
+    static byte[][] getNTLMv2Response ( final byte[] ntlmv2Hash, final byte[] targetInformation, final byte[] challenge, final byte[] clientNonce ) throws Exception
     {
         final byte[][] retval = new byte[2][];
-        final byte[] ntlmv2Hash = ntlmv2Hash ( target, user, password );
         final byte[] blob = createBlob ( targetInformation, clientNonce );
         retval[1] = blob;
         retval[0] = lmv2Response ( ntlmv2Hash, blob, challenge );
@@ -107,6 +116,16 @@ public class Responses
         return lmv2Response ( ntlmv2Hash, clientNonce, challenge );
     }
 
+    /**
+     * Same as
+     * {@link #getLMv2Response(String, String, String, byte[], byte[])} but
+     * from the NTLMv2 hash of the credentials.
+     */
+    static byte[] getLMv2Response ( final byte[] ntlmv2Hash, final byte[] challenge, final byte[] clientNonce ) throws Exception
+    {
+        return lmv2Response ( ntlmv2Hash, clientNonce, challenge );
+    }
+
     /**
      * Calculates the NTLM2 Session Response for the given challenge, using the
      * specified password and client nonce.
@@ -131,7 +150,15 @@ public class Responses
      */
     public static byte[] getNTLM2SessionResponse ( final String password, final byte[] challenge, final byte[] clientNonce ) throws UnsupportedEncodingException, NoSuchAlgorithmException, InvalidKeyException, NoSuchPaddingException, IllegalStateException, IllegalBlockSizeException, BadPaddingException
     {
-        final byte[] ntlmHash = ntlmHash ( password );
+        return getNTLM2SessionResponse ( ntlmHash ( password ), challenge, clientNonce );
+    }
+
+    /**
+     * Same as {@link #getNTLM2SessionResponse(String, byte[], byte[])} but
+     * from the NTLM hash of the password.
+     */
+    static byte[] getNTLM2SessionResponse ( final byte[] ntlmHash, final byte[] challenge, final byte[] clientNonce ) throws NoSuchAlgorithmException, InvalidKeyException, NoSuchPaddingException, IllegalStateException, IllegalBlockSizeException, BadPaddingException
+    {
         final MessageDigest md5 = MessageDigest.getInstance ( "MD5" );
         md5.update ( challenge );
         md5.update ( clientNonce );
@@ -196,7 +223,11 @@ public class Responses
      */
     static byte[] ntlmv2Hash ( final String target, final String user, final String password ) throws Exception
     {
-        final byte[] ntlmHash = ntlmHash ( password );
+        return ntlmv2HashFromNTLMHash ( target, user, ntlmHash ( password ) );
+    }
+
+    static byte[] ntlmv2HashFromNTLMHash ( final String target, final String user, final byte[] ntlmHash ) throws Exception
+    {
         final String identity = user.toUpperCase () + target;
         return hmacMD5 ( identity.getBytes ( "UnicodeLittleUnmarked" ), ntlmHash );
     }
@@ -0,0 +1,199 @@
+package jcifs.util.transport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.jupiter.api.Test;
+
+public class TransportTest {
+
+	/**
+	 * Transport whose wire is a queue of keys, filled by the test to choose
+	 * the order in which the parts of the responses arrive.
+	 */
+	static class QueueTransport extends Transport {
+
+		private static final Request END = new Request() {
+		};
+
+		volatile String error = null;
+
+		final BlockingQueue<Request> wire = new LinkedBlockingQueue<>();
+
+		@Override
+		protected void doConnect() throws Exception {
+		}
+
+		@Override
+		protected void doDisconnect(boolean hard) throws IOException {
+		}
+
+		@Override
+		protected void doRecv(Response response) throws IOException {
+			if (!Thread.holdsLock(response)) {
+				error = "response decoded without holding its lock";
+			}
+			((MultiPartResponse) response).decodePart();
+		}
+
+		@Override
+		protected void doSend(Request request) throws IOException {
+		}
+
+		@Override
+		protected void doSkip() throws IOException {
+		}
+
+		void end() {
+			wire.add(END);
+		}
+
+		@Override
+		protected void makeKey(Request request) throws IOException {
+		}
+
+		@Override
+		protected Request peekKey() throws IOException {
+			try {
+				final Request key = wire.take();
+				return key == END ? null : key;
+			} catch (final InterruptedException e) {
+				throw new IOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Decodes in the order of SmbComTransactionResponse: the "no more parts"
+	 * state is set before the data and the signature check are done.
+	 */
+	static class MultiPartResponse extends Response {
+
+		final int[] data;
+		boolean hasMore = true;
+		int received = 0;
+		boolean verified = false;
+
+		MultiPartResponse(int parts) {
+			data = new int[parts];
+		}
+
+		void decodePart() {
+			verified = false;
+			if (received + 1 == data.length) {
+				hasMore = false;
+			}
+			try {
+				Thread.sleep(1);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			data[received] = received + 1;
+			received++;
+			verified = true;
+		}
+	}
+
+	private static final int PARTS = 4;
+
+	@Test
+	public void testInterleavedMultiPartResponses() throws Exception {
+		final QueueTransport transport = new QueueTransport();
+		transport.connect(5000);
+		try {
+			for (int round = 0; round < 200; round++) {
+				final Request[] requests = { new Request() {
+				}, new Request() {
+				} };
+				final MultiPartResponse[] responses = { new MultiPartResponse(PARTS), new MultiPartResponse(PARTS) };
+				final String[] failures = new String[requests.length];
+				final Thread[] callers = new Thread[requests.length];
+				for (int i = 0; i < requests.length; i++) {
+					transport.response_map.put(requests[i], responses[i]);
+					final int c = i;
+					callers[i] = new Thread(() -> failures[c] = awaitAllParts(transport, requests[c], responses[c]));
+					callers[i].start();
+				}
+				/*
+				 * the parts alternate between the two responses, except that
+				 * the last parts of each follow one another directly: the
+				 * caller wakes for part n while part n + 1 is being decoded
+				 */
+				for (int part = 0; part < PARTS - 2; part++) {
+					for (int i = 0; i < requests.length; i++) {
+						transport.wire.add(requests[i]);
+					}
+				}
+				for (int i = 0; i < requests.length; i++) {
+					transport.wire.add(requests[i]);
+					transport.wire.add(requests[i]);
+				}
+				for (int i = 0; i < callers.length; i++) {
+					callers[i].join(10000);
+				}
+				assertNull(transport.error, transport.error);
+				for (int i = 0; i < callers.length; i++) {
+					assertNull(failures[i], failures[i]);
+				}
+			}
+		} finally {
+			transport.end();
+		}
+	}
+
+	@Test
+	public void testLateResponseIsSkipped() throws Exception {
+		final QueueTransport transport = new QueueTransport();
+		transport.connect(5000);
+		try {
+			final Request request = new Request() {
+			};
+			final MultiPartResponse response = new MultiPartResponse(1);
+			transport.response_map.put(request, response);
+			transport.removeResponse(request, response);
+			transport.wire.add(request);
+			final Request other = new Request() {
+			};
+			final MultiPartResponse otherResponse = new MultiPartResponse(1);
+			transport.response_map.put(other, otherResponse);
+			transport.wire.add(other);
+			assertNull(awaitAllParts(transport, other, otherResponse));
+			assertEquals(0, response.received);
+		} finally {
+			transport.end();
+		}
+	}
+
+	/* waits like SmbTransport does for the parts of a transaction */
+	private static String awaitAllParts(QueueTransport transport, Request request, MultiPartResponse response) {
+		try {
+			synchronized (response) {
+				final long expiration = System.currentTimeMillis() + 10000;
+				while (response.hasMore) {
+					final long timeout = expiration - System.currentTimeMillis();
+					if (timeout <= 0) {
+						return "timed out";
+					}
+					response.wait(timeout);
+				}
+				for (int i = 0; i < response.data.length; i++) {
+					if (response.data[i] != i + 1) {
+						return "part " + i + " not decoded when the response completed";
+					}
+				}
+				if (!response.verified) {
+					return "response completed before its verification";
+				}
+			}
+			return null;
+		} catch (final InterruptedException e) {
+			return e.toString();
+		} finally {
+			transport.removeResponse(request, response);
+		}
+	}
+}